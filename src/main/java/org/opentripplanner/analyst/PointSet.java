@@ -889,4 +889,8 @@ public class PointSet implements Serializable {
         return lons[i];
     }
 
+    public String getId (int i) {
+        return ids[i];
+    }
+
 }
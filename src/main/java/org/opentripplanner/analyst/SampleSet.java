@@ -41,18 +41,20 @@ public class SampleSet {
 
     public int[] eval (TimeSurface surf) {
         final float WALK_SPEED = 1.3f;
+        // Read the vertex-indexed times directly, unpacking them only once if they are packed.
+        int[] times = surf.times.asArray();
         int[] ret = new int[pset.capacity];
         for (int i = 0; i < pset.capacity; i++) {
             int m0 = Integer.MAX_VALUE;
             int m1 = Integer.MAX_VALUE;
             if (v0s[i] != null) {
-                int s0 = surf.getTime(v0s[i]);
+                int s0 = timeAt(times, v0s[i]);
                 if (s0 != TimeSurface.UNREACHABLE) {
                     m0 = (int) (s0 + d0s[i] / WALK_SPEED);
                 }
             }
             if (v1s[i] != null) {
-                int s1 = surf.getTime(v1s[i]);
+                int s1 = timeAt(times, v1s[i]);
                 if (s1 != TimeSurface.UNREACHABLE) {
                     m1 = (int) (s1 + d1s[i] / WALK_SPEED);
                 }
@@ -62,6 +64,11 @@ public class SampleSet {
         return ret;
     }
     
+    private static int timeAt (int[] times, Vertex v) {
+        int index = v.getIndex();
+        return index < times.length ? times[index] : TimeSurface.UNREACHABLE;
+    }
+
     /** Evaluate an array of times where indices are keyed to vertex indices, with Integer.MAX_VALUE indicating unreachability both in the inputs and the outputs */
     public int[] eval(int[] times) {
         final float WALK_SPEED = 1.3f;
@@ -2,19 +2,12 @@ package org.opentripplanner.analyst;
 
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Queues;
-
-import org.opentripplanner.routing.spt.ShortestPathTree;
-
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.Queue;
 
 /**
  * Caches travel time surfaces, which are derived from shortest path trees.
- * TODO add LRU behavior upon get
+ * The cache is bounded by the approximate memory size of the surfaces rather than by their number, as the size of a
+ * surface depends on the size of the graph and of its sample grid. Least recently used surfaces are evicted first.
+ * If packing is enabled, the times of each surface are packed (see VertexTimes) when it is added.
  * TODO extend to store any type by moving the IDs into the cache
  * TODO use a disk-backed MapDB to avoid eating memory
  */
@@ -23,15 +16,27 @@ public class SurfaceCache {
     public static final int NONE = -1;
     public final Cache<Integer, TimeSurface> cache;
 
-    public SurfaceCache (int capacity) {
+    private final boolean packTimes;
+
+    /**
+     * @param maxBytes the maximum total size of the cached surfaces.
+     * @param packTimes whether to pack the times of the surfaces, trading some CPU on reads for memory.
+     */
+    public SurfaceCache (long maxBytes, boolean packTimes) {
+        this.packTimes = packTimes;
         this.cache = CacheBuilder.newBuilder()
-        	       		.maximumSize(100)
-        	       		.build();
+                .maximumWeight(maxBytes)
+                .weigher((Integer id, TimeSurface surface) -> (int) Math.min(surface.getByteSize(), Integer.MAX_VALUE))
+                .build();
     }
 
     public int add(TimeSurface surface) {
-    	this.cache.put(surface.id, surface);
-    	return surface.id;
+        // The weight of a surface is computed once when it is added, so it must be complete by then: its times are
+        // packed, and the sample grid isochrones are made from is built now rather than on the first isochrone request.
+        if (packTimes) surface.times.pack();
+        if (surface.sampleGrid == null) surface.makeSampleGridWithoutSPT();
+        this.cache.put(surface.id, surface);
+        return surface.id;
     }
 
     public TimeSurface get(int id) {
@@ -1,9 +1,6 @@
 package org.opentripplanner.analyst;
 
 import org.locationtech.jts.geom.Coordinate;
-import gnu.trove.iterator.TObjectIntIterator;
-import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectIntHashMap;
 import org.apache.commons.math3.util.FastMath;
 import org.opentripplanner.analyst.request.SampleGridRenderer;
 import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
@@ -18,6 +15,7 @@ import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
 import org.opentripplanner.profile.RoundBasedProfileRouter;
 import org.opentripplanner.profile.TimeRange;
 import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.ShortestPathTree;
 import org.opentripplanner.routing.vertextype.StreetVertex;
@@ -32,6 +30,7 @@ import static org.apache.commons.math3.util.FastMath.toRadians;
 
 /**
  * A travel time surface. Timing information from the leaves of a ShortestPathTree.
+ * The times are stored in an array indexed by vertex index, see VertexTimes.
  */
 public class TimeSurface implements Serializable {
 
@@ -41,7 +40,9 @@ public class TimeSurface implements Serializable {
 
     public final String routerId;
     public final int id;
-    public final TObjectIntMap<Vertex> times = new TObjectIntHashMap<Vertex>(500000, 0.5f, UNREACHABLE);
+    public final VertexTimes times = new VertexTimes();
+    /** The graph the vertex indexes of the times refer to. */
+    private final transient Graph graph;
     public final double lat, lon;
     public int cutoffMinutes = 90; // this should really be copied from the data source but the new repeated raptor does not do so
     public long dateTime;
@@ -68,6 +69,7 @@ public class TimeSurface implements Serializable {
         // Here we use the key "default" unlike the graphservice which substitutes in the default ID.
         // We don't want to keep that default in sync across two modules.
         this.routerId = routerId;
+        this.graph = spt.getOptions().rctx.graph;
         long t0 = System.currentTimeMillis();
         for (State state : spt.getAllStates()) {
             Vertex vertex = state.getVertex();
@@ -100,6 +102,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
         walkSpeed = profileRouter.request.walkSpeed;
     }
@@ -114,6 +117,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
         cutoffMinutes = profileRouter.MAX_DURATION / 60;
         walkSpeed = profileRouter.request.walkSpeed;
     }
@@ -126,6 +130,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
     }
 
     public TimeSurface(RepeatedRaptorProfileRouter profileRouter) {
@@ -135,6 +140,7 @@ public class TimeSurface implements Serializable {
         id = makeUniqueId();
         dateTime = req.fromTime; // FIXME
         routerId = profileRouter.graph.routerId;
+        graph = profileRouter.graph;
         cutoffMinutes = 120; // FIXME is there any well-defined cutoff? This is needed for generating isochrone curves.
     }
 
@@ -170,6 +176,16 @@ public class TimeSurface implements Serializable {
         return times.get(v);
     }
 
+    /** @return the approximate number of bytes of memory used by this surface, for bounding caches. */
+    public long getByteSize() {
+        long bytes = times.getByteSize();
+        if (sampleGrid != null) {
+            // Rough size of a grid point with its WTWD value and Delaunay bookkeeping.
+            bytes += sampleGrid.size() * 128L;
+        }
+        return bytes;
+    }
+
     private synchronized int makeUniqueId() {
         int id = nextId++;
         return id;
@@ -210,15 +226,15 @@ public class TimeSurface implements Serializable {
         final double cosLat = FastMath.cos(toRadians(coordinateOrigin.y));
         double dY = Math.toDegrees(gridSizeMeters / SphericalDistanceLibrary.RADIUS_OF_EARTH_IN_M);
         double dX = dY / cosLat;
-        sampleGrid = new SparseMatrixZSampleGrid<WTWD>(16, this.times.size(), dX, dY, coordinateOrigin);
+        SparseMatrixZSampleGrid<WTWD> grid = new SparseMatrixZSampleGrid<WTWD>(16, this.times.size(), dX, dY, coordinateOrigin);
         AccumulativeGridSampler.AccumulativeMetric<WTWD> metric = new SampleGridRenderer.WTWDAccumulativeMetric(cosLat, D0, V0, gridSizeMeters);
-        AccumulativeGridSampler<WTWD> sampler = new AccumulativeGridSampler<WTWD>(sampleGrid, metric);
+        AccumulativeGridSampler<WTWD> sampler = new AccumulativeGridSampler<WTWD>(grid, metric);
         // Iterate over every vertex in this timesurface, adding it to the ZSampleGrid
         // TODO propagation along street geometries could happen at this stage, rather than when the SPT is still available.
-        for (TObjectIntIterator<Vertex> iter = times.iterator(); iter.hasNext(); ) {
-            iter.advance();
-            Vertex vertex = iter.key();
-            int time = iter.value();
+        times.forEach((vertexIndex, time) -> {
+            // Temporary vertices are not in the graph any more, they are skipped.
+            Vertex vertex = graph.getVertexById(vertexIndex);
+            if (vertex == null) return true;
             WTWD z = new WTWD();
             z.w = 1.0;
             z.d = 0.0;
@@ -226,8 +242,10 @@ public class TimeSurface implements Serializable {
             z.wBoardings = 0; // unused
             z.wWalkDist = 0; // unused
             sampler.addSamplingPoint(vertex.getCoordinate(), z, V0);
-        }
+            return true;
+        });
         sampler.close();
+        sampleGrid = grid;
         long t1 = System.currentTimeMillis();
         LOG.info("Made scalar SampleGrid from TimeSurface in {} msec.", (int) (t1 - t0));
     }
@@ -0,0 +1,194 @@
+package org.opentripplanner.analyst;
+
+import gnu.trove.procedure.TIntIntProcedure;
+import org.opentripplanner.routing.graph.Vertex;
+
+import java.io.Serializable;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+
+/**
+ * Travel times to vertices, stored in an array indexed by vertex index. Vertices that were not reached have the time
+ * TimeSurface.UNREACHABLE. This takes four bytes per vertex of the graph whatever the number of vertices reached,
+ * which is much less than a hash map with an entry per vertex reached, and reading a time involves no hashing.
+ *
+ * The times can be packed to save memory while they are kept around (e.g. in the SurfaceCache). Packed times are the
+ * reached vertices only, as varints of the difference with the previous vertex index and of the zigzag-encoded
+ * difference with the previous time: neighboring vertices tend to have close indexes and close times, so most entries
+ * take two or three bytes. Packed times are unpacked when they are read, and the unpacked array is kept through a
+ * soft reference, so that it is reused by successive reads but can be reclaimed when memory runs low.
+ */
+public class VertexTimes implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The size of the fields of an instance, used to estimate its memory footprint. */
+    private static final int OVERHEAD_BYTES = 64;
+
+    /** The times indexed by vertex index, or null if the times are packed. */
+    private int[] times;
+
+    /** The packed times, or null if the times are not packed. */
+    private byte[] packed;
+
+    /** The times unpacked from the packed times, which can be reclaimed by the garbage collector. */
+    private transient volatile SoftReference<int[]> unpacked;
+
+    /** The number of vertices reached. */
+    private int size = 0;
+
+    /** Create an empty set of times, sized for the vertices currently in existence. */
+    public VertexTimes () {
+        this(Vertex.getMaxIndex());
+    }
+
+    public VertexTimes (int capacity) {
+        times = new int[capacity];
+        Arrays.fill(times, TimeSurface.UNREACHABLE);
+    }
+
+    /** @return the time to the given vertex in seconds, or TimeSurface.UNREACHABLE. */
+    public int get (Vertex vertex) {
+        return get(vertex.getIndex());
+    }
+
+    /** @return the time to the vertex of the given index in seconds, or TimeSurface.UNREACHABLE. */
+    public int get (int vertexIndex) {
+        int[] t = getTimes();
+        return vertexIndex < t.length ? t[vertexIndex] : TimeSurface.UNREACHABLE;
+    }
+
+    public void put (Vertex vertex, int time) {
+        put(vertex.getIndex(), time);
+    }
+
+    /**
+     * Set the time to a vertex. This is not thread-safe, times should be put by a single thread before they are
+     * shared. If the times are packed, they are unpacked for good.
+     */
+    public void put (int vertexIndex, int time) {
+        if (packed != null) {
+            times = getTimes();
+            packed = null;
+            unpacked = null;
+        }
+        if (vertexIndex >= times.length) {
+            // Temporary vertices have indexes beyond those of the graph vertices.
+            int oldLength = times.length;
+            times = Arrays.copyOf(times, Math.max(vertexIndex + 1, oldLength + (oldLength >> 1)));
+            Arrays.fill(times, oldLength, times.length, TimeSurface.UNREACHABLE);
+        }
+        int previous = times[vertexIndex];
+        if (previous == TimeSurface.UNREACHABLE && time != TimeSurface.UNREACHABLE) size++;
+        if (previous != TimeSurface.UNREACHABLE && time == TimeSurface.UNREACHABLE) size--;
+        times[vertexIndex] = time;
+    }
+
+    /** @return the number of vertices reached. */
+    public int size () {
+        return size;
+    }
+
+    /**
+     * Call the procedure with the index of each vertex reached and the time to it, in ascending order of vertex
+     * index, until it returns false.
+     */
+    public void forEach (TIntIntProcedure procedure) {
+        int[] t = getTimes();
+        for (int v = 0; v < t.length; v++) {
+            if (t[v] != TimeSurface.UNREACHABLE && !procedure.execute(v, t[v])) return;
+        }
+    }
+
+    /**
+     * @return the times indexed by vertex index, with TimeSurface.UNREACHABLE for vertices not reached. This is the
+     *         array backing these times, it must not be modified. It may be shorter than the number of vertices.
+     */
+    public int[] asArray () {
+        return getTimes();
+    }
+
+    /** @return whether the times are packed. */
+    public boolean isPacked () {
+        return packed != null;
+    }
+
+    /** Pack the times, see the class description. Does nothing if they are already packed. */
+    public synchronized void pack () {
+        if (packed != null) return;
+        byte[] bytes = new byte[16 + size * 3];
+        int pos = writeVarint(bytes, 0, times.length);
+        pos = writeVarint(bytes, pos, size);
+        int previousVertex = 0;
+        int previousTime = 0;
+        for (int v = 0; v < times.length; v++) {
+            int time = times[v];
+            if (time == TimeSurface.UNREACHABLE) continue;
+            if (pos + 10 > bytes.length) bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            pos = writeVarint(bytes, pos, v - previousVertex);
+            int delta = time - previousTime;
+            pos = writeVarint(bytes, pos, (delta << 1) ^ (delta >> 31));
+            previousVertex = v;
+            previousTime = time;
+        }
+        packed = Arrays.copyOf(bytes, pos);
+        unpacked = new SoftReference<>(times);
+        times = null;
+    }
+
+    /** @return the approximate number of bytes of memory used by these times, not counting unpacked times. */
+    public long getByteSize () {
+        byte[] p = packed;
+        return OVERHEAD_BYTES + (p != null ? p.length : times.length * 4L);
+    }
+
+    /** @return the times indexed by vertex index, unpacking them if needed. */
+    private int[] getTimes () {
+        byte[] p = packed;
+        if (p == null) return times;
+        SoftReference<int[]> ref = unpacked;
+        int[] t = ref == null ? null : ref.get();
+        if (t == null) {
+            // Concurrent reads may both unpack the times, which is harmless.
+            t = unpack(p);
+            unpacked = new SoftReference<>(t);
+        }
+        return t;
+    }
+
+    private static int[] unpack (byte[] bytes) {
+        int[] pos = new int[1];
+        int[] t = new int[readVarint(bytes, pos)];
+        Arrays.fill(t, TimeSurface.UNREACHABLE);
+        int n = readVarint(bytes, pos);
+        int vertex = 0;
+        int time = 0;
+        for (int i = 0; i < n; i++) {
+            vertex += readVarint(bytes, pos);
+            int zigZag = readVarint(bytes, pos);
+            time += (zigZag >>> 1) ^ -(zigZag & 1);
+            t[vertex] = time;
+        }
+        return t;
+    }
+
+    private static int writeVarint (byte[] bytes, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            bytes[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[pos++] = (byte) value;
+        return pos;
+    }
+
+    /** Read a varint at pos[0], advancing pos[0] past it. */
+    private static int readVarint (byte[] bytes, int[] pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = bytes[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+}
@@ -0,0 +1,165 @@
+package org.opentripplanner.analyst.batch;
+
+import org.opentripplanner.analyst.PointSet;
+import org.opentripplanner.analyst.SampleSet;
+import org.opentripplanner.analyst.cluster.ResultEnvelope;
+import org.opentripplanner.analyst.cluster.TaskStatistics;
+import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.profile.RaptorWorker;
+import org.opentripplanner.profile.RaptorWorkerData;
+import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
+import org.opentripplanner.routing.error.VertexNotFoundException;
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Computes the travel times from every point of an origin point set to every point of a destination point set, with
+ * one repeated RAPTOR profile search per origin.
+ *
+ * The work that does not depend on the origin is done once: the destinations are linked to the street network once
+ * (in their SampleSet) and the RAPTOR data tables, which include the propagation from stops to destinations, are built
+ * once and shared read-only by all the searches. The origins are searched in parallel, and each row is handed to a
+ * TravelTimeMatrixWriter as soon as it is computed, so only the rows being computed are held in memory.
+ */
+public class TravelTimeMatrix {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TravelTimeMatrix.class);
+
+    private final Graph graph;
+
+    private final ProfileRequest request;
+
+    private final PointSet origins;
+
+    private final PointSet destinations;
+
+    /** The number of origins searched at the same time. */
+    public int nThreads = Runtime.getRuntime().availableProcessors();
+
+    /** Which travel time over the time window of the request ends up in the matrix. */
+    public ResultEnvelope.Which statistic = ResultEnvelope.Which.AVERAGE;
+
+    private int logThrottleSeconds = 10;
+
+    /** The origins whose row could not be computed in the last call to compute. */
+    private final BitSet failedOrigins = new BitSet();
+
+    /**
+     * @param request the profile request used for every origin, its from and to coordinates are ignored.
+     */
+    public TravelTimeMatrix(Graph graph, ProfileRequest request, PointSet origins, PointSet destinations) {
+        this.graph = graph;
+        this.request = request;
+        this.origins = origins;
+        this.destinations = destinations;
+    }
+
+    /**
+     * Compute the rows of all the origins the writer does not already have, and write them. The writer is not closed.
+     * The rows of origins whose search fails are not written, these origins are then given by getFailedOrigins, and a
+     * file being written is left resumable so that they can be searched again.
+     * @throws IOException if a row cannot be written, in which case the remaining origins are not searched.
+     */
+    public void compute(TravelTimeMatrixWriter writer) throws IOException {
+        long startTime = System.currentTimeMillis();
+        SampleSet sampleSet = destinations.getOrCreateSampleSet(graph);
+        boolean transit = request.transitModes != null && request.transitModes.isTransit();
+        RaptorWorkerData raptorWorkerData = transit ?
+                RepeatedRaptorProfileRouter.getRaptorWorkerData(request, graph, sampleSet, new TaskStatistics()) : null;
+
+        LOG.info("Number of threads: {}", nThreads);
+        ExecutorService threadPool = Executors.newFixedThreadPool(nThreads);
+        CompletionService<Boolean> ecs = new ExecutorCompletionService<>(threadPool);
+        failedOrigins.clear();
+        int nTasks = 0;
+        for (int o = 0; o < origins.featureCount(); o++) {
+            if (writer.isDone(o)) continue;
+            final int origin = o;
+            ecs.submit(() -> {
+                int[] times;
+                try {
+                    times = computeRow(origin, sampleSet, raptorWorkerData);
+                } catch (Exception e) {
+                    LOG.error("Exception computing the travel times from origin {}", origins.getId(origin), e);
+                    synchronized (failedOrigins) {
+                        failedOrigins.set(origin);
+                    }
+                    return false;
+                }
+                writer.writeRow(origin, origins.getId(origin), times);
+                return true;
+            });
+            nTasks++;
+        }
+        LOG.info("Computing travel times from {} origins ({} already done) to {} destinations.", nTasks,
+                origins.featureCount() - nTasks, destinations.featureCount());
+        int nCompleted = 0;
+        long lastLogTime = startTime;
+        try {
+            while (nCompleted < nTasks) {
+                try {
+                    ecs.take().get();
+                } catch (ExecutionException e) {
+                    // A row that cannot be written would be missing from the output, so give up.
+                    if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+                    throw new RuntimeException("Exception writing a travel time matrix row", e.getCause());
+                }
+                nCompleted++;
+                long now = System.currentTimeMillis();
+                if (now - lastLogTime > logThrottleSeconds * 1000) {
+                    lastLogTime = now;
+                    double rowsPerSecond = nCompleted * 1000.0 / (now - startTime);
+                    LOG.info("{}/{} rows computed, {} rows/sec, about {} sec remaining.", nCompleted, nTasks,
+                            String.format("%.2f", rowsPerSecond), (int) ((nTasks - nCompleted) / rowsPerSecond));
+                }
+            }
+        } catch (InterruptedException e) {
+            LOG.warn("Travel time matrix computation was interrupted after {} rows.", nCompleted);
+            Thread.currentThread().interrupt();
+        } finally {
+            threadPool.shutdownNow();
+        }
+        int nFailed = getFailedOrigins().cardinality();
+        LOG.info("Computed {} rows in {} sec.", nCompleted - nFailed, (System.currentTimeMillis() - startTime) / 1000);
+        if (nFailed > 0) {
+            LOG.error("The travel times from {} origins could not be computed, their rows are missing.", nFailed);
+        }
+    }
+
+    /** @return the indexes of the origins whose row could not be computed by the last call to compute. */
+    public BitSet getFailedOrigins() {
+        synchronized (failedOrigins) {
+            return (BitSet) failedOrigins.clone();
+        }
+    }
+
+    /** @return the travel times from one origin to all destinations. */
+    private int[] computeRow(int origin, SampleSet sampleSet, RaptorWorkerData raptorWorkerData) throws Exception {
+        ProfileRequest req = request.clone();
+        req.fromLat = req.toLat = origins.getLat(origin);
+        req.fromLon = req.toLon = origins.getLon(origin);
+        RepeatedRaptorProfileRouter router = new RepeatedRaptorProfileRouter(graph, req, sampleSet);
+        router.raptorWorkerData = raptorWorkerData;
+        router.includeTimes = true;
+        router.includeHistograms = false;
+        try {
+            return router.route().get(statistic).times;
+        } catch (VertexNotFoundException e) {
+            LOG.debug("Origin {} is not near the street network.", origins.getId(origin));
+            int[] times = new int[destinations.featureCount()];
+            Arrays.fill(times, RaptorWorker.UNREACHED);
+            return times;
+        }
+    }
+
+}
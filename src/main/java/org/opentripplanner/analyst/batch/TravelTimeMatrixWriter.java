@@ -0,0 +1,273 @@
+package org.opentripplanner.analyst.batch;
+
+import com.csvreader.CsvWriter;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.opentripplanner.analyst.PointSet;
+import org.opentripplanner.profile.RaptorWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.BitSet;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the rows of a travel time matrix as soon as they are computed, so that the whole matrix never has to be held
+ * in memory. Rows are written in the order they complete, which is not the order of the origins.
+ *
+ * The output is a sequence of gzip members, which gzip tools and GZIPInputStream read as a single stream. The first
+ * member is a header, and each following member is one row. Two formats are available:
+ * <ul>
+ * <li>CSV: the header is "origin" followed by the destination ids. Each row is the id of the origin followed by the
+ * travel time in seconds to each destination, empty when a destination is not reached.</li>
+ * <li>BINARY: big-endian ints. The header is {@link #BINARY_MAGIC}, the format version and the number of destinations.
+ * Each row is the index of the origin in the origin point set followed by the travel time in seconds to each
+ * destination, -1 when a destination is not reached.</li>
+ * </ul>
+ *
+ * When writing to a file, the length of the output after each row is recorded in a progress file next to it. If a run
+ * is interrupted, opening the same file again cuts off any partly written row and skips the origins already written.
+ * The progress file starts with the format and a fingerprint of the origins and destinations, so that a matrix is
+ * only resumed with the same parameters.
+ */
+public class TravelTimeMatrixWriter implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TravelTimeMatrixWriter.class);
+
+    /** The first int of the binary format, "OTPM". */
+    public static final int BINARY_MAGIC = 0x4F54504D;
+
+    public static final int BINARY_VERSION = 1;
+
+    public enum Format { CSV, BINARY }
+
+    private final OutputStream out;
+
+    private final Format format;
+
+    private final int nDestinations;
+
+    /** The progress file, or null if the output cannot be resumed. */
+    private final Writer progress;
+
+    /** The origins whose rows have already been written. */
+    private final BitSet done = new BitSet();
+
+    /** The number of bytes written to the output. */
+    private long length = 0;
+
+    /**
+     * Write a matrix to a stream, for instance a web service response. Such an output cannot be resumed.
+     * @param destinations the destinations, which are the columns of the matrix.
+     */
+    public TravelTimeMatrixWriter(OutputStream out, Format format, PointSet destinations) throws IOException {
+        this.out = out;
+        this.format = format;
+        this.nDestinations = destinations.featureCount();
+        this.progress = null;
+        write(encodeHeader(destinations));
+    }
+
+    private TravelTimeMatrixWriter(OutputStream out, Format format, int nDestinations, Writer progress, long length) {
+        this.out = out;
+        this.format = format;
+        this.nDestinations = nDestinations;
+        this.progress = progress;
+        this.length = length;
+    }
+
+    /**
+     * Write a matrix to a file, resuming the previous run if the file has a progress file.
+     * @param origins the origins, which are the rows of the matrix.
+     * @param destinations the destinations, which are the columns of the matrix.
+     * @throws IOException if the file was started with another format, other origins or other destinations.
+     */
+    public static TravelTimeMatrixWriter open(File file, Format format, PointSet origins, PointSet destinations)
+            throws IOException {
+        File progressFile = new File(file.getPath() + ".progress");
+        int nDestinations = destinations.featureCount();
+        String signature = signature(format, origins, destinations);
+        if (file.exists() && progressFile.exists()) {
+            BitSet done = new BitSet();
+            long length = readProgress(progressFile, signature, done);
+            if (length > 0) {
+                try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                    // Cut off the row that was being written when the previous run stopped.
+                    raf.setLength(length);
+                }
+                LOG.info("Resuming travel time matrix '{}' with {} rows already written.", file, done.cardinality());
+                TravelTimeMatrixWriter writer = new TravelTimeMatrixWriter(new FileOutputStream(file, true), format,
+                        nDestinations, new FileWriter(progressFile, true), length);
+                writer.done.or(done);
+                return writer;
+            }
+        }
+        TravelTimeMatrixWriter writer = new TravelTimeMatrixWriter(new FileOutputStream(file), format,
+                nDestinations, new FileWriter(progressFile), 0);
+        writer.progress.write(signature + "\n");
+        writer.write(writer.encodeHeader(destinations));
+        writer.recordProgress("header");
+        return writer;
+    }
+
+    /**
+     * Identifies the parameters of a matrix file: its format, and the number and a hash of the ids and coordinates of
+     * its origins and of its destinations.
+     */
+    static String signature(Format format, PointSet origins, PointSet destinations) {
+        return String.format("matrix %s %d %s %d %s", format, origins.featureCount(), fingerprint(origins),
+                destinations.featureCount(), fingerprint(destinations));
+    }
+
+    private static String fingerprint(PointSet points) {
+        Hasher hasher = Hashing.sha1().newHasher();
+        for (int i = 0; i < points.featureCount(); i++) {
+            String id = points.getId(i);
+            hasher.putString(id == null ? "" : id, StandardCharsets.UTF_8);
+            hasher.putDouble(points.getLat(i));
+            hasher.putDouble(points.getLon(i));
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Read a progress file, made of a line giving the signature of the matrix, then lines giving the length of the
+     * output followed by the index of the origin of the row ending at that length. Lines after the last complete one
+     * are removed from the file, so that new lines can be appended to it.
+     * @return the length of the output at the last complete line, which is 0 if even the header is not complete.
+     * @throws IOException if the signature of the file is not the expected one.
+     */
+    private static long readProgress(File progressFile, String signature, BitSet done) throws IOException {
+        String text = new String(Files.readAllBytes(progressFile.toPath()), StandardCharsets.UTF_8);
+        int signatureEnd = text.indexOf('\n');
+        // Interrupted before the signature was complete, nothing was written.
+        if (signatureEnd < 0) return 0;
+        if (!text.substring(0, signatureEnd).equals(signature)) {
+            throw new IOException("Travel time matrix " + progressFile + " was started with another format, other " +
+                    "origins or other destinations, remove it to start over.");
+        }
+        long length = 0;
+        int validChars = signatureEnd + 1;
+        // A line cut by an interruption has no line end, it is ignored with anything after it.
+        for (int end = text.indexOf('\n', validChars); end >= 0; end = text.indexOf('\n', validChars)) {
+            String[] fields = text.substring(validChars, end).split(" ");
+            if (fields.length != 2) break;
+            try {
+                long lineLength = Long.parseLong(fields[0]);
+                if (!"header".equals(fields[1])) done.set(Integer.parseInt(fields[1]));
+                length = lineLength;
+            } catch (NumberFormatException e) {
+                break;
+            }
+            validChars = end + 1;
+        }
+        if (validChars < text.length()) {
+            Files.write(progressFile.toPath(), text.substring(0, validChars).getBytes(StandardCharsets.UTF_8));
+        }
+        return length;
+    }
+
+    /** @return true if the row of the given origin was written by a previous run. */
+    public synchronized boolean isDone(int origin) {
+        return done.get(origin);
+    }
+
+    /**
+     * Write the row of an origin. This can be called concurrently by the threads computing the rows.
+     * @param times the travel times to each destination in seconds, RaptorWorker.UNREACHED for destinations not
+     *              reached.
+     */
+    public void writeRow(int origin, String originId, int[] times) throws IOException {
+        if (times.length != nDestinations) {
+            throw new IllegalArgumentException("Expected " + nDestinations + " travel times, got " + times.length);
+        }
+        // Compress outside of the lock, only the writing has to be serialized.
+        byte[] row = format == Format.CSV ? encodeCsvRow(originId, times) : encodeBinaryRow(origin, times);
+        synchronized (this) {
+            write(row);
+            done.set(origin);
+            recordProgress(Integer.toString(origin));
+        }
+    }
+
+    private byte[] encodeHeader(PointSet destinations) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        if (format == Format.CSV) {
+            CsvWriter csv = new CsvWriter(gzip, ',', StandardCharsets.UTF_8);
+            csv.write("origin");
+            for (int i = 0; i < nDestinations; i++) {
+                csv.write(destinations.getId(i));
+            }
+            csv.endRecord();
+            csv.flush();
+        } else {
+            DataOutputStream data = new DataOutputStream(gzip);
+            data.writeInt(BINARY_MAGIC);
+            data.writeInt(BINARY_VERSION);
+            data.writeInt(nDestinations);
+            data.flush();
+        }
+        gzip.finish();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeCsvRow(String originId, int[] times) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        CsvWriter csv = new CsvWriter(gzip, ',', StandardCharsets.UTF_8);
+        csv.write(originId);
+        for (int time : times) {
+            csv.write(time == RaptorWorker.UNREACHED ? "" : Integer.toString(time));
+        }
+        csv.endRecord();
+        csv.flush();
+        gzip.finish();
+        return bytes.toByteArray();
+    }
+
+    private static byte[] encodeBinaryRow(int origin, int[] times) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        DataOutputStream data = new DataOutputStream(gzip);
+        data.writeInt(origin);
+        for (int time : times) {
+            data.writeInt(time == RaptorWorker.UNREACHED ? -1 : time);
+        }
+        data.flush();
+        gzip.finish();
+        return bytes.toByteArray();
+    }
+
+    private void write(byte[] member) throws IOException {
+        out.write(member);
+        out.flush();
+        length += member.length;
+    }
+
+    /** Record that the output is complete up to its current length, which must be flushed. */
+    private void recordProgress(String row) throws IOException {
+        if (progress == null) return;
+        progress.write(length + " " + row + "\n");
+        progress.flush();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+        if (progress != null) progress.close();
+    }
+
+}
@@ -36,6 +36,8 @@ public class DebugOutput {
     public long renderingTime;
     public long totalTime;
     public boolean timedOut;
+    /** The number of states expanded by the street and transit searches of this request. */
+    public long statesExpanded;
 
     /**
      * Record the time when we first began calculating a path for this request
@@ -2,6 +2,8 @@ package org.opentripplanner.api.resource;
 
 import java.awt.image.BufferedImage;
 import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
 
 import javax.imageio.ImageIO;
 import javax.ws.rs.GET;
@@ -22,6 +24,7 @@ import org.opentripplanner.api.parameter.MIMEImageFormat;
 import static org.opentripplanner.api.resource.ServerInfo.Q;
 
 import org.opentripplanner.inspector.TileRenderer;
+import org.opentripplanner.inspector.VectorTileRenderer;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
 
@@ -42,8 +45,16 @@ import org.opentripplanner.standalone.Router;
  * Tile rendering goes through TileRendererManager which select the appropriate renderer for the
  * given layer.
  * 
+ * The same data is available as vector tiles, which are much cheaper to produce and can be styled
+ * by the client, for example with Mapbox GL:
+ * 
+ * <pre>
+ *   http://localhost:8080/otp/routers/default/inspector/vectortile/edges,stops/{z}/{x}/{y}.pbf
+ * </pre>
+ * 
  * @see TileRendererManager
  * @see TileRenderer
+ * @see VectorTileRenderer
  * 
  * @author laurent
  * 
@@ -51,6 +62,8 @@ import org.opentripplanner.standalone.Router;
 @Path("/routers/{routerId}/inspector")
 public class GraphInspectorTileResource extends RoutingResource {
 
+    public static final String VECTOR_TILE_MEDIA_TYPE = "application/vnd.mapbox-vector-tile";
+
     @Context
     private OTPServer otpServer;
 
@@ -72,6 +85,29 @@ public class GraphInspectorTileResource extends RoutingResource {
     @PathParam("ext")
     String ext;
 
+    /**
+     * Vector tile (Mapbox Vector Tile) of the given layers, a comma-separated list of the layers of
+     * VectorTileRenderer. Tiles are cached until the graph is reloaded.
+     */
+    @GET @Path("/vectortile/{layer}/{z}/{x}/{y}.pbf")
+    @Produces(VECTOR_TILE_MEDIA_TYPE)
+    public Response vectorTileGet() throws Exception {
+        Router router = otpServer.getRouter(routerId);
+        List<String> layers = Arrays.asList(layer.split(","));
+        for (String l : layers) {
+            if (!VectorTileRenderer.LAYERS.contains(l)) {
+                return Response.status(Response.Status.NOT_FOUND).entity("Unknown layer: " + l + "\n")
+                        .type(MediaType.TEXT_PLAIN).build();
+            }
+        }
+        String key = String.join("-", layers) + "-" + z + "-" + x + "-" + y + ".pbf";
+        byte[] tile = router.vectorTileCache.get(key, () -> router.vectorTileRenderer.renderTile(x, y, z, layers));
+        CacheControl cc = new CacheControl();
+        cc.setMaxAge(3600);
+        cc.setNoCache(false);
+        return Response.ok(tile).type(VECTOR_TILE_MEDIA_TYPE).cacheControl(cc).build();
+    }
+
     @GET @Path("/tile/{layer}/{z}/{x}/{y}.{ext}")
     @Produces("image/*")
     public Response tileGet() throws Exception {
@@ -2,10 +2,9 @@ package org.opentripplanner.api.resource;
 
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Geometry;
-import org.locationtech.jts.geom.LineString;
 import org.opentripplanner.api.model.*;
+import org.opentripplanner.common.geometry.CompactLineString;
 import org.opentripplanner.common.geometry.DirectionUtils;
-import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.common.geometry.PackedCoordinateSequence;
 import org.opentripplanner.common.model.P2;
 import org.opentripplanner.model.Agency;
@@ -29,10 +28,12 @@ import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.routing.trippattern.TripTimes;
 import org.opentripplanner.routing.vertextype.*;
 import org.opentripplanner.util.PolylineEncoder;
+import org.opentripplanner.util.model.EncodedPolylineBean;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
+import java.util.function.Consumer;
 
 /**
  * A library class with only static methods used in converting internal GraphPaths to TripPlans, which are
@@ -48,6 +49,18 @@ public abstract class GraphPathToTripPlanConverter {
      * Generates a TripPlan from a set of paths
      */
     public static TripPlan generatePlan(List<GraphPath> paths, RoutingRequest request) {
+        TripPlan plan = generateEmptyPlan(paths, request);
+        generateItineraries(paths, request, plan, plan::addItinerary);
+        request.rctx.debugOutput.finishedRendering();
+        return plan;
+    }
+
+    /**
+     * Generates a TripPlan with its origin, destination and date filled in but without any itineraries. This allows
+     * the plan header to be sent to the client before the (much larger) itineraries are generated, see
+     * {@link #generateItineraries(List, RoutingRequest, TripPlan, Consumer)}.
+     */
+    public static TripPlan generateEmptyPlan(List<GraphPath> paths, RoutingRequest request) {
 
         Locale requestedLocale = request.locale;
 
@@ -70,46 +83,59 @@ public abstract class GraphPathToTripPlanConverter {
         from.orig = request.from.name;
         to.orig = request.to.name;
 
-        TripPlan plan = new TripPlan(from, to, request.getDateTime());
+        return new TripPlan(from, to, request.getDateTime());
+    }
+
+    /**
+     * Converts GraphPaths to Itineraries one at a time, handing each one to the consumer as soon as it is complete.
+     * Only one itinerary is held in memory at a time, so callers that serialize itineraries as they receive them
+     * avoid building the whole object tree of a large response. The itineraries are the same, and come in the same
+     * order, as those added to the plan by {@link #generatePlan(List, RoutingRequest)}.
+     *
+     * @param plan the plan returned by {@link #generateEmptyPlan(List, RoutingRequest)}, used to fix up the first and
+     *             last legs. The itineraries are not added to it.
+     */
+    public static void generateItineraries(List<GraphPath> paths, RoutingRequest request, TripPlan plan,
+                                           Consumer<Itinerary> consumer) {
 
-        // Convert GraphPaths to Itineraries, keeping track of the best non-transit (e.g. walk/bike-only) option time
+        Locale requestedLocale = request.locale;
+
+        // Find the best non-transit (e.g. walk/bike-only) option time. This only needs the times, which are cheap
+        // to compute from the states, so it can be done before any itinerary is generated.
+        long[] walkTimes = new long[paths.size()];
+        boolean[] hasTransit = new boolean[paths.size()];
         long bestNonTransitTime = Long.MAX_VALUE;
-        List<Itinerary> itineraries = new LinkedList<>();
-        for (GraphPath path : paths) {
-            Itinerary itinerary = generateItinerary(path, request.showIntermediateStops, request.disableAlertFiltering, requestedLocale);
-            itinerary = adjustItinerary(request, itinerary);
-            if(itinerary.transitTime == 0 && itinerary.walkTime < bestNonTransitTime) {
-                bestNonTransitTime = itinerary.walkTime;
+        for (int i = 0; i < paths.size(); i++) {
+            Itinerary times = new Itinerary();
+            calculateTimes(times, paths.get(i).states.toArray(new State[0]));
+            walkTimes[i] = times.walkTime;
+            hasTransit[i] = times.transitTime > 0;
+            if (!hasTransit[i] && times.walkTime < bestNonTransitTime) {
+                bestNonTransitTime = times.walkTime;
             }
-            itineraries.add(itinerary);
         }
 
-        // Filter and add itineraries to plan
-        for (Itinerary itinerary : itineraries) {
+        for (int i = 0; i < paths.size(); i++) {
             // If this is a transit option whose walk/bike time is greater than that of the walk/bike-only option,
             // do not include in plan
-            if(itinerary.transitTime > 0 && itinerary.walkTime > bestNonTransitTime) continue;
+            if (hasTransit[i] && walkTimes[i] > bestNonTransitTime) continue;
 
-            plan.addItinerary(itinerary);
-        }
+            Itinerary itinerary = generateItinerary(paths.get(i), request.showIntermediateStops, request.disableAlertFiltering, requestedLocale);
+            itinerary = adjustItinerary(request, itinerary);
 
-        if (plan != null) {
-            for (Itinerary i : plan.itinerary) {
-                /* Communicate the fact that the only way we were able to get a response was by removing a slope limit. */
-                i.tooSloped = request.rctx.slopeRestrictionRemoved;
-                /* fix up from/to on first/last legs */
-                if (i.legs.size() == 0) {
-                    LOG.warn("itinerary has no legs");
-                    continue;
-                }
-                Leg firstLeg = i.legs.get(0);
+            /* Communicate the fact that the only way we were able to get a response was by removing a slope limit. */
+            itinerary.tooSloped = request.rctx.slopeRestrictionRemoved;
+            /* fix up from/to on first/last legs */
+            if (itinerary.legs.size() == 0) {
+                LOG.warn("itinerary has no legs");
+            } else {
+                Leg firstLeg = itinerary.legs.get(0);
                 firstLeg.from.orig = plan.from.orig;
-                Leg lastLeg = i.legs.get(i.legs.size() - 1);
+                Leg lastLeg = itinerary.legs.get(itinerary.legs.size() - 1);
                 lastLeg.to.orig = plan.to.orig;
             }
+            consumer.accept(itinerary);
         }
-        request.rctx.debugOutput.finishedRendering();
-        return plan;
     }
 
     /**
@@ -202,20 +228,60 @@ public abstract class GraphPathToTripPlanConverter {
      */
     public static CoordinateArrayListSequence makeCoordinates(Edge[] edges) {
         CoordinateArrayListSequence coordinates = new CoordinateArrayListSequence();
+        visitCoordinates(edges, (x, y) -> coordinates.add(new Coordinate(x, y)));
+        return coordinates;
+    }
 
+    /**
+     * Encode the geometry of an {@link Edge} array as a polyline, with the same points as
+     * {@link #makeCoordinates(Edge[])}. The points go straight from the edges to the encoder,
+     * without building any intermediate geometry.
+     *
+     * @param edges The array of input edges
+     * @return The encoded polyline
+     */
+    public static EncodedPolylineBean encodeGeometry(Edge[] edges) {
+        PolylineEncoder.Encoder encoder = new PolylineEncoder.Encoder();
+        visitCoordinates(edges, encoder);
+        return encoder.getEncodings();
+    }
+
+    /**
+     * Give the coordinates of the display geometries of consecutive edges to a visitor. The
+     * first point of each geometry but the first one is skipped, as it is the last point of the
+     * previous geometry.
+     */
+    private static void visitCoordinates(Edge[] edges, CompactLineString.CoordinateVisitor visitor) {
+        EdgeJoiningVisitor joiningVisitor = new EdgeJoiningVisitor(visitor);
         for (Edge edge : edges) {
-            LineString geometry = edge.getDisplayGeometry();
+            joiningVisitor.skipNext = joiningVisitor.started; // Avoid duplications
+            edge.visitDisplayGeometry(joiningVisitor);
+        }
+    }
 
-            if (geometry != null) {
-                if (coordinates.size() == 0) {
-                    coordinates.extend(geometry.getCoordinates());
-                } else {
-                    coordinates.extend(geometry.getCoordinates(), 1); // Avoid duplications
-                }
-            }
+    private static class EdgeJoiningVisitor implements CompactLineString.CoordinateVisitor {
+
+        private final CompactLineString.CoordinateVisitor visitor;
+
+        /** Whether a point has been visited yet. */
+        boolean started = false;
+
+        /** Whether to skip the next point. */
+        boolean skipNext = false;
+
+        EdgeJoiningVisitor(CompactLineString.CoordinateVisitor visitor) {
+            this.visitor = visitor;
         }
 
-        return coordinates;
+        @Override
+        public void visit(double x, double y) {
+            if (skipNext) {
+                skipNext = false;
+            } else {
+                visitor.visit(x, y);
+            }
+            started = true;
+        }
     }
 
     /**
@@ -320,10 +386,7 @@ public abstract class GraphPathToTripPlanConverter {
 
         addPlaces(leg, states, edges, showIntermediateStops, requestedLocale);
 
-        CoordinateArrayListSequence coordinates = makeCoordinates(edges);
-        Geometry geometry = GeometryUtils.getGeometryFactory().createLineString(coordinates);
-
-        leg.legGeometry = PolylineEncoder.createEncodings(geometry);
+        leg.legGeometry = encodeGeometry(edges);
 
         leg.interlineWithPreviousLeg = states[0].getBackEdge() instanceof PatternInterlineDwell;
 
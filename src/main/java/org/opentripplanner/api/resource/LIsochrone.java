@@ -4,7 +4,6 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.StringWriter;
 import java.util.List;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -83,14 +82,19 @@ public class LIsochrone extends RoutingResource {
     @GET
     @Produces(MediaType.APPLICATION_JSON)
     public Response getGeoJsonIsochrone() throws Exception {
-        SimpleFeatureCollection contourFeatures = makeContourFeatures(computeIsochrone());
-        StringWriter writer = new StringWriter();
-        FeatureJSON fj = new FeatureJSON();
-        fj.writeFeatureCollection(contourFeatures, writer);
+        final SimpleFeatureCollection contourFeatures = makeContourFeatures(computeIsochrone());
         CacheControl cc = new CacheControl();
         cc.setMaxAge(3600);
         cc.setNoCache(false);
-        return Response.ok().entity(writer.toString()).cacheControl(cc).build();
+        // Stream the features rather than building the whole document in memory, there can be many large contours.
+        StreamingOutput output = new StreamingOutput() {
+            @Override
+            public void write(OutputStream outputStream) throws IOException {
+                FeatureJSON fj = new FeatureJSON();
+                fj.writeFeatureCollection(contourFeatures, outputStream);
+            }
+        };
+        return Response.ok().entity(output).cacheControl(cc).build();
     }
 
     @GET
@@ -0,0 +1,64 @@
+package org.opentripplanner.api.resource;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.opentripplanner.api.model.JSONObjectMapperProvider;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.api.model.error.PlannerError;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.spt.GraphPath;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a trip planner response as JSON, generating and serializing itineraries one at a time. The document has the
+ * same structure as the one Jackson produces for a {@link Response}: each value is serialized with the same
+ * ObjectMapper, only the enclosing objects are written by hand.
+ */
+public class PlanJsonWriter extends PlanStreamingOutput {
+
+    /** ObjectMappers are thread safe and expensive to create, so share one configured like the Jersey one. */
+    private static final ObjectMapper MAPPER = new JSONObjectMapperProvider().getContext(Response.class);
+
+    public PlanJsonWriter(Map<String, String> requestParameters, RoutingRequest request, List<GraphPath> paths,
+                          PlannerError error, ElevationMetadata elevationMetadata) {
+        super(requestParameters, request, paths, error, elevationMetadata);
+    }
+
+    @Override
+    protected void writeResponse(OutputStream output, TripPlan plan) throws IOException {
+        JsonGenerator gen = MAPPER.getFactory().createGenerator(output, JsonEncoding.UTF8);
+        gen.writeStartObject();
+        writeField(gen, "requestParameters", requestParameters);
+        if (plan != null) {
+            gen.writeObjectFieldStart("plan");
+            writeField(gen, "date", plan.date);
+            writeField(gen, "from", plan.from);
+            writeField(gen, "to", plan.to);
+            gen.writeArrayFieldStart("itineraries");
+            writeItineraries(plan, itinerary -> {
+                MAPPER.writeValue(gen, itinerary);
+                // Send each itinerary on its way rather than buffering the whole response.
+                gen.flush();
+            });
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        writeField(gen, "error", error);
+        writeField(gen, "debugOutput", getDebugOutput());
+        writeField(gen, "elevationMetadata", elevationMetadata);
+        gen.writeEndObject();
+        gen.flush();
+    }
+
+    /** Write a field unless its value is null, matching the Include.NON_NULL setting of the ObjectMapper. */
+    private static void writeField(JsonGenerator gen, String name, Object value) throws IOException {
+        if (value == null) return;
+        gen.writeFieldName(name);
+        MAPPER.writeValue(gen, value);
+    }
+}
@@ -0,0 +1,120 @@
+package org.opentripplanner.api.resource;
+
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.api.model.error.PlannerError;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Base class for trip planner responses that are written out while the itineraries are being generated, rather than
+ * built as a complete {@link Response} object tree and serialized in one shot. Only one itinerary is held in memory at
+ * a time. Subclasses define the encoding.
+ *
+ * The routing itself has already happened when this is constructed; the temporary vertices and edges of the routing
+ * request are still needed to generate the itineraries, so the request is cleaned up only once the response has been
+ * written.
+ */
+public abstract class PlanStreamingOutput implements StreamingOutput {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PlanStreamingOutput.class);
+
+    protected final Map<String, String> requestParameters;
+
+    protected final RoutingRequest request;
+
+    private final List<GraphPath> paths;
+
+    /** The routing error if any, or an error that happened while generating the itineraries. */
+    protected PlannerError error;
+
+    protected final ElevationMetadata elevationMetadata;
+
+    /** Receives itineraries one by one as they are generated. */
+    protected interface ItineraryWriter {
+        void write(Itinerary itinerary) throws IOException;
+    }
+
+    protected PlanStreamingOutput(Map<String, String> requestParameters, RoutingRequest request,
+                                  List<GraphPath> paths, PlannerError error, ElevationMetadata elevationMetadata) {
+        this.requestParameters = requestParameters;
+        this.request = request;
+        this.paths = paths;
+        this.error = error;
+        this.elevationMetadata = elevationMetadata;
+    }
+
+    @Override
+    public final void write(OutputStream output) throws IOException {
+        try {
+            TripPlan plan = null;
+            if (paths != null) {
+                try {
+                    plan = GraphPathToTripPlanConverter.generateEmptyPlan(paths, request);
+                } catch (Exception e) {
+                    error = makeError(e);
+                }
+            }
+            writeResponse(output, plan);
+        } finally {
+            if (request != null) {
+                request.cleanup();
+            }
+        }
+    }
+
+    /**
+     * Write the whole response. Implementations call {@link #writeItineraries(TripPlan, ItineraryWriter)} at the
+     * point where the itineraries belong, and must write {@link #error} after that call since it may be set there.
+     * @param plan the plan header without itineraries, or null if no paths were found.
+     */
+    protected abstract void writeResponse(OutputStream output, TripPlan plan) throws IOException;
+
+    /**
+     * Generate the itineraries of the plan and hand them to the writer one at a time. An error during generation
+     * stops the itineraries and is recorded in {@link #error}, so it can still be reported after the itineraries that
+     * were already written; I/O errors are propagated.
+     */
+    protected void writeItineraries(TripPlan plan, ItineraryWriter writer) throws IOException {
+        try {
+            GraphPathToTripPlanConverter.generateItineraries(paths, request, plan, itinerary -> {
+                try {
+                    writer.write(itinerary);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (Exception e) {
+            error = makeError(e);
+        }
+        if (request.rctx != null) {
+            request.rctx.debugOutput.finishedRendering();
+        }
+    }
+
+    /** @return the debug output of the routing request, if any. */
+    protected DebugOutput getDebugOutput() {
+        if (request != null && request.rctx != null) {
+            return request.rctx.debugOutput;
+        }
+        return null;
+    }
+
+    private static PlannerError makeError(Exception e) {
+        PlannerError error = new PlannerError(e);
+        if (!PlannerError.isPlanningError(e.getClass()))
+            LOG.warn("Error while generating itineraries: ", e);
+        return error;
+    }
+}
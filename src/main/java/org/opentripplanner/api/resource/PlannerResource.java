@@ -16,11 +16,13 @@ import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
 import javax.ws.rs.core.UriInfo;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.util.List;
+import java.util.Map;
 
 import static org.opentripplanner.api.resource.ServerInfo.Q;
 
@@ -37,11 +39,23 @@ public class PlannerResource extends RoutingResource {
 
     private static final Logger LOG = LoggerFactory.getLogger(PlannerResource.class);
 
+    /**
+     * The routing request built from the query parameters, the router it was run on and the paths found. These are
+     * filled in by {@link #route()}. The resource is request-scoped so they are never shared between requests.
+     */
+    private RoutingRequest request = null;
+    private Router router = null;
+    private List<GraphPath> paths = null;
+    private PlannerError error = null;
+
+    /**
+     * XML responses are built as a complete object tree and handed to Jersey for serialization.
+     */
     // We inject info about the incoming request so we can include the incoming query
     // parameters in the outgoing response. This is a TriMet requirement.
     // Jersey uses @Context to inject internal types and @InjectParam or @Resource for DI objects.
     @GET
-    @Produces({ MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML + Q, MediaType.TEXT_XML + Q })
+    @Produces({ MediaType.APPLICATION_XML + Q, MediaType.TEXT_XML + Q })
     public Response plan(@Context UriInfo uriInfo, @Context Request grizzlyRequest) {
 
         /*
@@ -54,11 +68,63 @@ public class PlannerResource extends RoutingResource {
 
         // Create response object, containing a copy of all request parameters. Maybe they should be in the debug section of the response.
         Response response = new Response(uriInfo);
-        RoutingRequest request = null;
-        Router router = null;
-        List<GraphPath> paths = null;
+        route();
         try {
+            if (paths != null) {
+                /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
+                TripPlan plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
+                response.setPlan(plan);
+            }
+        } catch (Exception e) {
+            error = makeError(e);
+        } finally {
+            response.setError(error);
+            if (request != null) {
+                if (request.rctx != null) {
+                    response.debugOutput = request.rctx.debugOutput;
+                }
+                request.cleanup(); // TODO verify that this cleanup step is being done on Analyst web services
+            }
+        }
+
+        /* Populate up the elevation metadata */
+        response.elevationMetadata = makeElevationMetadata();
 
+        logRequest(grizzlyRequest);
+        return response;
+    }
+
+    /**
+     * JSON responses are streamed: the itineraries are generated and written out one at a time, so a large response
+     * never exists as a complete object tree. The document has the same structure as the XML/Jackson response.
+     */
+    @GET
+    @Produces(MediaType.APPLICATION_JSON)
+    public StreamingOutput planJson(@Context UriInfo uriInfo, @Context Request grizzlyRequest) {
+        route();
+        logRequest(grizzlyRequest);
+        return new PlanJsonWriter(requestParameters(uriInfo), request, paths, error, makeElevationMetadata());
+    }
+
+    /**
+     * A compact binary encoding of the same response, for clients that explicitly ask for it in their Accept header.
+     * The schema is published in {@link PlanProtobufWriter#SCHEMA_RESOURCE}.
+     */
+    @GET
+    @Produces(PlanProtobufWriter.MEDIA_TYPE + Q)
+    public StreamingOutput planProtobuf(@Context UriInfo uriInfo, @Context Request grizzlyRequest) {
+        route();
+        logRequest(grizzlyRequest);
+        return new PlanProtobufWriter(requestParameters(uriInfo), request, paths, error, makeElevationMetadata());
+    }
+
+    /**
+     * Build the routing request from the query parameters and find some good GraphPaths through the OTP Graph.
+     * Any error is recorded rather than thrown, so that it can be included in the response. The caller is
+     * responsible for cleaning up the routing request once the paths have been converted.
+     */
+    private void route() {
+        try {
             /* Fill in request fields from query parameters via shared superclass method, catching any errors. */
             request = super.buildRequest();
             router = otpServer.getRouter(request.routerId);
@@ -66,31 +132,37 @@ public class PlannerResource extends RoutingResource {
             /* Find some good GraphPaths through the OTP Graph. */
             GraphPathFinder gpFinder = new GraphPathFinder(router); // we could also get a persistent router-scoped GraphPathFinder but there's no setup cost here
             paths = gpFinder.graphPathFinderEntryPoint(request);
+        } catch (Exception e) {
+            paths = null;
+            error = makeError(e);
+        }
+    }
 
-            /* Convert the internal GraphPaths to a TripPlan object that is included in an OTP web service Response. */
-            TripPlan plan = GraphPathToTripPlanConverter.generatePlan(paths, request);
-            response.setPlan(plan);
+    private static PlannerError makeError(Exception e) {
+        PlannerError error = new PlannerError(e);
+        if(!PlannerError.isPlanningError(e.getClass()))
+            LOG.warn("Error while planning path: ", e);
+        return error;
+    }
 
-        } catch (Exception e) {
-            PlannerError error = new PlannerError(e);
-            if(!PlannerError.isPlanningError(e.getClass()))
-                LOG.warn("Error while planning path: ", e);
-            response.setError(error);
-        } finally {
-            if (request != null) {
-                if (request.rctx != null) {
-                    response.debugOutput = request.rctx.debugOutput;
-                }
-                request.cleanup(); // TODO verify that this cleanup step is being done on Analyst web services
-            }
+    private ElevationMetadata makeElevationMetadata() {
+        ElevationMetadata elevationMetadata = new ElevationMetadata();
+        if (router != null) {
+            elevationMetadata.ellipsoidToGeoidDifference = router.graph.ellipsoidToGeoidDifference;
         }
+        if (request != null) {
+            elevationMetadata.geoidElevation = request.geoidElevation;
+        }
+        return elevationMetadata;
+    }
 
-        /* Populate up the elevation metadata */
-        response.elevationMetadata = new ElevationMetadata();
-        response.elevationMetadata.ellipsoidToGeoidDifference = router.graph.ellipsoidToGeoidDifference;
-        response.elevationMetadata.geoidElevation = request.geoidElevation;
+    /** Include only the first instance of each query parameter, as in {@link Response#Response(UriInfo)}. */
+    private static Map<String, String> requestParameters(UriInfo uriInfo) {
+        return new Response(uriInfo).requestParameters;
+    }
 
-        /* Log this request if such logging is enabled. */
+    /** Log this request if such logging is enabled. */
+    private void logRequest(Request grizzlyRequest) {
         if (request != null && router != null && router.requestLogger != null) {
             StringBuilder sb = new StringBuilder();
             String clientIpAddress = grizzlyRequest.getRemoteAddr();
@@ -121,7 +193,6 @@ public class PlannerResource extends RoutingResource {
             }
             router.requestLogger.info(sb.toString());
         }
-        return response;
     }
 
 }
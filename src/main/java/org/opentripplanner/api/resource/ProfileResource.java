@@ -77,7 +77,9 @@ public class ProfileResource {
             @QueryParam("egressModes")  @DefaultValue("WALK")         QualifiedModeSet egressModes,
             @QueryParam("directModes")  @DefaultValue("WALK,BICYCLE") QualifiedModeSet directModes,
             @QueryParam("transitModes") @DefaultValue("TRANSIT")      TraverseModeSet transitModes,
-            @QueryParam("banAgency") String banAgency)
+            @QueryParam("banAgency") String banAgency,
+            @QueryParam("parallel")     @DefaultValue("false") boolean parallel,
+            @QueryParam("randomSeed")   Long randomSeed)
             throws Exception {
 
         QueryParameter.checkRangeInclusive(limit, 0, Integer.MAX_VALUE);
@@ -126,6 +128,8 @@ public class ProfileResource {
         req.bikeSlope    = bikeSlope;
         req.bikeTime     = bikeTime;
         req.suboptimalMinutes = suboptimalMinutes;
+        req.parallel     = parallel;
+        req.randomSeed   = randomSeed;
 
         if (req.analyst) {
             if (surfaceCache == null) {
@@ -119,7 +119,11 @@ public class RepeatedRaptorTestResource {
         decreased = false;
         TimeSurface.RangeSet timeSurfaces_a = router_a.timeSurfaceRangeSet;
         TimeSurface.RangeSet timeSurfaces_b = router_b.timeSurfaceRangeSet;
-        for (Vertex destVertex : timeSurfaces_a.min.times.keySet()) {
+        int[] reached_a = timeSurfaces_a.min.times.asArray();
+        for (int v = 0; v < reached_a.length; v++) {
+            if (reached_a[v] == TimeSurface.UNREACHABLE) continue;
+            Vertex destVertex = graph.getVertexById(v);
+            if (destVertex == null) continue;
             int min_a = timeSurfaces_a.min.getTime(destVertex);
             int max_a = timeSurfaces_a.max.getTime(destVertex);
             int avg_a = timeSurfaces_a.avg.getTime(destVertex);
@@ -35,6 +35,7 @@ import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
 import org.opentripplanner.routing.impl.MemoryGraphSource;
 import org.opentripplanner.routing.services.GraphService;
+import org.opentripplanner.routing.services.GraphSource;
 import org.opentripplanner.standalone.CommandLineParameters;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
@@ -71,6 +72,15 @@ import com.google.common.io.Files;
  * PUT http://localhost/otp-rest-servlet/ws/routers
  * will reload the graphs for all currently registered routerIds from disk.
  * 
+ * PUT http://localhost/otp-rest-servlet/ws/routers?preEvict=false&amp;background=true
+ * will do the same in the background, replacing each router only once its new graph is loaded
+ * and warmed up, and return immediately.
+ * 
+ * GET http://localhost/otp-rest-servlet/ws/routers/london/ready
+ * will return status code 200 if the 'london' router can handle requests, or 503 if it cannot
+ * (for instance while its graph is being loaded after a pre-evicting reload). This is meant to be
+ * used as a load balancer health check.
+ * 
  * PUT http://localhost/otp-rest-servlet/ws/routers/paris
  * will load a Graph from a sub-directory called 'paris' and associate it with the routerId 'paris'.
  * 
@@ -138,14 +148,38 @@ public class Routers {
         }
     }
 
+    /**
+     * Reports whether a router can handle requests, for load balancer health checks. This never
+     * waits for a graph being loaded.
+     * @return status code 200 if the router is ready, 503 if it is not registered or has no graph
+     * to route on. The response tells which stage a reload in progress is at.
+     */
+    @GET @Path("{routerId}/ready") @Produces({ MediaType.TEXT_PLAIN })
+    public Response getReady(@PathParam("routerId") String routerId) {
+        GraphService graphService = otpServer.getGraphService();
+        GraphSource.ReloadStage stage = graphService.getReloadStage(routerId);
+        String reloading = stage == null ? "" : ", reload in progress: " + stage;
+        if (graphService.isReady(routerId))
+            return Response.status(Status.OK).entity("ready" + reloading + "\n").build();
+        else
+            return Response.status(Status.SERVICE_UNAVAILABLE).entity("not ready" + reloading + "\n").build();
+    }
+
     /** 
      * Reload the graphs for all registered routerIds from disk.
+     * @param background return immediately and reload in the background. The result can be
+     * followed with the readiness endpoint.
      */
     @RolesAllowed({ "ROUTERS" })
     @PUT @Produces({ MediaType.APPLICATION_JSON })
     public Response reloadGraphs(@QueryParam("path") String path,
             @QueryParam("preEvict") @DefaultValue("true") boolean preEvict,
-            @QueryParam("force") @DefaultValue("true") boolean force) {
+            @QueryParam("force") @DefaultValue("true") boolean force,
+            @QueryParam("background") @DefaultValue("false") boolean background) {
+        if (background) {
+            otpServer.getGraphService().reloadGraphsInBackground(preEvict, force);
+            return Response.status(Status.ACCEPTED).build();
+        }
         otpServer.getGraphService().reloadGraphs(preEvict, force);
         return Response.status(Status.OK).build();
     }
@@ -155,14 +189,20 @@ public class Routers {
      * @param preEvict before reloading each graph, evict the existing graph. This will prevent 
      * memory usage from increasing during the reload, but routing will be unavailable on this 
      * routerId for the duration of the operation.
+     * @param background if the graph is already registered, return immediately and reload it in
+     * the background.
      */
     @RolesAllowed({ "ROUTERS" })
     @PUT @Path("{routerId}") @Produces({ MediaType.TEXT_PLAIN })
     public Response putGraphId(@PathParam("routerId") String routerId,
-            @QueryParam("preEvict") @DefaultValue("true") boolean preEvict) {
+            @QueryParam("preEvict") @DefaultValue("true") boolean preEvict,
+            @QueryParam("background") @DefaultValue("false") boolean background) {
         LOG.debug("Attempting to load graph '{}' from server's local filesystem.", routerId);
         GraphService graphService = otpServer.getGraphService();
-        if (graphService.getRouterIds().contains(routerId)) {
+        if (graphService.getRouterIds().contains(routerId) && background) {
+            graphService.reloadGraphInBackground(routerId, preEvict, false);
+            return Response.status(Status.ACCEPTED).entity("graph already registered, reloading in background.\n").build();
+        } else if (graphService.getRouterIds().contains(routerId)) {
             boolean success = graphService.reloadGraph(routerId, preEvict, false);
             if (success)
                 return Response.status(201).entity("graph already registered, reloaded.\n").build();
@@ -4,6 +4,7 @@ import com.google.common.collect.Maps;
 import org.geotools.feature.FeatureCollection;
 import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geometry.Envelope2D;
+import org.locationtech.jts.geom.Geometry;
 import org.opentripplanner.analyst.PointSet;
 import org.opentripplanner.analyst.ResultSet;
 import org.opentripplanner.analyst.SampleSet;
@@ -254,16 +255,20 @@ public class SurfaceResource extends RoutingResource {
         DelaunayIsolineBuilder<WTWD> isolineBuilder = new DelaunayIsolineBuilder<WTWD>(
                 surf.sampleGrid.delaunayTriangulate(), new WTWD.IsolineMetric());
 
-        List<IsochroneData> isochrones = new ArrayList<IsochroneData>();
+        List<WTWD> z0s = new ArrayList<WTWD>();
         for (int minutes = spacing, n = 0; minutes <= surf.cutoffMinutes && n < nMax; minutes += spacing, n++) {
-            int seconds = minutes * 60;
             WTWD z0 = new WTWD();
             z0.w = 1.0;
-            z0.wTime = seconds;
+            z0.wTime = minutes * 60;
             z0.d = 300; // meters. TODO set dynamically / properly, make sure it matches grid cell size?
-            IsochroneData isochrone = new IsochroneData(seconds, isolineBuilder.computeIsoline(z0));
-            isochrones.add(isochrone);
-         }
+            z0s.add(z0);
+        }
+        // All the cutoffs are computed in one pass over the triangulation.
+        List<Geometry> isolines = isolineBuilder.computeIsolines(z0s);
+        List<IsochroneData> isochrones = new ArrayList<IsochroneData>();
+        for (int i = 0; i < z0s.size(); i++) {
+            isochrones.add(new IsochroneData((int) z0s.get(i).wTime, isolines.get(i)));
+        }
 
         long t1 = System.currentTimeMillis();
         LOG.debug("Computed {} isochrones in {} msec", isochrones.size(), (int) (t1 - t0));
@@ -0,0 +1,124 @@
+package org.opentripplanner.api.resource;
+
+import org.opentripplanner.analyst.PointSet;
+import org.opentripplanner.analyst.PointSetCache;
+import org.opentripplanner.analyst.batch.TravelTimeMatrix;
+import org.opentripplanner.analyst.batch.TravelTimeMatrixWriter;
+import org.opentripplanner.analyst.cluster.ResultEnvelope;
+import org.opentripplanner.api.param.HourMinuteSecond;
+import org.opentripplanner.api.param.QueryParameter;
+import org.opentripplanner.api.param.YearMonthDay;
+import org.opentripplanner.api.parameter.QualifiedModeSet;
+import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.standalone.OTPServer;
+import org.opentripplanner.standalone.Router;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Response.Status;
+import javax.ws.rs.core.StreamingOutput;
+
+/**
+ * Computes the travel times between all the points of two point sets and streams them as a gzipped matrix, in the
+ * format of TravelTimeMatrixWriter. Rows are sent as soon as they are computed, in no particular order. This requires
+ * OTP to be run with the --analyst option, so that the point sets are available. If the travel times from some
+ * origins cannot be computed, the response is aborted so that an incomplete matrix is not taken for a complete one.
+ *
+ * Matrices too large to be computed within one request should be written to a file with TravelTimeMatrix and
+ * TravelTimeMatrixWriter.open, which can resume an interrupted computation.
+ */
+@Path("routers/{routerId}/analyst/matrix")
+public class TravelTimeMatrixResource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TravelTimeMatrixResource.class);
+
+    private final Graph graph;
+
+    private final PointSetCache pointSetCache;
+
+    public TravelTimeMatrixResource (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
+        Router router = otpServer.getRouter(routerId);
+        graph = router.graph;
+        pointSetCache = otpServer.pointSetCache;
+    }
+
+    @GET
+    @Produces({ "application/gzip" })
+    public Response getMatrix (
+            @QueryParam("origins") String originsId,
+            @QueryParam("destinations") String destinationsId,
+            @QueryParam("format")       @DefaultValue("CSV")     TravelTimeMatrixWriter.Format format,
+            @QueryParam("statistic")    @DefaultValue("AVERAGE") ResultEnvelope.Which statistic,
+            @QueryParam("date")         @DefaultValue("today")   YearMonthDay date,
+            @QueryParam("startTime")    @DefaultValue("07:30")   HourMinuteSecond fromTime,
+            @QueryParam("endTime")      @DefaultValue("08:30")   HourMinuteSecond toTime,
+            @QueryParam("walkSpeed")    @DefaultValue("1.4")     float walkSpeed, // m/sec
+            @QueryParam("bikeSpeed")    @DefaultValue("4.1")     float bikeSpeed, // m/sec
+            @QueryParam("maxWalkTime")  @DefaultValue("15")      int maxWalkTime, // max minutes to reach transit on foot
+            @QueryParam("maxBikeTime")  @DefaultValue("20")      int maxBikeTime,
+            @QueryParam("accessModes")  @DefaultValue("WALK")    QualifiedModeSet accessModes,
+            @QueryParam("egressModes")  @DefaultValue("WALK")    QualifiedModeSet egressModes,
+            @QueryParam("directModes")  @DefaultValue("WALK")    QualifiedModeSet directModes,
+            @QueryParam("transitModes") @DefaultValue("TRANSIT") TraverseModeSet transitModes) {
+
+        if (pointSetCache == null) {
+            return Response.status(Status.NOT_FOUND)
+                    .entity("You must run OTP with the --analyst option to compute travel time matrices.")
+                    .type(MediaType.TEXT_PLAIN).build();
+        }
+        final PointSet origins = originsId == null ? null : pointSetCache.get(originsId);
+        final PointSet destinations = destinationsId == null ? null : pointSetCache.get(destinationsId);
+        if (origins == null || destinations == null) {
+            return Response.status(Status.NOT_FOUND).entity("Unknown origin or destination point set.")
+                    .type(MediaType.TEXT_PLAIN).build();
+        }
+        QueryParameter.checkRangeInclusive(walkSpeed, 0.5, 7);
+        QueryParameter.checkRangeInclusive(bikeSpeed, 1, 21);
+        QueryParameter.checkRangeInclusive(maxWalkTime, 1, 480);
+        QueryParameter.checkRangeInclusive(maxBikeTime, 1, 480);
+
+        ProfileRequest req = new ProfileRequest();
+        req.fromTime     = fromTime.toSeconds();
+        req.toTime       = toTime.toSeconds();
+        req.walkSpeed    = walkSpeed;
+        req.bikeSpeed    = bikeSpeed;
+        req.date         = date.toJoda();
+        req.accessModes  = accessModes;
+        req.egressModes  = egressModes;
+        req.directModes  = directModes;
+        req.transitModes = transitModes;
+        req.maxWalkTime  = maxWalkTime;
+        req.maxBikeTime  = maxBikeTime;
+        req.analyst      = true;
+
+        final TravelTimeMatrix matrix = new TravelTimeMatrix(graph, req, origins, destinations);
+        matrix.statistic = statistic;
+        StreamingOutput output = out -> {
+            TravelTimeMatrixWriter writer = new TravelTimeMatrixWriter(out, format, destinations);
+            matrix.compute(writer);
+            int nFailed = matrix.getFailedOrigins().cardinality();
+            if (nFailed > 0) {
+                // Cut the response short rather than send a matrix with missing rows as if it were complete.
+                throw new IOException("Could not compute the travel times from " + nFailed + " origins.");
+            }
+            LOG.info("Sent travel time matrix from {} to {}.", originsId, destinationsId);
+        };
+        String extension = format == TravelTimeMatrixWriter.Format.CSV ? ".csv.gz" : ".bin.gz";
+        return Response.ok(output).header("Content-Disposition",
+                "attachment; filename=\"matrix" + extension + "\"").build();
+    }
+
+}
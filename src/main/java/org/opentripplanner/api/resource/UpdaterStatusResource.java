@@ -40,6 +40,20 @@ public class UpdaterStatusResource {
         return Response.status(Response.Status.OK).entity(updaterManager.getUpdaterDescriptions()).build();
     }
 
+    /**
+     * Return the queue depth, staleness and counters of the graph writer lanes of the updaters, which show whether
+     * updates are waiting for other updaters.
+     */
+    @GET
+    @Path("/writers")
+    public Response getWriterStatus () {
+        GraphUpdaterManager updaterManager = router.graph.updaterManager;
+        if (updaterManager == null) {
+            return Response.status(Response.Status.NOT_FOUND).entity("No updaters running.").build();
+        }
+        return Response.status(Response.Status.OK).entity(updaterManager.getWriterStatus()).build();
+    }
+
     /** Return status for a specific updater. */
     @GET
     @Path("/{updaterId}")
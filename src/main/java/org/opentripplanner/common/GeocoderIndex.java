@@ -0,0 +1,530 @@
+package org.opentripplanner.common;
+
+import com.google.common.collect.Iterables;
+import gnu.trove.list.array.TDoubleArrayList;
+import gnu.trove.list.array.TIntArrayList;
+import gnu.trove.map.hash.TIntDoubleHashMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.set.hash.TIntHashSet;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.profile.StopCluster;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory index of stops, stop clusters and street corners by name, used by the built-in geocoder.
+ *
+ * The index of stops and corners is built along with the graph and saved in it, so that it is available as soon as
+ * the graph is loaded. Names are split into lower-case tokens. The distinct tokens are kept in a sorted array, so that
+ * the tokens starting with a prefix are found by binary search, together with the list of entries containing each
+ * token. All the arrays are flat to keep the index small and quick to load.
+ *
+ * Stop clusters are computed when the graph is loaded and their ids are not stable from one run to the next, so they
+ * are kept in a separate index built on demand, see GraphIndex.geocode().
+ */
+public class GeocoderIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(GeocoderIndex.class);
+
+    /** The maximum number of results of a query. */
+    public static final int MAX_RESULTS = 10;
+
+    /** The maximum edit distance of a fuzzy match, as in Lucene FuzzyQuery. */
+    private static final int MAX_EDITS = 2;
+
+    /** The maximum number of distinct tokens a fuzzy query token is expanded to, as in Lucene FuzzyQuery. */
+    private static final int MAX_EXPANSIONS = 50;
+
+    private static final Pattern TOKEN_SEPARATOR = Pattern.compile("[^\\p{L}\\p{N}]+");
+
+    private static final Pattern QUERY_TOKEN = Pattern.compile("([^\"]\\S*|\".+?\")\\s*");
+
+    public enum Category { STOP, CORNER, CLUSTER }
+
+    /* The entries: for each, its name, code, id, category and location. */
+
+    private final String[] names;
+
+    /** Null for entries without a code. */
+    private final String[] codes;
+
+    /** Null for corners. */
+    private final String[] ids;
+
+    private final Category[] categories;
+
+    private final double[] lats;
+
+    private final double[] lons;
+
+    /** The distinct name tokens, sorted. */
+    private final String[] tokens;
+
+    /** The entries containing token i are postings[postingStart[i]] to postings[postingStart[i + 1] - 1]. */
+    private final int[] postingStart;
+
+    private final int[] postings;
+
+    /** The tokens of the name of entry i, in order, are entryTokens[entryTokenStart[i]] to the next start. */
+    private final int[] entryTokenStart;
+
+    private final int[] entryTokens;
+
+    /** The distinct codes, sorted, and the entry having each code. Codes are matched exactly. */
+    private final String[] sortedCodes;
+
+    private final int[] codeEntries;
+
+    /** Collects the entries of an index. */
+    public static class Builder {
+
+        private final List<String> names = new ArrayList<>();
+        private final List<String> codes = new ArrayList<>();
+        private final List<String> ids = new ArrayList<>();
+        private final List<Category> categories = new ArrayList<>();
+        private final TDoubleArrayList lats = new TDoubleArrayList();
+        private final TDoubleArrayList lons = new TDoubleArrayList();
+
+        public Builder addStop(Stop stop) {
+            return add(stop.getName(), stop.getCode(), stop.getId().toString(), Category.STOP, stop.getLat(),
+                    stop.getLon());
+        }
+
+        public Builder addCluster(StopCluster cluster) {
+            return add(cluster.name, null, cluster.id, Category.CLUSTER, cluster.lat, cluster.lon);
+        }
+
+        /** Add the vertex as the corner of the first two differently named streets leaving it, if any. */
+        public Builder addCorner(StreetVertex sv) {
+            String mainStreet = null;
+            String crossStreet = null;
+            // TODO score based on OSM street type, using intersection nodes instead of vertices.
+            for (StreetEdge pse : Iterables.filter(sv.getOutgoing(), StreetEdge.class)) {
+                if (mainStreet == null) mainStreet = pse.getName();
+                else crossStreet = pse.getName();
+            }
+            if (mainStreet == null || crossStreet == null) return this;
+            if (mainStreet.equals(crossStreet)) return this;
+            return add(mainStreet + " & " + crossStreet, null, null, Category.CORNER, sv.getLat(), sv.getLon());
+        }
+
+        private Builder add(String name, String code, String id, Category category, double lat, double lon) {
+            if (name == null) return this;
+            names.add(name);
+            codes.add(code);
+            ids.add(id);
+            categories.add(category);
+            lats.add(lat);
+            lons.add(lon);
+            return this;
+        }
+
+        public GeocoderIndex build() {
+            return new GeocoderIndex(this);
+        }
+    }
+
+    /** Index the stops and street corners of a graph. */
+    public static GeocoderIndex forGraph(Graph graph) {
+        long startTime = System.currentTimeMillis();
+        Builder builder = new Builder();
+        for (Vertex v : graph.getVertices()) {
+            if (v instanceof TransitStop) {
+                builder.addStop(((TransitStop) v).getStop());
+            } else if (v instanceof StreetVertex) {
+                builder.addCorner((StreetVertex) v);
+            }
+        }
+        GeocoderIndex index = builder.build();
+        LOG.info("Built geocoder index of {} stops and corners ({} distinct words) in {} msec.", index.size(),
+                index.tokens.length, System.currentTimeMillis() - startTime);
+        return index;
+    }
+
+    public static GeocoderIndex forClusters(Collection<StopCluster> clusters) {
+        Builder builder = new Builder();
+        for (StopCluster cluster : clusters) {
+            builder.addCluster(cluster);
+        }
+        return builder.build();
+    }
+
+    private GeocoderIndex(Builder builder) {
+        int n = builder.names.size();
+        names = builder.names.toArray(new String[n]);
+        codes = builder.codes.toArray(new String[n]);
+        ids = builder.ids.toArray(new String[n]);
+        categories = builder.categories.toArray(new Category[n]);
+        lats = builder.lats.toArray();
+        lons = builder.lons.toArray();
+
+        // Number the distinct tokens in the order they are found, then renumber them in sorted order.
+        TObjectIntHashMap<String> tokenNumbers = new TObjectIntHashMap<>(1024, 0.5f, -1);
+        List<String> tokenList = new ArrayList<>();
+        TIntArrayList entryTokenList = new TIntArrayList();
+        entryTokenStart = new int[n + 1];
+        for (int e = 0; e < n; e++) {
+            entryTokenStart[e] = entryTokenList.size();
+            for (String token : tokenize(names[e])) {
+                int t = tokenNumbers.get(token);
+                if (t < 0) {
+                    t = tokenList.size();
+                    tokenNumbers.put(token, t);
+                    tokenList.add(token);
+                }
+                entryTokenList.add(t);
+            }
+        }
+        entryTokenStart[n] = entryTokenList.size();
+        tokens = tokenList.toArray(new String[tokenList.size()]);
+        Arrays.sort(tokens);
+        int[] sortedNumber = new int[tokens.length];
+        for (int i = 0; i < tokens.length; i++) {
+            sortedNumber[tokenNumbers.get(tokens[i])] = i;
+        }
+        entryTokens = entryTokenList.toArray();
+        for (int i = 0; i < entryTokens.length; i++) {
+            entryTokens[i] = sortedNumber[entryTokens[i]];
+        }
+
+        // Postings in entry order, each entry listed once per token even if the token appears twice in its name.
+        postingStart = new int[tokens.length + 1];
+        int[] lastEntry = new int[tokens.length];
+        Arrays.fill(lastEntry, -1);
+        for (int e = 0; e < n; e++) {
+            for (int i = entryTokenStart[e]; i < entryTokenStart[e + 1]; i++) {
+                int t = entryTokens[i];
+                if (lastEntry[t] != e) {
+                    lastEntry[t] = e;
+                    postingStart[t + 1]++;
+                }
+            }
+        }
+        for (int t = 0; t < tokens.length; t++) {
+            postingStart[t + 1] += postingStart[t];
+        }
+        postings = new int[postingStart[tokens.length]];
+        int[] next = Arrays.copyOf(postingStart, tokens.length);
+        Arrays.fill(lastEntry, -1);
+        for (int e = 0; e < n; e++) {
+            for (int i = entryTokenStart[e]; i < entryTokenStart[e + 1]; i++) {
+                int t = entryTokens[i];
+                if (lastEntry[t] != e) {
+                    lastEntry[t] = e;
+                    postings[next[t]++] = e;
+                }
+            }
+        }
+
+        // Codes, which are few: one entry per code, the first one having it.
+        List<Integer> withCode = new ArrayList<>();
+        for (int e = 0; e < n; e++) {
+            if (codes[e] != null) withCode.add(e);
+        }
+        withCode.sort(Comparator.comparing((Integer e) -> codes[e]).thenComparing(e -> e));
+        List<String> codeList = new ArrayList<>();
+        TIntArrayList codeEntryList = new TIntArrayList();
+        for (int e : withCode) {
+            if (codeList.isEmpty() || !codeList.get(codeList.size() - 1).equals(codes[e])) {
+                codeList.add(codes[e]);
+                codeEntryList.add(e);
+            }
+        }
+        sortedCodes = codeList.toArray(new String[codeList.size()]);
+        codeEntries = codeEntryList.toArray();
+    }
+
+    /** @return the number of entries in this index. */
+    public int size() {
+        return names.length;
+    }
+
+    /** Split a name or query into lower-case words. */
+    static List<String> tokenize(String text) {
+        List<String> ret = new ArrayList<>();
+        for (String token : TOKEN_SEPARATOR.split(text.toLowerCase(Locale.ROOT))) {
+            if (!token.isEmpty()) ret.add(token);
+        }
+        return ret;
+    }
+
+    /**
+     * Fetch results for the geocoder from this index only.
+     * @see #query(List, String, boolean, boolean, boolean, boolean)
+     */
+    public List<Result> query(String queryString, boolean autocomplete, boolean stops, boolean clusters,
+                              boolean corners) {
+        return query(Collections.singletonList(this), queryString, autocomplete, stops, clusters, corners);
+    }
+
+    /**
+     * Fetch results for the geocoder from several indexes.
+     *
+     * @param queryString the words to look for. When not autocompleting, a word may also be a stop code or a quoted
+     *                    phrase, and words match names with up to two misspelled letters.
+     * @param autocomplete Whether we should use the query string to do a prefix match: all the words must be found,
+     *                     the last one may be incomplete.
+     * @param stops Search for stops, either by name or stop code
+     * @param clusters Search for clusters by their name
+     * @param corners Search for street corners using at least one of the street names
+     * @return list of results in in the format expected by GeocoderBuiltin.js in the OTP Leaflet client
+     */
+    public static List<Result> query(List<GeocoderIndex> indexes, String queryString, boolean autocomplete,
+                                     boolean stops, boolean clusters, boolean corners) {
+        // As the previous Lucene index did, do not filter by category when none is requested.
+        boolean[] accepted = new boolean[Category.values().length];
+        boolean all = !(stops || clusters || corners);
+        accepted[Category.STOP.ordinal()] = all || stops;
+        accepted[Category.CLUSTER.ordinal()] = all || clusters;
+        accepted[Category.CORNER.ordinal()] = all || corners;
+
+        // The worst hit found so far is at the head of the queue, so that it is removed first.
+        PriorityQueue<Hit> best = new PriorityQueue<>(MAX_RESULTS + 1, BEST_FIRST.reversed());
+        if (queryString != null) {
+            for (GeocoderIndex index : indexes) {
+                if (autocomplete) {
+                    index.collectPrefixMatches(queryString, accepted, best);
+                } else {
+                    index.collectMatches(queryString, accepted, best);
+                }
+            }
+        }
+        List<Hit> hits = new ArrayList<>(best);
+        hits.sort(BEST_FIRST);
+        List<Result> ret = new ArrayList<>();
+        for (Hit hit : hits) {
+            ret.add(hit.index.toResult(hit.entry));
+        }
+        return ret;
+    }
+
+    /** An entry matching a query, with its score. */
+    private static class Hit {
+        final GeocoderIndex index;
+        final int entry;
+        final double score;
+
+        Hit(GeocoderIndex index, int entry, double score) {
+            this.index = index;
+            this.entry = entry;
+            this.score = score;
+        }
+    }
+
+    /** Higher scores first, then shorter names. */
+    private static final Comparator<Hit> BEST_FIRST = Comparator
+            .comparingDouble((Hit h) -> -h.score)
+            .thenComparingInt(h -> h.index.names[h.entry].length())
+            .thenComparing(h -> h.index.names[h.entry]);
+
+    private void offer(PriorityQueue<Hit> best, int entry, double score) {
+        if (best.size() == MAX_RESULTS && score < best.peek().score) return;
+        best.add(new Hit(this, entry, score));
+        if (best.size() > MAX_RESULTS) best.poll();
+    }
+
+    /**
+     * Autocomplete: every query word must be the beginning of a word of the name. The entries matching the word with
+     * the fewest postings are checked against the other words. Entries whose words are complete score higher.
+     */
+    private void collectPrefixMatches(String queryString, boolean[] accepted, PriorityQueue<Hit> best) {
+        List<String> queryTokens = tokenize(queryString);
+        if (queryTokens.isEmpty()) return;
+        int rarest = -1;
+        int rarestCount = Integer.MAX_VALUE;
+        for (int q = 0; q < queryTokens.size(); q++) {
+            int[] range = prefixRange(queryTokens.get(q));
+            int count = postingStart[range[1]] - postingStart[range[0]];
+            if (count < rarestCount) {
+                rarest = q;
+                rarestCount = count;
+            }
+        }
+        if (rarestCount == 0) return;
+        int[] range = prefixRange(queryTokens.get(rarest));
+        TIntHashSet seen = new TIntHashSet();
+        for (int t = range[0]; t < range[1]; t++) {
+            for (int p = postingStart[t]; p < postingStart[t + 1]; p++) {
+                int e = postings[p];
+                if (!accepted[categories[e].ordinal()] || !seen.add(e)) continue;
+                double score = 0;
+                for (String queryToken : queryTokens) {
+                    double tokenScore = 0;
+                    for (int i = entryTokenStart[e]; i < entryTokenStart[e + 1]; i++) {
+                        String token = tokens[entryTokens[i]];
+                        if (token.equals(queryToken)) {
+                            tokenScore = 1;
+                            break;
+                        } else if (token.startsWith(queryToken)) {
+                            tokenScore = 0.5;
+                        }
+                    }
+                    if (tokenScore == 0) {
+                        score = 0;
+                        break;
+                    }
+                    score += tokenScore;
+                }
+                if (score > 0) offer(best, e, score);
+            }
+        }
+    }
+
+    /** @return the range of sorted token numbers, start inclusive and end exclusive, of the tokens with a prefix. */
+    private int[] prefixRange(String prefix) {
+        int start = Arrays.binarySearch(tokens, prefix);
+        if (start < 0) start = -start - 1;
+        int end = start;
+        while (end < tokens.length && tokens[end].startsWith(prefix)) end++;
+        return new int[] { start, end };
+    }
+
+    /**
+     * Full search, with the same clauses as the previous Lucene index: each unquoted word matches the name words
+     * within two edits, or an exact stop code, and each quoted phrase matches consecutive words of the name. An entry
+     * matching any clause is a result. Its score is the sum of the scores of the clauses it matches, multiplied by the
+     * fraction of clauses it matches.
+     */
+    private void collectMatches(String queryString, boolean[] accepted, PriorityQueue<Hit> best) {
+        TIntDoubleHashMap scores = new TIntDoubleHashMap();
+        TIntIntHashMap matchedClauses = new TIntIntHashMap();
+        int clauses = 0;
+        Matcher m = QUERY_TOKEN.matcher(queryString);
+        while (m.find()) {
+            String token = m.group(1);
+            TIntDoubleHashMap clauseScores = new TIntDoubleHashMap();
+            if (token.length() > 1 && token.startsWith("\"") && token.endsWith("\"")) {
+                matchPhrase(tokenize(token.substring(1, token.length() - 1)), clauseScores);
+            } else {
+                for (String word : tokenize(token)) {
+                    matchFuzzy(word, clauseScores);
+                }
+                int c = Arrays.binarySearch(sortedCodes, token);
+                if (c >= 0) {
+                    // An exact code match is as good as an exact name match.
+                    clauseScores.put(codeEntries[c], Math.max(1, clauseScores.get(codeEntries[c])));
+                }
+            }
+            clauses++;
+            clauseScores.forEachEntry((e, score) -> {
+                if (accepted[categories[e].ordinal()]) {
+                    scores.adjustOrPutValue(e, score, score);
+                    matchedClauses.adjustOrPutValue(e, 1, 1);
+                }
+                return true;
+            });
+        }
+        final int totalClauses = clauses;
+        scores.forEachEntry((e, score) -> {
+            offer(best, e, score * matchedClauses.get(e) / totalClauses);
+            return true;
+        });
+    }
+
+    /**
+     * Find the words within MAX_EDITS of a query word, scored like Lucene FuzzyQuery does: 1 - edits / length of the
+     * shorter word, keeping the MAX_EXPANSIONS best, and record the best score of each entry containing them.
+     */
+    private void matchFuzzy(String word, TIntDoubleHashMap clauseScores) {
+        PriorityQueue<double[]> expansions = new PriorityQueue<>(Comparator.comparingDouble((double[] x) -> x[0]));
+        for (int t = 0; t < tokens.length; t++) {
+            String token = tokens[t];
+            int maxEdits = Math.min(MAX_EDITS, Math.min(word.length(), token.length()) - 1);
+            if (maxEdits < 0 || Math.abs(token.length() - word.length()) > maxEdits) continue;
+            int edits = boundedEditDistance(word, token, maxEdits);
+            if (edits > maxEdits) continue;
+            double similarity = 1 - (double) edits / Math.min(word.length(), token.length());
+            expansions.add(new double[] { similarity, t });
+            if (expansions.size() > MAX_EXPANSIONS) expansions.poll();
+        }
+        for (double[] expansion : expansions) {
+            int t = (int) expansion[1];
+            for (int p = postingStart[t]; p < postingStart[t + 1]; p++) {
+                int e = postings[p];
+                if (expansion[0] > clauseScores.get(e)) clauseScores.put(e, expansion[0]);
+            }
+        }
+    }
+
+    /** Find the entries whose name contains the words of the phrase in order, each scoring one per word. */
+    private void matchPhrase(List<String> phrase, TIntDoubleHashMap clauseScores) {
+        if (phrase.isEmpty()) return;
+        int[] phraseTokens = new int[phrase.size()];
+        for (int i = 0; i < phraseTokens.length; i++) {
+            phraseTokens[i] = Arrays.binarySearch(tokens, phrase.get(i));
+            if (phraseTokens[i] < 0) return;
+        }
+        int first = phraseTokens[0];
+        for (int p = postingStart[first]; p < postingStart[first + 1]; p++) {
+            int e = postings[p];
+            int end = entryTokenStart[e + 1] - phraseTokens.length;
+            for (int i = entryTokenStart[e]; i <= end; i++) {
+                int j = 0;
+                while (j < phraseTokens.length && entryTokens[i + j] == phraseTokens[j]) j++;
+                if (j == phraseTokens.length) {
+                    clauseScores.put(e, phraseTokens.length);
+                    break;
+                }
+            }
+        }
+    }
+
+    /** @return the Levenshtein distance between a and b, or maxEdits + 1 if it is larger than maxEdits. */
+    static int boundedEditDistance(String a, String b, int maxEdits) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = current[0];
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > maxEdits) return maxEdits + 1;
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], maxEdits + 1);
+    }
+
+    private Result toResult(int e) {
+        Result result = new Result();
+        result.lat = lats[e];
+        result.lng = lons[e];
+        String code = codes[e] == null ? "" : "(" + codes[e] + ")";
+        result.description = categories[e].name().toLowerCase() + " " + names[e] + " " + code;
+        result.id = ids[e];
+        return result;
+    }
+
+    /** This class matches the structure of the Geocoder responses expected by the OTP client. */
+    public static class Result {
+        public double lat;
+        public double lng;
+        public String description;
+        public String id;
+    }
+}
@@ -0,0 +1,206 @@
+package org.opentripplanner.common;
+
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.ElevatorEdge;
+import org.opentripplanner.routing.edgetype.ElevatorHopEdge;
+import org.opentripplanner.routing.edgetype.FreeEdge;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTransitLink;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TransitVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * The islands of the street network for one traverse mode, that is the sets of vertices connected to each other by
+ * street edges usable in that mode, ignoring their direction. Transit stops linked to the streets are part of the
+ * island they are linked to, so two streets linked to the same stop belong to the same island.
+ *
+ * Islands are found with a union-find over vertex indexes rather than by walking the graph: the edges are scanned in
+ * parallel and the sets are merged with compare-and-swap, always linking the root with the higher index under the
+ * one with the lower index, so no locking is needed. The islands are then laid out in flat arrays, in the order
+ * their first street vertex appears in the graph.
+ */
+public class StreetIslands {
+
+    /** The vertices of each island, street vertices first then stops, island i at islandStart[i]. */
+    private final Vertex[] members;
+
+    /** Where each island starts in the members array, with one more element for the end of the last island. */
+    private final int[] islandStart;
+
+    private final int[] streetCounts;
+
+    /** The island of each vertex, by vertex index, or -1 for vertices which are not part of the street network. */
+    private final int[] islandForVertex;
+
+    private StreetIslands(Vertex[] members, int[] islandStart, int[] streetCounts, int[] islandForVertex) {
+        this.members = members;
+        this.islandStart = islandStart;
+        this.streetCounts = streetCounts;
+        this.islandForVertex = islandForVertex;
+    }
+
+    /**
+     * Find the islands of the street network of a graph for one mode. Only the outgoing edges of street vertices are
+     * considered, like a search starting from every street vertex, and street vertices without any usable edge are
+     * not part of any island.
+     */
+    public static StreetIslands find(Graph graph, TraverseMode mode) {
+        List<Vertex> vertices = new ArrayList<>(graph.getVertices());
+        int nVertices = Vertex.getMaxIndex();
+        AtomicIntegerArray parent = new AtomicIntegerArray(nVertices);
+        for (int i = 0; i < nVertices; i++) {
+            parent.set(i, i);
+        }
+        // Set to true from several threads, which is safe as nothing reads it until all the threads are done.
+        boolean[] linked = new boolean[nVertices];
+
+        vertices.parallelStream().forEach(v -> {
+            if (!(v instanceof StreetVertex)) return;
+            for (Edge e : v.getOutgoing()) {
+                if (!canTraverse(e, mode) || e.getToVertex() == null) continue;
+                linked[v.getIndex()] = true;
+                linked[e.getToVertex().getIndex()] = true;
+                union(parent, v.getIndex(), e.getToVertex().getIndex());
+            }
+        });
+
+        // Number the islands in the order of the vertex list and count their vertices.
+        int[] islandForRoot = new int[nVertices];
+        Arrays.fill(islandForRoot, -1);
+        int[] islandForVertex = new int[nVertices];
+        Arrays.fill(islandForVertex, -1);
+        int nIslands = 0;
+        for (Vertex v : vertices) {
+            if (v instanceof StreetVertex && linked[v.getIndex()]) {
+                int root = find(parent, v.getIndex());
+                if (islandForRoot[root] == -1) islandForRoot[root] = nIslands++;
+            }
+        }
+        int[] streetCounts = new int[nIslands];
+        int[] stopCounts = new int[nIslands];
+        int nMembers = 0;
+        for (Vertex v : vertices) {
+            if (!linked[v.getIndex()]) continue;
+            int island = islandForRoot[find(parent, v.getIndex())];
+            islandForVertex[v.getIndex()] = island;
+            if (v instanceof TransitVertex) {
+                stopCounts[island]++;
+            } else {
+                streetCounts[island]++;
+            }
+            nMembers++;
+        }
+
+        int[] islandStart = new int[nIslands + 1];
+        for (int i = 0; i < nIslands; i++) {
+            islandStart[i + 1] = islandStart[i] + streetCounts[i] + stopCounts[i];
+        }
+        int[] nextStreet = Arrays.copyOf(islandStart, nIslands);
+        int[] nextStop = new int[nIslands];
+        for (int i = 0; i < nIslands; i++) {
+            nextStop[i] = islandStart[i] + streetCounts[i];
+        }
+        Vertex[] members = new Vertex[nMembers];
+        for (Vertex v : vertices) {
+            int island = islandForVertex[v.getIndex()];
+            if (island == -1) continue;
+            if (v instanceof TransitVertex) {
+                members[nextStop[island]++] = v;
+            } else {
+                members[nextStreet[island]++] = v;
+            }
+        }
+        return new StreetIslands(members, islandStart, streetCounts, islandForVertex);
+    }
+
+    /**
+     * Whether an edge connects its vertices in the given mode, when leaving a street vertex at the start of a search.
+     * For walking this gives the same result as traversing the edge with a default routing request.
+     */
+    static boolean canTraverse(Edge e, TraverseMode mode) {
+        if (e instanceof StreetEdge) {
+            return ((StreetEdge) e).canTraverseIncludingBarrier(mode);
+        }
+        if (e instanceof ElevatorHopEdge) {
+            return ((ElevatorHopEdge) e).getPermission().allows(mode);
+        }
+        if (e instanceof StreetTransitLink) {
+            // Stations cannot be entered by car unless it is explicitly requested.
+            return mode != TraverseMode.CAR;
+        }
+        return e instanceof ElevatorEdge || e instanceof FreeEdge;
+    }
+
+    private static int find(AtomicIntegerArray parent, int i) {
+        while (true) {
+            int p = parent.get(i);
+            if (p == i) return i;
+            int grandparent = parent.get(p);
+            // Path halving. Failing is fine, another thread has shortened the path already.
+            parent.compareAndSet(i, p, grandparent);
+            i = grandparent;
+        }
+    }
+
+    private static void union(AtomicIntegerArray parent, int a, int b) {
+        while (true) {
+            a = find(parent, a);
+            b = find(parent, b);
+            if (a == b) return;
+            if (a < b) {
+                int tmp = a;
+                a = b;
+                b = tmp;
+            }
+            // Only succeeds if a is still a root, otherwise start over from the new roots.
+            if (parent.compareAndSet(a, a, b)) return;
+        }
+    }
+
+    public int islandCount() {
+        return streetCounts.length;
+    }
+
+    /** @return the island of a vertex, or -1 if it is not part of the street network for this mode. */
+    public int islandOf(Vertex v) {
+        return v.getIndex() < islandForVertex.length ? islandForVertex[v.getIndex()] : -1;
+    }
+
+    public int streetSize(int island) {
+        return streetCounts[island];
+    }
+
+    public int stopSize(int island) {
+        return islandStart[island + 1] - islandStart[island] - streetCounts[island];
+    }
+
+    public List<Vertex> streetVertices(int island) {
+        return Arrays.asList(members).subList(islandStart[island], islandStart[island] + streetCounts[island]);
+    }
+
+    public List<Vertex> stops(int island) {
+        return Arrays.asList(members).subList(islandStart[island] + streetCounts[island], islandStart[island + 1]);
+    }
+
+    /** @return the first street vertex of an island in the graph's vertex order. */
+    public Vertex getRepresentativeVertex(int island) {
+        return members[islandStart[island]];
+    }
+
+    /** @return the island with the most street vertices, or -1 if there are no islands at all. */
+    public int largestIsland() {
+        int largest = -1;
+        for (int i = 0; i < streetCounts.length; i++) {
+            if (largest == -1 || streetCounts[i] > streetCounts[largest]) largest = i;
+        }
+        return largest;
+    }
+}
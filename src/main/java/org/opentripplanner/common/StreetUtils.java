@@ -4,15 +4,11 @@ import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.Polygon;
 import org.opentripplanner.common.geometry.Subgraph;
 import org.opentripplanner.graph_builder.annotation.GraphConnectivity;
-import org.opentripplanner.routing.core.RoutingRequest;
-import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.TraverseMode;
-import org.opentripplanner.routing.core.TraverseModeSet;
 import org.opentripplanner.routing.edgetype.*;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
-import org.opentripplanner.routing.vertextype.StreetVertex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -39,86 +35,26 @@ public class StreetUtils {
         if (islandLog != null) {
             islandLog.printf("%s\t%s\t%s\t%s\t%s\n","id","stopCount", "streetCount","wkt" ,"hadRemoved");
         }
-        Map<Vertex, Subgraph> subgraphs = new HashMap<Vertex, Subgraph>();
-        Map<Vertex, ArrayList<Vertex>> neighborsForVertex = new HashMap<Vertex, ArrayList<Vertex>>();
-
-//        RoutingRequest options = new RoutingRequest(new TraverseModeSet(TraverseMode.WALK, TraverseMode.TRANSIT));
-        RoutingRequest options = new RoutingRequest(new TraverseModeSet(TraverseMode.WALK));
-
-        for (Vertex gv : graph.getVertices()) {
-            if (!(gv instanceof StreetVertex)) {
-                continue;
-            }
-            State s0 = new State(gv, options);
-            for (Edge e : gv.getOutgoing()) {
-                Vertex in = gv;
-                if (!(e instanceof StreetEdge || e instanceof StreetTransitLink || 
-                      e instanceof ElevatorEdge || e instanceof FreeEdge)) {
-                    continue;
-                }
-                State s1 = e.traverse(s0);
-                if (s1 == null) {
-                    continue;
-                }
-                Vertex out = s1.getVertex();
-
-                ArrayList<Vertex> vertexList = neighborsForVertex.get(in);
-                if (vertexList == null) {
-                    vertexList = new ArrayList<Vertex>();
-                    neighborsForVertex.put(in, vertexList);
-                }
-                vertexList.add(out);
-
-                vertexList = neighborsForVertex.get(out);
-                if (vertexList == null) {
-                    vertexList = new ArrayList<Vertex>();
-                    neighborsForVertex.put(out, vertexList);
-                }
-                vertexList.add(in);
-            }
-        }
-
-        ArrayList<Subgraph> islands = new ArrayList<Subgraph>();
-        /* associate each node with a subgraph */
-        for (Vertex gv : graph.getVertices()) {
-            if (!(gv instanceof StreetVertex)) {
-                continue;
-            }
-            Vertex vertex = gv;
-            if (subgraphs.containsKey(vertex)) {
-                continue;
-            }
-            if (!neighborsForVertex.containsKey(vertex)) {
-                continue;
-            }
-            Subgraph subgraph = computeConnectedSubgraph(neighborsForVertex, vertex);
-            if (subgraph != null){
-                for (Iterator<Vertex> vIter = subgraph.streetIterator(); vIter.hasNext();) {
-                    Vertex subnode = vIter.next();
-                    subgraphs.put(subnode, subgraph);
-                }
-                islands.add(subgraph);
-            }
-        }
-        LOG.info(islands.size() + " sub graphs found");
+        StreetIslands islands = StreetIslands.find(graph, TraverseMode.WALK);
+        LOG.info(islands.islandCount() + " sub graphs found");
         /* remove all tiny subgraphs and large subgraphs without stops */
-        for (Subgraph island : islands) {
+        for (int island = 0; island < islands.islandCount(); island++) {
             boolean hadRemoved = false;
-            if(island.stopSize() > 0){
+            if(islands.stopSize(island) > 0){
             //for islands with stops
-                if (island.streetSize() < islandWithStopMaxSize) {
-                    depedestrianizeOrRemove(graph, island);
+                if (islands.streetSize(island) < islandWithStopMaxSize) {
+                    depedestrianizeOrRemove(graph, islands, island);
                     hadRemoved = true;
                 }
             }else{
             //for islands without stops
-                if (island.streetSize() < maxIslandSize) {
-                    depedestrianizeOrRemove(graph, island);
+                if (islands.streetSize(island) < maxIslandSize) {
+                    depedestrianizeOrRemove(graph, islands, island);
                     hadRemoved = true;
                 }
             }
             if (islandLog != null) {
-                WriteNodesInSubGraph(island, islandLog, hadRemoved);
+                WriteNodesInSubGraph(islands, island, islandLog, hadRemoved);
             }
         }
         if (graph.removeEdgelessVertices() > 0) {
@@ -126,10 +62,9 @@ public class StreetUtils {
         }
     }
 
-    private static void depedestrianizeOrRemove(Graph graph, Subgraph island) {
+    private static void depedestrianizeOrRemove(Graph graph, StreetIslands islands, int island) {
         //iterate over the street vertex of the subgraph
-        for (Iterator<Vertex> vIter = island.streetIterator(); vIter.hasNext();) {
-            Vertex v = vIter.next();
+        for (Vertex v : islands.streetVertices(island)) {
             Collection<Edge> outgoing = new ArrayList<Edge>(v.getOutgoing());
             for (Edge e : outgoing) {
                 if (e instanceof StreetEdge) {
@@ -146,15 +81,13 @@ public class StreetUtils {
             }
         }
 
-        for (Iterator<Vertex> vIter = island.streetIterator(); vIter.hasNext();) {
-            Vertex v = vIter.next();
+        for (Vertex v : islands.streetVertices(island)) {
             if (v.getDegreeOut() + v.getDegreeIn() == 0) {
                 graph.remove(v);
             }
         }
         //remove street conncetion form
-        for (Iterator<Vertex> vIter = island.stopIterator(); vIter.hasNext();) {
-            Vertex v = vIter.next();
+        for (Vertex v : islands.stops(island)) {
             Collection<Edge> edges = new ArrayList<Edge>(v.getOutgoing());
             edges.addAll(v.getIncoming());
             for (Edge e : edges) {
@@ -163,29 +96,19 @@ public class StreetUtils {
                 }
             }
         }
-        LOG.debug(graph.addBuilderAnnotation(new GraphConnectivity(island.getRepresentativeVertex(), island.streetSize())));
+        LOG.debug(graph.addBuilderAnnotation(new GraphConnectivity(islands.getRepresentativeVertex(island),
+                islands.streetSize(island))));
     }
 
-    private static Subgraph computeConnectedSubgraph(
-            Map<Vertex, ArrayList<Vertex>> neighborsForVertex, Vertex startVertex) {
+    private static void WriteNodesInSubGraph(StreetIslands islands, int island, PrintWriter islandLog,
+            boolean hadRemoved){
         Subgraph subgraph = new Subgraph();
-        Queue<Vertex> q = new LinkedList<Vertex>();
-        q.add(startVertex);
-        while (!q.isEmpty()) {
-            Vertex vertex = q.poll();
-            for (Vertex neighbor : neighborsForVertex.get(vertex)) {
-                if (!subgraph.contains(neighbor)) {
-                    subgraph.addVertex(neighbor);
-                    q.add(neighbor);
-                }
-            }
+        for (Vertex v : islands.streetVertices(island)) {
+            subgraph.addVertex(v);
+        }
+        for (Vertex v : islands.stops(island)) {
+            subgraph.addVertex(v);
         }
-        return subgraph;
-//        if(subgraph.size()>1) return subgraph;
-//        return null;
-    }
-
-    private static void WriteNodesInSubGraph(Subgraph subgraph, PrintWriter islandLog, boolean hadRemoved){
         Geometry convexHullGeom = subgraph.getConvexHull();
         if (convexHullGeom != null && !(convexHullGeom instanceof Polygon)) {
             convexHullGeom = convexHullGeom.buffer(0.0001,5);
@@ -161,6 +161,63 @@ public final class CompactLineString implements Serializable {
         return out;
     }
 
+    /**
+     * Receives the coordinates of a line string one by one, see visitCoordinates().
+     */
+    public interface CoordinateVisitor {
+        public void visit(double x, double y);
+    }
+
+    /**
+     * Give the coordinates of a compacted line string to a visitor, in the same order as the
+     * coordinates of the LineString that uncompactLineString() would return for the same
+     * arguments, with the same values. No Coordinate or LineString is created, which is much
+     * cheaper when the coordinates are only read once (for polyline encoding, length computation,
+     * sampling...).
+     * 
+     * @param xa
+     * @param ya
+     * @param xb
+     * @param yb
+     * @param coords Compact version of coordinates
+     * @param reverse True if A and B and the compacted geometry is reversed.
+     * @param visitor
+     */
+    public static void visitCoordinates(double xa, double ya, double xb, double yb, int[] coords,
+            boolean reverse, CoordinateVisitor visitor) {
+        int n = coords == null ? 0 : coords.length / 2;
+        if (!reverse) {
+            visitor.visit(xa, ya);
+            int ix = (int) Math.round(xa * FIXED_FLOAT_MULT);
+            int iy = (int) Math.round(ya * FIXED_FLOAT_MULT);
+            for (int i = 0; i < n; i++) {
+                ix += coords[i * 2];
+                iy += coords[i * 2 + 1];
+                visitor.visit(ix / FIXED_FLOAT_MULT, iy / FIXED_FLOAT_MULT);
+            }
+            visitor.visit(xb, yb);
+        } else {
+            /*
+             * The deltas start from B. Sum them first to get the last intermediate point, then walk
+             * back towards B. The sums are on integers, so the values are exactly the same as
+             * when walking forward.
+             */
+            visitor.visit(xa, ya);
+            int ix = (int) Math.round(xb * FIXED_FLOAT_MULT);
+            int iy = (int) Math.round(yb * FIXED_FLOAT_MULT);
+            for (int i = 0; i < n; i++) {
+                ix += coords[i * 2];
+                iy += coords[i * 2 + 1];
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                visitor.visit(ix / FIXED_FLOAT_MULT, iy / FIXED_FLOAT_MULT);
+                ix -= coords[i * 2];
+                iy -= coords[i * 2 + 1];
+            }
+            visitor.visit(xb, yb);
+        }
+    }
+
     /**
      * Same as the other version, but in a var-len int packed form (Dlugosz coding).
      * 
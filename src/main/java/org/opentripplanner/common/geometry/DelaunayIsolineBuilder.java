@@ -2,10 +2,15 @@ package org.opentripplanner.common.geometry;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Queue;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -31,6 +36,9 @@ import org.locationtech.jts.geom.Polygon;
  * process each polygons to punch holes: a CW polygon is a hole in a larger CCW polygon, a CCW
  * polygon is an islan (shell).
  * 
+ * To compute several isolines at once, computeIsolines() copies the triangulation into arrays, finds the cutting edges
+ * of all the isolines in a single pass over the edges, then builds the polygons of each isoline in parallel.
+ * 
  * @author laurent
  */
 public class DelaunayIsolineBuilder<TZ> implements IsolineBuilder<TZ> {
@@ -47,6 +55,16 @@ public class DelaunayIsolineBuilder<TZ> implements IsolineBuilder<TZ> {
 
     private List<Geometry> debugGeom = new ArrayList<Geometry>();
 
+    /* The triangulation copied into arrays for computeIsolines(), built on first use. */
+    private int nEdges;
+
+    private List<TZ> zA, zB;
+
+    private double[] xA, yA, xB, yB;
+
+    /** The indexes of the neighbor edges, as returned by getEdge1() and getEdge2(), or -1. */
+    private int[] edge1Ccw, edge1Cw, edge2Ccw, edge2Cw;
+
     /**
      * Create an object to compute isolines. One may call several time computeIsoline on the same
      * object, with different z0 values.
@@ -129,6 +147,131 @@ public class DelaunayIsolineBuilder<TZ> implements IsolineBuilder<TZ> {
                 .createGeometryCollection(retval.toArray(new Geometry[retval.size()]));
     }
 
+    /**
+     * Compute the isolines for several z0 values. This gives the same result as calling computeIsoline() for each
+     * value, but the edges are scanned once for all values and the isolines are built in parallel. The ZMetric must
+     * be thread-safe.
+     * 
+     * @return The isolines, in the order of the z0 values.
+     */
+    public List<Geometry> computeIsolines(List<TZ> z0s) {
+        if (z0s.isEmpty())
+            return new ArrayList<Geometry>();
+        if (zA == null)
+            copyTriangulation();
+        if (debug)
+            generateDebugGeometry(z0s.get(0));
+
+        // 1. Find the cutting edges of all isolines in one pass over the edges.
+        final int nIsolines = z0s.size();
+        final byte[][] cuts = new byte[nIsolines][nEdges];
+        for (int e = 0; e < nEdges; e++) {
+            TZ a = zA.get(e);
+            TZ b = zB.get(e);
+            for (int i = 0; i < nIsolines; i++) {
+                cuts[i][e] = (byte) zMetric.cut(a, b, z0s.get(i));
+            }
+        }
+        // 2. Build the polygons of each isoline in parallel.
+        return IntStream.range(0, nIsolines).parallel()
+                .mapToObj(i -> buildIsoline(z0s.get(i), cuts[i]))
+                .collect(Collectors.toList());
+    }
+
+    /** Copy the edges of the triangulation and the coordinates and z values of their ends into arrays. */
+    private void copyTriangulation() {
+        nEdges = triangulation.edgesCount();
+        Map<DelaunayEdge<TZ>, Integer> index = new IdentityHashMap<DelaunayEdge<TZ>, Integer>(nEdges);
+        List<DelaunayEdge<TZ>> edges = new ArrayList<DelaunayEdge<TZ>>(nEdges);
+        for (DelaunayEdge<TZ> e : triangulation.edges()) {
+            index.put(e, edges.size());
+            edges.add(e);
+        }
+        nEdges = edges.size();
+        zA = new ArrayList<TZ>(nEdges);
+        zB = new ArrayList<TZ>(nEdges);
+        xA = new double[nEdges];
+        yA = new double[nEdges];
+        xB = new double[nEdges];
+        yB = new double[nEdges];
+        edge1Ccw = new int[nEdges];
+        edge1Cw = new int[nEdges];
+        edge2Ccw = new int[nEdges];
+        edge2Cw = new int[nEdges];
+        for (int e = 0; e < nEdges; e++) {
+            DelaunayEdge<TZ> edge = edges.get(e);
+            zA.add(edge.getA().getZ());
+            zB.add(edge.getB().getZ());
+            Coordinate cA = edge.getA().getCoordinates();
+            Coordinate cB = edge.getB().getCoordinates();
+            xA[e] = cA.x;
+            yA[e] = cA.y;
+            xB[e] = cB.x;
+            yB[e] = cB.y;
+            edge1Ccw[e] = indexOf(index, edge.getEdge1(true));
+            edge1Cw[e] = indexOf(index, edge.getEdge1(false));
+            edge2Ccw[e] = indexOf(index, edge.getEdge2(true));
+            edge2Cw[e] = indexOf(index, edge.getEdge2(false));
+        }
+    }
+
+    private static <TZ> int indexOf(Map<DelaunayEdge<TZ>, Integer> index, DelaunayEdge<TZ> e) {
+        if (e == null)
+            return -1;
+        Integer i = index.get(e);
+        return i == null ? -1 : i;
+    }
+
+    /**
+     * Walk the cutting edges of one isoline, as computeIsoline() does, on the arrays of the triangulation. The
+     * processed flags are kept in a local bit set, so that several isolines can be built at the same time.
+     */
+    private Geometry buildIsoline(TZ z0, byte[] cuts) {
+        BitSet processed = new BitSet(nEdges);
+        List<LinearRing> rings = new ArrayList<LinearRing>();
+        for (int start = 0; start < nEdges; start++) {
+            if (processed.get(start))
+                continue;
+            processed.set(start);
+            int cut = cuts[start];
+            if (cut == 0)
+                continue;
+            List<Coordinate> polyPoints = new ArrayList<Coordinate>();
+            boolean ccw = cut > 0;
+            int e = start;
+            while (true) {
+                // Add a point to polyline
+                double k = zMetric.interpolate(zA.get(e), zB.get(e), z0);
+                polyPoints.add(new Coordinate(xA[e] * (1.0 - k) + xB[e] * k, yA[e] * (1.0 - k) + yB[e] * k));
+                processed.set(e);
+                int e1 = ccw ? edge1Ccw[e] : edge1Cw[e];
+                int e2 = ccw ? edge2Ccw[e] : edge2Cw[e];
+                int cut1 = e1 < 0 ? 0 : cuts[e1];
+                int cut2 = e2 < 0 ? 0 : cuts[e2];
+                if (cut1 != 0 && !processed.get(e1)) {
+                    e = e1;
+                    ccw = cut1 > 0;
+                } else if (cut2 != 0 && !processed.get(e2)) {
+                    e = e2;
+                    ccw = cut2 > 0;
+                } else {
+                    // This must be the end of the polyline...
+                    break;
+                }
+            }
+            // Close the polyline
+            polyPoints.add(polyPoints.get(0));
+            if (polyPoints.size() > 5) {
+                LinearRing ring = geometryFactory.createLinearRing(polyPoints
+                        .toArray(new Coordinate[polyPoints.size()]));
+                rings.add(ring);
+            }
+        }
+        List<Polygon> retval = punchHoles(rings);
+        return geometryFactory
+                .createGeometryCollection(retval.toArray(new Geometry[retval.size()]));
+    }
+
     private final void generateDebugGeometry(TZ z0) {
         debug = false;
         for (DelaunayEdge<TZ> e : triangulation.edges()) {
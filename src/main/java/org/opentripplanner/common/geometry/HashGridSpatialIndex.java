@@ -11,6 +11,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 import org.opengis.referencing.cs.CoordinateSystem;
 import org.slf4j.Logger;
@@ -114,6 +115,43 @@ public class HashGridSpatialIndex<T> implements SpatialIndex, Serializable {
                 }
             });
         }
+        insertInBins(keys, item);
+    }
+
+    /**
+     * Same as insert(LineString, Object), for a line whose coordinates are given to a visitor by
+     * the line parameter, for example StreetEdge::visitGeometry. This does not need a LineString.
+     */
+    public final void insert(Consumer<CompactLineString.CoordinateVisitor> line, final Object item) {
+        final TLongSet keys = new TLongHashSet();
+        final Envelope env = new Envelope();
+        final BinVisitor<T> keyCollector = new BinVisitor<T>() {
+            @Override
+            public boolean visit(List<T> bin, long mapKey) {
+                keys.add(mapKey);
+                return false;
+            }
+        };
+        line.accept(new CompactLineString.CoordinateVisitor() {
+            private double lastX = Double.NaN;
+
+            private double lastY;
+
+            @Override
+            public void visit(double x, double y) {
+                if (!Double.isNaN(lastX)) {
+                    env.init(lastX, x, lastY, y);
+                    HashGridSpatialIndex.this.visit(env, true, keyCollector);
+                }
+                lastX = x;
+                lastY = y;
+            }
+        });
+        insertInBins(keys, item);
+    }
+
+    /** Add an item to the bins with the given keys, which must exist. */
+    private void insertInBins(TLongSet keys, final Object item) {
         keys.forEach(new TLongProcedure() {
             @SuppressWarnings("unchecked")
             @Override
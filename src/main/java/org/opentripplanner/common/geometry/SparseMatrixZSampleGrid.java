@@ -203,6 +203,11 @@ public final class SparseMatrixZSampleGrid<TZ> implements ZSampleGrid<TZ>,
         return A;
     }
 
+    /** @return the number of sample points in this grid. */
+    public int size() {
+        return allSamples.size();
+    }
+
     @Override
     public Iterator<ZSamplePoint<TZ>> iterator() {
         return new Iterator<ZSamplePoint<TZ>>() {
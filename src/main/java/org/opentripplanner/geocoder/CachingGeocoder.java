@@ -0,0 +1,134 @@
+package org.opentripplanner.geocoder;
+
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import org.locationtech.jts.geom.Envelope;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cache the results of another geocoder, usually a remote one, so that the same address is not geocoded over and
+ * over again.
+ *
+ * Addresses are normalized (case and whitespace) and combined with the bounding box to form the cache key. The least
+ * recently used results are evicted when the cache is full, and results expire after a while. Results without any
+ * match or with an error are cached too, but for a shorter time so that a failing service is retried soon. When
+ * several threads look up the same address at the same time, only one of them calls the decorated geocoder and the
+ * others wait for its results.
+ */
+public class CachingGeocoder implements Geocoder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CachingGeocoder.class);
+
+    private Geocoder decorated;
+
+    private Ticker ticker;
+
+    private long negativeTtlNanos;
+
+    private Cache<String, CachedResults> cache;
+
+    private static class CachedResults {
+        final GeocoderResults results;
+        /** The ticker time after which the results must be fetched again. */
+        final long expiresAt;
+
+        CachedResults(GeocoderResults results, long expiresAt) {
+            this.results = results;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * @param maxSize the maximum number of cached results
+     * @param ttlSec how long results having a match are kept
+     * @param negativeTtlSec how long results without any match, or with an error, are kept
+     */
+    public CachingGeocoder(Geocoder decorated, int maxSize, int ttlSec, int negativeTtlSec) {
+        this(decorated, maxSize, ttlSec, negativeTtlSec, Ticker.systemTicker());
+    }
+
+    CachingGeocoder(Geocoder decorated, int maxSize, int ttlSec, int negativeTtlSec, Ticker ticker) {
+        this.decorated = decorated;
+        this.ticker = ticker;
+        this.negativeTtlNanos = TimeUnit.SECONDS.toNanos(negativeTtlSec);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttlSec, TimeUnit.SECONDS)
+                .ticker(ticker)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public GeocoderResults geocode(String address, Envelope bbox) {
+        String key = cacheKey(address, bbox);
+        CachedResults cached = get(key, address, bbox);
+        if (ticker.read() > cached.expiresAt) {
+            // Only removes the expired results, not newer ones another thread may have fetched in the meantime.
+            cache.asMap().remove(key, cached);
+            cached = get(key, address, bbox);
+        }
+        return copy(cached.results);
+    }
+
+    private CachedResults get(String key, String address, Envelope bbox) {
+        try {
+            // Threads asking for a key being loaded wait for that load instead of starting their own.
+            return cache.get(key, () -> {
+                GeocoderResults results = decorated.geocode(address, bbox);
+                boolean negative = results.getError() != null || results.getCount() == 0;
+                return new CachedResults(copy(results),
+                        negative ? ticker.read() + negativeTtlNanos : Long.MAX_VALUE);
+            });
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            // Exceptions thrown by the decorated geocoder are not cached.
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+    /** Copy results, as other decorators such as GeocoderGeoZoneCropper modify the results they get. */
+    private static GeocoderResults copy(GeocoderResults results) {
+        GeocoderResults ret = new GeocoderResults(results.getError());
+        if (results.getResults() != null) {
+            ret.setResults(new ArrayList<>(results.getResults()));
+        }
+        return ret;
+    }
+
+    /** The cache key: the address in lower case with single spaces, and the bounding box if any. */
+    static String cacheKey(String address, Envelope bbox) {
+        String normalized = address == null ? "" : address.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        if (bbox == null || bbox.isNull()) {
+            return normalized;
+        }
+        return String.format(Locale.ROOT, "%s|%.6f,%.6f,%.6f,%.6f", normalized, bbox.getMinX(), bbox.getMinY(),
+                bbox.getMaxX(), bbox.getMaxY());
+    }
+
+    /**
+     * @return the hit and miss counts, and the time spent calling the decorated geocoder. Lookups which waited for
+     * another thread calling the decorated geocoder count as hits.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    /** Log the cache statistics. */
+    public void logStats() {
+        CacheStats stats = cache.stats();
+        LOG.info("Geocoder cache: {} entries, {} hits, {} misses ({} failed), {} evictions, {} msec average lookup.",
+                cache.size(), stats.hitCount(), stats.missCount(), stats.loadExceptionCount(),
+                stats.evictionCount(), TimeUnit.NANOSECONDS.toMillis((long) stats.averageLoadPenalty()));
+    }
+}
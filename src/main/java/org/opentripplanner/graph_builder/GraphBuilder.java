@@ -2,11 +2,13 @@ package org.opentripplanner.graph_builder;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.google.common.collect.Lists;
+import org.opentripplanner.common.GeocoderIndex;
 import org.opentripplanner.graph_builder.model.GtfsBundle;
 import org.opentripplanner.graph_builder.module.DirectTransferGenerator;
 import org.opentripplanner.graph_builder.module.EmbedConfig;
 import org.opentripplanner.graph_builder.module.GtfsModule;
 import org.opentripplanner.graph_builder.module.PruneFloatingIslands;
+import org.opentripplanner.graph_builder.module.StopTreeCacheModule;
 import org.opentripplanner.graph_builder.module.StreetLinkerModule;
 import org.opentripplanner.graph_builder.module.TransitToTaggedStopsModule;
 import org.opentripplanner.graph_builder.module.VersionModule;
@@ -65,8 +67,12 @@ public class GraphBuilder implements Runnable {
     /** Should the graph be serialized to disk after being created or not? */
     public boolean serializeGraph = true;
 
+    /** Should the graph be written in the block compressed format? */
+    private final boolean compressGraph;
+
     public GraphBuilder(File path, GraphBuilderParameters builderParams) {
         graphFile = new File(path, "Graph.obj");
+        compressGraph = builderParams.compressGraph;
         graph.stopClusterMode = builderParams.stopClusterMode;
     }
 
@@ -135,14 +141,19 @@ public class GraphBuilder implements Runnable {
             builder.checkInputs();
         }
         
+        // A stop tree cache loaded with a base graph does not account for what the modules add to it. It is
+        // computed again by the StopTreeCacheModule if requested, otherwise on first use.
+        graph.stopTreeCache = null;
+
         HashMap<Class<?>, Object> extra = new HashMap<Class<?>, Object>();
         for (GraphBuilderModule load : _graphBuilderModules)
             load.buildGraph(graph, extra);
 
         graph.summarizeBuilderAnnotations();
+        graph.geocoderIndex = GeocoderIndex.forGraph(graph);
         if (serializeGraph) {
             try {
-                graph.save(graphFile);
+                graph.save(graphFile, compressGraph);
             } catch (Exception ex) {
                 throw new IllegalStateException(ex);
             }
@@ -274,6 +285,8 @@ public class GraphBuilder implements Runnable {
         // Load elevation data and apply it to the streets.
         // We want to do run this module after loading the OSM street network but before finding transfers.
         ElevationGridCoverageFactory gcf = null;
+        File mappedGridDirectory = builderParams.memoryMapElevation
+            ? new File(params.cacheDirectory, "mapped_elevation") : null;
         if (builderParams.elevationBucket != null) {
             // Download the elevation tiles from an Amazon S3 bucket
             S3BucketConfig bucketConfig = builderParams.elevationBucket;
@@ -282,14 +295,20 @@ public class GraphBuilder implements Runnable {
             awsTileSource.awsAccessKey = bucketConfig.accessKey;
             awsTileSource.awsSecretKey = bucketConfig.secretKey;
             awsTileSource.awsBucketName = bucketConfig.bucketName;
-            gcf = new NEDGridCoverageFactoryImpl(cacheDirectory, awsTileSource);
+            NEDGridCoverageFactoryImpl nedGcf = new NEDGridCoverageFactoryImpl(cacheDirectory, awsTileSource);
+            nedGcf.mappedGridDirectory = mappedGridDirectory;
+            gcf = nedGcf;
         } else if (builderParams.fetchElevationUS) {
             // Download the elevation tiles from the official web service
             File cacheDirectory = new File(params.cacheDirectory, "ned");
-            gcf = new NEDGridCoverageFactoryImpl(cacheDirectory);
+            NEDGridCoverageFactoryImpl nedGcf = new NEDGridCoverageFactoryImpl(cacheDirectory);
+            nedGcf.mappedGridDirectory = mappedGridDirectory;
+            gcf = nedGcf;
         } else if (demFile != null) {
             // Load the elevation from a file in the graph inputs directory
-            gcf = new GeotiffGridCoverageFactoryImpl(demFile);
+            GeotiffGridCoverageFactoryImpl geotiffGcf = new GeotiffGridCoverageFactoryImpl(demFile);
+            geotiffGcf.mappedGridDirectory = mappedGridDirectory;
+            gcf = geotiffGcf;
         }
         if (gcf != null) {
             graphBuilder.addModule(
@@ -310,6 +329,9 @@ public class GraphBuilder implements Runnable {
                 // This module will use streets or straight line distance depending on whether OSM data is found in the graph.
                 graphBuilder.addModule(new DirectTransferGenerator(builderParams.maxTransferDistance));
             }
+            if (builderParams.precomputeStopTrees) {
+                graphBuilder.addModule(new StopTreeCacheModule());
+            }
         }
         graphBuilder.addModule(new EmbedConfig(builderConfig, routerConfig));
         if (builderParams.htmlAnnotations) {
@@ -11,6 +11,7 @@ import org.locationtech.jts.linearref.LocationIndexedLine;
 import gnu.trove.map.TIntDoubleMap;
 import gnu.trove.map.hash.TIntDoubleHashMap;
 import jersey.repackaged.com.google.common.collect.Lists;
+import org.opentripplanner.common.geometry.CompactLineString;
 import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.common.geometry.HashGridSpatialIndex;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
@@ -120,7 +121,7 @@ public class SimpleStreetSplitter {
             // build a nice private spatial index, since we're adding and removing edges
             idx = new HashGridSpatialIndex<>();
             for (StreetEdge se : Iterables.filter(graph.getEdges(), StreetEdge.class)) {
-                idx.insert(se.getGeometry(), se);
+                idx.insert(se::visitGeometry, se);
             }
         } else {
             idx = hashGridSpatialIndex;
@@ -408,8 +409,8 @@ public class SimpleStreetSplitter {
 
         if (destructiveSplitting) {
             // update indices of new edges
-            idx.insert(edges.first.getGeometry(), edges.first);
-            idx.insert(edges.second.getGeometry(), edges.second);
+            idx.insert(edges.first::visitGeometry, edges.first);
+            idx.insert(edges.second::visitGeometry, edges.second);
 
             // (no need to remove original edge, we filter it when it comes out of the index)
 
@@ -499,10 +500,50 @@ public class SimpleStreetSplitter {
 
     /** projected distance from stop to edge, in latitude degrees */
     private static double distance (Vertex tstop, StreetEdge edge, double xscale) {
-        // Despite the fact that we want to use a fast somewhat inaccurate projection, still use JTS library tools
-        // for the actual distance calculations.
-        LineString transformed = equirectangularProject(edge.getGeometry(), xscale);
-        return transformed.distance(geometryFactory.createPoint(new Coordinate(tstop.getLon() * xscale, tstop.getLat())));
+        // Visit the compact geometry of the edge rather than building a projected LineString for every candidate.
+        // The point to segment distance is the same as in JTS CGAlgorithms.distancePointLine.
+        ProjectedDistance visitor = new ProjectedDistance(tstop.getLon() * xscale, tstop.getLat(), xscale);
+        edge.visitGeometry(visitor);
+        return visitor.distance;
+    }
+
+    /** Minimum distance from a point to the segments of a line, in the equirectangular projection. */
+    private static class ProjectedDistance implements CompactLineString.CoordinateVisitor {
+
+        private final double px, py, xscale;
+
+        private double lastX = Double.NaN, lastY;
+
+        double distance = Double.POSITIVE_INFINITY;
+
+        ProjectedDistance(double px, double py, double xscale) {
+            this.px = px;
+            this.py = py;
+            this.xscale = xscale;
+        }
+
+        @Override
+        public void visit(double lon, double lat) {
+            double x = lon * xscale;
+            if (Double.isNaN(lastX)) {
+                // A line with a single point is at the distance of that point.
+                distance = Math.hypot(px - x, py - lat);
+            } else {
+                distance = Math.min(distance, pointToSegment(lastX, lastY, x, lat));
+            }
+            lastX = x;
+            lastY = lat;
+        }
+
+        private double pointToSegment(double ax, double ay, double bx, double by) {
+            if (ax == bx && ay == by) return Math.hypot(px - ax, py - ay);
+            double len2 = (bx - ax) * (bx - ax) + (by - ay) * (by - ay);
+            double r = ((px - ax) * (bx - ax) + (py - ay) * (by - ay)) / len2;
+            if (r <= 0.0) return Math.hypot(px - ax, py - ay);
+            if (r >= 1.0) return Math.hypot(px - bx, py - by);
+            double s = ((ay - py) * (bx - ax) - (ax - px) * (by - ay)) / len2;
+            return Math.abs(s) * Math.sqrt(len2);
+        }
     }
 
     /** projected distance from stop to another stop, in latitude degrees */
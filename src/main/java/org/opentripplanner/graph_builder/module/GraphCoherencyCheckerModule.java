@@ -5,7 +5,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 
+import org.opentripplanner.common.StreetIslands;
 import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
@@ -14,7 +16,8 @@ import org.slf4j.LoggerFactory;
 
 /**
  * Check the every vertex and edge in the graph to make sure the edge lists and from/to
- * members are coherent, and that there are no edgeless vertices. Primarily intended for debugging.
+ * members are coherent, and that there are no edgeless vertices. Also reports how many islands
+ * the street network is split into for each street mode. Primarily intended for debugging.
  */
 public class GraphCoherencyCheckerModule implements GraphBuilderModule {
 
@@ -62,6 +65,12 @@ public class GraphCoherencyCheckerModule implements GraphBuilderModule {
             }
         }
         LOG.info("edge lists and from/to members are {}coherent.", coherent ? "": "not ");
+        for (TraverseMode mode : new TraverseMode[] { TraverseMode.WALK, TraverseMode.BICYCLE, TraverseMode.CAR }) {
+            StreetIslands islands = StreetIslands.find(graph, mode);
+            int largest = islands.largestIsland();
+            LOG.info("{} street network has {} islands, the largest one having {} vertices.", mode,
+                    islands.islandCount(), largest == -1 ? 0 : islands.streetSize(largest));
+        }
     }
 
     @Override
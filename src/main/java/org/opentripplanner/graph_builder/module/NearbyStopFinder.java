@@ -11,6 +11,8 @@ import org.opentripplanner.api.resource.SimpleIsochrone;
 import org.opentripplanner.common.geometry.GeometryUtils;
 import org.opentripplanner.common.geometry.PackedCoordinateSequence;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.routing.algorithm.CompactStreetLayer;
+import org.opentripplanner.routing.algorithm.CompactStreetSearch;
 import org.opentripplanner.routing.algorithm.EarliestArrivalSearch;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
@@ -48,6 +50,9 @@ public class NearbyStopFinder {
     /* Fields used when finding stops via the street network. */
     private EarliestArrivalSearch earliestArrivalSearch;
 
+    /** A search on a compact copy of the street network, giving the same results as earliestArrivalSearch faster. */
+    private CompactStreetSearch compactStreetSearch;
+
     /* Fields used when finding stops without a street network. */
     private StreetVertexIndexService streetIndex;
 
@@ -73,6 +78,7 @@ public class NearbyStopFinder {
             // earliest arrival search, which optimizes on time. Ideally we'd specify in meters,
             // but we don't have much of a choice here. Use the default walking speed to convert.
             earliestArrivalSearch.maxDuration = (int) (radiusMeters / new RoutingRequest().walkSpeed);
+            compactStreetSearch = new CompactStreetSearch(new CompactStreetLayer(graph));
         } else {
             // FIXME use the vertex index already in the graph if it exists.
             streetIndex = new StreetVertexIndexServiceImpl(graph);
@@ -130,7 +136,50 @@ public class NearbyStopFinder {
 
         RoutingRequest routingRequest = new RoutingRequest(TraverseMode.WALK);
         routingRequest.clampInitialWait = (0L);
+        return findNearbyStopsViaStreets(originVertex, routingRequest);
+
+    }
+
+    /**
+     * Return all stops reached from the given vertex by a street search with the given request, on the compact street
+     * layer if the request and the streets around the vertex allow it, otherwise with an EarliestArrivalSearch.
+     */
+    List<StopAtDistance> findNearbyStopsViaStreets (Vertex originVertex, RoutingRequest routingRequest) {
+
         routingRequest.setRoutingContext(graph, originVertex, null);
+        List<StopAtDistance> stopsFound = findNearbyStopsViaCompactStreets(routingRequest, originVertex);
+        if (stopsFound == null) {
+            stopsFound = findNearbyStopsViaEarliestArrivalSearch(routingRequest, originVertex);
+        }
+        /* Add the origin vertex if needed. The SPT does not include the initial state. FIXME shouldn't it? */
+        if (originVertex instanceof TransitStop) {
+            stopsFound.add(new StopAtDistance((TransitStop)originVertex, 0));
+        }
+        routingRequest.cleanup();
+        return stopsFound;
+
+    }
+
+    /**
+     * Search on the compact street layer, which is built when the streets are already linked to the stops.
+     * @return the stops found other than the origin, or null if the search could not be made on the layer.
+     */
+    private List<StopAtDistance> findNearbyStopsViaCompactStreets (RoutingRequest routingRequest, Vertex originVertex) {
+        if (!CompactStreetSearch.supports(routingRequest)) return null;
+        if (!compactStreetSearch.search(routingRequest, originVertex, earliestArrivalSearch.maxDuration)) return null;
+        List<StopAtDistance> stopsFound = Lists.newArrayList();
+        for (Vertex targetVertex : compactStreetSearch.getReachedVertices()) {
+            if (targetVertex == originVertex) continue;
+            if (targetVertex instanceof TransitStop) {
+                stopsFound.add(stopAtDistanceForEdges((TransitStop) targetVertex,
+                        compactStreetSearch.getPath(targetVertex)));
+            }
+        }
+        return stopsFound;
+    }
+
+    /** @return the stops found other than the origin by an EarliestArrivalSearch on the graph. */
+    List<StopAtDistance> findNearbyStopsViaEarliestArrivalSearch (RoutingRequest routingRequest, Vertex originVertex) {
         ShortestPathTree spt = earliestArrivalSearch.getShortestPathTree(routingRequest);
 
         List<StopAtDistance> stopsFound = Lists.newArrayList();
@@ -144,13 +193,7 @@ public class NearbyStopFinder {
                 }
             }
         }
-        /* Add the origin vertex if needed. The SPT does not include the initial state. FIXME shouldn't it? */
-        if (originVertex instanceof TransitStop) {
-            stopsFound.add(new StopAtDistance((TransitStop)originVertex, 0));
-        }
-        routingRequest.cleanup();
         return stopsFound;
-
     }
 
     /**
@@ -205,11 +248,19 @@ public class NearbyStopFinder {
      * TODO this should probably be merged with similar classes in Profile routing.
      */
     public static StopAtDistance stopAtDistanceForState (State state) {
-        double distance = 0.0;
         GraphPath graphPath = new GraphPath(state, false);
+        return stopAtDistanceForEdges((TransitStop) state.getVertex(), graphPath.edges);
+    }
+
+    /**
+     * Given the edges of a path from some point to a TransitStop, bundle the TransitStop together with information
+     * about how far away it is and the geometry of the path.
+     */
+    public static StopAtDistance stopAtDistanceForEdges (TransitStop tstop, List<Edge> pathEdges) {
+        double distance = 0.0;
         CoordinateArrayListSequence coordinates = new CoordinateArrayListSequence();
         List<Edge> edges = new ArrayList<>();
-        for (Edge edge : graphPath.edges) {
+        for (Edge edge : pathEdges) {
             if (edge instanceof StreetEdge) {
                 LineString geometry = edge.getGeometry();
                 if (geometry != null) {
@@ -225,16 +276,14 @@ public class NearbyStopFinder {
         }
         if (coordinates.size() < 2) {   // Otherwise the walk step generator breaks.
             ArrayList<Coordinate> coordinateList = new ArrayList<Coordinate>(2);
-            coordinateList.add(graphPath.states.get(1).getVertex().getCoordinate());
-            State lastState = graphPath.states.getLast().getBackState();
-            coordinateList.add(lastState.getVertex().getCoordinate());
+            coordinateList.add(pathEdges.get(0).getToVertex().getCoordinate());
+            coordinateList.add(pathEdges.get(pathEdges.size() - 1).getFromVertex().getCoordinate());
             coordinates = new CoordinateArrayListSequence(coordinateList);
         }
-        StopAtDistance sd = new StopAtDistance((TransitStop) state.getVertex(), distance);
+        StopAtDistance sd = new StopAtDistance(tstop, distance);
         sd.geom = geometryFactory.createLineString(new PackedCoordinateSequence.Double(coordinates.toCoordinateArray()));
         sd.edges = edges;
         return sd;
     }
 
-
 }
@@ -0,0 +1,34 @@
+package org.opentripplanner.graph_builder.module;
+
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.profile.StopTreeCache;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.GraphIndex;
+
+import java.util.HashMap;
+
+/**
+ * Precompute the distances from every transit stop to the nearby street vertices and store them in the graph, so
+ * that they do not have to be computed each time the graph is loaded by a server doing analysis.
+ *
+ * This must run after the stops have been linked to the streets.
+ *
+ * @see StopTreeCache
+ */
+public class StopTreeCacheModule implements GraphBuilderModule {
+
+    @Override
+    public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+        /* Initialize graph index which is needed to find the stops. */
+        if (graph.index == null) {
+            graph.index = new GraphIndex(graph);
+        }
+        graph.stopTreeCache = new StopTreeCache(graph, GraphIndex.MAX_WALK_METERS);
+    }
+
+    @Override
+    public void checkInputs() {
+        // No inputs
+    }
+
+}
@@ -38,7 +38,9 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.opentripplanner.util.ElevationUtils.computeEllipsoidToGeoidDifference;
@@ -117,6 +119,22 @@ public class ElevationModule implements GraphBuilderModule {
 
     private ThreadLocal<Coverage> coverageInterpolatorThreadLocal = new ThreadLocal<>();
 
+    /** The elevation samples taken by each thread, for reporting the sampling throughput. */
+    private final ConcurrentHashMap<String, SampleCounter> sampleCountersByThread = new ConcurrentHashMap<>();
+
+    private final ThreadLocal<SampleCounter> sampleCounter = ThreadLocal.withInitial(() -> {
+        SampleCounter counter = new SampleCounter();
+        sampleCountersByThread.put(Thread.currentThread().getName(), counter);
+        return counter;
+    });
+
+    /** Only updated by the thread it belongs to, and read once all the edges have been processed. */
+    private static class SampleCounter {
+        long edges;
+        long samples;
+        long nanos;
+    }
+
     /** used only for testing purposes */
     public ElevationModule(ElevationGridCoverageFactory factory) {
         this(
@@ -209,6 +227,8 @@ public class ElevationModule implements GraphBuilderModule {
             }
         }
 
+        logSampleThroughput();
+
         double failurePercentage = nPointsOutsideDEM.get() / nPointsEvaluated.get() * 100;
         if (failurePercentage > 50) {
             log.warn(graph.addBuilderAnnotation(new Graphwide(
@@ -504,6 +524,8 @@ public class ElevationModule implements GraphBuilderModule {
         // Needs full calculation. Calculate with a thread-specific coverage instance to avoid waiting for any locks on
         // coverage instances in other threads.
         Coverage coverage = getThreadSpecificCoverageInterpolator();
+        SampleCounter counter = sampleCounter.get();
+        long startTime = System.nanoTime();
 
         // did not find a cached value, calculate
         // If any of the coordinates throw an error when trying to lookup their value, immediately bail and do not
@@ -569,7 +591,23 @@ public class ElevationModule implements GraphBuilderModule {
             setEdgeElevationProfile(ee, elevPCS, graph);
         } catch (PointOutsideCoverageException | TransformException e) {
             log.debug("Error processing elevation for edge: {} due to error: {}", ee, e);
+        } finally {
+            counter.edges++;
+            counter.nanos += System.nanoTime() - startTime;
+        }
+    }
+
+    /** Log how many elevation samples each thread took, and how fast. */
+    private void logSampleThroughput() {
+        long totalSamples = 0;
+        for (Map.Entry<String, SampleCounter> entry : sampleCountersByThread.entrySet()) {
+            SampleCounter counter = entry.getValue();
+            totalSamples += counter.samples;
+            long millis = TimeUnit.NANOSECONDS.toMillis(counter.nanos);
+            log.info("Thread {} sampled {} edges, {} points in {} msec ({} points/sec)", entry.getKey(), counter.edges,
+                counter.samples, millis, millis == 0 ? counter.samples : counter.samples * 1000 / millis);
         }
+        log.info("Sampled {} elevation points with {} threads", totalSamples, sampleCountersByThread.size());
     }
 
     /**
@@ -652,6 +690,7 @@ public class ElevationModule implements GraphBuilderModule {
             throw e;
         }
         nPointsEvaluated.incrementAndGet();
+        sampleCounter.get().samples++;
         return (values[0] * elevationUnitMultiplier) -
             (includeEllipsoidToGeoidDifference ? getApproximateEllipsoidToGeoidDifference(y, x) : 0);
     }
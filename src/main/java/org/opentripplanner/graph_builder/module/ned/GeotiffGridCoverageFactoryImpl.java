@@ -5,6 +5,7 @@ import org.geotools.coverage.grid.Interpolator2D;
 import org.geotools.factory.Hints;
 import org.geotools.gce.geotiff.GeoTiffFormat;
 import org.geotools.gce.geotiff.GeoTiffReader;
+import org.opengis.coverage.Coverage;
 import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFactory;
 import org.opentripplanner.routing.graph.Graph;
 import org.slf4j.Logger;
@@ -25,18 +26,42 @@ public class GeotiffGridCoverageFactoryImpl implements ElevationGridCoverageFact
 
     private GridCoverage2D coverage;
 
+    /** If not null, the raster is memory-mapped from a flat copy kept in this directory, see MappedGridCoverage. */
+    public File mappedGridDirectory = null;
+
+    private MappedGridCoverage mappedCoverage;
+
+    private boolean mappingAttempted = false;
+
     public GeotiffGridCoverageFactoryImpl(File path) {
         this.path = path;
     }
 
     /**
-     * Wraps the underlying grid coverage instance with an interpolator that can be used in a specific thread.
+     * Wraps the underlying grid coverage instance with an interpolator that can be used in a specific thread. If the
+     * raster is memory-mapped, the same mapped coverage is returned to all threads instead.
      */
     @Override
-    public GridCoverage2D getGridCoverage() {
+    public Coverage getGridCoverage() {
+        MappedGridCoverage mapped = getMappedGridCoverage();
+        if (mapped != null) {
+            return mapped;
+        }
         return Interpolator2D.create(getUninterpolatedGridCoverage(), new InterpolationBilinear());
     }
 
+    /**
+     * @return the memory-mapped coverage of the raster, or null if mapping is not enabled or the raster cannot be
+     * mapped, in which case the GeoTools coverage is used.
+     */
+    public synchronized MappedGridCoverage getMappedGridCoverage() {
+        if (mappedGridDirectory != null && !mappingAttempted) {
+            mappedCoverage = MappedGridCoverage.forRaster(path, mappedGridDirectory, this::getUninterpolatedGridCoverage);
+            mappingAttempted = true;
+        }
+        return mappedCoverage;
+    }
+
     /**
      * Lazy-creates a GridCoverage2D instance by loading the specific elevation file into memory. During a refactor in
      * the year 2020, the code at one point was written such that each coverage instance was created and wrapped in the
@@ -0,0 +1,252 @@
+package org.opentripplanner.graph_builder.module.ned;
+
+import org.geotools.coverage.AbstractCoverage;
+import org.geotools.coverage.GridSampleDimension;
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.CRS;
+import org.opengis.coverage.CannotEvaluateException;
+import org.opengis.coverage.PointOutsideCoverageException;
+import org.opengis.coverage.SampleDimension;
+import org.opengis.geometry.DirectPosition;
+import org.opengis.geometry.Envelope;
+import org.opengis.metadata.spatial.PixelOrientation;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+import org.opengis.referencing.crs.GeographicCRS;
+import org.opengis.referencing.operation.MathTransform;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.function.Supplier;
+
+/**
+ * An elevation raster stored as a flat file of floats, which is memory-mapped and interpolated bilinearly without
+ * going through GeoTools. Unlike the GeoTools Interpolator2D, it has no synchronized methods, so a single instance
+ * is shared by all the elevation threads, and the operating system pages the samples in as needed instead of
+ * holding whole tiles in the heap.
+ *
+ * The flat file is written from a GeoTools coverage the first time a raster is used and kept in a cache directory,
+ * so later graph builds do not decode the GeoTIFF at all. Only unrotated rasters in longitude-first geographic
+ * coordinates, such as NED and SRTM tiles, are supported: the elevation module evaluates coverages at WGS84
+ * coordinates, and a geographic raster is sampled at the same longitude and latitude without any datum shift.
+ */
+public class MappedGridCoverage extends AbstractCoverage {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedGridCoverage.class);
+
+    /** "OTPG", followed by the format version. */
+    private static final int MAGIC = 0x4f545047;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_BYTES = 64;
+
+    /** The number of rows copied from the GeoTools image at once when writing the flat file. */
+    private static final int STRIP_ROWS = 256;
+
+    private final int width;
+
+    private final int height;
+
+    /** The longitude and latitude of the upper left corner of the upper left pixel. */
+    private final double originX, originY;
+
+    /** The size of a pixel in degrees, pixelHeight being negative for north-up rasters. */
+    private final double pixelWidth, pixelHeight;
+
+    /** NaN if the raster has no "no data" value. */
+    private final float noData;
+
+    private final transient MappedByteBuffer samples;
+
+    private MappedGridCoverage(File file) throws IOException {
+        super(file.getName(), GeometryUtils.WGS84_XY, null, null);
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            samples = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        }
+        samples.order(ByteOrder.nativeOrder());
+        if (samples.getInt(0) != MAGIC || samples.getInt(4) != VERSION) {
+            throw new IOException("Not a mapped elevation grid: " + file);
+        }
+        width = samples.getInt(8);
+        height = samples.getInt(12);
+        originX = samples.getDouble(16);
+        originY = samples.getDouble(24);
+        pixelWidth = samples.getDouble(32);
+        pixelHeight = samples.getDouble(40);
+        noData = samples.getFloat(48);
+        if (samples.capacity() != HEADER_BYTES + 4L * width * height) {
+            throw new IOException("Truncated mapped elevation grid: " + file);
+        }
+    }
+
+    /**
+     * Map the flat file of a raster, writing it first from the GeoTools coverage if it does not exist yet.
+     *
+     * @param source the raster file the coverage was read from, used to name the flat file and detect changes
+     * @param directory the directory where the flat files are kept
+     * @param coverage supplies the coverage of the raster if the flat file must be written
+     * @return the mapped coverage, or null if the raster cannot be mapped, in which case the GeoTools coverage should
+     * be used as before.
+     */
+    public static MappedGridCoverage forRaster(File source, File directory,
+                                               Supplier<GridCoverage2D> coverage) {
+        File file = new File(directory, String.format("%s-%x-%x.grid", source.getName(), source.length(),
+                source.lastModified()));
+        try {
+            if (!file.exists()) {
+                if (!directory.exists() && !directory.mkdirs()) {
+                    throw new IOException("Cannot create directory " + directory);
+                }
+                if (!write(coverage.get(), file)) {
+                    return null;
+                }
+            }
+            return new MappedGridCoverage(file);
+        } catch (IOException e) {
+            LOG.warn("Cannot memory-map elevation raster {}, using GeoTools instead: {}", source, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Write the samples of the first band of a coverage as a flat file, through a temporary file so that an
+     * interrupted build does not leave a partial file behind.
+     * @return false if the coverage is not in geographic coordinates or is too large to be mapped.
+     */
+    static boolean write(GridCoverage2D coverage, File file) throws IOException {
+        CoordinateReferenceSystem crs = coverage.getCoordinateReferenceSystem2D();
+        if (!(crs instanceof GeographicCRS) || CRS.getAxisOrder(crs) != CRS.AxisOrder.EAST_NORTH) {
+            LOG.info("Elevation raster {} is not in longitude-first geographic coordinates, it will not be mapped.",
+                    coverage.getName());
+            return false;
+        }
+        MathTransform gridToCrs = coverage.getGridGeometry().getGridToCRS2D(PixelOrientation.UPPER_LEFT);
+        if (!(gridToCrs instanceof AffineTransform)) return false;
+        AffineTransform affine = (AffineTransform) gridToCrs;
+        if (affine.getShearX() != 0 || affine.getShearY() != 0) return false;
+
+        RenderedImage image = coverage.getRenderedImage();
+        int width = image.getWidth();
+        int height = image.getHeight();
+        long bytes = HEADER_BYTES + 4L * width * height;
+        if (bytes > Integer.MAX_VALUE) {
+            LOG.info("Elevation raster {} is too large to be mapped.", coverage.getName());
+            return false;
+        }
+        double[] noDataValues = coverage.getSampleDimension(0).getNoDataValues();
+        float noData = noDataValues == null || noDataValues.length == 0 ? Float.NaN : (float) noDataValues[0];
+
+        long startTime = System.currentTimeMillis();
+        File tmp = new File(file.getPath() + ".tmp");
+        try (RandomAccessFile raf = new RandomAccessFile(tmp, "rw")) {
+            raf.setLength(bytes);
+            MappedByteBuffer out = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+            out.order(ByteOrder.nativeOrder());
+            out.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height);
+            // Grid coordinates of the image may not start at zero.
+            out.putDouble(affine.getTranslateX() + affine.getScaleX() * image.getMinX());
+            out.putDouble(affine.getTranslateY() + affine.getScaleY() * image.getMinY());
+            out.putDouble(affine.getScaleX());
+            out.putDouble(affine.getScaleY());
+            out.putFloat(noData);
+            out.position(HEADER_BYTES);
+            float[] strip = new float[width * STRIP_ROWS];
+            for (int row = 0; row < height; row += STRIP_ROWS) {
+                int rows = Math.min(STRIP_ROWS, height - row);
+                Rectangle rect = new Rectangle(image.getMinX(), image.getMinY() + row, width, rows);
+                Raster raster = image.getData(rect);
+                raster.getSamples(rect.x, rect.y, width, rows, 0, strip);
+                out.asFloatBuffer().put(strip, 0, width * rows);
+                out.position(out.position() + 4 * width * rows);
+            }
+            out.force();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        LOG.info("Wrote {}x{} elevation grid {} in {} msec.", width, height, file.getName(),
+                System.currentTimeMillis() - startTime);
+        return true;
+    }
+
+    private float sample(int x, int y) {
+        return samples.getFloat(HEADER_BYTES + 4 * (y * width + x));
+    }
+
+    private boolean isNoData(float value) {
+        return Float.isNaN(value) || value == noData;
+    }
+
+    /**
+     * Interpolate bilinearly between the centers of the four pixels around the point, like Interpolator2D with
+     * InterpolationBilinear. Within half a pixel of the edge of the raster, the edge pixels are used.
+     *
+     * @throws PointOutsideCoverageException if the point is outside the raster or next to a pixel without data.
+     */
+    @Override
+    public double[] evaluate(DirectPosition point, double[] values) throws CannotEvaluateException {
+        double px = (point.getOrdinate(0) - originX) / pixelWidth;
+        double py = (point.getOrdinate(1) - originY) / pixelHeight;
+        if (!(px >= 0 && px < width && py >= 0 && py < height)) {
+            throw new PointOutsideCoverageException("Point not found: " + point);
+        }
+        double gx = Math.min(Math.max(px - 0.5, 0), width - 1);
+        double gy = Math.min(Math.max(py - 0.5, 0), height - 1);
+        int x0 = (int) gx;
+        int y0 = (int) gy;
+        int x1 = Math.min(x0 + 1, width - 1);
+        int y1 = Math.min(y0 + 1, height - 1);
+        double fx = gx - x0;
+        double fy = gy - y0;
+        float v00 = sample(x0, y0);
+        float v10 = sample(x1, y0);
+        float v01 = sample(x0, y1);
+        float v11 = sample(x1, y1);
+        if (isNoData(v00) || isNoData(v10) || isNoData(v01) || isNoData(v11)) {
+            throw new PointOutsideCoverageException("No elevation data at " + point);
+        }
+        double top = v00 + (v10 - v00) * fx;
+        double bottom = v01 + (v11 - v01) * fx;
+        if (values == null) values = new double[1];
+        values[0] = top + (bottom - top) * fy;
+        return values;
+    }
+
+    @Override
+    public Object evaluate(DirectPosition point) throws CannotEvaluateException {
+        return evaluate(point, (double[]) null);
+    }
+
+    @Override
+    public Envelope getEnvelope() {
+        double x1 = originX + width * pixelWidth;
+        double y1 = originY + height * pixelHeight;
+        return new ReferencedEnvelope(Math.min(originX, x1), Math.max(originX, x1), Math.min(originY, y1),
+                Math.max(originY, y1), GeometryUtils.WGS84_XY);
+    }
+
+    @Override
+    public int getNumSampleDimensions() {
+        return 1;
+    }
+
+    @Override
+    public SampleDimension getSampleDimension(int index) throws IndexOutOfBoundsException {
+        if (index != 0) throw new IndexOutOfBoundsException();
+        return new GridSampleDimension("elevation");
+    }
+}
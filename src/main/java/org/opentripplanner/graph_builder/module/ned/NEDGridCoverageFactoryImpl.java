@@ -2,6 +2,7 @@ package org.opentripplanner.graph_builder.module.ned;
 
 import com.google.common.io.ByteStreams;
 import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.Interpolator2D;
 import org.opengis.coverage.Coverage;
 import org.opentripplanner.graph_builder.services.ned.ElevationGridCoverageFactory;
 import org.opentripplanner.graph_builder.services.ned.NEDTileSource;
@@ -9,6 +10,7 @@ import org.opentripplanner.routing.graph.Graph;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.media.jai.InterpolationBilinear;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -33,7 +35,11 @@ public class NEDGridCoverageFactoryImpl implements ElevationGridCoverageFactory
 
     private List<VerticalDatum> datums;
 
-    private List<GridCoverage2D> regionCoverages = new ArrayList<>();
+    /** The uninterpolated GeoTools coverages or the memory-mapped coverages of the tiles. */
+    private List<Coverage> regionCoverages = new ArrayList<>();
+
+    /** If not null, the tiles are memory-mapped from flat copies kept in this directory, see MappedGridCoverage. */
+    public File mappedGridDirectory = null;
 
     public NEDGridCoverageFactoryImpl(File cacheDirectory) {
         this.cacheDirectory = cacheDirectory;
@@ -108,6 +114,8 @@ public class NEDGridCoverageFactoryImpl implements ElevationGridCoverageFactory
      * that a new UnifiedGridCoverage instance was created with unique tile data for each thread to use. However,
      * benchmarking showed that this caused longer run times which is likely due to too much memory competing for a slot
      * in the processor cache.
+     *
+     * Memory-mapped tiles have no synchronized methods, so they are shared by all threads as they are.
      */
     public Coverage getGridCoverage() {
         // If the tile data hasn't been loaded into memory yet, do that now.
@@ -117,12 +125,21 @@ public class NEDGridCoverageFactoryImpl implements ElevationGridCoverageFactory
             // wrapped with thread-specific interpolators.
             for (File path : tileSource.getNEDTiles()) {
                 GeotiffGridCoverageFactoryImpl factory = new GeotiffGridCoverageFactoryImpl(path);
-                regionCoverages.add(factory.getUninterpolatedGridCoverage());
+                factory.mappedGridDirectory = mappedGridDirectory;
+                MappedGridCoverage mapped = factory.getMappedGridCoverage();
+                regionCoverages.add(mapped != null ? mapped : factory.getUninterpolatedGridCoverage());
             }
         }
 
         // Create a new UnifiedGridCoverage using the shared region coverages.
-        return new UnifiedGridCoverage(regionCoverages, datums);
+        List<Coverage> regionInterpolators = new ArrayList<>();
+        for (Coverage regionCoverage : regionCoverages) {
+            // TODO might bicubic interpolation give better results?
+            regionInterpolators.add(regionCoverage instanceof GridCoverage2D
+                ? Interpolator2D.create((GridCoverage2D) regionCoverage, new InterpolationBilinear())
+                : regionCoverage);
+        }
+        return new UnifiedGridCoverage(regionInterpolators, datums);
     }
 
     /**
@@ -1,8 +1,6 @@
 package org.opentripplanner.graph_builder.module.ned;
 
 import org.geotools.coverage.AbstractCoverage;
-import org.geotools.coverage.grid.GridCoverage2D;
-import org.geotools.coverage.grid.Interpolator2D;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
@@ -16,7 +14,6 @@ import org.opengis.geometry.DirectPosition;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.media.jai.InterpolationBilinear;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -47,21 +44,17 @@ public class UnifiedGridCoverage extends AbstractCoverage {
      * It would be nice if we could construct this unified coverage with zero sub-coverages and add all sub-coverages
      * in the same way. However, the superclass constructor (AbstractCoverage) needs a coverage to copy properties from.
      * So the first sub-coverage needs to be passed in at construction time.
+     *
+     * @param regionCoverages coverages which interpolate between their samples, such as GeoTools Interpolator2D or
+     *                        MappedGridCoverage instances.
      */
-    protected UnifiedGridCoverage(List<GridCoverage2D> regionCoverages, List<VerticalDatum> datums) {
+    protected UnifiedGridCoverage(List<? extends Coverage> regionCoverages, List<VerticalDatum> datums) {
         super("unified", regionCoverages.get(0));
         regions = new ArrayList<>();
         datumRegionIndex = new STRtree();
 
-        // Iterate through region coverages, creating Interpolators for each region and then adding them and the
-        // intersected datum to the spatial index.
-        for (GridCoverage2D regionCoverage : regionCoverages) {
-            // TODO might bicubic interpolation give better results?
-            GridCoverage2D regionCoverageInterpolator = Interpolator2D.create(
-                regionCoverage,
-                new InterpolationBilinear()
-            );
-
+        // Iterate through region coverages, adding them and the intersected datum to the spatial index.
+        for (Coverage regionCoverage : regionCoverages) {
             // Iterate over datums to find intersection envelope with each region and add to spatial index.
             for (VerticalDatum datum : datums) {
                 Envelope datumEnvelope = new Envelope(
@@ -70,11 +63,11 @@ public class UnifiedGridCoverage extends AbstractCoverage {
                     datum.lowerLeftLatitude,
                     datum.lowerLeftLatitude + datum.deltaLatitude
                 );
-                ReferencedEnvelope regionEnvelope = new ReferencedEnvelope(regionCoverageInterpolator.getEnvelope());
+                ReferencedEnvelope regionEnvelope = new ReferencedEnvelope(regionCoverage.getEnvelope());
                 Envelope intersection = regionEnvelope.intersection(datumEnvelope);
-                datumRegionIndex.insert(intersection, new DatumRegion(datum, regionCoverageInterpolator));
+                datumRegionIndex.insert(intersection, new DatumRegion(datum, regionCoverage));
             }
-            regions.add(regionCoverageInterpolator);
+            regions.add(regionCoverage);
         }
     }
 
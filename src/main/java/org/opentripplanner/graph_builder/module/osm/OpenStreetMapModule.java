@@ -167,6 +167,7 @@ public class OpenStreetMapModule implements GraphBuilderModule {
         }
         LOG.info("Building street graph from OSM");
         handler.buildGraph(extra);
+        wayPropertySet.logMatchCacheStats();
         graph.hasStreets = true;
         //Calculates envelope for OSM
         graph.calculateEnvelope();
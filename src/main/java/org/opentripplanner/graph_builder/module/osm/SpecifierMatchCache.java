@@ -0,0 +1,108 @@
+package org.opentripplanner.graph_builder.module.osm;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import org.opentripplanner.common.model.P2;
+import org.opentripplanner.openstreetmap.model.OSMWithTags;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Memoizes a function of an OSM entity which only depends on how a list of OSMSpecifiers match its tags, such as
+ * which WayPropertyPicker wins for a way. The function is only evaluated once for each combination of the values of
+ * the tags the specifiers look at, its signature. There are millions of ways but few distinct signatures, as most
+ * tags of a way (names, references...) are not looked at by any specifier.
+ *
+ * Tags which are only matched against wildcards only count by their presence in the signature. Safe for use by
+ * several threads: two threads may evaluate the function for the same signature at the same time, which is harmless
+ * as they get the same result.
+ */
+class SpecifierMatchCache<V> {
+
+    private static final int MAX_SIGNATURES = 100000;
+
+    /** Stands for the value of tags which only count by their presence. */
+    private static final String PRESENT = "*";
+
+    private final String name;
+
+    /** The tags making up the signature, in lower case like in OSMSpecifier. */
+    private final String[] tags;
+
+    private final boolean[] presenceOnly;
+
+    private final Cache<List<String>, V> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_SIGNATURES)
+            .recordStats()
+            .build();
+
+    /**
+     * @param sided whether the function uses OSMSpecifier.matchScores, which also looks at the :left and :right
+     *              variants of each tag.
+     */
+    SpecifierMatchCache(String name, List<OSMSpecifier> specifiers, boolean sided) {
+        this.name = name;
+        Map<String, Boolean> wildcardOnly = new LinkedHashMap<>();
+        for (OSMSpecifier specifier : specifiers) {
+            for (P2<String> pair : specifier.kvpairs) {
+                boolean wildcard = pair.second.toLowerCase().equals("*");
+                wildcardOnly.merge(pair.first.toLowerCase(), wildcard, Boolean::logicalAnd);
+            }
+        }
+        List<String> tagList = new ArrayList<>();
+        List<Boolean> presenceList = new ArrayList<>();
+        for (Map.Entry<String, Boolean> entry : wildcardOnly.entrySet()) {
+            tagList.add(entry.getKey());
+            presenceList.add(entry.getValue());
+            if (sided) {
+                tagList.add(entry.getKey() + ":left");
+                presenceList.add(entry.getValue());
+                tagList.add(entry.getKey() + ":right");
+                presenceList.add(entry.getValue());
+            }
+        }
+        tags = tagList.toArray(new String[0]);
+        presenceOnly = new boolean[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            presenceOnly[i] = presenceList.get(i);
+        }
+    }
+
+    /** @return the cached result of the function for the signature of the entity, evaluating it on a miss. */
+    V get(OSMWithTags entity, Function<OSMWithTags, V> function) {
+        List<String> signature = signature(entity);
+        V value = cache.getIfPresent(signature);
+        if (value == null) {
+            value = function.apply(entity);
+            cache.put(signature, value);
+        }
+        return value;
+    }
+
+    List<String> signature(OSMWithTags entity) {
+        String[] values = new String[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            String value = entity.getTag(tags[i]);
+            values[i] = presenceOnly[i] && value != null ? PRESENT : value;
+        }
+        return Arrays.asList(values);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    long size() {
+        return cache.size();
+    }
+
+    CacheStats stats() {
+        return cache.stats();
+    }
+}
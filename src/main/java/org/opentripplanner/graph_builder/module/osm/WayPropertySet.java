@@ -1,14 +1,17 @@
 package org.opentripplanner.graph_builder.module.osm;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Optional;
 import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.google.common.cache.CacheStats;
 import org.opentripplanner.common.model.P2;
 import org.opentripplanner.common.model.T2;
 import org.opentripplanner.openstreetmap.model.OSMWithTags;
@@ -26,6 +29,10 @@ import org.opentripplanner.util.I18NString;
  * WayPropertyPickers, CreativeNamePickers, SlopeOverridePickers, and SpeedPickers are applied to ways based on how well
  * their OSMSpecifiers match a given OSM way. Generally one OSMSpecifier will win out over all the others based on the
  * number of exact, partial, and wildcard tag matches. See OSMSpecifier for more details on the matching process.
+ *
+ * Which pickers match a way is memoized by the values of the tags the pickers look at, see SpecifierMatchCache, so
+ * the pickers are only evaluated once for each combination of those tags. The caches are dropped whenever pickers
+ * are added.
  */
 public class WayPropertySet {
     private static Logger LOG = LoggerFactory.getLogger(WayPropertySet.class);
@@ -52,6 +59,39 @@ public class WayPropertySet {
 
     public WayPropertySetSource base;
 
+    /** The picker matches of each kind, memoized by tag signature. */
+    private class MatchCaches {
+        final SpecifierMatchCache<WayProperties> properties;
+        final SpecifierMatchCache<Optional<CreativeNamer>> names;
+        final SpecifierMatchCache<Boolean> slopes;
+        final SpecifierMatchCache<Optional<Float>> speeds;
+        final SpecifierMatchCache<List<NoteProperties>> noteProperties;
+
+        MatchCaches() {
+            List<OSMSpecifier> specifiers = new ArrayList<>();
+            wayProperties.forEach(picker -> specifiers.add(picker.getSpecifier()));
+            properties = new SpecifierMatchCache<>("way properties", specifiers, true);
+            specifiers.clear();
+            creativeNamers.forEach(picker -> specifiers.add(picker.specifier));
+            names = new SpecifierMatchCache<>("creative names", specifiers, false);
+            specifiers.clear();
+            slopeOverrides.forEach(picker -> specifiers.add(picker.getSpecifier()));
+            slopes = new SpecifierMatchCache<>("slope overrides", specifiers, false);
+            specifiers.clear();
+            speedPickers.forEach(picker -> specifiers.add(picker.specifier));
+            speeds = new SpecifierMatchCache<>("car speeds", specifiers, false);
+            specifiers.clear();
+            notes.forEach(picker -> specifiers.add(picker.specifier));
+            noteProperties = new SpecifierMatchCache<>("notes", specifiers, false);
+        }
+
+        List<SpecifierMatchCache<?>> all() {
+            return Arrays.asList(properties, names, slopes, speeds, noteProperties);
+        }
+    }
+
+    private volatile MatchCaches matchCaches;
+
     public WayPropertySet() {
         /* sensible defaults */
         defaultProperties = new WayProperties();
@@ -68,11 +108,34 @@ public class WayPropertySet {
         maxSpeedPattern = Pattern.compile("^([0-9][\\.0-9]+?)(?:[ ]?(kmh|km/h|kmph|kph|mph|knots))?$");
     }
 
+    private MatchCaches getMatchCaches() {
+        MatchCaches caches = matchCaches;
+        if (caches == null) {
+            synchronized (this) {
+                if (matchCaches == null) {
+                    matchCaches = new MatchCaches();
+                }
+                caches = matchCaches;
+            }
+        }
+        return caches;
+    }
+
+    /** Drop the memoized matches, as they may no longer be valid when pickers are added. */
+    private void clearMatchCaches() {
+        matchCaches = null;
+    }
+
     /**
      * Applies the WayProperties whose OSMPicker best matches this way. In addition, WayProperties that are mixins
      * will have their safety values applied if they match at all.
      */
     public WayProperties getDataForWay(OSMWithTags way) {
+        // Callers may modify the properties they get.
+        return getMatchCaches().properties.get(way, this::computeDataForWay).clone();
+    }
+
+    private WayProperties computeDataForWay(OSMWithTags way) {
         WayProperties leftResult = defaultProperties;
         WayProperties rightResult = defaultProperties;
         int bestLeftScore = 0;
@@ -156,6 +219,14 @@ public class WayPropertySet {
     }
 
     public I18NString getCreativeNameForWay(OSMWithTags way) {
+        CreativeNamer bestNamer = getMatchCaches().names.get(way, this::findCreativeNamer).orElse(null);
+        if (bestNamer == null) {
+            return null;
+        }
+        return bestNamer.generateCreativeName(way);
+    }
+
+    private Optional<CreativeNamer> findCreativeNamer(OSMWithTags way) {
         CreativeNamer bestNamer = null;
         int bestScore = 0;
         for (CreativeNamerPicker picker : creativeNamers) {
@@ -167,10 +238,7 @@ public class WayPropertySet {
                 bestScore = score;
             }
         }
-        if (bestNamer == null) {
-            return null;
-        }
-        return bestNamer.generateCreativeName(way);
+        return Optional.ofNullable(bestNamer);
     }
     
     /**
@@ -214,7 +282,15 @@ public class WayPropertySet {
             return speed;
                     
         // otherwise, we use the speedPickers
+        Float bestSpeed = getMatchCaches().speeds.get(way, this::findSpeedPickerSpeed).orElse(null);
         
+        if (bestSpeed != null)
+            return bestSpeed;
+        else
+            return this.defaultSpeed;
+    }
+
+    private Optional<Float> findSpeedPickerSpeed(OSMWithTags way) {
         int bestScore = 0;
         Float bestSpeed = null;
         int score;
@@ -229,29 +305,37 @@ public class WayPropertySet {
                 bestSpeed = picker.speed;
             }
         }
-        
-        if (bestSpeed != null)
-            return bestSpeed;
-        else
-            return this.defaultSpeed;
+        return Optional.ofNullable(bestSpeed);
     }
 
     public Set<T2<Alert, NoteMatcher>> getNoteForWay(OSMWithTags way) {
         HashSet<T2<Alert, NoteMatcher>> out = new HashSet<>();
+        for (NoteProperties noteProperties : getMatchCaches().noteProperties.get(way, this::findNotes)) {
+            out.add(noteProperties.generateNote(way));
+        }
+        if (out.size() == 0) {
+            return null;
+        }
+        return out;
+    }
+
+    private List<NoteProperties> findNotes(OSMWithTags way) {
+        List<NoteProperties> out = new ArrayList<>();
         for (NotePicker picker : notes) {
             OSMSpecifier specifier = picker.specifier;
             NoteProperties noteProperties = picker.noteProperties;
             if (specifier.matchScore(way) > 0) {
-                out.add(noteProperties.generateNote(way));
+                out.add(noteProperties);
             }
         }
-        if (out.size() == 0) {
-            return null;
-        }
         return out;
     }
 
     public boolean getSlopeOverride(OSMWithTags way) {
+        return getMatchCaches().slopes.get(way, this::computeSlopeOverride);
+    }
+
+    private Boolean computeSlopeOverride(OSMWithTags way) {
         boolean result = false;
         int bestScore = 0;
         for (SlopeOverridePicker picker : slopeOverrides) {
@@ -267,22 +351,42 @@ public class WayPropertySet {
 
     public void addProperties(OSMSpecifier spec, WayProperties properties, boolean mixin) {
         wayProperties.add(new WayPropertyPicker(spec, properties, mixin));
+        clearMatchCaches();
     }
 
     public void addProperties(OSMSpecifier spec, WayProperties properties) {
-        wayProperties.add(new WayPropertyPicker(spec, properties, false));
+        addProperties(spec, properties, false);
     }
 
     public void addCreativeNamer(OSMSpecifier spec, CreativeNamer namer) {
         creativeNamers.add(new CreativeNamerPicker(spec, namer));
+        clearMatchCaches();
     }
 
     public void addNote(OSMSpecifier osmSpecifier, NoteProperties properties) {
         notes.add(new NotePicker(osmSpecifier, properties));
+        clearMatchCaches();
     }
 
     public void setSlopeOverride(OSMSpecifier spec, boolean override) {
         slopeOverrides.add(new SlopeOverridePicker(spec, override));
+        clearMatchCaches();
+    }
+
+    /** Log how often the memoized picker matches were reused. */
+    public void logMatchCacheStats() {
+        MatchCaches caches = matchCaches;
+        if (caches == null) {
+            return;
+        }
+        for (SpecifierMatchCache<?> cache : caches.all()) {
+            CacheStats stats = cache.stats();
+            if (stats.requestCount() == 0) {
+                continue;
+            }
+            LOG.info("Matched {} for {} OSM entities with {} distinct tag signatures, hit rate {}%.",
+                    cache.getName(), stats.requestCount(), cache.size(), Math.round(stats.hitRate() * 100));
+        }
     }
 
     public boolean equals(Object o) {
@@ -303,6 +407,7 @@ public class WayPropertySet {
 
     public void addSpeedPicker(SpeedPicker picker) {
         this.speedPickers.add(picker);
+        clearMatchCaches();
     }
     
     public Float getMetersSecondFromSpeed(String speed) {
@@ -1,6 +1,5 @@
 package org.opentripplanner.index;
 
-import org.opentripplanner.common.LuceneIndex;
 import org.opentripplanner.routing.graph.GraphIndex;
 import org.opentripplanner.standalone.OTPServer;
 import org.opentripplanner.standalone.Router;
@@ -23,18 +22,11 @@ import javax.ws.rs.core.Response;
 @Produces(MediaType.APPLICATION_JSON)
 public class GeocoderResource {
 
-    private final LuceneIndex index;
+    private final GraphIndex index;
 
     public GeocoderResource (@Context OTPServer otpServer, @PathParam("routerId") String routerId) {
         Router router = otpServer.getRouter(routerId);
-        GraphIndex graphIndex = router.graph.index;
-        synchronized (graphIndex) {
-            if (graphIndex.luceneIndex == null) {
-                // Synchronously lazy-initialize the Lucene index
-                graphIndex.luceneIndex = new LuceneIndex(graphIndex, otpServer.basePath, false);
-            }
-            index = graphIndex.luceneIndex;
-        }
+        index = router.graph.index;
     }
 
     /**
@@ -54,7 +46,7 @@ public class GeocoderResource {
                                 @QueryParam("clusters") @DefaultValue("false") boolean clusters,
                                 @QueryParam("corners") @DefaultValue("true") boolean corners
                                 ) {
-        return Response.status(Response.Status.OK).entity(index.query(query, autocomplete, stops, clusters, corners)).build();
+        return Response.status(Response.Status.OK).entity(index.geocode(query, autocomplete, stops, clusters, corners)).build();
     }
 
 }
@@ -19,6 +19,7 @@ import graphql.schema.GraphQLOutputType;
 import graphql.schema.GraphQLSchema;
 import graphql.schema.GraphQLTypeReference;
 import graphql.schema.TypeResolver;
+import org.opentripplanner.common.GeocoderIndex;
 import org.opentripplanner.model.Agency;
 import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.model.Route;
@@ -855,13 +856,26 @@ public class IndexGraphQLSchema {
                     .name("ids")
                     .type(new GraphQLList(Scalars.GraphQLString))
                     .build())
+                .argument(GraphQLArgument.newArgument()
+                    .name("name")
+                    .description("Only return the stops whose name starts with these words, best matches first. "
+                        + "At most " + GeocoderIndex.MAX_RESULTS + " stops are returned.")
+                    .type(Scalars.GraphQLString)
+                    .build())
                 .dataFetcher(environment -> {
-                    if (!(environment.getArgument("ids") instanceof List)) {
+                    if (environment.getArgument("name") != null) {
+                        return index.geocode(environment.getArgument("name"), true, true, false, false)
+                            .stream()
+                            .map(result -> index.stopForId.get(GtfsLibrary.convertIdFromString(result.id)))
+                            .filter(Objects::nonNull)
+                            .collect(Collectors.toList());
+                    } else if (!(environment.getArgument("ids") instanceof List)) {
                         return new ArrayList<>(index.stopForId.values());
                     } else {
                         return ((List<String>) environment.getArgument("ids"))
                             .stream()
                             .map(id -> index.stopForId.get(GtfsLibrary.convertIdFromString(id)))
+                            .filter(Objects::nonNull)
                             .collect(Collectors.toList());
                     }
                 })
@@ -0,0 +1,204 @@
+package org.opentripplanner.inspector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A cache of rendered vector tiles, bounded in memory by the total size of the tiles, with an optional second level
+ * on disk. It is configured with the "vectorTiles" object of router-config.json:
+ *
+ * <pre>
+ * "vectorTiles": {
+ *     "cacheSizeMb": 64,               // size of the in-memory cache, 0 to disable it
+ *     "cacheDirectory": "/var/otp/tiles" // directory of the disk cache, none by default
+ * }
+ * </pre>
+ *
+ * There is one cache per router. As a new router is created each time a graph is (re)loaded, the tiles of the
+ * previous graph are never served for the new one. The disk cache of a router is in its own subdirectory of the
+ * cache directory, which is deleted when the router is shut down. The old router may still be serving and caching
+ * tiles while the new one is created, so only the subdirectories left by previous runs of OTP, which are not used
+ * by any cache of this process, are deleted when a cache is created.
+ */
+public class VectorTileCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VectorTileCache.class);
+
+    /** The default size of the in-memory cache, in megabytes. */
+    public static final int DEFAULT_CACHE_SIZE_MB = 64;
+
+    private final long maxBytes;
+
+    private long bytes = 0;
+
+    private final LinkedHashMap<String, byte[]> tiles = new LinkedHashMap<>(256, 0.75f, true);
+
+    /** The disk cache directories of all the caches of this process. */
+    private static final Set<File> directoriesInUse = ConcurrentHashMap.newKeySet();
+
+    /** Makes the names of disk cache directories unique, even for routers created within the same millisecond. */
+    private static final AtomicInteger directoryCount = new AtomicInteger();
+
+    /** The directory of the disk cache of this cache instance, or null if tiles are only cached in memory. */
+    private final File directory;
+
+    private long hits = 0, diskHits = 0, misses = 0;
+
+    /**
+     * @param maxBytes the maximum total size of the tiles kept in memory.
+     * @param directory the directory of the disk cache, which is created if needed, or null for no disk cache.
+     */
+    public VectorTileCache(long maxBytes, File directory) {
+        this.maxBytes = maxBytes;
+        if (directory != null && !directory.isDirectory() && !directory.mkdirs()) {
+            LOG.error("Could not create vector tile cache directory '{}', tiles will only be cached in memory.",
+                    directory);
+            directory = null;
+        }
+        this.directory = directory;
+        if (directory != null) directoriesInUse.add(directory.getAbsoluteFile());
+    }
+
+    /** Create the cache of a router from the router configuration. */
+    public static VectorTileCache fromConfig(String routerId, JsonNode config) {
+        JsonNode vectorTiles = config.path("vectorTiles");
+        long maxBytes = vectorTiles.path("cacheSizeMb").asLong(DEFAULT_CACHE_SIZE_MB) * 1024 * 1024;
+        String cacheDirectory = vectorTiles.path("cacheDirectory").asText(null);
+        File directory = null;
+        if (cacheDirectory != null) {
+            File routerDirectory = new File(cacheDirectory, routerId);
+            deleteUnusedDirectories(routerDirectory);
+            directory = new File(routerDirectory,
+                    System.currentTimeMillis() + "-" + directoryCount.incrementAndGet());
+        }
+        return new VectorTileCache(maxBytes, directory);
+    }
+
+    /** Delete the subdirectories of a router's disk cache directory which no cache of this process uses. */
+    private static void deleteUnusedDirectories(File routerDirectory) {
+        File[] files = routerDirectory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (directoriesInUse.contains(file.getAbsoluteFile())) continue;
+            LOG.info("Deleting vector tile cache directory '{}' left by a previous run.", file);
+            if (file.isDirectory()) deleteContents(file);
+            if (!file.delete()) LOG.debug("Could not delete '{}'", file);
+        }
+    }
+
+    /**
+     * Get a tile from the cache, or render it and cache it.
+     * @param key a key identifying the tile and its layers, which must be usable as a file name.
+     * @param renderer renders the tile if it is not cached.
+     */
+    public byte[] get(String key, Supplier<byte[]> renderer) {
+        byte[] tile;
+        synchronized (this) {
+            tile = tiles.get(key);
+            if (tile != null) {
+                hits++;
+                return tile;
+            }
+        }
+        tile = readFromDisk(key);
+        if (tile != null) {
+            synchronized (this) {
+                diskHits++;
+            }
+        } else {
+            // Tiles are rendered outside of the lock. Concurrent requests for the same tile may render it twice.
+            tile = renderer.get();
+            synchronized (this) {
+                misses++;
+            }
+            writeToDisk(key, tile);
+        }
+        put(key, tile);
+        return tile;
+    }
+
+    private synchronized void put(String key, byte[] tile) {
+        if (tile.length > maxBytes) return;
+        byte[] previous = tiles.put(key, tile);
+        if (previous != null) bytes -= previous.length;
+        bytes += tile.length;
+        // Evict the least recently used tiles.
+        Iterator<byte[]> it = tiles.values().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            bytes -= it.next().length;
+            it.remove();
+        }
+    }
+
+    private byte[] readFromDisk(String key) {
+        if (directory == null) return null;
+        File file = new File(directory, key);
+        if (!file.exists()) return null;
+        try {
+            return Files.readAllBytes(file.toPath());
+        } catch (IOException e) {
+            LOG.debug("Could not read cached tile '{}': {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, byte[] tile) {
+        if (directory == null) return;
+        try {
+            // Write to a temporary file first, so a partly written tile is never read.
+            File temp = File.createTempFile(key, ".tmp", directory);
+            Files.write(temp.toPath(), tile);
+            Files.move(temp.toPath(), new File(directory, key).toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // The directory is deleted when the router is shut down, possibly while a tile is being rendered.
+            LOG.debug("Could not cache tile '{}' on disk: {}", key, e.getMessage());
+        }
+    }
+
+    /** Empty the cache, including its disk directory. */
+    public void clear() {
+        synchronized (this) {
+            tiles.clear();
+            bytes = 0;
+        }
+        if (directory != null) {
+            deleteContents(directory);
+            directory.delete();
+            directoriesInUse.remove(directory.getAbsoluteFile());
+        }
+    }
+
+    /** @return the directory of the disk cache, or null if tiles are only cached in memory. */
+    File getDirectory() {
+        return directory;
+    }
+
+    /** @return the hit counts and size of this cache, for logging. */
+    public synchronized String getStatistics() {
+        return String.format("%d tiles (%d kB) in memory, %d memory hits, %d disk hits, %d misses", tiles.size(),
+                bytes / 1024, hits, diskHits, misses);
+    }
+
+    private static void deleteContents(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        for (File file : files) {
+            if (file.isDirectory()) deleteContents(file);
+            if (!file.delete()) LOG.debug("Could not delete '{}'", file);
+        }
+    }
+
+}
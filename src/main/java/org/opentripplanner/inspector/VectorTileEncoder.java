@@ -0,0 +1,185 @@
+package org.opentripplanner.inspector;
+
+import com.google.protobuf.CodedOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Encodes Mapbox Vector Tiles (version 2.1 of the specification, https://github.com/mapbox/vector-tile-spec).
+ *
+ * Coordinates are given in tile units, from 0 to {@link #EXTENT} on both axes with the origin at the top left corner
+ * of the tile. Coordinates outside of this range are allowed, clients clip the geometries to the tile. The messages
+ * are written directly with a CodedOutputStream, as in PlanProtobufWriter, so no generated classes are needed.
+ *
+ * An encoder is not thread-safe, one instance should be used per tile.
+ */
+public class VectorTileEncoder {
+
+    /** The number of tile units along each side of a tile. */
+    public static final int EXTENT = 4096;
+
+    private static final int GEOM_POINT = 1;
+
+    private static final int GEOM_LINESTRING = 2;
+
+    private static final int CMD_MOVE_TO = 1;
+
+    private static final int CMD_LINE_TO = 2;
+
+    private final List<Layer> layers = new ArrayList<>();
+
+    /** Add a new, empty layer to the tile. */
+    public Layer addLayer(String name) {
+        Layer layer = new Layer(name);
+        layers.add(layer);
+        return layer;
+    }
+
+    /** @return the encoded tile. Empty layers are left out. */
+    public byte[] encode() {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+            for (Layer layer : layers) {
+                if (layer.features.isEmpty()) continue;
+                out.writeByteArray(3, layer.encode());
+            }
+            out.flush();
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            // Only in-memory streams are used.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** A layer of a vector tile, with its features and the dictionaries of their attribute keys and values. */
+    public static class Layer {
+
+        private final String name;
+
+        private final Map<String, Integer> keys = new LinkedHashMap<>();
+
+        private final Map<Object, Integer> values = new LinkedHashMap<>();
+
+        private final List<byte[]> features = new ArrayList<>();
+
+        private Layer(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Add a point feature.
+         * @param attributes the attributes of the feature. Values are strings, numbers or booleans, nulls are skipped.
+         */
+        public void addPoint(int x, int y, Map<String, ?> attributes) {
+            addFeature(GEOM_POINT, new int[] { command(CMD_MOVE_TO, 1), zigZag(x), zigZag(y) }, attributes);
+        }
+
+        /**
+         * Add a line string feature, from the first n coordinates of the given arrays. Lines with less than two
+         * coordinates are skipped.
+         */
+        public void addLineString(int[] xs, int[] ys, int n, Map<String, ?> attributes) {
+            if (n < 2) return;
+            int[] geometry = new int[n * 2 + 2];
+            geometry[0] = command(CMD_MOVE_TO, 1);
+            geometry[1] = zigZag(xs[0]);
+            geometry[2] = zigZag(ys[0]);
+            geometry[3] = command(CMD_LINE_TO, n - 1);
+            for (int i = 1; i < n; i++) {
+                geometry[i * 2 + 2] = zigZag(xs[i] - xs[i - 1]);
+                geometry[i * 2 + 3] = zigZag(ys[i] - ys[i - 1]);
+            }
+            addFeature(GEOM_LINESTRING, geometry, attributes);
+        }
+
+        private void addFeature(int type, int[] geometry, Map<String, ?> attributes) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(geometry.length * 2 + 16);
+                CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+                List<Integer> tags = new ArrayList<>();
+                for (Map.Entry<String, ?> attribute : attributes.entrySet()) {
+                    if (attribute.getValue() == null) continue;
+                    tags.add(index(keys, attribute.getKey()));
+                    tags.add(index(values, attribute.getValue()));
+                }
+                writePacked(out, 2, tags.stream().mapToInt(Integer::intValue).toArray());
+                out.writeEnum(3, type);
+                writePacked(out, 4, geometry);
+                out.flush();
+                features.add(bytes.toByteArray());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private byte[] encode() throws IOException {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+            out.writeUInt32(15, 2);
+            out.writeString(1, name);
+            for (byte[] feature : features) {
+                out.writeByteArray(2, feature);
+            }
+            for (String key : keys.keySet()) {
+                out.writeString(3, key);
+            }
+            for (Object value : values.keySet()) {
+                ByteArrayOutputStream valueBytes = new ByteArrayOutputStream();
+                CodedOutputStream valueOut = CodedOutputStream.newInstance(valueBytes);
+                if (value instanceof Boolean) {
+                    valueOut.writeBool(7, (Boolean) value);
+                } else if (value instanceof Integer || value instanceof Long) {
+                    valueOut.writeSInt64(6, ((Number) value).longValue());
+                } else if (value instanceof Float) {
+                    valueOut.writeFloat(2, (Float) value);
+                } else if (value instanceof Number) {
+                    valueOut.writeDouble(3, ((Number) value).doubleValue());
+                } else {
+                    valueOut.writeString(1, value.toString());
+                }
+                valueOut.flush();
+                out.writeByteArray(4, valueBytes.toByteArray());
+            }
+            out.writeUInt32(5, EXTENT);
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        private static <T> int index(Map<T, Integer> dictionary, T entry) {
+            Integer index = dictionary.get(entry);
+            if (index == null) {
+                index = dictionary.size();
+                dictionary.put(entry, index);
+            }
+            return index;
+        }
+    }
+
+    private static void writePacked(CodedOutputStream out, int field, int[] values) throws IOException {
+        if (values.length == 0) return;
+        int size = 0;
+        for (int value : values) {
+            size += CodedOutputStream.computeUInt32SizeNoTag(value);
+        }
+        out.writeTag(field, 2); // Length-delimited wire type
+        out.writeUInt32NoTag(size);
+        for (int value : values) {
+            out.writeUInt32NoTag(value);
+        }
+    }
+
+    private static int command(int id, int count) {
+        return (id & 0x7) | (count << 3);
+    }
+
+    private static int zigZag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+
+}
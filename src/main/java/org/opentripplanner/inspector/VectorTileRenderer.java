@@ -0,0 +1,284 @@
+package org.opentripplanner.inspector;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.LineString;
+import org.opentripplanner.analyst.core.SlippyTile;
+import org.opentripplanner.common.geometry.CompactLineString;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.routing.edgetype.PatternHop;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Renders graph data as Mapbox Vector Tiles, to be styled by the client. This is much cheaper than rendering images
+ * with the TileRenderers, and one tile holds all the attributes the image layers are made of (permissions, bike
+ * safety, wheelchair accessibility).
+ *
+ * The available layers are:
+ * <ul>
+ * <li>"edges": street edges, with their name, permission, bike safety factor and wheelchair accessibility.</li>
+ * <li>"stops": transit stops, with their id, code and name.</li>
+ * <li>"patterns": the hops of the trip patterns, with the pattern code, route and mode.</li>
+ * </ul>
+ *
+ * Geometries are simplified to one screen pixel, so the simplification is coarser in ground units at lower zoom
+ * levels. Below the minimum zoom of a layer, its features are left out of the tile.
+ *
+ * @see VectorTileCache
+ */
+public class VectorTileRenderer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(VectorTileRenderer.class);
+
+    public static final String EDGES = "edges";
+
+    public static final String STOPS = "stops";
+
+    public static final String PATTERNS = "patterns";
+
+    public static final List<String> LAYERS = Arrays.asList(EDGES, STOPS, PATTERNS);
+
+    /** The size of a tile in screen pixels, used to convert the simplification tolerance to tile units. */
+    private static final int TILE_PIXELS = 256;
+
+    /** Douglas-Peucker tolerance of the geometry simplification, in tile units. */
+    private static final double SIMPLIFY_TOLERANCE = (double) VectorTileEncoder.EXTENT / TILE_PIXELS;
+
+    /** Margin around the tile from which features are included, in tile units, so lines are not cut at the border. */
+    private static final int BUFFER = 64;
+
+    private static final int MIN_ZOOM_EDGES = 13;
+
+    private static final int MIN_ZOOM_STOPS = 11;
+
+    private static final int MIN_ZOOM_PATTERNS = 9;
+
+    private final Graph graph;
+
+    /** The hops of all patterns with their envelopes, built on first use of the patterns layer. */
+    private List<PatternHop> hops;
+
+    private List<Envelope> hopEnvelopes;
+
+    public VectorTileRenderer(Graph graph) {
+        this.graph = graph;
+    }
+
+    /**
+     * Render a tile.
+     * @param layers the names of the layers to include in the tile.
+     * @return the encoded tile.
+     * @throws IllegalArgumentException if one of the layers is unknown.
+     */
+    public byte[] renderTile(int x, int y, int z, Collection<String> layers) {
+        for (String layer : layers) {
+            if (!LAYERS.contains(layer)) throw new IllegalArgumentException("Unknown layer: " + layer);
+        }
+        long start = System.currentTimeMillis();
+        TileProjection projection = new TileProjection(x, y, z);
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        if (layers.contains(EDGES) && z >= MIN_ZOOM_EDGES) {
+            renderEdges(projection, encoder.addLayer(EDGES));
+        }
+        if (layers.contains(STOPS) && z >= MIN_ZOOM_STOPS) {
+            renderStops(projection, encoder.addLayer(STOPS));
+        }
+        if (layers.contains(PATTERNS) && z >= MIN_ZOOM_PATTERNS) {
+            renderPatterns(projection, encoder.addLayer(PATTERNS));
+        }
+        byte[] tile = encoder.encode();
+        LOG.debug("Rendered vector tile {}/{}/{} ({} bytes) in {} ms", z, x, y, tile.length,
+                System.currentTimeMillis() - start);
+        return tile;
+    }
+
+    private void renderEdges(TileProjection projection, VectorTileEncoder.Layer layer) {
+        LineProjector line = new LineProjector(projection);
+        for (Edge edge : graph.streetIndex.getEdgesForEnvelope(projection.envelope)) {
+            if (!(edge instanceof StreetEdge)) continue;
+            StreetEdge streetEdge = (StreetEdge) edge;
+            line.reset();
+            streetEdge.visitGeometry(line);
+            Map<String, Object> attributes = new LinkedHashMap<>();
+            attributes.put("name", streetEdge.getName());
+            attributes.put("permission", streetEdge.getPermission().name());
+            attributes.put("bikeSafety", streetEdge.getBicycleSafetyFactor());
+            attributes.put("wheelchair", streetEdge.isWheelchairAccessible());
+            line.addTo(layer, attributes);
+        }
+    }
+
+    private void renderStops(TileProjection projection, VectorTileEncoder.Layer layer) {
+        for (TransitStop stopVertex : graph.streetIndex.getTransitStopForEnvelope(projection.envelope)) {
+            Stop stop = stopVertex.getStop();
+            Map<String, Object> attributes = new LinkedHashMap<>();
+            attributes.put("id", stop.getId().toString());
+            attributes.put("code", stop.getCode());
+            attributes.put("name", stop.getName());
+            layer.addPoint(projection.x(stopVertex.getLon()), projection.y(stopVertex.getLat()), attributes);
+        }
+    }
+
+    /**
+     * Pattern hops are not in the street index of the graph (long straight hops would make it slow), so they are
+     * looked up by envelope in a list of all hops.
+     */
+    private void renderPatterns(TileProjection projection, VectorTileEncoder.Layer layer) {
+        indexHops();
+        LineProjector line = new LineProjector(projection);
+        for (int i = 0; i < hops.size(); i++) {
+            if (!hopEnvelopes.get(i).intersects(projection.envelope)) continue;
+            PatternHop hop = hops.get(i);
+            TripPattern pattern = hop.getPattern();
+            line.reset();
+            for (Coordinate c : hop.getGeometry().getCoordinates()) {
+                line.visit(c.x, c.y);
+            }
+            Map<String, Object> attributes = new LinkedHashMap<>();
+            attributes.put("pattern", pattern.code);
+            attributes.put("route", pattern.route.getId().toString());
+            attributes.put("routeShortName", pattern.route.getShortName());
+            attributes.put("mode", pattern.mode.name());
+            line.addTo(layer, attributes);
+        }
+    }
+
+    private synchronized void indexHops() {
+        if (hops != null) return;
+        List<PatternHop> allHops = new ArrayList<>();
+        List<Envelope> envelopes = new ArrayList<>();
+        for (TripPattern pattern : graph.index.patternForId.values()) {
+            for (PatternHop hop : pattern.getPatternHops()) {
+                LineString geometry = hop.getGeometry();
+                if (geometry == null) continue;
+                allHops.add(hop);
+                envelopes.add(geometry.getEnvelopeInternal());
+            }
+        }
+        hopEnvelopes = envelopes;
+        hops = allHops;
+    }
+
+    /** Converts WGS84 coordinates to the units of one tile, in spherical mercator. */
+    private static class TileProjection {
+
+        private final int tileX, tileY;
+
+        private final double scale;
+
+        /** The envelope of the tile and its buffer, in WGS84. */
+        final Envelope envelope;
+
+        TileProjection(int tileX, int tileY, int z) {
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.scale = 1 << z;
+            double buffer = (double) BUFFER / VectorTileEncoder.EXTENT;
+            envelope = new Envelope(
+                    SlippyTile.tile2lon(tileX, z) - buffer * 360 / scale,
+                    SlippyTile.tile2lon(tileX + 1, z) + buffer * 360 / scale,
+                    SlippyTile.tile2lat(tileY + 1, z), SlippyTile.tile2lat(tileY, z));
+            // Latitudes are not linear in mercator, but the buffer only has to be roughly right.
+            envelope.expandBy(0, envelope.getHeight() * buffer);
+        }
+
+        int x(double lon) {
+            return (int) Math.round(((lon + 180) / 360 * scale - tileX) * VectorTileEncoder.EXTENT);
+        }
+
+        int y(double lat) {
+            double latRad = Math.toRadians(lat);
+            double mercatorY = (1 - Math.log(Math.tan(latRad) + 1 / Math.cos(latRad)) / Math.PI) / 2;
+            return (int) Math.round((mercatorY * scale - tileY) * VectorTileEncoder.EXTENT);
+        }
+    }
+
+    /** Projects the coordinates of a line to tile units and simplifies them before adding the line to a layer. */
+    private static class LineProjector implements CompactLineString.CoordinateVisitor {
+
+        private final TileProjection projection;
+
+        private int[] xs = new int[16];
+
+        private int[] ys = new int[16];
+
+        private int n;
+
+        LineProjector(TileProjection projection) {
+            this.projection = projection;
+        }
+
+        void reset() {
+            n = 0;
+        }
+
+        @Override
+        public void visit(double lon, double lat) {
+            int x = projection.x(lon);
+            int y = projection.y(lat);
+            // Points falling on the same tile unit as the previous one are useless.
+            if (n > 0 && xs[n - 1] == x && ys[n - 1] == y) return;
+            if (n == xs.length) {
+                xs = Arrays.copyOf(xs, n * 2);
+                ys = Arrays.copyOf(ys, n * 2);
+            }
+            xs[n] = x;
+            ys[n] = y;
+            n++;
+        }
+
+        void addTo(VectorTileEncoder.Layer layer, Map<String, ?> attributes) {
+            if (n < 2) return;
+            boolean[] keep = new boolean[n];
+            keep[0] = keep[n - 1] = true;
+            simplify(0, n - 1, keep);
+            int kept = 0;
+            for (int i = 0; i < n; i++) {
+                if (keep[i]) {
+                    xs[kept] = xs[i];
+                    ys[kept] = ys[i];
+                    kept++;
+                }
+            }
+            layer.addLineString(xs, ys, kept, attributes);
+        }
+
+        /** Douglas-Peucker simplification of the points between first and last, which are kept. */
+        private void simplify(int first, int last, boolean[] keep) {
+            if (last - first < 2) return;
+            double dx = xs[last] - xs[first];
+            double dy = ys[last] - ys[first];
+            double length = Math.sqrt(dx * dx + dy * dy);
+            double maxDistance = -1;
+            int farthest = -1;
+            for (int i = first + 1; i < last; i++) {
+                double px = xs[i] - xs[first];
+                double py = ys[i] - ys[first];
+                // Distance to the line through first and last, or to first if they are the same point.
+                double distance = length == 0 ? Math.sqrt(px * px + py * py) : Math.abs(px * dy - py * dx) / length;
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (maxDistance <= SIMPLIFY_TOLERANCE) return;
+            keep[farthest] = true;
+            simplify(first, farthest, keep);
+            simplify(farthest, last, keep);
+        }
+    }
+
+}
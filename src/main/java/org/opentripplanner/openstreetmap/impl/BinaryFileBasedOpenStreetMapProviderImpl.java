@@ -11,6 +11,7 @@ import crosby.binary.file.BlockInputStream;
 /**
  * Parser for the OpenStreetMap PBF format. Parses files in three passes:
  * First the relations, then the ways, then the nodes are also loaded.
+ * Blocks are inflated and decoded by several threads unless threads is set to 1.
  *
  * @see http://wiki.openstreetmap.org/wiki/PBF_Format
  * @see org.opentripplanner.openstreetmap.services.graph_builder.services.osm.OpenStreetMapContentHandler#biPhase
@@ -20,8 +21,20 @@ public class BinaryFileBasedOpenStreetMapProviderImpl implements OpenStreetMapPr
 
     private File path;
 
+    private int threads = Runtime.getRuntime().availableProcessors();
+
     public void readOSM(OpenStreetMapContentHandler handler) {
         try {
+            if (threads > 1) {
+                ParallelBinaryOpenStreetMapReader reader = new ParallelBinaryOpenStreetMapReader(path, threads);
+                reader.read(handler, true, false, false);
+                handler.doneFirstPhaseRelations();
+                reader.read(handler, false, true, false);
+                handler.doneSecondPhaseWays();
+                reader.read(handler, false, false, true);
+                handler.doneThirdPhaseNodes();
+                return;
+            }
             BinaryOpenStreetMapParser parser = new BinaryOpenStreetMapParser(handler);
 
             FileInputStream input = new FileInputStream(path);
@@ -49,6 +62,11 @@ public class BinaryFileBasedOpenStreetMapProviderImpl implements OpenStreetMapPr
         this.path = path;
     }
 
+    /** The number of threads decoding blocks, 1 to decode the whole file in the calling thread. */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
     public String toString() {
         return "BinaryFileBasedOpenStreetMapProviderImpl(" + path + ")";
     }
@@ -20,10 +20,19 @@ public class BinaryOpenStreetMapParser extends BinaryParser {
     private boolean parseWays = true;
     private boolean parseRelations = true;
     private boolean parseNodes = true;
-    private Map<String, String> stringTable = new HashMap<String, String>();
+    private Map<String, String> stringTable;
 
     public BinaryOpenStreetMapParser(OpenStreetMapContentHandler handler) {
+        this(handler, new HashMap<String, String>());
+    }
+
+    /**
+     * @param stringTable the strings already seen, which may be shared by parsers decoding different blocks in
+     *                    parallel, in which case it must be a concurrent map.
+     */
+    BinaryOpenStreetMapParser(OpenStreetMapContentHandler handler, Map<String, String> stringTable) {
         this.handler = handler;
+        this.stringTable = stringTable;
     }
 
     // The strings are already being pulled from a string table in the PBF file,
@@ -31,11 +40,10 @@ public class BinaryOpenStreetMapParser extends BinaryParser {
     // String.intern grinds to a halt on large PBF files (as it did on GTFS import), so 
     // we implement our own. 
     public String internalize(String s) {
-        String fromTable = stringTable.get(s);
+        String fromTable = stringTable.putIfAbsent(s, s);
         if (fromTable == null) {
-            stringTable.put(s, s);
             return s;
-        } 
+        }
         return fromTable;
     }
 
@@ -0,0 +1,256 @@
+package org.opentripplanner.openstreetmap.impl;
+
+import com.google.common.io.ByteStreams;
+import crosby.binary.Fileformat;
+import crosby.binary.Osmformat;
+import gnu.trove.list.array.TByteArrayList;
+import org.opentripplanner.openstreetmap.model.OSMNode;
+import org.opentripplanner.openstreetmap.model.OSMRelation;
+import org.opentripplanner.openstreetmap.model.OSMWay;
+import org.opentripplanner.openstreetmap.services.OpenStreetMapContentHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads an OpenStreetMap PBF file with several threads. The calling thread splits the file into blobs and hands them
+ * to a pool of workers, which inflate them and decode them into OSM entities. The calling thread then passes the
+ * decoded blocks to the content handler in the order of the file, so the handler gets the same entities in the same
+ * order as with a single thread, and does not need to be thread safe.
+ *
+ * Each call reads the whole file for some kinds of entities, as the handler expects relations, then ways, then nodes.
+ * The first call records which kinds of entities each block contains, so that the following calls skip the blocks
+ * they do not need instead of inflating them again.
+ *
+ * @see <a href="http://wiki.openstreetmap.org/wiki/PBF_Format">PBF Format</a>
+ */
+class ParallelBinaryOpenStreetMapReader {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ParallelBinaryOpenStreetMapReader.class);
+
+    /** The largest blob header and blob allowed by the PBF format. */
+    private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+    private static final int MAX_BLOB_SIZE = 32 * 1024 * 1024;
+
+    private static final byte HAS_NODES = 1;
+
+    private static final byte HAS_WAYS = 2;
+
+    private static final byte HAS_RELATIONS = 4;
+
+    /** How many blocks may be decoded ahead of the handler for each thread, which bounds the memory used. */
+    private static final int BLOCKS_AHEAD_PER_THREAD = 2;
+
+    private final File path;
+
+    private final int threads;
+
+    /** Shared by all the workers, so that equal tags in different blocks are stored once. */
+    private final Map<String, String> stringTable = new ConcurrentHashMap<>();
+
+    /** What each data block of the file contains, by block number, for the blocks decoded at least once. */
+    private final TByteArrayList blockContents = new TByteArrayList();
+
+    /** The entities of one block, collected by a parser instead of being passed to the content handler directly. */
+    private static class DecodedBlock implements OpenStreetMapContentHandler {
+
+        /** The number of the data block in the file, -1 for the file header. */
+        final int number;
+
+        byte contents;
+
+        final List<OSMNode> nodes = new ArrayList<>();
+
+        final List<OSMWay> ways = new ArrayList<>();
+
+        final List<OSMRelation> relations = new ArrayList<>();
+
+        DecodedBlock(int number) {
+            this.number = number;
+        }
+
+        @Override
+        public void addNode(OSMNode node) {
+            nodes.add(node);
+        }
+
+        @Override
+        public void addWay(OSMWay way) {
+            ways.add(way);
+        }
+
+        @Override
+        public void addRelation(OSMRelation relation) {
+            relations.add(relation);
+        }
+
+        @Override
+        public void doneFirstPhaseRelations() {
+        }
+
+        @Override
+        public void doneSecondPhaseWays() {
+        }
+
+        @Override
+        public void doneThirdPhaseNodes() {
+        }
+    }
+
+    ParallelBinaryOpenStreetMapReader(File path, int threads) {
+        this.path = path;
+        this.threads = threads;
+    }
+
+    /**
+     * Read the whole file, passing the entities of the given kinds to the handler. The phase callbacks of the
+     * handler are not called.
+     */
+    void read(OpenStreetMapContentHandler handler, boolean parseRelations, boolean parseWays, boolean parseNodes)
+            throws IOException, InterruptedException {
+        byte wanted = (byte) ((parseNodes ? HAS_NODES : 0) | (parseWays ? HAS_WAYS : 0)
+                | (parseRelations ? HAS_RELATIONS : 0));
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Deque<Future<DecodedBlock>> decoding = new ArrayDeque<>();
+        int nBlocks = 0;
+        int nSkipped = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            while (true) {
+                int headerSize;
+                try {
+                    headerSize = in.readInt();
+                } catch (EOFException e) {
+                    break;
+                }
+                if (headerSize < 0 || headerSize > MAX_HEADER_SIZE) {
+                    throw new IOException("Invalid blob header size " + headerSize);
+                }
+                byte[] headerBytes = new byte[headerSize];
+                in.readFully(headerBytes);
+                Fileformat.BlobHeader header = Fileformat.BlobHeader.parseFrom(headerBytes);
+                int blobSize = header.getDatasize();
+                if (blobSize < 0 || blobSize > MAX_BLOB_SIZE) {
+                    throw new IOException("Invalid blob size " + blobSize);
+                }
+
+                int number;
+                if ("OSMHeader".equals(header.getType())) {
+                    number = -1;
+                } else if ("OSMData".equals(header.getType())) {
+                    number = nBlocks++;
+                    if (number < blockContents.size() && (blockContents.get(number) & wanted) == 0) {
+                        ByteStreams.skipFully(in, blobSize);
+                        nSkipped++;
+                        continue;
+                    }
+                } else {
+                    LOG.debug("Skipping PBF block of unknown type {}", header.getType());
+                    ByteStreams.skipFully(in, blobSize);
+                    continue;
+                }
+                byte[] blob = new byte[blobSize];
+                in.readFully(blob);
+                decoding.add(executor.submit(() -> decode(number, blob, parseRelations, parseWays, parseNodes)));
+                if (decoding.size() >= threads * BLOCKS_AHEAD_PER_THREAD) {
+                    deliver(decoding.poll(), handler);
+                }
+            }
+            while (!decoding.isEmpty()) {
+                deliver(decoding.poll(), handler);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        LOG.debug("Read {} blocks of {}, skipped {}.", nBlocks - nSkipped, path, nSkipped);
+    }
+
+    /** Wait for a block to be decoded and pass its entities to the handler. */
+    private void deliver(Future<DecodedBlock> future, OpenStreetMapContentHandler handler)
+            throws IOException, InterruptedException {
+        DecodedBlock block;
+        try {
+            block = future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+        // Blocks are delivered in order, and the first read decodes all of them.
+        if (block.number == blockContents.size()) {
+            blockContents.add(block.contents);
+        }
+        for (OSMRelation relation : block.relations) {
+            handler.addRelation(relation);
+        }
+        for (OSMWay way : block.ways) {
+            handler.addWay(way);
+        }
+        for (OSMNode node : block.nodes) {
+            handler.addNode(node);
+        }
+    }
+
+    /** Inflate and decode one blob, called by the workers. */
+    private DecodedBlock decode(int number, byte[] blob, boolean parseRelations, boolean parseWays,
+                                boolean parseNodes) throws IOException {
+        DecodedBlock block = new DecodedBlock(number);
+        BinaryOpenStreetMapParser parser = new BinaryOpenStreetMapParser(block, stringTable);
+        parser.setParseRelations(parseRelations);
+        parser.setParseWays(parseWays);
+        parser.setParseNodes(parseNodes);
+        byte[] data = inflate(Fileformat.Blob.parseFrom(blob));
+        if (number == -1) {
+            parser.parse(Osmformat.HeaderBlock.parseFrom(data));
+            return block;
+        }
+        Osmformat.PrimitiveBlock primitiveBlock = Osmformat.PrimitiveBlock.parseFrom(data);
+        for (Osmformat.PrimitiveGroup group : primitiveBlock.getPrimitivegroupList()) {
+            if (group.getNodesCount() > 0 || group.hasDense()) block.contents |= HAS_NODES;
+            if (group.getWaysCount() > 0) block.contents |= HAS_WAYS;
+            if (group.getRelationsCount() > 0) block.contents |= HAS_RELATIONS;
+        }
+        parser.parse(primitiveBlock);
+        return block;
+    }
+
+    private static byte[] inflate(Fileformat.Blob blob) throws IOException {
+        if (blob.hasRaw()) {
+            return blob.getRaw().toByteArray();
+        }
+        if (!blob.hasZlibData()) {
+            throw new IOException("Unsupported PBF blob compression");
+        }
+        byte[] data = new byte[blob.getRawSize()];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(blob.getZlibData().toByteArray());
+            if (inflater.inflate(data) != data.length || !inflater.finished()) {
+                throw new IOException("Truncated PBF blob");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Invalid PBF blob", e);
+        } finally {
+            inflater.end();
+        }
+        return data;
+    }
+}
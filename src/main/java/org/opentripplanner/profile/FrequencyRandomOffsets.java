@@ -16,8 +16,18 @@ public class FrequencyRandomOffsets {
     /** The mersenne twister is a higher quality random number generator than the one included with Java */
     private MersenneTwister mt = new MersenneTwister();
 
+    /** The seed of the random number generator, or null if the offsets should not be reproducible. */
+    private final Long seed;
+
     public FrequencyRandomOffsets(RaptorWorkerData data) {
+        this(data, null);
+    }
+
+    public FrequencyRandomOffsets(RaptorWorkerData data, Long seed) {
         this.data = data;
+        this.seed = seed;
+        if (seed != null)
+            mt.setSeed(seed);
 
         if (!data.hasFrequencies)
             return;
@@ -43,4 +53,14 @@ public class FrequencyRandomOffsets {
         }
 
     }
+
+    /**
+     * Restart the random sequence from a point determined by the seed and the given departure time, so that the draws
+     * made for a departure minute are the same no matter which minutes were searched before. Does nothing if there is
+     * no seed.
+     */
+    public void reseed (int departureTime) {
+        if (seed != null)
+            mt.setSeed(new int[] { (int) (seed >>> 32), (int) seed.longValue(), departureTime });
+    }
 }
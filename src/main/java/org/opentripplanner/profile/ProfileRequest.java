@@ -151,6 +151,19 @@ public class ProfileRequest implements Serializable, Cloneable {
 
     /** A non-destructive scenario to apply when executing this request */
     public Scenario scenario;
+
+    /**
+     * If true, the departure minutes of a repeated RAPTOR search are searched in parallel on the common fork-join
+     * pool. This speeds up single searches with a wide time window, and is best left off when many searches are
+     * already run in parallel (e.g. travel time matrices).
+     */
+    public boolean parallel = false;
+
+    /**
+     * If set, the random draws for frequency-based trips are seeded with this value, so that repeating the request
+     * gives the same result, whether or not it is searched in parallel.
+     */
+    public Long randomSeed;
     
     public ProfileRequest clone () throws CloneNotSupportedException {
         return (ProfileRequest) super.clone();
@@ -1,6 +1,7 @@
 package org.opentripplanner.profile;
 
 import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
 import gnu.trove.list.TIntList;
 import gnu.trove.list.array.TIntArrayList;
 import org.apache.commons.math3.util.FastMath;
@@ -286,15 +287,18 @@ public class PropagatedTimesStore {
         DelaunayIsolineBuilder<WTWD> isolineBuilder =
                 new DelaunayIsolineBuilder<>(grid.delaunayTriangulate(), new WTWD.IsolineMetric());
 
-        List<IsochroneData> isoData = new ArrayList<IsochroneData>();
+        List<WTWD> z0s = new ArrayList<WTWD>();
         for (int minutes = spacing, n = 0; minutes <= cutoffMinutes && n < nMax; minutes += spacing, n++) {
-            int seconds = minutes * 60;
             WTWD z0 = new WTWD();
             z0.w = 1.0;
-            z0.wTime = seconds;
+            z0.wTime = minutes * 60;
             z0.d = offroadDistanceMeters;
-            IsochroneData isochrone = new IsochroneData(seconds, isolineBuilder.computeIsoline(z0));
-            isoData.add(isochrone);
+            z0s.add(z0);
+        }
+        List<Geometry> isolines = isolineBuilder.computeIsolines(z0s);
+        List<IsochroneData> isoData = new ArrayList<IsochroneData>();
+        for (int i = 0; i < z0s.size(); i++) {
+            isoData.add(new IsochroneData((int) z0s.get(i).wTime, isolines.get(i)));
         }
 
         long t1 = System.currentTimeMillis();
@@ -12,9 +12,14 @@ import org.slf4j.LoggerFactory;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.IntStream;
 
 /**
@@ -62,6 +67,13 @@ public class RaptorWorker {
     /** If there are no schedules, the number of Monte Carlo draws to take */
     public static final int TOTAL_MONTE_CARLO_COUNT = 99;
 
+    /**
+     * The number of consecutive departure minutes searched by each task when searching in parallel. This is fixed
+     * rather than derived from the number of threads so that results do not depend on the size of the pool: range-RAPTOR
+     * reuse happens within each block, and only the block boundaries affect which labels are reused.
+     */
+    public static final int PARALLEL_BLOCK_MINUTES = 15;
+
     int max_time = 0;
     int round = 0;
     List<int[]> timesPerStopPerRound;
@@ -113,8 +125,35 @@ public class RaptorWorker {
 
     private FrequencyRandomOffsets offsets;
 
+    /** The seed for the random frequency schedule draws, or null if they should not be reproducible. */
+    private final Long seed;
+
+    /**
+     * The boarding assumption for the current search. This is a copy of the one in the request, which is temporarily
+     * replaced by the best and worst cases. It is kept here rather than modified in the request, which may be shared
+     * by several workers searching in parallel.
+     */
+    private RaptorWorkerTimetable.BoardingAssumption boardingAssumption;
+
+    /**
+     * If this is set, the departure minutes are split into blocks of PARALLEL_BLOCK_MINUTES, which are searched by
+     * separate workers on this pool. If it is null, all minutes are searched on the calling thread, in the same blocks
+     * if there is a seed.
+     */
+    public ForkJoinPool forkJoinPool;
+
     public RaptorWorker(RaptorWorkerData data, ProfileRequest req) {
+        this(data, req, null);
+    }
+
+    /**
+     * @param seed the seed for the random frequency schedule draws. When it is set, the draws for each departure minute
+     *             are fully determined by the seed and the minute, so the results are reproducible and do not depend
+     *             on whether the search is run in parallel.
+     */
+    public RaptorWorker(RaptorWorkerData data, ProfileRequest req, Long seed) {
         this.data = data;
+        this.seed = seed;
         // these should only reflect the results of the (deterministic) scheduled search
         this.bestTimes = new int[data.nStops];
         this.bestNonTransferTimes = new int[data.nStops];
@@ -126,7 +165,8 @@ public class RaptorWorker {
         this.req = req; 
         Arrays.fill(bestTimes, UNREACHED); // initialize once here and reuse on subsequent iterations.
         Arrays.fill(bestNonTransferTimes, UNREACHED);
-        offsets = new FrequencyRandomOffsets(data);
+        this.boardingAssumption = req.boardingAssumption;
+        offsets = new FrequencyRandomOffsets(data, seed);
     }
 
     public void advance () {
@@ -188,19 +228,63 @@ public class RaptorWorker {
         // TODO don't hardwire timestep below
         ts.timeStep = 60;
 
+        int minutes = (req.toTime - fromTime - 60) / 60 + 1;
+        int filled;
+        if (forkJoinPool == null && seed == null) {
+            filled = runMinutes(initialStops, nonTransitTimes, 0, minutes, monteCarloDraws,
+                    timesAtTargetsEachIteration, includeIterationInAverages);
+        } else {
+            // A seeded search is split into the same blocks whether or not there is a pool, so that its result only
+            // depends on the seed.
+            filled = runMinutesInBlocks(initialStops, nonTransitTimes, minutes, monteCarloDraws,
+                    timesAtTargetsEachIteration, includeIterationInAverages);
+        }
+
+        // make sure we filled the array, otherwise results are garbage.
+        // This implies a bug in OTP, but it has happened in the past when we did
+        // not set the number of iterations correctly.
+        // iteration should be incremented past end of array by ++ in assignment above
+        if (filled != iterations)
+            throw new IllegalStateException("Iterations did not completely fill output array");
+
+        long calcTime = System.currentTimeMillis() - beginCalcTime;
+        LOG.info("calc time {}sec", calcTime / 1000.0);
+        LOG.info("  propagation {}sec", totalPropagationTime / 1000.0);
+        LOG.info("  raptor {}sec", (calcTime - totalPropagationTime) / 1000.0);
+        ts.propagation = (int) totalPropagationTime;
+        // When minutes are searched in parallel the propagation time is summed over threads and can exceed calcTime.
+        ts.transitSearch = (int) Math.max(0, calcTime - totalPropagationTime);
+        //dumpVariableByte(timesAtTargetsEachMinute);
+        // we can use min_max here as we've also run it once with best case and worst case board,
+        // so the best and worst cases are meaningful.
+        propagatedTimesStore.setFromArray(timesAtTargetsEachIteration, includeIterationInAverages,
+                PropagatedTimesStore.ConfidenceCalculationMethod.MIN_MAX);
+        return propagatedTimesStore;
+    }
+
+    /**
+     * Search the departure minutes with the given indexes, where minute n departs at toTime - 60 * (n + 1), writing the
+     * results to the corresponding rows of timesAtTargetsEachIteration. Minutes are searched from the latest to the
+     * earliest so that range-RAPTOR can reuse the labels of each minute in the next one.
+     * @return the number of rows written.
+     */
+    private int runMinutes (TIntIntMap initialStops, int[] nonTransitTimes, int firstMinute, int endMinute,
+                            int monteCarloDraws, int[][] timesAtTargetsEachIteration,
+                            boolean[] includeIterationInAverages) {
+        int iterationsPerMinute = data.hasFrequencies ? monteCarloDraws + 2 : 1;
+
         // times at targets from scheduled search
         int[] scheduledTimesAtTargets = new int[data.nTargets];
         Arrays.fill(scheduledTimesAtTargets, UNREACHED);
 
         // current iteration
-        int iteration = 0;
+        int iteration = firstMinute * iterationsPerMinute;
 
-        // FIXME this should be changed to tolerate a zero-width time range
-        for (int departureTime = req.toTime - 60, n = 0; departureTime >= fromTime; departureTime -= 60, n++) {
+        for (int n = firstMinute; n < endMinute; n++) {
+            int departureTime = req.toTime - 60 * (n + 1);
             if (n % 15 == 0) {
                 LOG.info("minute {}", n);
             }
-
             // run the scheduled search
             this.runRaptorScheduled(initialStops, departureTime);
             this.doPropagation(bestNonTransferTimes, scheduledTimesAtTargets, departureTime);
@@ -214,6 +298,8 @@ public class RaptorWorker {
 
             // run the frequency searches
             if (data.hasFrequencies) {
+                // With a seed, the draws for this minute do not depend on which minutes this worker searched before.
+                offsets.reseed(departureTime);
                 for (int i = 0; i < monteCarloDraws + 2; i++) {
                     // make copies for just this search. We need copies because we can't use dynamic
                     // programming/range-raptor with randomized schedules
@@ -228,13 +314,13 @@ public class RaptorWorker {
                     // an assumption other than RANDOM, or stops with transfer rules.
                     RaptorWorkerTimetable.BoardingAssumption requestedBoardingAssumption = req.boardingAssumption;
 
-                    if (i == 0 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
-                        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.WORST_CASE;
+                    if (i == 0 && requestedBoardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
+                        boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.WORST_CASE;
                         // don't include extrema in averages
                         includeIterationInAverages[iteration] = false;
                     }
-                    else if (i == 1 && req.boardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
-                        req.boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.BEST_CASE;
+                    else if (i == 1 && requestedBoardingAssumption == RaptorWorkerTimetable.BoardingAssumption.RANDOM) {
+                        boardingAssumption = RaptorWorkerTimetable.BoardingAssumption.BEST_CASE;
                         // don't include extrema in averages
                         includeIterationInAverages[iteration] = false;
                     }
@@ -246,7 +332,7 @@ public class RaptorWorker {
                     this.runRaptorFrequency(departureTime, bestTimesCopy, bestNonTransferTimesCopy,
                             previousPatternsCopy);
 
-                    req.boardingAssumption = requestedBoardingAssumption;
+                    boardingAssumption = requestedBoardingAssumption;
 
                     // do propagation
                     int[] frequencyTimesAtTargets = timesAtTargetsEachIteration[iteration++];
@@ -269,26 +355,57 @@ public class RaptorWorker {
                         .toArray();
             }
         }
+        return iteration - firstMinute * iterationsPerMinute;
+    }
 
-        // make sure we filled the array, otherwise results are garbage.
-        // This implies a bug in OTP, but it has happened in the past when we did
-        // not set the number of iterations correctly.
-        // iteration should be incremented past end of array by ++ in assignment above
-        if (iteration != iterations)
-            throw new IllegalStateException("Iterations did not completely fill output array");
-
-        long calcTime = System.currentTimeMillis() - beginCalcTime;
-        LOG.info("calc time {}sec", calcTime / 1000.0);
-        LOG.info("  propagation {}sec", totalPropagationTime / 1000.0);
-        LOG.info("  raptor {}sec", (calcTime - totalPropagationTime) / 1000.0);
-        ts.propagation = (int) totalPropagationTime;
-        ts.transitSearch = (int) (calcTime - totalPropagationTime);
-        //dumpVariableByte(timesAtTargetsEachMinute);
-        // we can use min_max here as we've also run it once with best case and worst case board,
-        // so the best and worst cases are meaningful.
-        propagatedTimesStore.setFromArray(timesAtTargetsEachIteration, includeIterationInAverages,
-                PropagatedTimesStore.ConfidenceCalculationMethod.MIN_MAX);
-        return propagatedTimesStore;
+    /**
+     * Split the departure minutes into blocks of PARALLEL_BLOCK_MINUTES and search each block with its own worker, on
+     * the fork-join pool if there is one or else one block after the other on the calling thread. Each worker writes to
+     * its own rows of timesAtTargetsEachIteration, which are laid out exactly as in a single-threaded search.
+     * @return the number of rows written.
+     */
+    private int runMinutesInBlocks (TIntIntMap initialStops, int[] nonTransitTimes, int minutes,
+                                    int monteCarloDraws, int[][] timesAtTargetsEachIteration,
+                                    boolean[] includeIterationInAverages) {
+        List<RaptorWorker> workers = new ArrayList<>();
+        List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int firstMinute = 0; firstMinute < minutes; firstMinute += PARALLEL_BLOCK_MINUTES) {
+            final int first = firstMinute;
+            final int end = Math.min(minutes, firstMinute + PARALLEL_BLOCK_MINUTES);
+            RaptorWorker worker = new RaptorWorker(data, req, seed);
+            workers.add(worker);
+            tasks.add(() -> worker.runMinutes(initialStops, nonTransitTimes, first, end, monteCarloDraws,
+                    timesAtTargetsEachIteration, includeIterationInAverages));
+        }
+        int filled = 0;
+        if (forkJoinPool == null) {
+            LOG.info("Searching {} minutes in {} blocks", minutes, tasks.size());
+            for (Callable<Integer> task : tasks) {
+                try {
+                    filled += task.call();
+                } catch (Exception e) {
+                    throw new RuntimeException("RAPTOR search failed", e);
+                }
+            }
+        } else {
+            LOG.info("Searching {} minutes in {} blocks on {} threads", minutes, tasks.size(),
+                    forkJoinPool.getParallelism());
+            try {
+                for (Future<Integer> future : forkJoinPool.invokeAll(tasks)) {
+                    filled += future.get();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted during parallel RAPTOR search", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Parallel RAPTOR search failed", e.getCause());
+            }
+        }
+        // Propagation time is summed over all workers.
+        for (RaptorWorker worker : workers) {
+            totalPropagationTime += worker.totalPropagationTime;
+        }
+        return filled;
     }
 
     public void dumpVariableByte(int[][] array) {
@@ -391,7 +508,7 @@ public class RaptorWorker {
                         for (int trip = 0; trip < timetable.getFrequencyTripCount(); trip++) {
                             int boardTime = timetable
                                     .getFrequencyDeparture(trip, stopPositionInPattern,
-                                            bestTimes[stopIndex], previousPatterns[stopIndex], offsets, req.boardingAssumption);
+                                            bestTimes[stopIndex], previousPatterns[stopIndex], offsets, boardingAssumption);
 
                             if (boardTime != -1 && boardTime < remainOnBoardTime) {
                                 // make sure we board the best frequency entry at a stop
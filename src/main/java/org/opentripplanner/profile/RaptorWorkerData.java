@@ -15,6 +15,7 @@ import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TIntIntHashMap;
 import gnu.trove.map.hash.TIntObjectHashMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
+import gnu.trove.procedure.TIntIntProcedure;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.analyst.SampleSet;
 import org.opentripplanner.analyst.cluster.TaskStatistics;
@@ -454,24 +455,17 @@ public class RaptorWorkerData implements Serializable {
             for (TIntIterator stopIt = stopForIndex.iterator(); stopIt.hasNext();) {
                 int stop = stopIt.next();
 
-                // permanent stop
-                Vertex tstop = graph.getVertexById(stop);
-                boolean isPermanentStop = tstop != null && TransitStop.class.isInstance(tstop);
                 // convert distance to time
-                int[] distancesForStop = isPermanentStop ? stc.distancesForStop.get(tstop) : temporaryStopTreeCache.get(stop);
                 TIntList timesForStop = new TIntArrayList();
-
-                for (int i = 0; i < distancesForStop.length; i += 2) {
-                    int vidx = distancesForStop[i];
-                    int dist = distancesForStop[i + 1];
-
+                forEachStopTreeEntry(graph, stc, temporaryStopTreeCache, stop, (vidx, dist) -> {
                     // only add if it's less than the max walk distance
                     if (dist <= maxWalkDistance) {
                         timesForStop.add(vidx);
                         // convert meters to seconds by dividing by meters / second
                         timesForStop.add((int) (dist / req.walkSpeed));
                     }
-                }
+                    return true;
+                });
 
                 targetsForStop.add(timesForStop.toArray());
             }
@@ -537,25 +531,12 @@ public class RaptorWorkerData implements Serializable {
 
                 int stop = stopIt.next();
 
-                int[] distancesForStop;
-                
-                Vertex tstop = graph.getVertexById(stop);
-                if (tstop != null && TransitStop.class.isInstance(tstop))
-                    // permanent stop
-                    distancesForStop = stc.distancesForStop.get(tstop);
-                else
-                    // temporary stop
-                    distancesForStop = temporaryStopTreeCache.get(stop);
-
-                STREET: for (int i = 0; i < distancesForStop.length; i++) {
-                    int v = distancesForStop[i++];
-                    int d = distancesForStop[i];
-
+                forEachStopTreeEntry(graph, stc, temporaryStopTreeCache, stop, (v, d) -> {
                     if (!sampleIndex.containsKey(v))
-                        continue STREET;
+                        return true;
 
                     // Build the map
-                    SAMPLE: for (HalfSample s : sampleIndex.get(v)) {
+                    for (HalfSample s : sampleIndex.get(v)) {
                         int distance = Math.round(d + s.distance);
                         if (distance > stc.maxWalkMeters)
                             continue;
@@ -565,7 +546,8 @@ public class RaptorWorkerData implements Serializable {
                         if (!out.containsKey(s.index) || out.get(s.index) > time)
                             out.put(s.index, time);
                     }
-                }
+                    return true;
+                });
                 // Save a flat array of (target, distance) pairs keyed on this transit stops's index in the RAPTOR table.
                 int[] flat = new int[out.size() * 2];
 
@@ -671,6 +653,30 @@ public class RaptorWorkerData implements Serializable {
         return accessTimes;
     }
 
+    /**
+     * Call the procedure with the index and walk distance of each street vertex near the given stop. Distances from
+     * permanent stops are read directly from the rows of the stop tree cache, distances from temporary stops come
+     * from the temporary stop tree cache.
+     */
+    private static void forEachStopTreeEntry(Graph graph, StopTreeCache stc, TIntObjectMap<int[]> temporaryStopTreeCache,
+                                             int stop, TIntIntProcedure procedure) {
+        Vertex tstop = graph.getVertexById(stop);
+        if (tstop != null && TransitStop.class.isInstance(tstop)) {
+            // permanent stop
+            int row = stc.getRow(tstop);
+            if (row < 0) return;
+            for (int k = stc.offsets[row]; k < stc.offsets[row + 1]; k++) {
+                if (!procedure.execute(stc.vertices[k], stc.distance(k))) return;
+            }
+        } else {
+            // temporary stop
+            int[] distancesForStop = temporaryStopTreeCache.get(stop);
+            for (int i = 0; i < distancesForStop.length; i += 2) {
+                if (!procedure.execute(distancesForStop[i], distancesForStop[i + 1])) return;
+            }
+        }
+    }
+
     /** half a sample: the index in the sample set, and the distance to one of the vertices */
     private static class HalfSample {
         public HalfSample(int index, float distance) {
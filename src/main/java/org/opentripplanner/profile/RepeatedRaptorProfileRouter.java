@@ -30,6 +30,7 @@ import org.slf4j.LoggerFactory;
 
 import java.time.DayOfWeek;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * Perform one-to-many profile routing using repeated RAPTOR searches. In this context, profile routing means finding
@@ -89,6 +90,23 @@ public class RepeatedRaptorProfileRouter {
     // Set this field to true before routing if you want the full travel times included in your response.
     public boolean includeTimes = false;
 
+    // Set this field to false before routing if you only need the travel times, and not the histograms.
+    public boolean includeHistograms = true;
+
+    /**
+     * If this is set, the departure minutes of the time window are searched in parallel on this pool, in blocks of
+     * RaptorWorker.PARALLEL_BLOCK_MINUTES. The result does not depend on the size of the pool. Set to the common pool
+     * when the request is parallel, it may be replaced before routing.
+     */
+    public ForkJoinPool forkJoinPool = null;
+
+    /**
+     * If this is set, the random offsets given to frequency-based trips are drawn from a generator seeded with this
+     * value, so that repeating a request gives the same result whether or not the minutes are searched in parallel.
+     * Taken from the request.
+     */
+    public Long randomSeed = null;
+
     /**
      * Make a router to use for making time surfaces only.
      *
@@ -125,6 +143,10 @@ public class RepeatedRaptorProfileRouter {
         this.request = request;
         this.graph = graph;
         this.sampleSet = sampleSet;
+        if (request.parallel) {
+            this.forkJoinPool = ForkJoinPool.commonPool();
+        }
+        this.randomSeed = request.randomSeed;
     }
 
     public ResultEnvelope route () {
@@ -176,7 +198,8 @@ public class RepeatedRaptorProfileRouter {
         ts.walkSearch = (int) (System.currentTimeMillis() - walkSearchStart);
 
         if (transit) {
-            RaptorWorker worker = new RaptorWorker(raptorWorkerData, request);
+            RaptorWorker worker = new RaptorWorker(raptorWorkerData, request, randomSeed);
+            worker.forkJoinPool = forkJoinPool;
             propagatedTimesStore = worker.runRaptor(graph, transitStopAccessTimes, nonTransitTimes, ts);
             ts.initialStopCount = transitStopAccessTimes.size();
         } else {
@@ -205,12 +228,17 @@ public class RepeatedRaptorProfileRouter {
             // TODO actually use those boolean params to calculate isochrones on a regular grid pointset
             // TODO maybe there's a better way to pass includeTimes in here from the clusterRequest,
             // maybe we should just provide the whole clusterRequest not just the wrapped profileRequest.
-            envelope = propagatedTimesStore.makeResults(sampleSet, includeTimes, true, false);
+            envelope = propagatedTimesStore.makeResults(sampleSet, includeTimes, includeHistograms, false);
         }
         ts.resultSets = (int) (System.currentTimeMillis() - resultSetStart);
         return envelope;
     }
 
+    @VisibleForTesting
+    PropagatedTimesStore getPropagatedTimesStore() {
+        return propagatedTimesStore;
+    }
+
     /**
      * Find all transit stops accessible by streets around the origin, leaving behind a shortest path tree of the
      * reachable area in the field preTransitSpt.
@@ -1,7 +1,6 @@
 package org.opentripplanner.profile;
 
-import com.beust.jcommander.internal.Maps;
-
+import gnu.trove.list.array.TIntArrayList;
 import org.opentripplanner.routing.algorithm.AStar;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
@@ -14,61 +13,160 @@ import org.opentripplanner.routing.vertextype.TransitStop;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
+import java.io.Serializable;
+import java.util.Arrays;
 
 /**
  * Keeps travel distances from all transit stops in a particular Graph to their nearby street nodes.
  * This allows us to propagate travel times out from transit to streets much faster in one-to-many analyst queries.
  * The StopTreeCache has a fixed distance cutoff, so will be unable to provide distance information for vertices beyond
  * that cutoff distance.
+ *
+ * The distances are stored in a compressed sparse row layout: the row of a stop spans from offsets[row] (inclusive)
+ * to offsets[row + 1] (exclusive) in the vertices and distances arrays. Distances are stored as unsigned shorts, which
+ * is why the distance cutoff cannot be more than 65535 meters. Rows are sorted by stop vertex index, so the row of a
+ * stop is found by binary search.
+ *
+ * Computing this takes one street search per stop, so it can be done at graph build time (see StopTreeCacheModule)
+ * and serialized with the graph. Vertex indexes are serialized with the vertices, so they remain valid when the graph
+ * is loaded.
  */
-public class StopTreeCache {
+public class StopTreeCache implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private static final Logger LOG = LoggerFactory.getLogger(StopTreeCache.class);
+
     final int maxWalkMeters;
-    // Flattened 2D array of (streetVertexIndex, distanceFromStop) for each TransitStop
-    public final Map<TransitStop, int[]> distancesForStop = Maps.newHashMap();
+
+    /** The vertex index of the stop of each row, in ascending order. */
+    private final int[] stopIndexes;
+
+    /** The start of each row in vertices and distances, followed by the total number of entries. */
+    final int[] offsets;
+
+    /** The index of each street vertex reached from the stops. */
+    final int[] vertices;
+
+    /** The walk distance in meters to each street vertex, as an unsigned short. */
+    final short[] distances;
 
     public StopTreeCache (Graph graph, int maxWalkMeters) {
+        if (maxWalkMeters > 0xFFFF) {
+            throw new IllegalArgumentException("Stop tree distances are limited to 65535 meters.");
+        }
         this.maxWalkMeters = maxWalkMeters;
         LOG.info("Caching distances to nearby street intersections from each transit stop...");
-        graph.index.stopVertexForStop.values().parallelStream().forEach(tstop -> {
-            RoutingRequest rr = new RoutingRequest(TraverseMode.WALK);
-            rr.batch = (true);
-            rr.setRoutingContext(graph, tstop, tstop);
-            AStar astar = new AStar();
-            rr.longDistance = true;
-            rr.setNumItineraries(1);
-
-            // since we're storing distances and later using them to optimize
-            // (in the profile propagation code we optimize on distance / walkSpeed
-            //  not the actual time including turn costs etc.),
-            // we need to optimize on distance here as well.
-            rr.maxWalkDistance = maxWalkMeters;
-            rr.softWalkLimiting = false;
-            rr.dominanceFunction = new DominanceFunction.LeastWalk();
-
-            ShortestPathTree spt = astar.getShortestPathTree(rr, 5); // timeout in seconds
-            // Copy vertex indices and distances into a flattened 2D array
-            int[] distances = new int[spt.getVertexCount() * 2];
-            int i = 0;
-            for (Vertex vertex : spt.getVertices()) {
-                State state = spt.getState(vertex);
-                
-                if (state == null)
-                    continue;
-                
-                distances[i++] = vertex.getIndex();
-                distances[i++] = (int) state.getWalkDistance();
+        long startTime = System.currentTimeMillis();
+        TransitStop[] stops = sortedStops(graph);
+        // Searches run in parallel, each one producing a row as a flattened array of (vertex, distance).
+        int[][] rows = new int[stops.length][];
+        Arrays.parallelSetAll(rows, i -> search(graph, stops[i], maxWalkMeters));
+
+        stopIndexes = new int[stops.length];
+        offsets = new int[stops.length + 1];
+        int size = 0;
+        for (int i = 0; i < stops.length; i++) {
+            stopIndexes[i] = stops[i].getIndex();
+            offsets[i] = size;
+            size += rows[i].length / 2;
+        }
+        offsets[stops.length] = size;
+        vertices = new int[size];
+        distances = new short[size];
+        for (int i = 0; i < stops.length; i++) {
+            int[] row = rows[i];
+            // Free each row as soon as it is copied, to limit the peak memory use.
+            rows[i] = null;
+            for (int j = 0, k = offsets[i]; j < row.length; j += 2, k++) {
+                vertices[k] = row[j];
+                distances[k] = (short) Math.min(row[j + 1], maxWalkMeters);
             }
+        }
+        LOG.info("Done caching {} distances to nearby street intersections from {} transit stops in {} sec.", size,
+                stops.length, (System.currentTimeMillis() - startTime) / 1000);
+    }
 
-            rr.cleanup();
+    /** @return the distances from a stop to nearby vertices, as a flattened array of (vertex index, distance). */
+    private static int[] search(Graph graph, TransitStop tstop, int maxWalkMeters) {
+        RoutingRequest rr = new RoutingRequest(TraverseMode.WALK);
+        rr.batch = (true);
+        rr.setRoutingContext(graph, tstop, tstop);
+        AStar astar = new AStar();
+        rr.longDistance = true;
+        rr.setNumItineraries(1);
 
-            synchronized (distancesForStop) {
-                distancesForStop.put(tstop, distances);
-            }
-        });
-        LOG.info("Done caching distances to nearby street intersections from each transit stop.");
+        // since we're storing distances and later using them to optimize
+        // (in the profile propagation code we optimize on distance / walkSpeed
+        //  not the actual time including turn costs etc.),
+        // we need to optimize on distance here as well.
+        rr.maxWalkDistance = maxWalkMeters;
+        rr.softWalkLimiting = false;
+        rr.dominanceFunction = new DominanceFunction.LeastWalk();
+
+        ShortestPathTree spt = astar.getShortestPathTree(rr, 5); // timeout in seconds
+        TIntArrayList distances = new TIntArrayList(spt.getVertexCount() * 2);
+        for (Vertex vertex : spt.getVertices()) {
+            State state = spt.getState(vertex);
+
+            if (state == null)
+                continue;
+
+            distances.add(vertex.getIndex());
+            distances.add((int) state.getWalkDistance());
+        }
+
+        rr.cleanup();
+        return distances.toArray();
+    }
+
+    /** @return the stops of the graph, sorted by vertex index. */
+    private static TransitStop[] sortedStops(Graph graph) {
+        TransitStop[] stops = graph.index.stopVertexForStop.values().toArray(new TransitStop[0]);
+        Arrays.sort(stops, (s1, s2) -> Integer.compare(s1.getIndex(), s2.getIndex()));
+        return stops;
+    }
+
+    /**
+     * A cache stored with a graph is stale if stops were added to the graph or removed from it since the cache was
+     * computed, for instance when transit data is added to a base graph.
+     * @return whether this cache holds distances up to the given cutoff for exactly the stops of the given graph.
+     */
+    public boolean isValidFor(Graph graph, int maxWalkMeters) {
+        if (this.maxWalkMeters != maxWalkMeters) return false;
+        TransitStop[] stops = sortedStops(graph);
+        if (stops.length != stopIndexes.length) return false;
+        for (int i = 0; i < stops.length; i++) {
+            if (stops[i].getIndex() != stopIndexes[i]) return false;
+        }
+        return true;
+    }
+
+    /** @return the row of the given stop, or -1 if this cache has no distances for it (e.g. a temporary stop). */
+    public int getRow(Vertex stop) {
+        int row = Arrays.binarySearch(stopIndexes, stop.getIndex());
+        return row < 0 ? -1 : row;
+    }
+
+    /** @return the walk distance in meters of the given entry of a row. */
+    int distance(int entry) {
+        return distances[entry] & 0xFFFF;
+    }
+
+    /**
+     * @return the distances from the given stop to nearby vertices, as a flattened array of (vertex index, distance),
+     *         or null if the stop is not in this cache. This copies the row, propagation code should read the row
+     *         directly.
+     */
+    public int[] getDistancesForStop(TransitStop stop) {
+        int row = getRow(stop);
+        if (row < 0) return null;
+        int[] ret = new int[(offsets[row + 1] - offsets[row]) * 2];
+        for (int i = 0, k = offsets[row]; k < offsets[row + 1]; k++) {
+            ret[i++] = vertices[k];
+            ret[i++] = distance(k);
+        }
+        return ret;
     }
 
     /**
@@ -79,14 +177,12 @@ public class StopTreeCache {
     public void propagateStop(TransitStop transitStop, int baseTimeSeconds, double walkSpeed, int[] targetArray) {
         // Iterate over street intersections in the vicinity of this particular transit stop.
         // Shift the time range at this transit stop, merging it into that for all reachable street intersections.
-        int[] distances = distancesForStop.get(transitStop);
-        int v = 0;
-        while (v < distances.length) {
-            // Unravel flattened 2D array
-            int vertexIndex = distances[v++];
-            int distance = distances[v++];
+        int row = getRow(transitStop);
+        if (row < 0) return;
+        for (int k = offsets[row]; k < offsets[row + 1]; k++) {
+            int vertexIndex = vertices[k];
             // distance in meters over walkspeed in meters per second --> seconds
-            int egressWalkTimeSeconds = (int) (distance / walkSpeed);
+            int egressWalkTimeSeconds = (int) (distance(k) / walkSpeed);
             int propagated_time = baseTimeSeconds + egressWalkTimeSeconds;
             int existing_min = targetArray[vertexIndex];
             if (existing_min == 0 || existing_min > propagated_time) {
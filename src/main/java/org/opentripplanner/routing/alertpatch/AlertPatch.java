@@ -61,19 +61,28 @@ public class AlertPatch implements Serializable {
      */
     private int directionId = -1;
 
+    /** Lazily built lookup structure over timePeriods, discarded whenever the periods are replaced. */
+    private transient TimePeriodIndex timePeriodIndex;
+
     public Alert getAlert() {
         return alert;
     }
 
     public boolean displayDuring(State state) {
-        for (TimePeriod timePeriod : timePeriods) {
-            if (state.getTimeSeconds() >= timePeriod.startTime) {
-                if (state.getStartTimeSeconds() < timePeriod.endTime) {
-                    return true;
-                }
-            }
+        return displayDuring(state.getStartTimeSeconds(), state.getTimeSeconds());
+    }
+
+    /**
+     * @return true if any time period starts at or before endTime and ends after startTime, that is if this alert is
+     *         active at some point during a search that started at startTime and has reached endTime.
+     */
+    public boolean displayDuring(long startTime, long endTime) {
+        TimePeriodIndex index = timePeriodIndex;
+        if (index == null) {
+            index = new TimePeriodIndex(timePeriods);
+            timePeriodIndex = index;
         }
-        return false;
+        return index.overlaps(startTime, endTime);
     }
 
     public String getId() {
@@ -219,6 +228,7 @@ public class AlertPatch implements Serializable {
 
     public void setTimePeriods(List<TimePeriod> periods) {
         timePeriods = periods;
+        timePeriodIndex = null;
     }
 
     public String getAgency() {
@@ -386,4 +396,45 @@ public class AlertPatch implements Serializable {
                 (alert == null ? 0 : alert.hashCode()) +
                 (feedId == null ? 0 : feedId.hashCode()));
     }
+
+    /**
+     * The time periods sorted by start time, together with the running maximum of their end times. Finding whether
+     * any period overlaps a given interval is then a single binary search instead of a scan over all periods, which
+     * matters for alerts with many active periods (e.g. recurring works). Instances are immutable and therefore safe
+     * to share between threads without synchronization.
+     */
+    private static final class TimePeriodIndex {
+
+        private final long[] startTimes;
+
+        private final long[] maxEndTimes;
+
+        TimePeriodIndex(List<TimePeriod> timePeriods) {
+            List<TimePeriod> sorted = new ArrayList<>(timePeriods);
+            sorted.sort(Comparator.comparingLong(p -> p.startTime));
+            startTimes = new long[sorted.size()];
+            maxEndTimes = new long[sorted.size()];
+            long maxEndTime = Long.MIN_VALUE;
+            for (int i = 0; i < startTimes.length; i++) {
+                TimePeriod period = sorted.get(i);
+                maxEndTime = Math.max(maxEndTime, period.endTime);
+                startTimes[i] = period.startTime;
+                maxEndTimes[i] = maxEndTime;
+            }
+        }
+
+        boolean overlaps(long startTime, long endTime) {
+            // Find the number of periods starting at or before endTime.
+            int low = 0, high = startTimes.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (startTimes[mid] <= endTime) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low > 0 && maxEndTimes[low - 1] > startTime;
+        }
+    }
 }
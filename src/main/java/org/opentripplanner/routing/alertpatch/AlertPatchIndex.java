@@ -0,0 +1,105 @@
+package org.opentripplanner.routing.alertpatch;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A copy-on-write index from some key (an edge, a stop, a route...) to the {@link AlertPatch}es that apply to it.
+ *
+ * Itinerary generation looks up alert patches for every edge of every returned path, so reads must be cheap and must
+ * never block on the updater thread. Each key maps to an immutable array that is replaced wholesale when a patch is
+ * added or removed, so readers always see a consistent snapshot without taking a lock or copying anything. Writers
+ * are serialized on the index itself; they are rare compared to reads and usually come from the single graph writer
+ * thread anyway.
+ *
+ * The arrays handed out by {@link #get(Object)} are shared and must not be modified by callers.
+ */
+public class AlertPatchIndex<K> implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final AlertPatch[] EMPTY = new AlertPatch[0];
+
+    private final ConcurrentMap<K, AlertPatch[]> patches = new ConcurrentHashMap<>();
+
+    /**
+     * @return the alert patches for the given key, or an empty array if there are none. Never null.
+     */
+    public AlertPatch[] get(K key) {
+        if (key == null) return EMPTY;
+        AlertPatch[] result = patches.get(key);
+        return result == null ? EMPTY : result;
+    }
+
+    /**
+     * @return the alert patches for the given key as an unmodifiable collection.
+     */
+    public Collection<AlertPatch> getAsCollection(K key) {
+        AlertPatch[] result = get(key);
+        if (result.length == 0) return Collections.emptyList();
+        return Collections.unmodifiableList(Arrays.asList(result));
+    }
+
+    /**
+     * Add a patch for the given key. Patches are deduplicated using {@link AlertPatch#equals(Object)}.
+     * @return true if the patch was not already present.
+     */
+    public synchronized boolean add(K key, AlertPatch alertPatch) {
+        if (key == null || alertPatch == null) return false;
+        AlertPatch[] existing = patches.get(key);
+        if (existing == null) {
+            patches.put(key, new AlertPatch[] { alertPatch });
+            return true;
+        }
+        for (AlertPatch patch : existing) {
+            if (patch.equals(alertPatch)) return false;
+        }
+        AlertPatch[] replacement = Arrays.copyOf(existing, existing.length + 1);
+        replacement[existing.length] = alertPatch;
+        patches.put(key, replacement);
+        return true;
+    }
+
+    /**
+     * Remove a patch for the given key, using {@link AlertPatch#equals(Object)} to find it.
+     * @return true if the patch was present.
+     */
+    public synchronized boolean remove(K key, AlertPatch alertPatch) {
+        if (key == null || alertPatch == null) return false;
+        AlertPatch[] existing = patches.get(key);
+        if (existing == null) return false;
+        for (int i = 0; i < existing.length; i++) {
+            if (existing[i].equals(alertPatch)) {
+                if (existing.length == 1) {
+                    patches.remove(key);
+                } else {
+                    AlertPatch[] replacement = new AlertPatch[existing.length - 1];
+                    System.arraycopy(existing, 0, replacement, 0, i);
+                    System.arraycopy(existing, i + 1, replacement, i, existing.length - i - 1);
+                    patches.put(key, replacement);
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Remove all patches for the given key. */
+    public synchronized void removeAll(K key) {
+        if (key != null) patches.remove(key);
+    }
+
+    /** Remove all patches for all keys. */
+    public synchronized void clear() {
+        patches.clear();
+    }
+
+    /** @return true if no key currently has any patch. */
+    public boolean isEmpty() {
+        return patches.isEmpty();
+    }
+}
@@ -97,6 +97,8 @@ public class AStar {
         runState = new RunState( options, terminationStrategy );
         runState.rctx = options.getRoutingContext();
         runState.spt = options.getNewShortestPathTree();
+        // Temporary vertices may have been added since the routing context was created.
+        runState.rctx.indexTemporaryEdges();
 
         // We want to reuse the heuristic instance in a series of requests for the same target to avoid repeated work.
         // "Batch" means one-to-many mode, where there is no goal to reach so we use a trivial heuristic.
@@ -164,7 +166,8 @@ public class AStar {
 
         runState.nVisited += 1;
         
-        Collection<Edge> edges = runState.options.arriveBy ? runState.u_vertex.getIncoming() : runState.u_vertex.getOutgoing();
+        Collection<Edge> edges = runState.options.arriveBy ? runState.rctx.getIncoming(runState.u_vertex) :
+                runState.rctx.getOutgoing(runState.u_vertex);
         for (Edge edge : edges) {
 
             // Iterate over traversal results. When an edge leads nowhere (as indicated by
@@ -283,6 +286,7 @@ public class AStar {
             }
 
         }
+        runState.options.rctx.debugOutput.statesExpanded += runState.nVisited;
     }
 
     /** @return the shortest path, or null if none is found */
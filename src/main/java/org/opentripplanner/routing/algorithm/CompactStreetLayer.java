@@ -0,0 +1,238 @@
+package org.opentripplanner.routing.algorithm;
+
+import org.opentripplanner.common.TurnRestriction;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.AreaEdge;
+import org.opentripplanner.routing.edgetype.PreBoardEdge;
+import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTransitLink;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.edgetype.StreetWithElevationEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.BarrierVertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * A frozen view of the street network of a graph in a compressed sparse row layout, for CompactStreetSearch.
+ * The outgoing edges of the vertex with index v are the edges firstEdge[v] (inclusive) to firstEdge[v + 1] (exclusive)
+ * of the parallel edge arrays, in the same order as Vertex.getOutgoing(). The edges are the street edges and the links
+ * between streets and transit stops. The properties of the edges used in StreetEdge.traverse() are copied into
+ * primitive arrays, so that a search can expand vertices without following references to edge objects, which are
+ * scattered around the heap.
+ *
+ * Other kinds of edges are not in the layer. Vertices having such edges are flagged, so that a search reaching them can
+ * tell that it would not give the same result as a search on the graph. The layer is built from the graph as it is
+ * when the layer is built: vertices and edges added afterward, such as the temporary ones of a request, are not in it.
+ */
+public class CompactStreetLayer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CompactStreetLayer.class);
+
+    /* Edge kinds. */
+    static final byte STREET = 0;
+    static final byte LINK = 1;
+
+    /* Edge flags. */
+    static final int ALLOWS_WALK = 1;
+    static final int ALLOWS_BICYCLE = 1 << 1;
+    static final int ALLOWS_CAR = 1 << 2;
+    static final int WHEELCHAIR_ACCESSIBLE = 1 << 3;
+    static final int NO_THRU_TRAFFIC = 1 << 4;
+    /** The edge has turn restrictions, which apply when turning from it onto another edge. */
+    static final int TURN_RESTRICTED = 1 << 5;
+
+    /* Vertex flags. */
+    /** The vertex has outgoing edges that are not in the layer, other than those that a street search never takes. */
+    static final byte OTHER_EDGES = 1;
+    /** The vertex has an outgoing street edge that is not in a no through traffic area. */
+    static final byte THRU_STREET_EDGE = 1 << 1;
+    static final byte INTERSECTION = 1 << 2;
+    static final byte FREE_FLOWING = 1 << 3;
+    static final byte TRANSIT_STOP = 1 << 4;
+
+    final Graph graph;
+
+    /** The number of vertex indexes covered by this layer. Vertices with a higher index are not in the layer. */
+    final int nVertices;
+
+    final int[] firstEdge;
+
+    final byte[] vertexFlags;
+
+    final Vertex[] vertices;
+
+    final int[] target;
+
+    final byte[] kind;
+
+    final int[] flags;
+
+    /** Street edge length in meters, as in StreetEdge.getDistance(). */
+    final double[] distance;
+
+    /** Street edge length accounting for slopes, as in StreetEdge.getSlopeSpeedEffectiveLength(). */
+    final double[] slopeSpeedLength;
+
+    /** Street edge length accounting for slopes, as in StreetEdge.getSlopeWalkSpeedEffectiveLength(). */
+    final double[] slopeWalkLength;
+
+    final float[] carSpeed;
+
+    final float[] maxSlope;
+
+    /** For links, the time to go between the street and the stop, and the vertex index of the stop. */
+    final int[] linkTime;
+
+    final int[] linkStop;
+
+    /** The edges of the layer, used to compute turn costs and to return paths. */
+    final Edge[] edges;
+
+    /** The turn restrictions of the turn restricted edges. */
+    final List<TurnRestriction>[] turnRestrictions;
+
+    @SuppressWarnings("unchecked")
+    public CompactStreetLayer(Graph graph) {
+        long startTime = System.currentTimeMillis();
+        this.graph = graph;
+        nVertices = Vertex.getMaxIndex();
+        vertices = new Vertex[nVertices];
+        for (Vertex v : graph.getVertices()) {
+            if (v.getIndex() < nVertices) vertices[v.getIndex()] = v;
+        }
+        // Count the edges of the layer to size the arrays.
+        int nEdges = 0;
+        for (Vertex v : vertices) {
+            if (v == null) continue;
+            for (Edge e : v.getOutgoing()) {
+                if (isInLayer(e)) nEdges++;
+            }
+        }
+        firstEdge = new int[nVertices + 1];
+        vertexFlags = new byte[nVertices];
+        target = new int[nEdges];
+        kind = new byte[nEdges];
+        flags = new int[nEdges];
+        distance = new double[nEdges];
+        slopeSpeedLength = new double[nEdges];
+        slopeWalkLength = new double[nEdges];
+        carSpeed = new float[nEdges];
+        maxSlope = new float[nEdges];
+        linkTime = new int[nEdges];
+        linkStop = new int[nEdges];
+        edges = new Edge[nEdges];
+        turnRestrictions = new List[nEdges];
+        int e = 0;
+        for (int v = 0; v < nVertices; v++) {
+            firstEdge[v] = e;
+            Vertex vertex = vertices[v];
+            if (vertex == null) continue;
+            vertexFlags[v] = vertexFlags(vertex);
+            for (Edge edge : vertex.getOutgoing()) {
+                if (!isInLayer(edge)) continue;
+                if (edge.getToVertex().getIndex() >= nVertices) {
+                    // Should not happen as the target vertex was created before this layer, keep the search consistent.
+                    vertexFlags[v] |= OTHER_EDGES;
+                    continue;
+                }
+                edges[e] = edge;
+                target[e] = edge.getToVertex().getIndex();
+                if (edge instanceof StreetEdge) {
+                    StreetEdge street = (StreetEdge) edge;
+                    kind[e] = STREET;
+                    flags[e] = streetFlags(street);
+                    distance[e] = street.getDistance();
+                    slopeSpeedLength[e] = street.getSlopeSpeedEffectiveLength();
+                    slopeWalkLength[e] = street.getSlopeWalkSpeedEffectiveLength();
+                    carSpeed[e] = street.getCarSpeed();
+                    maxSlope[e] = street.getMaxSlope();
+                    List<TurnRestriction> restrictions = graph.getTurnRestrictions(street);
+                    if (!restrictions.isEmpty()) {
+                        flags[e] |= TURN_RESTRICTED;
+                        turnRestrictions[e] = restrictions;
+                    }
+                } else {
+                    StreetTransitLink link = (StreetTransitLink) edge;
+                    kind[e] = LINK;
+                    flags[e] = link.isWheelchairAccessible() ? WHEELCHAIR_ACCESSIBLE : 0;
+                    linkTime[e] = link.getTransitStop().getStreetToStopTime() + StreetTransitLink.STL_TRAVERSE_COST;
+                    linkStop[e] = link.getTransitStop().getIndex();
+                }
+                e++;
+            }
+        }
+        firstEdge[nVertices] = e;
+        LOG.info("Built compact street layer with {} vertices and {} edges in {} msec.", nVertices, e,
+                System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * @return whether the edge is in the layer. The traversal of StreetEdge subclasses that do not override it is
+     *         reproduced by CompactStreetSearch. Temporary edges are never in the layer.
+     */
+    static boolean isInLayer(Edge edge) {
+        Class<? extends Edge> edgeClass = edge.getClass();
+        return edgeClass == StreetEdge.class || edgeClass == StreetWithElevationEdge.class
+                || edgeClass == AreaEdge.class || edgeClass == StreetTransitLink.class;
+    }
+
+    /**
+     * @return whether a street search never takes this edge. Pre-board edges are only taken by requests using transit,
+     *         and simple transfers are never taken right after a street transit link, which is the only way a search
+     *         on this layer reaches a stop other than its origin.
+     */
+    static boolean isIgnored(Edge edge) {
+        return edge instanceof PreBoardEdge || edge instanceof SimpleTransfer;
+    }
+
+    private static byte vertexFlags(Vertex vertex) {
+        byte ret = 0;
+        for (Edge edge : vertex.getOutgoing()) {
+            if (!isInLayer(edge) && !isIgnored(edge)) ret |= OTHER_EDGES;
+            // This includes the StreetEdge subclasses that are not in the layer, as in StreetEdge.doTraverse().
+            if (edge instanceof StreetEdge && !((StreetEdge) edge).isNoThruTraffic()) ret |= THRU_STREET_EDGE;
+        }
+        if (vertex instanceof IntersectionVertex) {
+            ret |= INTERSECTION;
+            if (((IntersectionVertex) vertex).inferredFreeFlowing()) ret |= FREE_FLOWING;
+        }
+        if (vertex instanceof TransitStop) ret |= TRANSIT_STOP;
+        return ret;
+    }
+
+    /** @return the permission and property flags of a street edge, as checked in StreetEdge.canTraverse(). */
+    private static int streetFlags(StreetEdge street) {
+        StreetTraversalPermission permission = street.getPermission();
+        if (street.getFromVertex() instanceof BarrierVertex) {
+            permission = permission.intersection(((BarrierVertex) street.getFromVertex()).getBarrierPermissions());
+        }
+        if (street.getToVertex() instanceof BarrierVertex) {
+            permission = permission.intersection(((BarrierVertex) street.getToVertex()).getBarrierPermissions());
+        }
+        int ret = 0;
+        if (permission.allows(TraverseMode.WALK)) ret |= ALLOWS_WALK;
+        if (permission.allows(TraverseMode.BICYCLE)) ret |= ALLOWS_BICYCLE;
+        if (permission.allows(TraverseMode.CAR)) ret |= ALLOWS_CAR;
+        if (street.isWheelchairAccessible()) ret |= WHEELCHAIR_ACCESSIBLE;
+        if (street.isNoThruTraffic()) ret |= NO_THRU_TRAFFIC;
+        return ret;
+    }
+
+    /** @return whether the vertex is in this layer. */
+    public boolean contains(Vertex vertex) {
+        return vertex.getIndex() < nVertices && vertices[vertex.getIndex()] == vertex;
+    }
+
+    public int getEdgeCount() {
+        return firstEdge[nVertices];
+    }
+
+}
@@ -0,0 +1,423 @@
+package org.opentripplanner.routing.algorithm;
+
+import gnu.trove.list.array.TIntArrayList;
+import org.opentripplanner.common.TurnRestriction;
+import org.opentripplanner.common.TurnRestrictionType;
+import org.opentripplanner.routing.core.IntersectionTraversalCostModel;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.SimpleIntersectionTraversalCostModel;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.PreBoardEdge;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.opentripplanner.routing.algorithm.CompactStreetLayer.*;
+
+/**
+ * An earliest arrival street search on a CompactStreetLayer, for walk, bicycle and car searches from one vertex, such
+ * as the access and egress searches around transit stops. It gives the same results as an EarliestArrivalSearch with
+ * the same request: it reproduces the rules of StreetEdge.traverse() and StreetTransitLink.traverse() for the edges of
+ * the layer, and the way the ShortestPathTree keeps states with the EarliestArrival dominance function, including the
+ * separate states at the end of turn restricted edges. Each search state is a label stored in primitive arrays rather
+ * than a State object.
+ *
+ * The search is only valid for the requests accepted by supports(). If it reaches a vertex that has edges outside the
+ * layer (e.g. pathways, elevators or bike rental stations), search() returns false, and the caller should fall back on
+ * a search on the graph. An instance can be reused for several searches, but it is not thread-safe.
+ */
+public class CompactStreetSearch {
+
+    /* Back modes of labels. */
+    private static final byte NONE = 0;
+    private static final byte WALK = 1;
+    private static final byte BICYCLE = 2;
+    private static final byte CAR = 3;
+    private static final byte LEG_SWITCH = 4;
+
+    private final CompactStreetLayer layer;
+
+    /** The first label at each vertex, or -1. Labels at a vertex are chained in insertion order with nextLabel. */
+    private final int[] firstLabel;
+
+    /** The vertices that have labels in the current search, to reset firstLabel. */
+    private final TIntArrayList touchedVertices = new TIntArrayList();
+
+    /* Labels. */
+    private int nLabels;
+    private int[] labelVertex = new int[1024];
+    private long[] labelTime = new long[1024];
+    private int[] labelBackEdge = new int[1024];
+    private int[] labelParent = new int[1024];
+    private int[] nextLabel = new int[1024];
+    private byte[] labelBackMode = new byte[1024];
+    private boolean[] labelBackWalkingBike = new boolean[1024];
+    private boolean[] labelNoThruTraffic = new boolean[1024];
+    private boolean[] labelAlive = new boolean[1024];
+
+    /* A binary heap of labels, behaving as BinHeap on ties so that labels are expanded in the same order. */
+    private int heapSize;
+    private int[] heapLabels = new int[1001];
+    private double[] heapPriorities = new double[1001];
+
+    /* The current search. */
+    private RoutingRequest options;
+    private TraverseMode mode;
+    private byte modeCode;
+    private long worstTime;
+    private IntersectionTraversalCostModel costModel;
+    private boolean simpleCostModel;
+    private int origin = -1;
+
+    public CompactStreetSearch(CompactStreetLayer layer) {
+        this.layer = layer;
+        firstLabel = new int[layer.nVertices];
+        Arrays.fill(firstLabel, -1);
+    }
+
+    /**
+     * @return whether a search with the given request gives the same results on the layer as on the graph: it must be
+     *         a depart-after search on streets only, in a single mode, without bike rental or parking.
+     */
+    public static boolean supports(RoutingRequest options) {
+        return !options.arriveBy && !options.modes.isTransit() && streetMode(options) != null
+                && !options.allowBikeRental && !options.bikeParkAndRide && !options.parkAndRide
+                && !options.kissAndRide && !options.walkingBike;
+    }
+
+    /** @return the non-transit mode of the search, as chosen in StateData. */
+    private static TraverseMode streetMode(RoutingRequest options) {
+        if (options.modes.getCar()) return TraverseMode.CAR;
+        if (options.modes.getWalk()) return TraverseMode.WALK;
+        if (options.modes.getBicycle()) return TraverseMode.BICYCLE;
+        return null;
+    }
+
+    /**
+     * Search from the given vertex, with the time limits of EarliestArrivalSearch. The request must be supported.
+     * @return false if the search cannot be made on the layer, in which case there are no results.
+     */
+    public boolean search(RoutingRequest options, Vertex originVertex, int maxDurationSeconds) {
+        reset();
+        if (!layer.contains(originVertex)) return false;
+        // The origin may have edges added after the layer was built, notably simple transfers, which can be taken
+        // from the origin.
+        for (Edge edge : originVertex.getOutgoing()) {
+            if (!CompactStreetLayer.isInLayer(edge) && !(edge instanceof PreBoardEdge)) return false;
+        }
+        this.options = options;
+        mode = streetMode(options);
+        modeCode = modeCode(mode);
+        long clampInitialWait = options.clampInitialWait < 0 ? 60 * 30 : options.clampInitialWait;
+        worstTime = options.dateTime + maxDurationSeconds + clampInitialWait;
+        costModel = options.getIntersectionTraversalCostModel();
+        simpleCostModel = costModel.getClass() == SimpleIntersectionTraversalCostModel.class;
+        origin = originVertex.getIndex();
+
+        int initial = newLabel(origin, options.dateTime, -1, -1, NONE, false, false);
+        add(initial);
+        heapInsert(initial, 0);
+        while (heapSize > 0) {
+            int u = heapExtractMin();
+            if (!labelAlive[u]) continue;
+            int v = labelVertex[u];
+            if (v != origin && (layer.vertexFlags[v] & OTHER_EDGES) != 0) {
+                reset();
+                return false;
+            }
+            for (int e = layer.firstEdge[v]; e < layer.firstEdge[v + 1]; e++) {
+                int label = layer.kind[e] == LINK ? traverseLink(u, e) : traverseStreet(u, e, options, mode);
+                if (label < 0) continue;
+                if (labelTime[label] > worstTime) {
+                    nLabels--; // Discard the label, which is the last one.
+                    continue;
+                }
+                if (add(label)) {
+                    heapInsert(label, labelTime[label]);
+                }
+            }
+        }
+        return true;
+    }
+
+    /** As in StreetTransitLink.traverse(). */
+    private int traverseLink(int u, int e) {
+        int backEdge = labelBackEdge[u];
+        if (backEdge >= 0 && layer.kind[backEdge] == LINK && layer.linkStop[backEdge] == layer.linkStop[e]) return -1;
+        if (options.wheelchairAccessible && (layer.flags[e] & WHEELCHAIR_ACCESSIBLE) == 0) return -1;
+        if (mode == TraverseMode.CAR && !options.enterStationsWithCar) return -1;
+        return newLabel(layer.target[e], labelTime[u] + layer.linkTime[e], e, u, LEG_SWITCH,
+                labelBackWalkingBike[u], labelNoThruTraffic[u]);
+    }
+
+    /** As in StreetEdge.doTraverse(), for a depart-after search. */
+    private int traverseStreet(int u, int e, RoutingRequest opt, TraverseMode traverseMode) {
+        boolean walkingBike = opt.walkingBike;
+        boolean backWalkingBike = labelBackWalkingBike[u];
+        byte backMode = labelBackMode[u];
+        int backEdge = labelBackEdge[u];
+        // No U-turns, the back edge is the reverse of this edge when this edge leads back to where we came from.
+        if (backEdge >= 0 && layer.target[e] == labelVertex[labelParent[u]]) return -1;
+
+        backWalkingBike &= backMode == WALK;
+        walkingBike &= traverseMode == TraverseMode.WALK;
+
+        if (!canTraverse(e, opt, traverseMode)) {
+            if (traverseMode == TraverseMode.BICYCLE) {
+                return traverseStreet(u, e, opt.bikeWalkingOptions, TraverseMode.WALK);
+            }
+            return -1;
+        }
+
+        double speed = traverseMode.isDriving() ? layer.carSpeed[e] : opt.getSpeed(traverseMode);
+        double time = layer.distance[e] / speed;
+        if (opt.wheelchairAccessible) {
+            // Slopes only change the weight.
+        } else if (traverseMode == TraverseMode.BICYCLE) {
+            time = layer.slopeSpeedLength[e] / speed;
+        } else {
+            if (walkingBike) time = layer.slopeSpeedLength[e] / speed;
+            if (traverseMode == TraverseMode.WALK) time = layer.slopeWalkLength[e] / speed;
+        }
+
+        boolean noThruTraffic = labelNoThruTraffic[u];
+        if ((layer.flags[e] & NO_THRU_TRAFFIC) != 0) {
+            if (backEdge >= 0 && layer.kind[backEdge] == STREET && (layer.flags[backEdge] & NO_THRU_TRAFFIC) == 0) {
+                noThruTraffic = true;
+            }
+            if (noThruTraffic && (layer.vertexFlags[layer.target[e]] & THRU_STREET_EDGE) != 0) return -1;
+        }
+
+        long roundedTime = (long) Math.ceil(time);
+
+        if (backEdge >= 0 && layer.kind[backEdge] == STREET) {
+            TraverseMode backTraverseMode = traverseMode(backMode);
+            RoutingRequest backOptions = backWalkingBike ? options.bikeWalkingOptions : options;
+            double backSpeed = backTraverseMode.isDriving() ?
+                    layer.carSpeed[backEdge] : backOptions.getSpeed(backTraverseMode);
+            if ((layer.flags[backEdge] & TURN_RESTRICTED) != 0 && !canTurn(backEdge, e, labelTime[u], traverseMode)) {
+                return -1;
+            }
+            int v = labelVertex[u];
+            double turnCost = 0;
+            if ((layer.vertexFlags[v] & INTERSECTION) != 0) {
+                // The simple model has no cost on free flowing intersections, skip the edge objects in that case.
+                if (!(simpleCostModel && (layer.vertexFlags[v] & FREE_FLOWING) != 0)) {
+                    turnCost = opt.getIntersectionTraversalCostModel().computeTraversalCost(
+                            (IntersectionVertex) layer.vertices[v], (StreetEdge) layer.edges[backEdge],
+                            (StreetEdge) layer.edges[e], traverseMode, opt, (float) backSpeed, (float) speed);
+                }
+            }
+            roundedTime += (int) Math.ceil(turnCost);
+        }
+
+        if (walkingBike || traverseMode == TraverseMode.BICYCLE) {
+            if (!(backWalkingBike || backMode == BICYCLE)) {
+                roundedTime += opt.bikeSwitchTime;
+            }
+        }
+        return newLabel(layer.target[e], labelTime[u] + roundedTime, e, u, modeCode(traverseMode), walkingBike,
+                noThruTraffic);
+    }
+
+    /** As in StreetEdge.canTraverse(RoutingRequest, TraverseMode). */
+    private boolean canTraverse(int e, RoutingRequest opt, TraverseMode traverseMode) {
+        int edgeFlags = layer.flags[e];
+        if (opt.wheelchairAccessible) {
+            if ((edgeFlags & WHEELCHAIR_ACCESSIBLE) == 0) return false;
+            if (layer.maxSlope[e] > opt.maxSlope) return false;
+        }
+        switch (traverseMode) {
+            case WALK: return (edgeFlags & ALLOWS_WALK) != 0;
+            case BICYCLE: return (edgeFlags & ALLOWS_BICYCLE) != 0;
+            case CAR: return (edgeFlags & ALLOWS_CAR) != 0;
+            default: return false;
+        }
+    }
+
+    /** As in StreetEdge.canTurnOnto(), for edges of the layer which are only equivalent to themselves. */
+    private boolean canTurn(int fromEdge, int toEdge, long time, TraverseMode traverseMode) {
+        Edge to = layer.edges[toEdge];
+        for (TurnRestriction restriction : layer.turnRestrictions[fromEdge]) {
+            boolean applies = restriction.modes.contains(traverseMode) && restriction.active(time);
+            if (restriction.type == TurnRestrictionType.ONLY_TURN) {
+                if (!to.isEquivalentTo(restriction.to) && applies) return false;
+            } else {
+                if (to.isEquivalentTo(restriction.to) && applies) return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Add a label to the labels of its vertex as ShortestPathTree.add() does with the EarliestArrival dominance
+     * function, removing the labels it dominates. Labels are compared on time, unless one of them is at the end of a
+     * turn restricted edge (see DominanceFunction.betterOrEqualAndComparable).
+     * @return false if the label is dominated by an existing label and was not added.
+     */
+    private boolean add(int label) {
+        int v = labelVertex[label];
+        int previous = -1;
+        int existing = firstLabel[v];
+        if (existing < 0) touchedVertices.add(v);
+        while (existing >= 0) {
+            if (comparable(existing, label) && labelTime[existing] <= labelTime[label]) return false;
+            if (comparable(label, existing) && labelTime[label] <= labelTime[existing]) {
+                labelAlive[existing] = false;
+                existing = nextLabel[existing];
+                if (previous < 0) firstLabel[v] = existing;
+                else nextLabel[previous] = existing;
+            } else {
+                previous = existing;
+                existing = nextLabel[existing];
+            }
+        }
+        if (previous < 0) firstLabel[v] = label;
+        else nextLabel[previous] = label;
+        labelAlive[label] = true;
+        return true;
+    }
+
+    private boolean comparable(int a, int b) {
+        int backEdge = labelBackEdge[a];
+        return backEdge == labelBackEdge[b] || backEdge < 0 || (layer.flags[backEdge] & TURN_RESTRICTED) == 0;
+    }
+
+    private int newLabel(int vertex, long time, int backEdge, int parent, byte backMode, boolean backWalkingBike,
+                         boolean noThruTraffic) {
+        if (nLabels == labelVertex.length) {
+            int capacity = nLabels * 2;
+            labelVertex = Arrays.copyOf(labelVertex, capacity);
+            labelTime = Arrays.copyOf(labelTime, capacity);
+            labelBackEdge = Arrays.copyOf(labelBackEdge, capacity);
+            labelParent = Arrays.copyOf(labelParent, capacity);
+            nextLabel = Arrays.copyOf(nextLabel, capacity);
+            labelBackMode = Arrays.copyOf(labelBackMode, capacity);
+            labelBackWalkingBike = Arrays.copyOf(labelBackWalkingBike, capacity);
+            labelNoThruTraffic = Arrays.copyOf(labelNoThruTraffic, capacity);
+            labelAlive = Arrays.copyOf(labelAlive, capacity);
+        }
+        int label = nLabels++;
+        labelVertex[label] = vertex;
+        labelTime[label] = time;
+        labelBackEdge[label] = backEdge;
+        labelParent[label] = parent;
+        nextLabel[label] = -1;
+        labelBackMode[label] = backMode;
+        labelBackWalkingBike[label] = backWalkingBike;
+        labelNoThruTraffic[label] = noThruTraffic;
+        labelAlive[label] = false;
+        return label;
+    }
+
+    private void reset() {
+        for (int i = 0; i < touchedVertices.size(); i++) {
+            firstLabel[touchedVertices.get(i)] = -1;
+        }
+        touchedVertices.resetQuick();
+        nLabels = 0;
+        heapSize = 0;
+        origin = -1;
+    }
+
+    private static byte modeCode(TraverseMode traverseMode) {
+        switch (traverseMode) {
+            case WALK: return WALK;
+            case BICYCLE: return BICYCLE;
+            case CAR: return CAR;
+            default: return LEG_SWITCH;
+        }
+    }
+
+    private static TraverseMode traverseMode(byte modeCode) {
+        switch (modeCode) {
+            case WALK: return TraverseMode.WALK;
+            case BICYCLE: return TraverseMode.BICYCLE;
+            case CAR: return TraverseMode.CAR;
+            case LEG_SWITCH: return TraverseMode.LEG_SWITCH;
+            default: return null;
+        }
+    }
+
+    /* Binary heap, as BinHeap. */
+
+    private void heapInsert(int label, double priority) {
+        heapSize++;
+        if (heapSize == heapLabels.length) {
+            heapLabels = Arrays.copyOf(heapLabels, heapLabels.length * 2);
+            heapPriorities = Arrays.copyOf(heapPriorities, heapPriorities.length * 2);
+        }
+        int i;
+        for (i = heapSize; i > 1 && heapPriorities[i / 2] > priority; i /= 2) {
+            heapLabels[i] = heapLabels[i / 2];
+            heapPriorities[i] = heapPriorities[i / 2];
+        }
+        heapLabels[i] = label;
+        heapPriorities[i] = priority;
+    }
+
+    private int heapExtractMin() {
+        int minLabel = heapLabels[1];
+        int lastLabel = heapLabels[heapSize];
+        double lastPriority = heapPriorities[heapSize];
+        heapSize--;
+        int i, child;
+        for (i = 1; i * 2 <= heapSize; i = child) {
+            child = i * 2;
+            if (child != heapSize && heapPriorities[child + 1] < heapPriorities[child]) child++;
+            if (lastPriority > heapPriorities[child]) {
+                heapLabels[i] = heapLabels[child];
+                heapPriorities[i] = heapPriorities[child];
+            } else break;
+        }
+        heapLabels[i] = lastLabel;
+        heapPriorities[i] = lastPriority;
+        return minLabel;
+    }
+
+    /* Results of the last search. */
+
+    /** @return the vertices reached by the last search, including its origin. */
+    public List<Vertex> getReachedVertices() {
+        List<Vertex> ret = new ArrayList<>(touchedVertices.size());
+        for (int i = 0; i < touchedVertices.size(); i++) {
+            int v = touchedVertices.get(i);
+            if (firstLabel[v] >= 0) ret.add(layer.vertices[v]);
+        }
+        return ret;
+    }
+
+    /** @return the earliest arrival time at the given vertex in seconds since the epoch, or -1 if it was not reached. */
+    public long getArrivalTime(Vertex vertex) {
+        int label = bestLabel(vertex);
+        return label < 0 ? -1 : labelTime[label];
+    }
+
+    /** @return the edges from the origin to the given vertex on the earliest arrival path, or null if not reached. */
+    public List<Edge> getPath(Vertex vertex) {
+        int label = bestLabel(vertex);
+        if (label < 0) return null;
+        List<Edge> ret = new ArrayList<>();
+        for (; labelParent[label] >= 0; label = labelParent[label]) {
+            ret.add(layer.edges[labelBackEdge[label]]);
+        }
+        Collections.reverse(ret);
+        return ret;
+    }
+
+    private int bestLabel(Vertex vertex) {
+        if (!layer.contains(vertex)) return -1;
+        int best = -1;
+        for (int label = firstLabel[vertex.getIndex()]; label >= 0; label = nextLabel[label]) {
+            if (best < 0 || labelTime[label] < labelTime[best]) best = label;
+        }
+        return best;
+    }
+
+}
@@ -4,6 +4,7 @@ import gnu.trove.map.TObjectDoubleMap;
 import gnu.trove.map.hash.TObjectDoubleHashMap;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.pqueue.BinHeap;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.TraverseMode;
@@ -382,7 +383,8 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             }
             // This search is proceeding backward relative to the main search.
             // When the main search is arriveBy the heuristic search looks at OUTgoing edges.
-            for (Edge e : routingRequest.arriveBy ? u.getOutgoing() : u.getIncoming()) {
+            RoutingContext rctx = routingRequest.rctx;
+            for (Edge e : routingRequest.arriveBy ? rctx.getOutgoing(u) : rctx.getIncoming(u)) {
                 // Do not enter streets in this phase, which should only touch transit.
                 if (e instanceof StreetTransitLink) {
                     continue;
@@ -509,7 +511,7 @@ public class InterleavedBidirectionalHeuristic implements RemainingWeightHeurist
             }
 
             // Attempt to traverse all edges going in the direction desired
-            for (Edge e : rr.arriveBy ? v.getIncoming() : v.getOutgoing()) {
+            for (Edge e : rr.arriveBy ? rr.rctx.getIncoming(v) : rr.rctx.getOutgoing(v)) {
                 // arriveBy has been set to match actual directional behavior in this subsearch.
                 // Max walk distance cutoff or pre transit time cutoff will happen in the street
                 // edge traversal method.
@@ -0,0 +1,110 @@
+package org.opentripplanner.routing.core;
+
+import org.opentripplanner.common.model.P2;
+import org.opentripplanner.model.FeedScopedId;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Indexes a collection of FareRuleSets so that only the rule sets that may match a sequence of rides have to be
+ * evaluated, rather than all of them. Each rule set is indexed by its most selective restriction, in this order:
+ * <ul>
+ * <li>origin and destination zones: a sequence can only match if one of its (start zone, end zone), (start zone, any)
+ * or (any, start zone) pairs is in the rule set, as in FareRuleSet.matches().</li>
+ * <li>routes: all the routes of a matching sequence are in the rule set, so any one of them can be used for lookup.</li>
+ * <li>agency: a matching sequence is on this agency only.</li>
+ * </ul>
+ * Rule sets with none of these restrictions are candidates for every sequence. Candidates still have to be checked
+ * with FareRuleSet.matches(). They are returned in the order of the indexed collection, so that ties between fares are
+ * broken in the same way as when scanning the collection.
+ */
+public class FareRuleIndex {
+
+    private final FareRuleSet[] ruleSets;
+
+    private final Map<P2<String>, int[]> byOriginDestination;
+
+    private final Map<FeedScopedId, int[]> byRoute;
+
+    private final Map<String, int[]> byAgency;
+
+    /** The rule sets that are candidates for every sequence of rides. */
+    private final int[] unindexed;
+
+    public FareRuleIndex(Collection<FareRuleSet> fareRules) {
+        ruleSets = fareRules.toArray(new FareRuleSet[0]);
+        Map<P2<String>, List<Integer>> odLists = new HashMap<>();
+        Map<FeedScopedId, List<Integer>> routeLists = new HashMap<>();
+        Map<String, List<Integer>> agencyLists = new HashMap<>();
+        List<Integer> unindexedList = new ArrayList<>();
+        for (int i = 0; i < ruleSets.length; i++) {
+            FareRuleSet ruleSet = ruleSets[i];
+            if (!ruleSet.getOriginDestinations().isEmpty()) {
+                for (P2<String> od : ruleSet.getOriginDestinations()) {
+                    odLists.computeIfAbsent(od, k -> new ArrayList<>()).add(i);
+                }
+            } else if (!ruleSet.getRoutes().isEmpty()) {
+                for (FeedScopedId route : ruleSet.getRoutes()) {
+                    routeLists.computeIfAbsent(route, k -> new ArrayList<>()).add(i);
+                }
+            } else if (ruleSet.hasAgencyDefined()) {
+                agencyLists.computeIfAbsent(ruleSet.getAgency(), k -> new ArrayList<>()).add(i);
+            } else {
+                unindexedList.add(i);
+            }
+        }
+        byOriginDestination = toArrays(odLists);
+        byRoute = toArrays(routeLists);
+        byAgency = toArrays(agencyLists);
+        unindexed = unindexedList.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static <K> Map<K, int[]> toArrays(Map<K, List<Integer>> lists) {
+        Map<K, int[]> arrays = new HashMap<>(lists.size() * 2);
+        for (Map.Entry<K, List<Integer>> entry : lists.entrySet()) {
+            arrays.put(entry.getKey(), entry.getValue().stream().mapToInt(Integer::intValue).toArray());
+        }
+        return arrays;
+    }
+
+    /** @return the number of rule sets in this index. */
+    public int size() {
+        return ruleSets.length;
+    }
+
+    /**
+     * @return the rule sets that may match a sequence of rides with the given properties, which are those passed to
+     *         FareRuleSet.matches(), in the order of the indexed collection.
+     */
+    public List<FareRuleSet> getCandidates(Set<String> agencies, String startZone, String endZone,
+                                           Set<FeedScopedId> routesVisited) {
+        BitSet candidates = new BitSet(ruleSets.length);
+        add(candidates, byOriginDestination.get(new P2<>(startZone, endZone)));
+        add(candidates, byOriginDestination.get(new P2<>(startZone, null)));
+        add(candidates, byOriginDestination.get(new P2<>(null, startZone)));
+        if (!routesVisited.isEmpty()) {
+            add(candidates, byRoute.get(routesVisited.iterator().next()));
+        }
+        if (agencies.size() == 1) {
+            add(candidates, byAgency.get(agencies.iterator().next()));
+        }
+        add(candidates, unindexed);
+        List<FareRuleSet> ret = new ArrayList<>(candidates.cardinality());
+        for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+            ret.add(ruleSets[i]);
+        }
+        return ret;
+    }
+
+    private static void add(BitSet candidates, int[] indexes) {
+        if (indexes == null) return;
+        for (int i : indexes) candidates.set(i);
+    }
+
+}
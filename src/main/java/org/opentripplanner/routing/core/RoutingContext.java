@@ -120,6 +120,13 @@ public class RoutingContext implements Cloneable {
      */
     public Collection<Vertex> temporaryVertices = new ArrayList<>();
 
+    /**
+     * The temporary edges of this request attached to permanent vertices. Temporary edges are only referenced by the
+     * temporary vertices they touch (see the Edge constructor), this overlay lets the search find them from the
+     * permanent side. It is rebuilt from the temporary vertices by indexTemporaryEdges().
+     */
+    private OverlayGraph temporaryEdges = new OverlayGraph();
+
     /* CONSTRUCTORS */
 
     /**
@@ -308,6 +315,7 @@ public class RoutingContext implements Cloneable {
         }
         temporaryVertices.addAll(TemporaryVertex.findSubgraph(fromVertex));
         temporaryVertices.addAll(TemporaryVertex.findSubgraph(toVertex));
+        indexTemporaryEdges();
 
         if (opt.startingTransitStopId != null) {
             Stop stop = graph.index.stopForId.get(opt.startingTransitStopId);
@@ -431,12 +439,58 @@ public class RoutingContext implements Cloneable {
     }
 
     /**
-     * Tear down this routing context, removing any temporary edges from
-     * the "permanent" graph objects. This enables all temporary objects
-     * for garbage collection.
+     * Index the edges between the temporary vertices of this request and permanent vertices by permanent vertex. This
+     * must be called when temporary vertices are added after the context is created (e.g. for GTFS-Flex), the
+     * searches call it when they start.
+     */
+    public void indexTemporaryEdges() {
+        OverlayGraph overlay = new OverlayGraph();
+        for (Vertex v : temporaryVertices) {
+            for (Edge e : v.getOutgoing()) {
+                if (!(e.getToVertex() instanceof TemporaryVertex)) {
+                    overlay.addIncoming(e.getToVertex(), e);
+                }
+            }
+            for (Edge e : v.getIncoming()) {
+                if (!(e.getFromVertex() instanceof TemporaryVertex)) {
+                    overlay.addOutgoing(e.getFromVertex(), e);
+                }
+            }
+        }
+        temporaryEdges = overlay;
+    }
+
+    /** @return the outgoing edges of the vertex, including the temporary edges of this request. */
+    public Collection<Edge> getOutgoing(Vertex v) {
+        List<Edge> temporary = temporaryEdges.getOutgoing(v);
+        if (temporary.isEmpty()) {
+            return v.getOutgoing();
+        }
+        List<Edge> ret = new ArrayList<>(v.getDegreeOut() + temporary.size());
+        ret.addAll(v.getOutgoing());
+        ret.addAll(temporary);
+        return ret;
+    }
+
+    /** @return the incoming edges of the vertex, including the temporary edges of this request. */
+    public Collection<Edge> getIncoming(Vertex v) {
+        List<Edge> temporary = temporaryEdges.getIncoming(v);
+        if (temporary.isEmpty()) {
+            return v.getIncoming();
+        }
+        List<Edge> ret = new ArrayList<>(v.getDegreeIn() + temporary.size());
+        ret.addAll(v.getIncoming());
+        ret.addAll(temporary);
+        return ret;
+    }
+
+    /**
+     * Tear down this routing context, removing any remaining references to temporary vertices from the "permanent"
+     * graph objects and dropping the temporary edge overlay. This enables all temporary objects for garbage collection.
      */
     public void destroy() {
        TemporaryVertex.disposeAll(temporaryVertices);
        temporaryVertices.clear();
+       temporaryEdges = new OverlayGraph();
     }
 }
\ No newline at end of file
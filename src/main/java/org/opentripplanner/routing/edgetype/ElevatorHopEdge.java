@@ -27,6 +27,10 @@ public class ElevatorHopEdge extends Edge implements ElevatorEdge {
         super(from, to);
         this.permission = permission;
     }
+
+    public StreetTraversalPermission getPermission() {
+        return permission;
+    }
     
     @Override
     public State traverse(State s0) {
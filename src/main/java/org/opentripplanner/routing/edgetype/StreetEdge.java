@@ -646,6 +646,20 @@ public class StreetEdge extends Edge implements Cloneable {
 		return CompactLineString.uncompactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), compactGeometry, isBack());
 	}
 
+	/**
+	 * Give the coordinates of the geometry to a visitor, in the same order as getGeometry() but
+	 * without building a LineString.
+	 */
+	public void visitGeometry(CompactLineString.CoordinateVisitor visitor) {
+		CompactLineString.visitCoordinates(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), compactGeometry, isBack(), visitor);
+	}
+
+	@Override
+	public boolean visitDisplayGeometry(CompactLineString.CoordinateVisitor visitor) {
+		visitGeometry(visitor);
+		return true;
+	}
+
 	private void setGeometry(LineString geometry) {
 		this.compactGeometry = CompactLineString.compactLineString(fromv.getLon(), fromv.getLat(), tov.getLon(), tov.getLat(), isBack() ? (LineString)geometry.reverse() : geometry, isBack());
 	}
@@ -764,15 +778,28 @@ public class StreetEdge extends Edge implements Cloneable {
 
     /** calculate the length of this street segement from its geometry */
     protected void calculateLengthFromGeometry () {
-        double accumulatedMeters = 0;
+        GeometryLength length = new GeometryLength();
+        visitGeometry(length);
+        length_mm = (int) (length.meters * 1000);
+    }
 
-        LineString geom = getGeometry();
+    /** Accumulates the length of a geometry while its coordinates are visited. */
+    private static class GeometryLength implements CompactLineString.CoordinateVisitor {
 
-        for (int i = 1; i < geom.getNumPoints(); i++) {
-            accumulatedMeters += SphericalDistanceLibrary.distance(geom.getCoordinateN(i - 1), geom.getCoordinateN(i));
-        }
+        double meters = 0;
+
+        private double lastX = Double.NaN;
 
-        length_mm = (int) (accumulatedMeters * 1000);
+        private double lastY;
+
+        @Override
+        public void visit(double x, double y) {
+            if (!Double.isNaN(lastX)) {
+                meters += SphericalDistanceLibrary.distance(lastY, lastX, y, x);
+            }
+            lastX = x;
+            lastY = y;
+        }
     }
 
     /** Split this street edge and return the resulting street edges */
@@ -24,7 +24,7 @@ import java.util.Locale;
 public class StreetTransitLink extends Edge {
 
     private static final long serialVersionUID = -3311099256178798981L;
-    static final int STL_TRAVERSE_COST = 1;
+    public static final int STL_TRAVERSE_COST = 1;
 
     private boolean wheelchairAccessible;
 
@@ -141,6 +141,14 @@ public class StreetTransitLink extends Edge {
         return options.transitAllowed() ? 0 : Double.POSITIVE_INFINITY;
     }
 
+    public TransitStop getTransitStop() {
+        return transitStop;
+    }
+
+    public boolean isWheelchairAccessible() {
+        return wheelchairAccessible;
+    }
+
     public Vertex getFromVertex() {
         return fromv;
     }
@@ -179,12 +179,14 @@ public class Timetable implements Serializable {
         int bestTime = boarding ? Integer.MAX_VALUE : Integer.MIN_VALUE;
         // Hoping JVM JIT will distribute the loop over the if clauses as needed.
         // We could invert this and skip some service days based on schedule overlap as in RRRR.
+        // The time of each trip at the stop is checked before the more expensive service, trip and
+        // transfer checks, which are skipped for the trips that cannot be better than the best one
+        // found so far. Scheduled times are a time shift plus an array shared by the trips with
+        // the same running times, so this mostly reads memory shared by many trips. A minimum
+        // transfer time can only make the time to board later (alight earlier), so a trip leaving
+        // before (arriving after) the search time can be skipped before the transfer check.
         for (TripTimes tt : tripTimes) {
             if (tt.isCanceled()) continue;
-            if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
-            if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
-            int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
-            if (adjustedTime == -1) continue;
             if (boarding) {
                 // For GTFS-Flex, if this is a flag-stop or deviated-route board/alight, we need to
                 // add to the scheduled timepoint the amount of time the vehicle travels along the
@@ -205,7 +207,12 @@ public class Timetable implements Serializable {
                 if (depTime < 0) continue; // negative values were previously used for canceled trips/passed stops/skipped stops, but
                                            // now its not sure if this check should be still in place because there is a boolean field
                                            // for canceled trips
-                if (depTime >= adjustedTime && depTime < bestTime) {
+                if (depTime < time || depTime >= bestTime) continue;
+                if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
+                if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+                int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                if (adjustedTime == -1) continue;
+                if (depTime >= adjustedTime) {
                     bestTrip = tt;
                     bestTime = depTime;
                 }
@@ -226,7 +233,12 @@ public class Timetable implements Serializable {
 
                 int arvTime = tt.getArrivalTime(stopIndex) + flexTimeAdjustment;
                 if (arvTime < 0) continue;
-                if (arvTime <= adjustedTime && arvTime > bestTime) {
+                if (arvTime > time || arvTime <= bestTime) continue;
+                if ( ! serviceDay.serviceRunning(tt.serviceCode)) continue; // TODO merge into call on next line
+                if ( ! tt.tripAcceptable(s0, stopIndex)) continue;
+                int adjustedTime = adjustTimeForTransfer(s0, currentStop, tt.trip, boarding, serviceDay, time);
+                if (adjustedTime == -1) continue;
+                if (arvTime <= adjustedTime) {
                     bestTrip = tt;
                     bestTime = arvTime;
                 }
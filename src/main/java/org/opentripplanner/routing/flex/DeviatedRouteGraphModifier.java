@@ -16,6 +16,7 @@ import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.flex.FlexPatternHop;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.edgetype.flex.TemporaryPartialPatternHop;
+import org.opentripplanner.routing.flex.FlexIndex.HopProjection;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
 import org.opentripplanner.routing.spt.GraphPath;
@@ -63,10 +64,10 @@ public class DeviatedRouteGraphModifier extends GtfsFlexGraphModifier {
     @Override
     public TemporaryPartialPatternHop makeHopNewTo(RoutingRequest opt, State state, FlexPatternHop hop, PatternArriveVertex to, Stop toStop) {
         GraphPath path = new GraphPath(state, false);
-        LengthIndexedLine line = new LengthIndexedLine(hop.getGeometry());
-        double startIndex = line.getStartIndex();
-        double endIndex = line.project(state.getBackEdge().getToVertex().getCoordinate());
-        if (hop.getStopIndex() == 0 && tooLittleOnRoute(hop, line, startIndex, endIndex)) {
+        HopProjection projection = graph.flexIndex.getProjection(hop);
+        double startIndex = projection.getStartIndex();
+        double endIndex = projection.project(state.getBackEdge().getToVertex().getCoordinate());
+        if (hop.getStopIndex() == 0 && tooLittleOnRoute(hop, projection.getLine(), startIndex, endIndex)) {
             StreetVertex toVertex = findFirstStreetVertex(opt.rctx, true);
             TemporaryTransitStop toTempStop = getTemporaryStop(toVertex, null, opt.rctx, opt);
             TransitStop fromStop = graph.index.stopVertexForStop.get(hop.getBeginStop());
@@ -80,11 +81,11 @@ public class DeviatedRouteGraphModifier extends GtfsFlexGraphModifier {
     @Override
     public TemporaryPartialPatternHop makeHopNewFrom(RoutingRequest opt, State state, FlexPatternHop hop, PatternDepartVertex from, Stop fromStop) {
         GraphPath path = new GraphPath(state, false);
-        LengthIndexedLine line = new LengthIndexedLine(hop.getGeometry());
+        HopProjection projection = graph.flexIndex.getProjection(hop);
         // state is place where we meet line
-        double startIndex = line.project(state.getBackEdge().getFromVertex().getCoordinate());
-        double endIndex = line.getEndIndex();
-        if (hop.getStopIndex() + 1 == hop.getPattern().getPatternHops().size() && tooLittleOnRoute(hop, line, startIndex, endIndex)) {
+        double startIndex = projection.project(state.getBackEdge().getFromVertex().getCoordinate());
+        double endIndex = projection.getEndIndex();
+        if (hop.getStopIndex() + 1 == hop.getPattern().getPatternHops().size() && tooLittleOnRoute(hop, projection.getLine(), startIndex, endIndex)) {
             StreetVertex fromVertex = findFirstStreetVertex(opt.rctx, false);
             TemporaryTransitStop fromTempStop = getTemporaryStop(fromVertex, null, opt.rctx, opt);
             TransitStop toStop = graph.index.stopVertexForStop.get(hop.getEndStop());
@@ -99,14 +100,14 @@ public class DeviatedRouteGraphModifier extends GtfsFlexGraphModifier {
     public TemporaryPartialPatternHop shortenEnd(RoutingRequest opt, State state, TemporaryPartialPatternHop hop, PatternStopVertex to, Stop toStop) {
         FlexPatternHop originalHop = hop.getOriginalHop();
         GraphPath path = new GraphPath(state, false);
-        LengthIndexedLine line = new LengthIndexedLine(originalHop.getGeometry());
+        HopProjection projection = graph.flexIndex.getProjection(originalHop);
         double startIndex = hop.getStartIndex();
-        double endIndex = line.project(state.getBackEdge().getToVertex().getCoordinate());
+        double endIndex = projection.project(state.getBackEdge().getToVertex().getCoordinate());
         if (endIndex < startIndex)
             return null;
         // we may want to create a ~direct~ hop.
         // let's say, create a direct hop if the distance we would travel on the route is < 100m. We'll do this in vertexVisitor later.
-        if (tooLittleOnRoute(originalHop, line, startIndex, endIndex)) {
+        if (tooLittleOnRoute(originalHop, projection.getLine(), startIndex, endIndex)) {
             return null;
         } else {
             return new TemporaryPartialPatternHop(originalHop, (PatternStopVertex) hop.getFromVertex(), to, hop.getBeginStop(), toStop,
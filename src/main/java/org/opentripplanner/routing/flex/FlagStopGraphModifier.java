@@ -1,6 +1,5 @@
 package org.opentripplanner.routing.flex;
 
-import org.locationtech.jts.linearref.LengthIndexedLine;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.routing.algorithm.strategies.SearchTerminationStrategy;
 import org.opentripplanner.routing.core.RoutingRequest;
@@ -9,6 +8,7 @@ import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.flex.FlexPatternHop;
 import org.opentripplanner.routing.edgetype.StreetTransitLink;
 import org.opentripplanner.routing.edgetype.flex.TemporaryPartialPatternHop;
+import org.opentripplanner.routing.flex.FlexIndex.HopProjection;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.graph.Vertex;
@@ -43,21 +43,20 @@ public class FlagStopGraphModifier extends GtfsFlexGraphModifier {
 
     @Override
     public TemporaryPartialPatternHop makeHopNewTo(RoutingRequest opt, State state, FlexPatternHop hop, PatternArriveVertex to, Stop toStop) {
-        LengthIndexedLine line = new LengthIndexedLine(hop.getGeometry());
-        return new TemporaryPartialPatternHop(hop, (PatternStopVertex) hop.getFromVertex(), to, hop.getBeginStop(), toStop, line.getStartIndex(), line.project(to.getCoordinate()), opt.flexFlagStopBufferSize);
+        HopProjection projection = graph.flexIndex.getProjection(hop);
+        return new TemporaryPartialPatternHop(hop, (PatternStopVertex) hop.getFromVertex(), to, hop.getBeginStop(), toStop, projection.getStartIndex(), projection.project(to.getCoordinate()), opt.flexFlagStopBufferSize);
     }
 
     @Override
     public TemporaryPartialPatternHop makeHopNewFrom(RoutingRequest opt, State state, FlexPatternHop hop, PatternDepartVertex from, Stop fromStop) {
-        LengthIndexedLine line = new LengthIndexedLine(hop.getGeometry());
-        return new TemporaryPartialPatternHop(hop, from, (PatternStopVertex) hop.getToVertex(), fromStop, hop.getEndStop(), line.project(from.getCoordinate()), line.getEndIndex(), opt.flexFlagStopBufferSize);
+        HopProjection projection = graph.flexIndex.getProjection(hop);
+        return new TemporaryPartialPatternHop(hop, from, (PatternStopVertex) hop.getToVertex(), fromStop, hop.getEndStop(), projection.project(from.getCoordinate()), projection.getEndIndex(), opt.flexFlagStopBufferSize);
     }
 
     @Override
     public TemporaryPartialPatternHop shortenEnd(RoutingRequest opt, State state, TemporaryPartialPatternHop hop, PatternStopVertex to, Stop toStop) {
         FlexPatternHop originalHop = hop.getOriginalHop();
-        LengthIndexedLine line = new LengthIndexedLine(originalHop.getGeometry());
-        double endIndex = line.project(to.getCoordinate());
+        double endIndex = graph.flexIndex.getProjection(originalHop).project(to.getCoordinate());
         if (endIndex < hop.getStartIndex())
             return null;
         return new TemporaryPartialPatternHop(originalHop, (PatternStopVertex) hop.getFromVertex(), to, hop.getBeginStop(), toStop, hop.getStartIndex(), endIndex,
@@ -79,9 +78,9 @@ public class FlagStopGraphModifier extends GtfsFlexGraphModifier {
         }
 
         // Ensure on line
-        LengthIndexedLine line = new LengthIndexedLine(hop.getGeometry());
-        double i = line.project(v.getCoordinate());
-        if (i <= line.getStartIndex() || i >= line.getEndIndex()) {
+        HopProjection projection = graph.flexIndex.getProjection(hop);
+        double i = projection.project(v.getCoordinate());
+        if (i <= projection.getStartIndex() || i >= projection.getEndIndex()) {
             return null;
         }
 
@@ -93,7 +92,7 @@ public class FlagStopGraphModifier extends GtfsFlexGraphModifier {
                 LOG.debug("ignoring flag stop at existing stop");
                 return null;
             }
-            for (Edge e : tstop.getOutgoing()) {
+            for (Edge e : rr.rctx.getOutgoing(tstop)) {
                 if (e instanceof StreetTransitLink) {
                     return (StreetVertex) e.getToVertex();
                 }
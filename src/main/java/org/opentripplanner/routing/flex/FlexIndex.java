@@ -1,10 +1,14 @@
 package org.opentripplanner.routing.flex;
 
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.Envelope;
 import org.locationtech.jts.geom.LineString;
+import org.locationtech.jts.linearref.LengthIndexedLine;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.graph_builder.module.map.StreetMatcher;
 import org.opentripplanner.routing.edgetype.flex.FlexPatternHop;
@@ -20,6 +24,7 @@ import org.slf4j.LoggerFactory;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -27,15 +32,29 @@ import java.util.stream.Collectors;
 
 /**
  * This class contains indices needed for flex service. Right now, that's a map between PatternHops
- * the StreetEdges which the hop is incident with. There may be more indices if new types of
- * flex transit are added.
+ * the StreetEdges which the hop is incident with, and the projections of the vertices of those
+ * street edges onto the hop geometry. There may be more indices if new types of flex transit are
+ * added.
  */
 public class FlexIndex {
 
     private static final Logger LOG = LoggerFactory.getLogger(FlexIndex.class);
 
+    /** The maximum number of hops for which projections onto the hop geometry are kept. */
+    private static final int MAX_CACHED_PROJECTIONS = 10000;
+
     private final Multimap<Edge, FlexPatternHop> hopsForEdge = HashMultimap.create();
 
+    private final Multimap<FlexPatternHop, Edge> edgesForHop = HashMultimap.create();
+
+    /**
+     * Projections are computed on first use rather than when the index is built, as most hops of a
+     * large feed are never reached by a request.
+     */
+    private final LoadingCache<FlexPatternHop, HopProjection> projectionForHop = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CACHED_PROJECTIONS)
+            .build(CacheLoader.from(this::computeProjection));
+
     public void init(Graph graph) {
         LOG.info("initializing hops-for-edge map...");
         initializeHopsForEdgeMap(graph);
@@ -48,6 +67,28 @@ public class FlexIndex {
         return hopsForEdge.get(e);
     }
 
+    /**
+     * Return the projection onto the geometry of a hop, which gives the positions along the hop of
+     * the vertices of the street edges matched to it without projecting them again in each request.
+     * The hop must have a geometry.
+     */
+    public HopProjection getProjection(FlexPatternHop hop) {
+        return projectionForHop.getUnchecked(hop);
+    }
+
+    private HopProjection computeProjection(FlexPatternHop hop) {
+        LengthIndexedLine line = new LengthIndexedLine(hop.getGeometry());
+        Map<Coordinate, Double> indexForCoordinate = new HashMap<>();
+        for (Edge e : edgesForHop.get(hop)) {
+            for (Coordinate c : new Coordinate[] { e.getFromVertex().getCoordinate(), e.getToVertex().getCoordinate() }) {
+                if (!indexForCoordinate.containsKey(c)) {
+                    indexForCoordinate.put(c, line.project(c));
+                }
+            }
+        }
+        return new HopProjection(line, indexForCoordinate);
+    }
+
     private void initializeHopsForEdgeMap(Graph graph) {
         if (!graph.hasStreets) {
             LOG.info("Cannot initialize hop-to-street-edge map; graph does not have streets loaded.");
@@ -81,6 +122,7 @@ public class FlexIndex {
                     }
                     for (Edge e : edges) {
                         hopsForEdge.put(e, patternHop);
+                        edgesForHop.put(patternHop, e);
                     }
 
                     // do the reverse, since we are walking and can go the other way.
@@ -90,6 +132,7 @@ public class FlexIndex {
                     }
                     for (Edge e : edges) {
                         hopsForEdge.put(e, patternHop);
+                        edgesForHop.put(patternHop, e);
                     }
                 }
             }
@@ -140,4 +183,38 @@ public class FlexIndex {
         }
         return true;
     }
+
+    /**
+     * The geometry of a flex pattern hop indexed by length, with the positions along it of the
+     * street vertices near the hop. Positions of other locations are computed when asked for.
+     */
+    public static class HopProjection {
+
+        private final LengthIndexedLine line;
+
+        private final Map<Coordinate, Double> indexForCoordinate;
+
+        HopProjection(LengthIndexedLine line, Map<Coordinate, Double> indexForCoordinate) {
+            this.line = line;
+            this.indexForCoordinate = indexForCoordinate;
+        }
+
+        public LengthIndexedLine getLine() {
+            return line;
+        }
+
+        public double getStartIndex() {
+            return line.getStartIndex();
+        }
+
+        public double getEndIndex() {
+            return line.getEndIndex();
+        }
+
+        /** Return the position along the hop geometry of the point of the hop closest to c. */
+        public double project(Coordinate c) {
+            Double index = indexForCoordinate.get(c);
+            return index != null ? index : line.project(c);
+        }
+    }
 }
@@ -202,7 +202,7 @@ public abstract class GtfsFlexGraphModifier {
 
     protected TemporaryTransitStop getTemporaryStop(StreetVertex streetVertex, State s, RoutingContext rctx, RoutingRequest options, boolean forwards) {
         if (temporaryTransitStopsForLocation.get(streetVertex) == null) {
-            String name = findName(s, streetVertex, options.locale, forwards);
+            String name = findName(s, streetVertex, rctx, options.locale, forwards);
             TemporaryTransitStop stop = createTemporaryTransitStop(name, streetVertex, rctx);
             temporaryTransitStopsForLocation.put(streetVertex, stop);
             return stop;
@@ -211,7 +211,7 @@ public abstract class GtfsFlexGraphModifier {
     }
 
     // Return a reasonable name for a vertex.
-    private String findName(State state, StreetVertex vertex, Locale locale, boolean forwards) {
+    private String findName(State state, StreetVertex vertex, RoutingContext rctx, Locale locale, boolean forwards) {
         I18NString unnamed = new LocalizedString("unnamedStreet", (String[]) null);
         I18NString name = vertex.getIntersectionName(locale);
         if (!name.equals(unnamed)) {
@@ -223,7 +223,7 @@ public abstract class GtfsFlexGraphModifier {
         int n = 0;
         while (!queue.isEmpty() && n < 3) {
             Vertex v = queue.poll();
-            for (Edge e : (forwards ? v.getOutgoing() : v.getIncoming())) {
+            for (Edge e : (forwards ? rctx.getOutgoing(v) : rctx.getIncoming(v))) {
                 if (e instanceof StreetEdge) {
                     return e.getName(locale);
                 } else {
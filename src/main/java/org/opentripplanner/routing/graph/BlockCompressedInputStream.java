@@ -0,0 +1,148 @@
+package org.opentripplanner.routing.graph;
+
+import org.apache.commons.compress.compressors.lz4.BlockLZ4CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a stream written by BlockCompressedOutputStream. The compressed blocks are read ahead of the reader and
+ * decompressed on a pool of threads, so that decompression does not slow down the thread reading from the stream
+ * (e.g. a Kryo deserializer). Memory use is bounded by the number of blocks read ahead. The decompression threads
+ * stop once the last block has been read, or when the stream is closed.
+ */
+public class BlockCompressedInputStream extends InputStream {
+
+    private final DataInputStream in;
+
+    private final ExecutorService executor;
+
+    private final int maxBlocksInFlight;
+
+    /** The decompressions submitted and not yet read, in order. */
+    private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+
+    private byte[] block = new byte[0];
+
+    private int position = 0;
+
+    private int nBlocks = 0;
+
+    /** Whether the end marker was read from the underlying stream. */
+    private boolean endOfBlocks = false;
+
+    public BlockCompressedInputStream(InputStream in) throws IOException {
+        this(in, Runtime.getRuntime().availableProcessors());
+    }
+
+    /** @throws IOException if the stream does not start with the header of a block compressed stream. */
+    public BlockCompressedInputStream(InputStream in, int nThreads) throws IOException {
+        this.in = new DataInputStream(in);
+        if (this.in.readInt() != BlockCompressedOutputStream.MAGIC) {
+            throw new IOException("Not a block compressed stream.");
+        }
+        int version = this.in.readInt();
+        if (version != BlockCompressedOutputStream.VERSION) {
+            throw new IOException("Unsupported block compressed stream version " + version);
+        }
+        this.in.readInt(); // The block size, which is not needed to read the blocks.
+        this.executor = Executors.newFixedThreadPool(nThreads, r -> {
+            Thread thread = new Thread(r, "graph-decompression");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxBlocksInFlight = nThreads * 2;
+    }
+
+    /** @return true if the given stream, which must support mark, starts with the header of a block compressed stream. */
+    public static boolean isBlockCompressed(InputStream in) throws IOException {
+        in.mark(4);
+        try {
+            DataInputStream data = new DataInputStream(in);
+            return data.readInt() == BlockCompressedOutputStream.MAGIC;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (position == block.length && !nextBlock()) return -1;
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        if (length == 0) return 0;
+        if (position == block.length && !nextBlock()) return -1;
+        int n = Math.min(length, block.length - position);
+        System.arraycopy(block, position, bytes, offset, n);
+        position += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    /** Move on to the next block, reading ahead and submitting the following ones. @return false at the end. */
+    private boolean nextBlock() throws IOException {
+        while (!endOfBlocks && inFlight.size() < maxBlocksInFlight) {
+            int uncompressedLength = in.readInt();
+            if (uncompressedLength < 0) {
+                endOfBlocks = true;
+                int expectedBlocks = in.readInt();
+                if (expectedBlocks != nBlocks) {
+                    throw new IOException("Expected " + expectedBlocks + " blocks, read " + nBlocks);
+                }
+                break;
+            }
+            byte[] compressed = new byte[in.readInt()];
+            in.readFully(compressed);
+            nBlocks++;
+            inFlight.add(executor.submit(() -> decompress(compressed, uncompressedLength)));
+        }
+        if (endOfBlocks) {
+            // Nothing more will be submitted, let the threads go once the last blocks are decompressed.
+            executor.shutdown();
+        }
+        if (inFlight.isEmpty()) return false;
+        try {
+            block = inFlight.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while decompressing a block.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not decompress a block.", e.getCause());
+        }
+        position = 0;
+        return true;
+    }
+
+    private static byte[] decompress(byte[] compressed, int uncompressedLength) throws IOException {
+        byte[] ret = new byte[uncompressedLength];
+        try (InputStream lz4 = new BlockLZ4CompressorInputStream(new ByteArrayInputStream(compressed))) {
+            IOUtils.readFully(lz4, ret);
+        }
+        return ret;
+    }
+
+    @Override
+    public void close() throws IOException {
+        executor.shutdownNow();
+        in.close();
+    }
+
+}
@@ -0,0 +1,173 @@
+package org.opentripplanner.routing.graph;
+
+import org.apache.commons.compress.compressors.lz4.BlockLZ4CompressorOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Splits the bytes written to it into fixed-size blocks and compresses them with LZ4 on a pool of threads, while the
+ * thread writing to the stream (e.g. a Kryo serializer) keeps producing the next blocks. Compressed blocks are written
+ * in order to the underlying stream. Memory use is bounded by the number of blocks in flight.
+ *
+ * The format is a header followed by the blocks and an end marker, all ints being big-endian:
+ * <pre>
+ * header: MAGIC, VERSION, block size
+ * block:  uncompressed length, compressed length, compressed bytes (an LZ4 block)
+ * end:    -1, number of blocks
+ * </pre>
+ * The length prefixes index the blocks, so that a reader can hand out blocks to several threads for decompression
+ * without decompressing them first. See BlockCompressedInputStream.
+ */
+public class BlockCompressedOutputStream extends OutputStream {
+
+    /** The first int of a block compressed stream, "OTPB". */
+    public static final int MAGIC = 0x4F545042;
+
+    public static final int VERSION = 1;
+
+    public static final int DEFAULT_BLOCK_SIZE = 4 * 1024 * 1024;
+
+    private final DataOutputStream out;
+
+    private final ExecutorService executor;
+
+    private final int maxBlocksInFlight;
+
+    /** The compressions submitted and not yet written, in order. */
+    private final Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+
+    private byte[] block;
+
+    private int position = 0;
+
+    private int nBlocks = 0;
+
+    private boolean closed = false;
+
+    public BlockCompressedOutputStream(OutputStream out) throws IOException {
+        this(out, DEFAULT_BLOCK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BlockCompressedOutputStream(OutputStream out, int blockSize, int nThreads) throws IOException {
+        this.out = new DataOutputStream(out);
+        this.block = new byte[blockSize];
+        this.executor = Executors.newFixedThreadPool(nThreads, r -> {
+            Thread thread = new Thread(r, "graph-compression");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.maxBlocksInFlight = nThreads * 2;
+        this.out.writeInt(MAGIC);
+        this.out.writeInt(VERSION);
+        this.out.writeInt(blockSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (position == block.length) flushBlock();
+        block[position++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+        while (length > 0) {
+            if (position == block.length) flushBlock();
+            int n = Math.min(length, block.length - position);
+            System.arraycopy(bytes, offset, block, position, n);
+            position += n;
+            offset += n;
+            length -= n;
+        }
+    }
+
+    /** Submit the current block for compression, writing the oldest compressed blocks if too many are in flight. */
+    private void flushBlock() throws IOException {
+        if (position == 0) return;
+        final byte[] uncompressed = position == block.length ? block : Arrays.copyOf(block, position);
+        inFlight.add(executor.submit(() -> compress(uncompressed)));
+        nBlocks++;
+        // The compressing thread owns the submitted array, continue with a new one.
+        block = new byte[block.length];
+        position = 0;
+        while (inFlight.size() >= maxBlocksInFlight) {
+            writeOldestBlock();
+        }
+    }
+
+    private void writeOldestBlock() throws IOException {
+        byte[] compressed;
+        try {
+            compressed = inFlight.poll().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while compressing a block.", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Could not compress a block.", e.getCause());
+        }
+        // The compressed block starts with the uncompressed length, see compress().
+        out.write(compressed);
+    }
+
+    /** @return the block as it is written to the stream, with its lengths. */
+    private static byte[] compress(byte[] uncompressed) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(uncompressed.length / 2 + 8);
+        DataOutputStream data = new DataOutputStream(bytes);
+        // Placeholders for the lengths.
+        data.writeInt(0);
+        data.writeInt(0);
+        try (BlockLZ4CompressorOutputStream lz4 = new BlockLZ4CompressorOutputStream(bytes)) {
+            lz4.write(uncompressed);
+        }
+        byte[] ret = bytes.toByteArray();
+        writeInt(ret, 0, uncompressed.length);
+        writeInt(ret, 4, ret.length - 8);
+        return ret;
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+
+    /**
+     * Write the blocks that are already compressed. The current partial block is only written when the stream is
+     * closed: Kryo flushes its stream each time its small buffer is full, which must not end a block.
+     */
+    @Override
+    public void flush() throws IOException {
+        while (!inFlight.isEmpty() && inFlight.peek().isDone()) {
+            writeOldestBlock();
+        }
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) return;
+        closed = true;
+        try {
+            flushBlock();
+            while (!inFlight.isEmpty()) {
+                writeOldestBlock();
+            }
+            out.writeInt(-1);
+            out.writeInt(nBlocks);
+            out.close();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}
@@ -1,12 +1,16 @@
 package org.opentripplanner.routing.graph;
 
+import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.LineString;
+import org.opentripplanner.common.geometry.CompactLineString;
 import org.opentripplanner.model.Trip;
 import org.opentripplanner.common.MavenVersion;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
 import org.opentripplanner.routing.util.IncrementingIdGenerator;
 import org.opentripplanner.routing.util.UniqueIdGenerator;
+import org.opentripplanner.routing.vertextype.TemporaryVertex;
 
 import javax.xml.bind.annotation.XmlTransient;
 import java.io.IOException;
@@ -53,8 +57,17 @@ public abstract class Edge implements Serializable {
         // " constructed with bad vertex types");
         // }
 
-        fromv.addOutgoing(this);
-        tov.addIncoming(this);
+        // A temporary edge touching a temporary vertex is only attached to the temporary vertices, so that the permanent
+        // vertices shared by all requests are not modified during routing. The request creating the edge finds it from
+        // the permanent vertices through its RoutingContext.
+        boolean temporary = this instanceof TemporaryEdge
+                && (fromv instanceof TemporaryVertex || tov instanceof TemporaryVertex);
+        if (!temporary || fromv instanceof TemporaryVertex) {
+            fromv.addOutgoing(this);
+        }
+        if (!temporary || tov instanceof TemporaryVertex) {
+            tov.addIncoming(this);
+        }
     }
 
     public Vertex getFromVertex() {
@@ -195,6 +208,22 @@ public abstract class Edge implements Serializable {
         return getGeometry();
     }
 
+    /**
+     * Give the coordinates of the display geometry to a visitor, in order. Edges storing a compact
+     * geometry override this to avoid building a LineString.
+     * @return false if this edge has no geometry.
+     */
+    public boolean visitDisplayGeometry(CompactLineString.CoordinateVisitor visitor) {
+        LineString geometry = getDisplayGeometry();
+        if (geometry == null) {
+            return false;
+        }
+        for (Coordinate c : geometry.getCoordinates()) {
+            visitor.visit(c.x, c.y);
+        }
+        return true;
+    }
+
     /**
      * Returns the azimuth of this edge from head to tail.
      * 
@@ -33,6 +33,7 @@ import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.model.CalendarService;
 import org.opentripplanner.analyst.core.GeometryIndex;
 import org.opentripplanner.analyst.request.SampleFactory;
+import org.opentripplanner.common.GeocoderIndex;
 import org.opentripplanner.common.MavenVersion;
 import org.opentripplanner.common.TurnRestriction;
 import org.opentripplanner.common.geometry.GraphUtils;
@@ -41,7 +42,9 @@ import org.opentripplanner.graph_builder.annotation.NoFutureDates;
 import org.opentripplanner.kryo.HashBiMapSerializer;
 import org.opentripplanner.model.GraphBundle;
 import org.opentripplanner.profile.StopClusterMode;
+import org.opentripplanner.profile.StopTreeCache;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.alertpatch.AlertPatchIndex;
 import org.opentripplanner.routing.core.MortonVertexComparatorFactory;
 import org.opentripplanner.routing.core.TransferTable;
 import org.opentripplanner.routing.core.TraverseMode;
@@ -81,7 +84,7 @@ public class Graph implements Serializable {
     // TODO Remove this field, use Router.routerId ?
     public String routerId;
 
-    private final Map<Edge, Set<AlertPatch>> alertPatches = new HashMap<Edge, Set<AlertPatch>>(0);
+    private final AlertPatchIndex<Edge> alertPatches = new AlertPatchIndex<>();
 
     private final Map<Edge, List<TurnRestriction>> turnRestrictions = Maps.newHashMap();
 
@@ -155,6 +158,9 @@ public class Graph implements Serializable {
     /** Embed a router configuration inside the graph, for starting up with a single file. */
     public String routerConfig = null;
 
+    /** Index of stops and street corners by name for the geocoder, built with the graph. See GraphIndex.geocode(). */
+    public GeocoderIndex geocoderIndex = null;
+
     /* The preferences that were used for graph building. */
     public Preferences preferences = null;
 
@@ -219,6 +225,13 @@ public class Graph implements Serializable {
     /** metadata about graph version */
     public GraphVersion graphVersion = null;
 
+    /**
+     * Distances from each transit stop to nearby street vertices, precomputed at graph build time if requested.
+     * Otherwise, or if the stops of the graph changed since it was computed, it is computed on first use by the
+     * GraphIndex.
+     */
+    public StopTreeCache stopTreeCache = null;
+
     public Graph(Graph basedOn) {
         this();
         this.bundle = basedOn.getBundle();
@@ -264,9 +277,7 @@ public class Graph implements Serializable {
      */
     public void removeEdge(Edge e) {
         if (e != null) {
-            synchronized (alertPatches) {   // This synchronization is somewhat silly because this
-                alertPatches.remove(e);     // method isn't thread-safe anyway, but it is consistent
-            }
+            alertPatches.removeAll(e);
 
             turnRestrictions.remove(e);
             streetNotesService.removeStaticNotes(e);
@@ -353,20 +364,7 @@ public class Graph implements Serializable {
      * @param alertPatch
      */
     public void addAlertPatch(Edge edge, AlertPatch alertPatch) {
-        if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-            if (alertPatches == null) {
-                this.alertPatches.put(edge, Collections.singleton(alertPatch));
-            } else if (alertPatches instanceof HashSet) {
-                alertPatches.add(alertPatch);
-            } else {
-                alertPatches = new HashSet<AlertPatch>(alertPatches);
-                if (alertPatches.add(alertPatch)) {
-                    this.alertPatches.put(edge, alertPatches);
-                }
-            }
-        }
+        alertPatches.add(edge, alertPatch);
     }
 
     /**
@@ -376,34 +374,17 @@ public class Graph implements Serializable {
      * @param alertPatch
      */
     public void removeAlertPatch(Edge edge, AlertPatch alertPatch) {
-        if (edge == null || alertPatch == null) return;
-        synchronized (alertPatches) {
-            Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-            if (alertPatches != null && alertPatches.contains(alertPatch)) {
-                if (alertPatches.size() < 2) {
-                    this.alertPatches.remove(edge);
-                } else {
-                    alertPatches.remove(alertPatch);
-                }
-            }
-        }
+        alertPatches.remove(edge, alertPatch);
     }
 
     /**
-     * Get the {@link AlertPatch} {@link Set} that belongs to an {@link Edge} and build a new array.
+     * Get the {@link AlertPatch}es that belong to an {@link Edge}. This does not lock or copy anything, so it is cheap
+     * enough to call for every edge of every itinerary. The returned array is shared and must not be modified.
      * @param edge
      * @return The {@link AlertPatch} array that belongs to the {@link Edge}
      */
     public AlertPatch[] getAlertPatches(Edge edge) {
-        if (edge != null) {
-            synchronized (alertPatches) {
-                Set<AlertPatch> alertPatches = this.alertPatches.get(edge);
-                if (alertPatches != null) {
-                    return alertPatches.toArray(new AlertPatch[alertPatches.size()]);
-                }
-            }
-        }
-        return new AlertPatch[0];
+        return alertPatches.get(edge);
     }
 
     /**
@@ -705,9 +686,37 @@ public class Graph implements Serializable {
         }
     }
     
+    /**
+     * Read a graph from the given stream. Block compressed graphs (see save(OutputStream, boolean)) are detected by
+     * their header and decompressed in parallel while the graph is deserialized.
+     */
     public static Graph load(InputStream in) {
         // TODO store version information, halt load if versions mismatch
-        Input input = new Input(in);
+        // The decompressing stream has its own threads, it is closed here as callers only close the stream they passed.
+        BlockCompressedInputStream decompressed = null;
+        try {
+            in = new BufferedInputStream(in);
+            if (BlockCompressedInputStream.isBlockCompressed(in)) {
+                LOG.info("Graph is block compressed, decompressing in parallel.");
+                in = decompressed = new BlockCompressedInputStream(in);
+            }
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read graph header.", e);
+        }
+        try {
+            return readGraph(new Input(in));
+        } finally {
+            if (decompressed != null) {
+                try {
+                    decompressed.close();
+                } catch (IOException e) {
+                    LOG.warn("Could not close the decompressed graph stream.", e);
+                }
+            }
+        }
+    }
+
+    private static Graph readGraph(Input input) {
         Kryo kryo = makeKryo();
         Graph graph = (Graph) kryo.readClassAndObject(input);
         LOG.debug("Basic graph info read.");
@@ -731,6 +740,10 @@ public class Graph implements Serializable {
             fromVertex.addOutgoing(e);
             toVertex.addIncoming(e);
         }
+        // Vertex indexes are kept by Kryo, and are used by the stop tree cache. New vertices must not reuse them.
+        for (Vertex v : graph.vertices.values()) {
+            Vertex.reserveIndex(v.getIndex());
+        }
 
         LOG.info("Main graph read. |V|={} |E|={}", graph.countVertices(), graph.countEdges());
         graph.index(new DefaultStreetVertexIndexFactory());
@@ -815,10 +828,15 @@ public class Graph implements Serializable {
     }
 
     public void save(File file) throws IOException {
+        save(file, false);
+    }
+
+    /** @param compressed whether to write a block compressed graph, compressed in parallel while it is serialized. */
+    public void save(File file, boolean compressed) throws IOException {
         LOG.info("Main graph size: |V|={} |E|={}", this.countVertices(), this.countEdges());
         LOG.info("Writing graph " + file.getAbsolutePath() + " ...");
         try {
-            save(new FileOutputStream(file));
+            save(new FileOutputStream(file), compressed);
         } catch (Exception e) {
             file.delete(); // remove half-written file
             throw e;
@@ -826,8 +844,24 @@ public class Graph implements Serializable {
     }
 
     public void save(OutputStream outputStream) {
+        save(outputStream, false);
+    }
+
+    /**
+     * Write this graph to the given stream, which is closed afterward. A block compressed graph is compressed in LZ4
+     * blocks on several threads while Kryo writes the graph, and is read back by load(InputStream) in the same way.
+     * The graph is still serialized as a single Kryo stream, so that references between objects are preserved.
+     */
+    public void save(OutputStream outputStream, boolean compressed) {
         Kryo kryo = makeKryo();
         LOG.debug("Consolidating edges...");
+        if (compressed) {
+            try {
+                outputStream = new BlockCompressedOutputStream(outputStream);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write graph header.", e);
+            }
+        }
         Output output = new Output(outputStream);
         // this is not space efficient
         List<Edge> edges = new ArrayList<Edge>(this.countEdges());
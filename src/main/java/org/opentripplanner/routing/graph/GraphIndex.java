@@ -32,7 +32,7 @@ import org.opentripplanner.model.Stop;
 import org.opentripplanner.model.Trip;
 import org.opentripplanner.model.calendar.ServiceDate;
 import org.opentripplanner.model.CalendarService;
-import org.opentripplanner.common.LuceneIndex;
+import org.opentripplanner.common.GeocoderIndex;
 import org.opentripplanner.common.geometry.HashGridSpatialIndex;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.common.model.GenericLocation;
@@ -105,8 +105,8 @@ public class GraphIndex {
     private final CalendarService calendarService;
     private final Map<FeedScopedId,Integer> serviceCodes;
 
-    /* Full-text search extensions */
-    public LuceneIndex luceneIndex;
+    /* Full-text search extensions, see geocode(). */
+    private GeocoderIndex clusterGeocoderIndex = null;
 
     /* Separate transfers for profile routing */
     public Multimap<StopCluster, ProfileTransfer> transfersFromStopCluster;
@@ -216,6 +216,41 @@ public class GraphIndex {
         }
     }
 
+    /**
+     * @return the geocoder index of stops and street corners. It is saved with the graph, but graphs built before it
+     * existed do not have one, in which case it is built on first use.
+     */
+    public synchronized GeocoderIndex getGeocoderIndex() {
+        if (graph.geocoderIndex == null) {
+            graph.geocoderIndex = GeocoderIndex.forGraph(graph);
+        }
+        return graph.geocoderIndex;
+    }
+
+    /** @return the geocoder index of stop clusters, which are only known after clustering the stops of the graph. */
+    public synchronized GeocoderIndex getClusterGeocoderIndex() {
+        if (clusterGeocoderIndex == null) {
+            clusterStopsAsNeeded();
+            clusterGeocoderIndex = GeocoderIndex.forClusters(stopClusterForId.values());
+        }
+        return clusterGeocoderIndex;
+    }
+
+    /**
+     * Fetch results for the geocoder from the stops, clusters and street corners of the graph. Stops are only
+     * clustered if the query may return clusters.
+     * @see GeocoderIndex#query(List, String, boolean, boolean, boolean, boolean)
+     */
+    public List<GeocoderIndex.Result> geocode(String query, boolean autocomplete, boolean stops, boolean clusters,
+                                              boolean corners) {
+        List<GeocoderIndex> indexes = new ArrayList<>();
+        indexes.add(getGeocoderIndex());
+        if (clusters || !(stops || corners)) {
+            indexes.add(getClusterGeocoderIndex());
+        }
+        return GeocoderIndex.query(indexes, query, autocomplete, stops, clusters, corners);
+    }
+
     private void analyzeServices() {
         // This is a mess because CalendarService, CalendarServiceData, etc. are all in OBA.
         // TODO catalog days of the week and exceptions for each service day.
@@ -538,12 +573,22 @@ public class GraphIndex {
         return ret;
     }
 
-    /** Fetch a cache of nearby intersection distances for every transit stop in this graph, lazy-building as needed. */
+    /**
+     * Fetch a cache of nearby intersection distances for every transit stop in this graph. The cache built with the
+     * graph is used if there is one, otherwise it is lazy-built as needed.
+     */
     public StopTreeCache getStopTreeCache() {
         if (stopTreeCache == null) {
             synchronized (this) {
                 if (stopTreeCache == null) {
-                    stopTreeCache = new StopTreeCache(graph, MAX_WALK_METERS); // TODO make this max-distance variable
+                    if (graph.stopTreeCache != null && graph.stopTreeCache.isValidFor(graph, MAX_WALK_METERS)) {
+                        stopTreeCache = graph.stopTreeCache;
+                    } else {
+                        if (graph.stopTreeCache != null) {
+                            LOG.info("The stop tree cache built with the graph does not match its stops, rebuilding it.");
+                        }
+                        stopTreeCache = new StopTreeCache(graph, MAX_WALK_METERS); // TODO make this max-distance variable
+                    }
                 }
             }
         }
@@ -266,6 +266,16 @@ public abstract class Vertex implements Serializable, Cloneable {
         return maxIndex;
     }
 
+    /**
+     * Make sure that vertices created from now on get an index above the given one. Kryo restores the index of
+     * deserialized vertices without going through readObject, so the counter has to be advanced past them.
+     */
+    static void reserveIndex(int index) {
+        if (maxIndex <= index) {
+            maxIndex = index + 1;
+        }
+    }
+
 
     /* SERIALIZATION METHODS */
 
@@ -3,27 +3,32 @@ package org.opentripplanner.routing.impl;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.routing.alertpatch.AlertPatch;
+import org.opentripplanner.routing.alertpatch.AlertPatchIndex;
 import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.services.AlertPatchService;
 
-import com.google.common.collect.LinkedListMultimap;
-import com.google.common.collect.ListMultimap;
-
+/**
+ * Keeps track of the alert patches currently applied to a graph. The lookups by stop, route, trip and agency are
+ * copy-on-write {@link AlertPatchIndex}es, so readers (the API, itinerary generation) never block while an updater is
+ * applying or expiring patches.
+ */
 public class AlertPatchServiceImpl implements AlertPatchService {
 
     private Graph graph;
 
-    private Map<String, AlertPatch> alertPatches = new HashMap<String, AlertPatch>();
-    private ListMultimap<FeedScopedId, AlertPatch> patchesByRoute = LinkedListMultimap.create();
-    private ListMultimap<FeedScopedId, AlertPatch> patchesByStop = LinkedListMultimap.create();
+    private Map<String, AlertPatch> alertPatches = new ConcurrentHashMap<String, AlertPatch>();
+    private AlertPatchIndex<FeedScopedId> patchesByRoute = new AlertPatchIndex<>();
+    private AlertPatchIndex<FeedScopedId> patchesByStop = new AlertPatchIndex<>();
+    private AlertPatchIndex<FeedScopedId> patchesByTrip = new AlertPatchIndex<>();
+    private AlertPatchIndex<String> patchesByAgency = new AlertPatchIndex<>();
 
     public AlertPatchServiceImpl(Graph graph) {
         this.graph = graph;
@@ -31,26 +36,27 @@ public class AlertPatchServiceImpl implements AlertPatchService {
 
     @Override
     public Collection<AlertPatch> getAllAlertPatches() {
-        return alertPatches.values();
+        return Collections.unmodifiableCollection(alertPatches.values());
     }
 
     @Override
     public Collection<AlertPatch> getStopPatches(FeedScopedId stop) {
-        List<AlertPatch> result = patchesByStop.get(stop);
-        if (result == null) {
-            result = Collections.emptyList();
-        }
-        return result;
+        return patchesByStop.getAsCollection(stop);
     }
 
     @Override
     public Collection<AlertPatch> getRoutePatches(FeedScopedId route) {
-        List<AlertPatch> result = patchesByRoute.get(route);
-        if (result == null) {
-            result = Collections.emptyList();
-        }
-        return result;
+        return patchesByRoute.getAsCollection(route);
+    }
+
+    @Override
+    public Collection<AlertPatch> getTripPatches(FeedScopedId trip) {
+        return patchesByTrip.getAsCollection(trip);
+    }
 
+    @Override
+    public Collection<AlertPatch> getAgencyPatches(String agency) {
+        return patchesByAgency.getAsCollection(agency);
     }
 
     @Override
@@ -62,18 +68,14 @@ public class AlertPatchServiceImpl implements AlertPatchService {
         alertPatch.apply(graph);
         alertPatches.put(alertPatch.getId(), alertPatch);
 
-        FeedScopedId stop = alertPatch.getStop();
-        if (stop != null) {
-            patchesByStop.put(stop, alertPatch);
-        }
-        FeedScopedId route = alertPatch.getRoute();
-        if (route != null) {
-            patchesByRoute.put(route, alertPatch);
-        }
+        patchesByStop.add(alertPatch.getStop(), alertPatch);
+        patchesByRoute.add(alertPatch.getRoute(), alertPatch);
+        patchesByTrip.add(alertPatch.getTrip(), alertPatch);
+        patchesByAgency.add(alertPatch.getAgency(), alertPatch);
     }
 
     @Override
-    public void expire(Set<String> purge) {
+    public synchronized void expire(Set<String> purge) {
         for (String patchId : purge) {
             if (alertPatches.containsKey(patchId)) {
                 expire(alertPatches.get(patchId));
@@ -84,7 +86,7 @@ public class AlertPatchServiceImpl implements AlertPatchService {
     }
 
     @Override
-    public void expireAll() {
+    public synchronized void expireAll() {
         for (AlertPatch alertPatch : alertPatches.values()) {
             expire(alertPatch);
         }
@@ -92,8 +94,8 @@ public class AlertPatchServiceImpl implements AlertPatchService {
     }
 
     @Override
-    public void expireAllExcept(Set<String> retain) {
-        ArrayList<String> toRemove = new ArrayList<String>();
+    public synchronized void expireAllExcept(Set<String> retain) {
+        List<String> toRemove = new ArrayList<String>();
 
         for (Entry<String, AlertPatch> entry : alertPatches.entrySet()) {
             final String key = entry.getKey();
@@ -106,14 +108,10 @@ public class AlertPatchServiceImpl implements AlertPatchService {
     }
 
     private void expire(AlertPatch alertPatch) {
-        FeedScopedId stop = alertPatch.getStop();
-        if (stop != null) {
-            patchesByStop.remove(stop, alertPatch);
-        }
-        FeedScopedId route = alertPatch.getRoute();
-        if (route != null) {
-            patchesByRoute.remove(route, alertPatch);
-        }
+        patchesByStop.remove(alertPatch.getStop(), alertPatch);
+        patchesByRoute.remove(alertPatch.getRoute(), alertPatch);
+        patchesByTrip.remove(alertPatch.getTrip(), alertPatch);
+        patchesByAgency.remove(alertPatch.getAgency(), alertPatch);
 
         alertPatch.remove(graph);
     }
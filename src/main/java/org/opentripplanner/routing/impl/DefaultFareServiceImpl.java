@@ -7,17 +7,22 @@ import java.util.Collection;
 import java.util.Currency;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.opentripplanner.model.FeedScopedId;
 import org.opentripplanner.model.FareAttribute;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.routing.core.Fare;
 import org.opentripplanner.routing.core.Fare.FareType;
 import org.opentripplanner.routing.core.FareComponent;
+import org.opentripplanner.routing.core.FareRuleIndex;
 import org.opentripplanner.routing.core.FareRuleSet;
 import org.opentripplanner.routing.core.Money;
 import org.opentripplanner.routing.core.State;
@@ -153,6 +158,19 @@ public class DefaultFareServiceImpl implements FareService, Serializable {
     /** For each fare type (regular, student, etc...) the collection of rules that apply. */
     protected Map<FareType, Collection<FareRuleSet>> fareRulesPerType;
 
+    /** The maximum number of ride sequence fares kept in the memo. */
+    private static final int MAX_MEMOIZED_FARES = 10000;
+
+    /** An index of each collection of fare rules searched, built on first use (not serialized with the graph). */
+    private transient Map<Collection<FareRuleSet>, FareRuleIndex> fareRuleIndexes;
+
+    /**
+     * The best fare of recently searched ride sequences. The fare of a sequence only depends on the properties of the
+     * sequence in the key and on the fare rules, which do not change, so it can be shared by the many overlapping
+     * sequences searched for each itinerary, by the itineraries of a request, and by requests.
+     */
+    private transient volatile Cache<RideSequenceKey, FareAndId> fareMemo;
+
     public DefaultFareServiceImpl() {
         fareRulesPerType = new HashMap<>();
     }
@@ -363,9 +381,17 @@ public class DefaultFareServiceImpl implements FareService, Serializable {
         float bestFare = Float.POSITIVE_INFINITY;
         long tripTime = lastRideStartTime - startTime;
         long journeyTime = lastRideEndTime - startTime;
-        	
-        // find the best fare that matches this set of rides
-        for (FareRuleSet ruleSet : fareRules) {
+
+        RideSequenceKey key = new RideSequenceKey(fareType, fareRules, feedId, agencies, startZone, endZone, zones,
+                routes, trips, transfersUsed, tripTime, journeyTime);
+        Cache<RideSequenceKey, FareAndId> memo = getFareMemo();
+        FareAndId memoized = memo.getIfPresent(key);
+        if (memoized != null) {
+            return memoized;
+        }
+
+        // find the best fare that matches this set of rides, among the rules that may match it
+        for (FareRuleSet ruleSet : getFareRuleIndex(fareRules).getCandidates(agencies, startZone, endZone, routes)) {
             FareAttribute attribute = ruleSet.getFareAttribute();
             // fares also don't really have an agency id, they will have the per-feed default id
             // check only if the fare is not mapped to an agency
@@ -398,7 +424,85 @@ public class DefaultFareServiceImpl implements FareService, Serializable {
         if (bestFare == Float.POSITIVE_INFINITY) {
             LOG.debug("No fare for a ride sequence: {}", rides);
         }
-        return new FareAndId(bestFare, bestAttribute == null ? null : bestAttribute.getId());
+        FareAndId best = new FareAndId(bestFare, bestAttribute == null ? null : bestAttribute.getId());
+        memo.put(key, best);
+        return best;
+    }
+
+    private synchronized FareRuleIndex getFareRuleIndex(Collection<FareRuleSet> fareRules) {
+        if (fareRuleIndexes == null) {
+            // Subclasses may search other collections than those of fareRulesPerType, so they are keyed by identity.
+            fareRuleIndexes = new IdentityHashMap<>();
+        }
+        return fareRuleIndexes.computeIfAbsent(fareRules, FareRuleIndex::new);
+    }
+
+    private Cache<RideSequenceKey, FareAndId> getFareMemo() {
+        Cache<RideSequenceKey, FareAndId> memo = fareMemo;
+        if (memo == null) {
+            synchronized (this) {
+                if (fareMemo == null) {
+                    fareMemo = CacheBuilder.newBuilder().maximumSize(MAX_MEMOIZED_FARES).build();
+                }
+                memo = fareMemo;
+            }
+        }
+        return memo;
+    }
+
+    /** The properties of a sequence of rides that its best fare depends on. */
+    private static class RideSequenceKey {
+
+        final FareType fareType;
+        final Collection<FareRuleSet> fareRules;
+        final String feedId;
+        final Set<String> agencies;
+        final String startZone;
+        final String endZone;
+        final Set<String> zones;
+        final Set<FeedScopedId> routes;
+        final Set<FeedScopedId> trips;
+        final int transfersUsed;
+        final long tripTime;
+        final long journeyTime;
+        final int hashCode;
+
+        RideSequenceKey(FareType fareType, Collection<FareRuleSet> fareRules, String feedId, Set<String> agencies,
+                        String startZone, String endZone, Set<String> zones, Set<FeedScopedId> routes,
+                        Set<FeedScopedId> trips, int transfersUsed, long tripTime, long journeyTime) {
+            this.fareType = fareType;
+            this.fareRules = fareRules;
+            this.feedId = feedId;
+            this.agencies = agencies;
+            this.startZone = startZone;
+            this.endZone = endZone;
+            this.zones = zones;
+            this.routes = routes;
+            this.trips = trips;
+            this.transfersUsed = transfersUsed;
+            this.tripTime = tripTime;
+            this.journeyTime = journeyTime;
+            // The fare rules are compared by identity, see getFareRuleIndex.
+            this.hashCode = Objects.hash(fareType, System.identityHashCode(fareRules), feedId, agencies, startZone,
+                    endZone, zones, routes, trips, transfersUsed, tripTime, journeyTime);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof RideSequenceKey)) return false;
+            RideSequenceKey other = (RideSequenceKey) o;
+            return hashCode == other.hashCode && fareType == other.fareType && fareRules == other.fareRules
+                    && transfersUsed == other.transfersUsed && tripTime == other.tripTime
+                    && journeyTime == other.journeyTime && Objects.equals(feedId, other.feedId)
+                    && Objects.equals(startZone, other.startZone) && Objects.equals(endZone, other.endZone)
+                    && agencies.equals(other.agencies) && zones.equals(other.zones) && routes.equals(other.routes)
+                    && trips.equals(other.trips);
+        }
     }
     
     private float getFarePrice(FareAttribute fare, FareType type) {
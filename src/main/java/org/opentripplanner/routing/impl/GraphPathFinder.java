@@ -19,6 +19,8 @@ import org.opentripplanner.routing.flex.DeviatedRouteGraphModifier;
 import org.opentripplanner.routing.flex.FlagStopGraphModifier;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.raptor.RaptorPathFinder;
+import org.opentripplanner.routing.raptor.TransitSearchEngine;
 import org.opentripplanner.routing.spt.DominanceFunction;
 import org.opentripplanner.routing.spt.GraphPath;
 import org.opentripplanner.standalone.Router;
@@ -134,6 +136,7 @@ public class GraphPathFinder {
          */
         if (options.maxWalkDistance == Double.MAX_VALUE) options.maxWalkDistance = DEFAULT_MAX_WALK;
         if (options.maxWalkDistance > CLAMP_MAX_WALK) options.maxWalkDistance = CLAMP_MAX_WALK;
+
         if (options.modes.isTransit() && router.graph.useFlexService) {
             // create temporary flex stops/hops (just once even if we run multiple searches)
             FlagStopGraphModifier flagStopGraphModifier = new FlagStopGraphModifier(router.graph);
@@ -150,15 +153,24 @@ public class GraphPathFinder {
         long searchBeginTime = System.currentTimeMillis();
         LOG.debug("BEGIN SEARCH");
         List<GraphPath> paths = Lists.newArrayList();
-        while (paths.size() < options.numItineraries) {
-            // TODO pull all this timeout logic into a function near org.opentripplanner.util.DateUtils.absoluteTimeout()
-            int timeoutIndex = paths.size();
-            if (timeoutIndex >= router.timeouts.length) {
-                timeoutIndex = router.timeouts.length - 1;
+
+        // Search the transit network with RAPTOR when configured to, falling back on AStar if it finds nothing.
+        // The paths found by RAPTOR are post-processed like those found by AStar, and the time spent on RAPTOR
+        // counts towards the timeouts of the AStar searches.
+        if (router.transitSearchEngine == TransitSearchEngine.RAPTOR
+                && RaptorPathFinder.supports(options, router.graph)) {
+            List<GraphPath> raptorPaths = new RaptorPathFinder(router).getPaths(options, router.timeouts[0]);
+            if (!raptorPaths.isEmpty()) {
+                paths.addAll(processNewPaths(aStar, originalReq, options, raptorPaths,
+                        remainingTimeout(searchBeginTime, 0), reversedSearchHeuristic));
+                LOG.debug("END SEARCH with RAPTOR ({} msec)", System.currentTimeMillis() - searchBeginTime);
+                Collections.sort(paths, options.getPathComparator(options.arriveBy));
+                return paths;
             }
-            double timeout = searchBeginTime + (router.timeouts[timeoutIndex] * 1000);
-            timeout -= System.currentTimeMillis(); // Convert from absolute to relative time
-            timeout /= 1000; // Convert milliseconds to seconds
+            LOG.debug("RAPTOR found no paths, searching with AStar.");
+        }
+        while (paths.size() < options.numItineraries) {
+            double timeout = remainingTimeout(searchBeginTime, paths.size());
             if (timeout <= 0) {
                 // Catch the case where advancing to the next (lower) timeout value means the search is timed out
                 // before it even begins. Passing a negative relative timeout in the SPT call would mean "no timeout".
@@ -176,49 +188,7 @@ public class GraphPathFinder {
                 break;
             }
 
-            // Do a full reversed search to compact the legs
-            if(options.compactLegsByReversedSearch){
-                newPaths = compactLegsByReversedSearch(aStar, originalReq, options, newPaths, timeout, reversedSearchHeuristic);
-            }
-
-            // Find all trips used in this path and ban them for the remaining searches
-            for (GraphPath path : newPaths) {
-                // path.dump();
-                List<FeedScopedId> tripIds = path.getTrips();
-                List<FeedScopedId> callAndRideTripIds = path.getCallAndRideTrips();
-                for (FeedScopedId tripId : tripIds) {
-                    if (!callAndRideTripIds.contains(tripId)) {
-                        options.banTrip(tripId);
-                    }
-                }
-                if (tripIds.isEmpty()) {
-                    // This path does not use transit (is entirely on-street). Do not repeatedly find the same one.
-                    options.onlyTransitTrips = true;
-                }
-                // Call-and-Ride trips should not use regular trip-banning, since call-and-ride trips can beused in
-                // multiple ways (e.g. from origin to destination, or from origin to a transfer stop.) Instead,
-                // after an itinerary which uses call-and-ride is found, reduce the allowable call-and-ride duration
-                // so that the same leg cannot be found in a subsequent search.
-                if (tripIds.size() < 2) {
-                    int duration = path.getCallAndRideDuration();
-                    if (duration > 0) { // only true if there are call-and-ride legs
-                        int constantLimit = Math.min(0, duration - options.flexReduceCallAndRideSeconds);
-                        int ratioLimit = (int) Math.round(options.flexReduceCallAndRideRatio * duration);
-                        options.flexMaxCallAndRideSeconds = Math.min(constantLimit, ratioLimit);
-                    }
-                }
-            }
-
-            paths.addAll(newPaths.stream()
-                    .filter(path -> {
-                        double duration = options.useRequestedDateTimeInMaxHours
-                            ? options.arriveBy
-                                ? options.dateTime - path.getStartTime()
-                                : path.getEndTime() - options.dateTime
-                            : path.getDuration();
-                        return duration < options.maxHours * 60 * 60;
-                    })
-                    .collect(Collectors.toList()));
+            paths.addAll(processNewPaths(aStar, originalReq, options, newPaths, timeout, reversedSearchHeuristic));
 
             LOG.debug("we have {} paths", paths.size());
         }
@@ -227,6 +197,75 @@ public class GraphPathFinder {
         return paths;
     }
 
+    /**
+     * @return the number of seconds left for the search of the path with the given index, which is not positive
+     * when the search should not even begin.
+     */
+    private double remainingTimeout(long searchBeginTime, int timeoutIndex) {
+        // TODO pull all this timeout logic into a function near org.opentripplanner.util.DateUtils.absoluteTimeout()
+        if (timeoutIndex >= router.timeouts.length) {
+            timeoutIndex = router.timeouts.length - 1;
+        }
+        double timeout = searchBeginTime + (router.timeouts[timeoutIndex] * 1000);
+        timeout -= System.currentTimeMillis(); // Convert from absolute to relative time
+        timeout /= 1000; // Convert milliseconds to seconds
+        return timeout;
+    }
+
+    /**
+     * Compact the legs of newly found paths, ban the trips they use for the following searches and drop those which
+     * exceed the maximum duration.
+     * @param timeout the number of seconds left for the reversed searches compacting the legs.
+     * @return the paths to keep.
+     */
+    private List<GraphPath> processNewPaths(AStar aStar, RoutingRequest originalReq, RoutingRequest options,
+                                            List<GraphPath> newPaths, double timeout,
+                                            RemainingWeightHeuristic reversedSearchHeuristic) {
+        // Do a full reversed search to compact the legs. A non-positive timeout would mean no timeout at all.
+        if (options.compactLegsByReversedSearch && timeout > 0) {
+            newPaths = compactLegsByReversedSearch(aStar, originalReq, options, newPaths, timeout, reversedSearchHeuristic);
+        }
+
+        // Find all trips used in this path and ban them for the remaining searches
+        for (GraphPath path : newPaths) {
+            // path.dump();
+            List<FeedScopedId> tripIds = path.getTrips();
+            List<FeedScopedId> callAndRideTripIds = path.getCallAndRideTrips();
+            for (FeedScopedId tripId : tripIds) {
+                if (!callAndRideTripIds.contains(tripId)) {
+                    options.banTrip(tripId);
+                }
+            }
+            if (tripIds.isEmpty()) {
+                // This path does not use transit (is entirely on-street). Do not repeatedly find the same one.
+                options.onlyTransitTrips = true;
+            }
+            // Call-and-Ride trips should not use regular trip-banning, since call-and-ride trips can beused in
+            // multiple ways (e.g. from origin to destination, or from origin to a transfer stop.) Instead,
+            // after an itinerary which uses call-and-ride is found, reduce the allowable call-and-ride duration
+            // so that the same leg cannot be found in a subsequent search.
+            if (tripIds.size() < 2) {
+                int duration = path.getCallAndRideDuration();
+                if (duration > 0) { // only true if there are call-and-ride legs
+                    int constantLimit = Math.min(0, duration - options.flexReduceCallAndRideSeconds);
+                    int ratioLimit = (int) Math.round(options.flexReduceCallAndRideRatio * duration);
+                    options.flexMaxCallAndRideSeconds = Math.min(constantLimit, ratioLimit);
+                }
+            }
+        }
+
+        return newPaths.stream()
+                .filter(path -> {
+                    double duration = options.useRequestedDateTimeInMaxHours
+                        ? options.arriveBy
+                            ? options.dateTime - path.getStartTime()
+                            : path.getEndTime() - options.dateTime
+                        : path.getDuration();
+                    return duration < options.maxHours * 60 * 60;
+                })
+                .collect(Collectors.toList());
+    }
+
     /**
      * Do a full reversed search to compact the legs of the path.
      *
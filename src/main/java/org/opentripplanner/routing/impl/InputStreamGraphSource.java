@@ -9,6 +9,7 @@ import org.opentripplanner.routing.graph.Graph;
 import org.opentripplanner.routing.services.GraphSource;
 import org.opentripplanner.routing.services.StreetVertexIndexFactory;
 import org.opentripplanner.standalone.Router;
+import org.opentripplanner.standalone.RouterWarmUp;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -18,6 +19,8 @@ import java.io.*;
  * The primary implementation of the GraphSource interface. The graph is loaded from a serialized
  * graph from a given source.
  * 
+ * A newly loaded router is warmed up (see RouterWarmUp) before it replaces the current one, so
+ * that the first requests it receives do not hit cold code and unbuilt indexes.
  */
 public class InputStreamGraphSource implements GraphSource {
 
@@ -32,7 +35,10 @@ public class InputStreamGraphSource implements GraphSource {
      * */
     private static final long LOAD_DELAY_SEC = 10;
 
-    private Router router;
+    private volatile Router router;
+
+    /** The stage of the reload in progress, null when not reloading. */
+    private volatile ReloadStage reloadStage = null;
 
     private String routerId;
 
@@ -81,6 +87,17 @@ public class InputStreamGraphSource implements GraphSource {
         }
     }
 
+    @Override
+    public boolean isReady() {
+        // Do not go through getRouter(), which waits for the end of a pre-evicting reload.
+        return router != null;
+    }
+
+    @Override
+    public ReloadStage getReloadStage() {
+        return reloadStage;
+    }
+
     @Override
     public boolean reload(boolean force, boolean preEvict) {
         /* We synchronize on 'this' to prevent multiple reloads from being called at the same time */
@@ -89,55 +106,73 @@ public class InputStreamGraphSource implements GraphSource {
             boolean doReload = force ? true : checkAutoReload(lastModified);
             if (!doReload)
                 return true;
-            if (preEvict) {
-                synchronized (preEvictMutex) {
-                    if (router != null) {
-                        LOG.info("Reloading '{}': pre-evicting router", routerId);
-                        router.shutdown();
-                    }
-                    /*
-                     * Forcing router to null here should remove any references to the graph once
-                     * all current requests are done. So the next reload is supposed to have more
-                     * memory.
-                     */
-                    router = null;
-                    router = loadGraph();
+            try {
+                return doReload(force, preEvict, lastModified);
+            } finally {
+                reloadStage = null;
+            }
+        }
+    }
+
+    private boolean doReload(boolean force, boolean preEvict, long lastModified) {
+        if (preEvict) {
+            synchronized (preEvictMutex) {
+                if (router != null) {
+                    LOG.info("Reloading '{}': pre-evicting router", routerId);
+                    router.shutdown();
+                }
+                /*
+                 * Forcing router to null here should remove any references to the graph once
+                 * all current requests are done. So the next reload is supposed to have more
+                 * memory.
+                 */
+                router = null;
+                router = loadGraph();
+            }
+        } else {
+            if (router != null && !hasMemoryForReload()) {
+                /*
+                 * Keep the current router. The modification time is not recorded, so that an
+                 * auto-reload tries again later, when memory may have been freed.
+                 */
+                LOG.warn("Not reloading '{}': not enough memory to keep the current graph while loading.",
+                        routerId);
+                return true;
+            }
+            Router newRouter = loadGraph();
+            if (newRouter != null) {
+                // Load OK. Swap first, so that new requests go to the new router during the shutdown.
+                Router oldRouter = router;
+                router = newRouter; // Assignment in java is atomic
+                if (oldRouter != null) {
+                    LOG.info("Reloading '{}': post-evicting router", routerId);
+                    oldRouter.shutdown();
                 }
             } else {
-                Router newRouter = loadGraph();
-                if (newRouter != null) {
-                    // Load OK
+                // Load failed
+                if (force || router == null) {
+                    LOG.warn("Unable to load data for router '{}'.", routerId);
                     if (router != null) {
-                        LOG.info("Reloading '{}': post-evicting router", routerId);
                         router.shutdown();
                     }
-                    router = newRouter; // Assignment in java is atomic
+                    router = null;
                 } else {
-                    // Load failed
-                    if (force || router == null) {
-                        LOG.warn("Unable to load data for router '{}'.", routerId);
-                        if (router != null) {
-                            router.shutdown();
-                        }
-                        router = null;
-                    } else {
-                        // No shutdown, since we keep current one.
-                        LOG.warn("Unable to load data for router '{}', keeping old data.", routerId);
-                    }
+                    // No shutdown, since we keep current one.
+                    LOG.warn("Unable to load data for router '{}', keeping old data.", routerId);
                 }
             }
-            if (router == null) {
-                graphLastModified = 0L;
-            } else {
-                /*
-                 * Note: we flag even if loading failed, because we want to wait for fresh new data
-                 * before loading again.
-                 */
-                graphLastModified = lastModified;
-            }
-            // If a router is null, it will be evicted.
-            return (router != null);
         }
+        if (router == null) {
+            graphLastModified = 0L;
+        } else {
+            /*
+             * Note: we flag even if loading failed, because we want to wait for fresh new data
+             * before loading again.
+             */
+            graphLastModified = lastModified;
+        }
+        // If a router is null, it will be evicted.
+        return (router != null);
     }
 
     /**
@@ -172,10 +207,23 @@ public class InputStreamGraphSource implements GraphSource {
     }
 
     /**
-     * Do the actual operation of graph loading. Load configuration if present, and startup the
-     * router with the help of the router lifecycle manager.
+     * Check the memory budget of the router configuration. Only the configuration file is
+     * considered, since a configuration embedded in the graph is not known before it is loaded.
+     */
+    private boolean hasMemoryForReload() {
+        try {
+            return new RouterWarmUp(readConfig(null)).hasMemoryForReload();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * Do the actual operation of graph loading. Load configuration if present, startup the router
+     * with the help of the router lifecycle manager, and warm it up.
      */
     private Router loadGraph() {
+        reloadStage = ReloadStage.LOADING;
         final Graph newGraph;
         try (InputStream is = streams.getGraphInputStream()) {
             LOG.info("Loading graph...");
@@ -194,24 +242,48 @@ public class InputStreamGraphSource implements GraphSource {
 
         // Decorate the graph TODO how are we "decorating" it? This appears to refer to loading its configuration.
         // Even if a config file is not present on disk one could be bundled inside.
+        JsonNode config;
+        try {
+            config = readConfig(newGraph);
+        } catch (IOException e) {
+            LOG.error("Can't read config file.");
+            LOG.error(e.getMessage());
+            return null;
+        }
+        Router newRouter = new Router(routerId, newGraph);
+        newRouter.startup(config);
+
+        RouterWarmUp warmUp = new RouterWarmUp(config);
+        reloadStage = ReloadStage.WARMING_UP;
+        warmUp.replayRequests(newRouter);
+        reloadStage = ReloadStage.INDEXING;
+        try {
+            warmUp.buildIndexes(newRouter);
+        } catch (RuntimeException e) {
+            // The indexes will be built again on first use.
+            LOG.error("Exception while building indexes of router '{}'.", routerId, e);
+        }
+        return newRouter;
+    }
+
+    /**
+     * Read the router configuration from the config input stream, or from the configuration
+     * embedded in the given graph if there is no such stream.
+     * 
+     * @param graph The graph, or null if it is not loaded yet.
+     */
+    private JsonNode readConfig(Graph graph) throws IOException {
         try (InputStream is = streams.getConfigInputStream()) {
-            JsonNode config = MissingNode.getInstance();
             // TODO reuse the exact same JSON loader from OTPConfigurator
             ObjectMapper mapper = new ObjectMapper();
             mapper.configure(JsonParser.Feature.ALLOW_COMMENTS, true);
             mapper.configure(JsonParser.Feature.ALLOW_UNQUOTED_FIELD_NAMES, true);
             if (is != null) {
-                config = mapper.readTree(is);
-            } else if (newGraph.routerConfig != null) {
-                config = mapper.readTree(newGraph.routerConfig);
+                return mapper.readTree(is);
+            } else if (graph != null && graph.routerConfig != null) {
+                return mapper.readTree(graph.routerConfig);
             }
-            Router newRouter = new Router(routerId, newGraph);
-            newRouter.startup(config);
-            return newRouter;
-        } catch (IOException e) {
-            LOG.error("Can't read config file.");
-            LOG.error(e.getMessage());
-            return null;
+            return MissingNode.getInstance();
         }
     }
 
@@ -0,0 +1,274 @@
+package org.opentripplanner.routing.raptor;
+
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.PreAlightEdge;
+import org.opentripplanner.routing.edgetype.PreBoardEdge;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.standalone.Router;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Finds point-to-point transit paths using a RAPTOR search over the transit network, instead of an AStar search over
+ * the whole graph. This is used by GraphPathFinder when the router is configured with
+ * {@link TransitSearchEngine#RAPTOR}.
+ *
+ * AStar is only used for the street searches around the origin and destination, which give the walking time to each
+ * nearby stop. The transit part of the trip is found by {@link RaptorSearch}, and the result is turned into a normal
+ * GraphPath by traversing the actual board, hop, alight and transfer edges from the origin. This means that the
+ * resulting paths carry real States (with trip times, real-time updates, fares etc.) and can be handled by
+ * GraphPathToTripPlanConverter like any other path. If an edge refuses to be traversed, the candidate is dropped.
+ *
+ * One path is produced for every number of rides that improves the arrival time at the destination. When more
+ * itineraries are requested, the search is repeated with a departure time just after the latest one found.
+ *
+ * One instance should be constructed per request.
+ */
+public class RaptorPathFinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RaptorPathFinder.class);
+
+    /** How long after the departure of the previous itinerary to start the search for the next one, in seconds. */
+    private static final int NEXT_DEPARTURE_OFFSET = 60;
+
+    private final Router router;
+
+    public RaptorPathFinder(Router router) {
+        this.router = router;
+    }
+
+    /**
+     * @return whether the given request can be handled by RAPTOR. Other requests should be routed with AStar.
+     */
+    public static boolean supports(RoutingRequest options, Graph graph) {
+        if (!options.modes.isTransit() || options.arriveBy) return false;
+        if (graph.useFlexService || options.hasIntermediatePlaces()) return false;
+        if (options.startingTransitTripId != null || options.startingTransitStopId != null) return false;
+        // Only walking is supported at the origin and destination.
+        if (options.modes.getBicycle() || options.modes.getCar()) return false;
+        if (options.allowBikeRental || options.parkAndRide || options.kissAndRide || options.bikeParkAndRide) return false;
+        return true;
+    }
+
+    /**
+     * Find paths for the given request, which must already have a routing context.
+     * @param timeout the number of seconds after which to stop searching and return the paths found so far.
+     * @return the paths found, which may be empty if RAPTOR could not find any.
+     */
+    public List<GraphPath> getPaths(RoutingRequest options, double timeout) {
+        long abortTime = System.currentTimeMillis() + (long) (timeout * 1000);
+        RaptorTransitLayer layer = router.getRaptorTransitLayer();
+        if (layer.hasFrequencyEntries) {
+            LOG.debug("Frequency-based trips are not supported by RAPTOR.");
+            return Collections.emptyList();
+        }
+
+        // Walk-only searches around the origin and destination, bounded by the maximum walk distance.
+        RoutingRequest streetRequest = options.clone();
+        streetRequest.setModes(options.modes.getNonTransitSet());
+        streetRequest.batch = true;
+        streetRequest.softWalkLimiting = false;
+        AStar aStar = new AStar();
+        ShortestPathTree accessTree = aStar.getShortestPathTree(streetRequest, remaining(abortTime));
+        RoutingRequest egressRequest = streetRequest.clone();
+        egressRequest.setArriveBy(true);
+        ShortestPathTree egressTree = aStar.getShortestPathTree(egressRequest, remaining(abortTime), null,
+                Collections.singletonList(new State(options.rctx.toVertex, egressRequest)));
+        if (accessTree == null || egressTree == null) return Collections.emptyList();
+
+        TIntObjectMap<State> accessStates = new TIntObjectHashMap<>();
+        TIntObjectMap<State> egressStates = new TIntObjectHashMap<>();
+        TIntIntMap accessTimes = new TIntIntHashMap();
+        TIntIntMap egressTimes = new TIntIntHashMap();
+        for (int s = 0; s < layer.stops.length; s++) {
+            State access = accessTree.getState(layer.stops[s]);
+            if (access != null) {
+                accessStates.put(s, access);
+                accessTimes.put(s, (int) access.getElapsedTimeSeconds());
+            }
+            State egress = egressTree.getState(layer.stops[s]);
+            if (egress != null) {
+                egressStates.put(s, egress);
+                egressTimes.put(s, (int) egress.getElapsedTimeSeconds());
+            }
+        }
+        LOG.debug("RAPTOR access reaches {} stops, egress {} stops.", accessTimes.size(), egressTimes.size());
+
+        List<GraphPath> paths = new ArrayList<>();
+        State direct = accessTree.getState(options.rctx.toVertex);
+        long departureTime = options.dateTime;
+        while (paths.size() < options.numItineraries && departureTime - options.dateTime < options.maxHours * 60 * 60) {
+            if (System.currentTimeMillis() > abortTime) {
+                LOG.debug("RAPTOR search timed out with {} paths.", paths.size());
+                break;
+            }
+            RoutingRequest request = options.clone();
+            request.dateTime = departureTime;
+            RaptorSearch search = new RaptorSearch(layer, request, accessTimes, egressTimes,
+                    options.maxTransfers + 1);
+            search.route();
+
+            List<GraphPath> newPaths = new ArrayList<>();
+            int[] targetTimes = search.getTargetTimes();
+            for (int round = 1; round < targetTimes.length; round++) {
+                if (targetTimes[round] == RaptorSearch.UNREACHED) continue;
+                GraphPath path = makePath(layer, request, search.getRides(round), accessStates, egressStates);
+                if (path != null && !containsTrips(paths, path)) newPaths.add(path);
+            }
+            if (newPaths.isEmpty()) break;
+            paths.addAll(newPaths);
+
+            long nextDeparture = Long.MAX_VALUE;
+            for (GraphPath path : newPaths) {
+                nextDeparture = Math.min(nextDeparture, path.getStartTime() + NEXT_DEPARTURE_OFFSET);
+            }
+            departureTime = Math.max(departureTime + NEXT_DEPARTURE_OFFSET, nextDeparture);
+        }
+
+        // Walking all the way is offered when it is faster than any transit path, as AStar would find it.
+        if (direct != null && !paths.isEmpty()) {
+            long walkArrival = options.dateTime + direct.getElapsedTimeSeconds();
+            boolean faster = true;
+            for (GraphPath path : paths) {
+                if (path.getEndTime() <= walkArrival) faster = false;
+            }
+            if (faster) {
+                GraphPath walkPath = makeStreetPath(options, direct);
+                if (walkPath != null) paths.add(walkPath);
+            }
+        }
+
+        List<GraphPath> result = new ArrayList<>();
+        for (GraphPath path : paths) {
+            double duration = options.useRequestedDateTimeInMaxHours
+                    ? path.getEndTime() - options.dateTime
+                    : path.getDuration();
+            if (duration < options.maxHours * 60 * 60) result.add(path);
+        }
+        return result;
+    }
+
+    /**
+     * Build a GraphPath by traversing, from the origin, the edges of the access walk, of every ride and transfer, and
+     * of the egress walk.
+     * @return the path, or null if any of the edges could not be traversed.
+     */
+    private GraphPath makePath(RaptorTransitLayer layer, RoutingRequest request, List<RaptorSearch.Ride> rides,
+                               TIntObjectMap<State> accessStates, TIntObjectMap<State> egressStates) {
+        if (rides == null || rides.isEmpty()) return null;
+        RaptorSearch.Ride first = rides.get(0);
+        int accessStop = layer.stopsForPattern[first.pattern][first.boardPosition];
+        State state = new State(request);
+        state = traverse(state, forwardEdges(accessStates.get(accessStop)));
+        for (RaptorSearch.Ride ride : rides) {
+            if (state == null) return null;
+            TripPattern pattern = layer.patterns[ride.pattern];
+            TransitStop boardStop = layer.stops[layer.stopsForPattern[ride.pattern][ride.boardPosition]];
+            state = traverse(state, preBoardEdge(boardStop));
+            state = traverse(state, pattern.boardEdges[ride.boardPosition]);
+            for (int pos = ride.boardPosition; pos < ride.alightPosition; pos++) {
+                if (pos > ride.boardPosition) state = traverse(state, pattern.dwellEdges[pos]);
+                state = traverse(state, pattern.hopEdges[pos]);
+            }
+            state = traverse(state, pattern.alightEdges[ride.alightPosition]);
+            if (state == null) return null;
+            state = traverse(state, preAlightEdge(state));
+            if (ride.transferTo >= 0) {
+                int alightStop = layer.stopsForPattern[ride.pattern][ride.alightPosition];
+                state = traverse(state, layer.getTransfer(alightStop, ride.transferTo));
+            }
+        }
+        if (state == null) return null;
+        RaptorSearch.Ride last = rides.get(rides.size() - 1);
+        int egressStop = layer.stopsForPattern[last.pattern][last.alightPosition];
+        state = traverse(state, egressEdges(egressStates.get(egressStop)));
+        if (state == null || state.getVertex() != request.rctx.toVertex) {
+            LOG.debug("Could not rebuild RAPTOR path with {} rides.", rides.size());
+            return null;
+        }
+        return new GraphPath(state, true);
+    }
+
+    /** Re-traverse a street path found by the access search with the options of the main request. */
+    private GraphPath makeStreetPath(RoutingRequest options, State accessState) {
+        State state = traverse(new State(options), forwardEdges(accessState));
+        if (state == null || state.getVertex() != options.rctx.toVertex) return null;
+        return new GraphPath(state, false);
+    }
+
+    private static State traverse(State state, Edge edge) {
+        if (state == null || edge == null) return null;
+        return edge.traverse(state);
+    }
+
+    private static State traverse(State state, List<Edge> edges) {
+        for (Edge edge : edges) {
+            state = traverse(state, edge);
+        }
+        return state;
+    }
+
+    /** @return the edges leading to the given state of a forward search, in travel order. */
+    private static List<Edge> forwardEdges(State state) {
+        LinkedList<Edge> edges = new LinkedList<>();
+        for (State s = state; s != null && s.getBackState() != null; s = s.getBackState()) {
+            edges.addFirst(s.getBackEdge());
+        }
+        return edges;
+    }
+
+    /** @return the edges leading from the given state of a reverse search to its origin, in travel order. */
+    private static List<Edge> egressEdges(State state) {
+        List<Edge> edges = new ArrayList<>();
+        for (State s = state; s != null && s.getBackState() != null; s = s.getBackState()) {
+            edges.add(s.getBackEdge());
+        }
+        return edges;
+    }
+
+    private static Edge preBoardEdge(TransitStop stop) {
+        for (Edge edge : stop.getOutgoing()) {
+            if (edge instanceof PreBoardEdge) return edge;
+        }
+        return null;
+    }
+
+    private static Edge preAlightEdge(State state) {
+        for (Edge edge : state.getVertex().getOutgoing()) {
+            if (edge instanceof PreAlightEdge) return edge;
+        }
+        return null;
+    }
+
+    /** @return true if one of the given paths uses exactly the same trips as the given path. */
+    private static boolean containsTrips(List<GraphPath> paths, GraphPath path) {
+        List<FeedScopedId> trips = path.getTrips();
+        for (GraphPath other : paths) {
+            if (other.getTrips().equals(trips)) return true;
+        }
+        return false;
+    }
+
+    private static double remaining(long abortTime) {
+        // A non-positive timeout means no timeout at all, so never return one.
+        return Math.max(0.001, (abortTime - System.currentTimeMillis()) / 1000.0);
+    }
+
+}
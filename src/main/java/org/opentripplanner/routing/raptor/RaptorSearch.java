@@ -0,0 +1,378 @@
+package org.opentripplanner.routing.raptor;
+
+import gnu.trove.iterator.TIntIntIterator;
+import gnu.trove.map.TIntIntMap;
+import org.opentripplanner.model.Route;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.model.Trip;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.ServiceDay;
+import org.opentripplanner.routing.edgetype.StreetTransitLink;
+import org.opentripplanner.routing.edgetype.Timetable;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.request.BannedStopSet;
+import org.opentripplanner.routing.trippattern.TripTimes;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * A single round-based (RAPTOR) earliest-arrival search over a {@link RaptorTransitLayer}, for one departure time.
+ *
+ * Round 0 holds the stops reached by the street search around the origin. Round k holds the best arrival times using
+ * at most k transit vehicles, followed by at most one transfer. Each round scans every pattern serving a stop that
+ * was improved in the previous round, then relaxes the precomputed transfers out of the stops it improved. After each
+ * round the stops reached by vehicle are combined with the street search around the destination, giving the best
+ * arrival at the destination for each number of rides.
+ *
+ * All times are in seconds relative to the departure time of the request. Boarding and alighting follow the same
+ * slack rules as PreBoardEdge, PreAlightEdge and SimpleTransfer so that the trips chosen here are the ones found when
+ * the corresponding edges are traversed. Transfer table entries (minimum or forbidden transfers) are not considered
+ * here; they are applied when the path is rebuilt from the edges.
+ *
+ * This is request-scoped and not threadsafe.
+ */
+public class RaptorSearch {
+
+    static final int UNREACHED = Integer.MAX_VALUE;
+
+    private static final byte NONE = 0;
+    private static final byte ACCESS = 1;
+    private static final byte TRANSIT = 2;
+    private static final byte TRANSFER = 3;
+
+    private final RaptorTransitLayer layer;
+
+    private final RoutingRequest options;
+
+    /** The departure time of the search in seconds since the epoch. All other times are relative to this one. */
+    private final long departureTime;
+
+    /** Street travel time from the origin to each reachable stop. */
+    private final TIntIntMap accessTimes;
+
+    /** Street travel time from each stop to the destination. */
+    private final TIntIntMap egressTimes;
+
+    private final int maxRounds;
+
+    private final List<Round> rounds = new ArrayList<>();
+
+    /** The best known arrival time at each stop, over all rounds. Used to prune non-improving arrivals. */
+    private final int[] bestTimes;
+
+    /** Whether each pattern may be used at all with the request's modes, banned and preferred routes. */
+    private final boolean[] patternAllowed;
+
+    /** The best arrival at the destination over all rounds so far. Used for target pruning. */
+    private int bestTargetTime = UNREACHED;
+
+    /** For each round, the arrival at the destination if it improved in that round, or UNREACHED. */
+    private final int[] targetTimes;
+
+    /** For each round, the stop at which the vehicle was left to reach the destination in that round. */
+    private final int[] targetStops;
+
+    public RaptorSearch(RaptorTransitLayer layer, RoutingRequest options, TIntIntMap accessTimes,
+                        TIntIntMap egressTimes, int maxRounds) {
+        this.layer = layer;
+        this.options = options;
+        this.departureTime = options.getSecondsSinceEpoch();
+        this.accessTimes = accessTimes;
+        this.egressTimes = egressTimes;
+        this.maxRounds = maxRounds;
+        this.bestTimes = new int[layer.stops.length];
+        this.targetTimes = new int[maxRounds + 1];
+        this.targetStops = new int[maxRounds + 1];
+        this.patternAllowed = new boolean[layer.patterns.length];
+        for (int p = 0; p < layer.patterns.length; p++) {
+            patternAllowed[p] = patternAllowed(layer.patterns[p]);
+        }
+    }
+
+    /** Run the search. */
+    public void route() {
+        Arrays.fill(bestTimes, UNREACHED);
+        Arrays.fill(targetTimes, UNREACHED);
+        Arrays.fill(targetStops, -1);
+        Round access = new Round(layer.stops.length);
+        BitSet marked = new BitSet(layer.stops.length);
+        for (TIntIntIterator it = accessTimes.iterator(); it.hasNext(); ) {
+            it.advance();
+            int stop = it.key();
+            access.times[stop] = it.value();
+            access.source[stop] = ACCESS;
+            bestTimes[stop] = it.value();
+            marked.set(stop);
+        }
+        rounds.add(access);
+        for (int round = 1; round <= maxRounds && !marked.isEmpty(); round++) {
+            marked = doRound(round, marked);
+        }
+    }
+
+    /**
+     * Scan all patterns serving the stops marked in the previous round, then relax transfers.
+     * @return the stops improved in this round.
+     */
+    private BitSet doRound(int round, BitSet marked) {
+        Round previous = rounds.get(round - 1);
+        Round current = new Round(layer.stops.length);
+        System.arraycopy(previous.times, 0, current.times, 0, current.times.length);
+        rounds.add(current);
+
+        BitSet patternsTouched = new BitSet(layer.patterns.length);
+        for (int stop = marked.nextSetBit(0); stop >= 0; stop = marked.nextSetBit(stop + 1)) {
+            for (int pattern : layer.patternsForStop[stop]) {
+                if (patternAllowed[pattern]) patternsTouched.set(pattern);
+            }
+        }
+
+        // The extra time to board at the first boarding is the board slack. At later boardings the alight slack has
+        // already been added on arrival, so only the remainder of the transfer slack is needed (see PreBoardEdge).
+        int boardSlack = round == 1 ? options.boardSlack : options.transferSlack - options.alightSlack;
+
+        BitSet reachedByTransit = new BitSet(layer.stops.length);
+        for (int p = patternsTouched.nextSetBit(0); p >= 0; p = patternsTouched.nextSetBit(p + 1)) {
+            TripPattern pattern = layer.patterns[p];
+            int[] stops = layer.stopsForPattern[p];
+            int boardTime = options.getBoardTime(pattern.mode);
+            int alightTime = options.getAlightTime(pattern.mode) + options.alightSlack;
+            TripTimes trip = null;
+            ServiceDay serviceDay = null;
+            int boardPosition = -1;
+            for (int pos = 0; pos < stops.length; pos++) {
+                int stop = stops[pos];
+                if (stop < 0) {
+                    trip = null;
+                    continue;
+                }
+                Stop gtfsStop = pattern.getStop(pos);
+                // A hard-banned stop may not even be passed through.
+                if (!options.bannedStopsHard.isEmpty() && options.bannedStopsHard.matches(gtfsStop)) {
+                    trip = null;
+                    continue;
+                }
+                boolean usable = options.bannedStops.isEmpty() || !options.bannedStops.matches(gtfsStop);
+                if (options.wheelchairAccessible && !pattern.wheelchairAccessible(pos)) usable = false;
+
+                // Alight from the trip we are on, if any.
+                if (trip != null && usable && pattern.canAlight(pos)) {
+                    int arrival = trip.getArrivalTime(pos);
+                    if (arrival >= 0) {
+                        int time = relativeTime(serviceDay, arrival) + alightTime;
+                        if (time < bestTimes[stop] && time < bestTargetTime) {
+                            bestTimes[stop] = time;
+                            current.times[stop] = time;
+                            current.transitTimes[stop] = time;
+                            current.source[stop] = TRANSIT;
+                            current.pattern[stop] = p;
+                            current.boardPosition[stop] = boardPosition;
+                            current.alightPosition[stop] = pos;
+                            reachedByTransit.set(stop);
+                        }
+                    }
+                }
+
+                // Board a trip here, or catch an earlier one than the trip we are on.
+                if (previous.times[stop] != UNREACHED && usable && pattern.canBoard(pos)) {
+                    int earliestBoard = previous.times[stop] + boardSlack + boardTime;
+                    if (trip == null || earliestBoard < relativeTime(serviceDay, trip.getDepartureTime(pos))) {
+                        TripTimes bestTrip = null;
+                        ServiceDay bestServiceDay = null;
+                        int bestDeparture = UNREACHED;
+                        for (ServiceDay sd : options.rctx.serviceDays) {
+                            TripTimes candidate = findNextTrip(pattern, sd, pos, earliestBoard);
+                            if (candidate == null) continue;
+                            int departure = relativeTime(sd, candidate.getDepartureTime(pos));
+                            if (departure < bestDeparture) {
+                                bestTrip = candidate;
+                                bestServiceDay = sd;
+                                bestDeparture = departure;
+                            }
+                        }
+                        if (bestTrip != null && (trip == null ||
+                                bestDeparture < relativeTime(serviceDay, trip.getDepartureTime(pos)))) {
+                            trip = bestTrip;
+                            serviceDay = bestServiceDay;
+                            boardPosition = pos;
+                        }
+                    }
+                }
+            }
+        }
+
+        // Transfers are only allowed right after riding a vehicle, and never twice in a row (see SimpleTransfer).
+        BitSet reached = (BitSet) reachedByTransit.clone();
+        for (int stop = reachedByTransit.nextSetBit(0); stop >= 0; stop = reachedByTransit.nextSetBit(stop + 1)) {
+            int[] targets = layer.transferTargetsForStop[stop];
+            for (int i = 0; i < targets.length; i++) {
+                double distance = layer.transfersForStop[stop][i].getDistance();
+                if (distance > options.maxTransferWalkDistance) continue;
+                int time = current.transitTimes[stop] + (int) Math.ceil(distance / options.walkSpeed)
+                        + 2 * StreetTransitLink.STL_TRAVERSE_COST;
+                int target = targets[i];
+                if (time < bestTimes[target] && time < bestTargetTime) {
+                    bestTimes[target] = time;
+                    current.times[target] = time;
+                    current.source[target] = TRANSFER;
+                    current.transferFrom[target] = stop;
+                    reached.set(target);
+                }
+            }
+        }
+
+        // Leaving the transit network for the street is also only allowed right after riding a vehicle.
+        for (int stop = reachedByTransit.nextSetBit(0); stop >= 0; stop = reachedByTransit.nextSetBit(stop + 1)) {
+            if (!egressTimes.containsKey(stop)) continue;
+            int time = current.transitTimes[stop] + egressTimes.get(stop);
+            if (time < bestTargetTime) {
+                bestTargetTime = time;
+                targetTimes[round] = time;
+                targetStops[round] = stop;
+            }
+        }
+        return reached;
+    }
+
+    /**
+     * Find the trip on the given pattern and service day that departs first from the given position at or after the
+     * given relative time. This mirrors Timetable.getNextTrip, without the State-dependent transfer rules.
+     */
+    private TripTimes findNextTrip(TripPattern pattern, ServiceDay sd, int pos, int earliestBoard) {
+        long absoluteTime = departureTime + earliestBoard;
+        Timetable timetable = pattern.getUpdatedTimetable(options, sd);
+        if (!timetable.temporallyViable(sd, absoluteTime, -1, true)) return null;
+        int time = sd.secondsSinceMidnight(absoluteTime);
+        TripTimes bestTrip = null;
+        int bestTime = Integer.MAX_VALUE;
+        for (TripTimes tt : timetable.tripTimes) {
+            if (tt.isCanceled()) continue;
+            if (!sd.serviceRunning(tt.serviceCode)) continue;
+            int departure = tt.getDepartureTime(pos);
+            if (departure < 0 || departure < time || departure >= bestTime) continue;
+            if (!tripAcceptable(tt.trip, pos)) continue;
+            bestTrip = tt;
+            bestTime = departure;
+        }
+        return bestTrip;
+    }
+
+    private boolean tripAcceptable(Trip trip, int pos) {
+        BannedStopSet banned = options.bannedTrips.get(trip.getId());
+        if (banned != null && banned.contains(pos)) return false;
+        if (options.wheelchairAccessible && trip.getWheelchairAccessible() != 1) return false;
+        return true;
+    }
+
+    private boolean patternAllowed(TripPattern pattern) {
+        if (!options.modes.contains(pattern.mode)) return false;
+        Route route = pattern.route;
+        if (options.routeIsBanned(route)) return false;
+        if (!options.flexUseEligibilityServices && route.hasEligibilityRestricted()
+                && route.getEligibilityRestricted() == 1) {
+            return false;
+        }
+        return true;
+    }
+
+    private int relativeTime(ServiceDay serviceDay, int secondsSinceMidnight) {
+        return (int) (serviceDay.time(secondsSinceMidnight) - departureTime);
+    }
+
+    /** @return for each number of rides, the arrival at the destination if it improved with that many rides. */
+    public int[] getTargetTimes() {
+        return targetTimes;
+    }
+
+    /**
+     * Trace back the rides leading to the destination in the given round.
+     * @return the rides in travel order, or null if the destination was not improved in that round.
+     */
+    public List<Ride> getRides(int round) {
+        if (targetStops[round] < 0) return null;
+        LinkedList<Ride> rides = new LinkedList<>();
+        int stop = targetStops[round];
+        int transferTo = -1;
+        while (round > 0) {
+            Round r = rounds.get(round);
+            int pattern = r.pattern[stop];
+            int boardPosition = r.boardPosition[stop];
+            rides.addFirst(new Ride(pattern, boardPosition, r.alightPosition[stop], transferTo));
+            int boardStop = layer.stopsForPattern[pattern][boardPosition];
+            // Find the round in which the label used for boarding was set.
+            round--;
+            while (round > 0 && rounds.get(round).source[boardStop] == NONE) round--;
+            if (round == 0) break;
+            r = rounds.get(round);
+            if (r.source[boardStop] == TRANSFER) {
+                stop = r.transferFrom[boardStop];
+                transferTo = boardStop;
+            } else {
+                stop = boardStop;
+                transferTo = -1;
+            }
+        }
+        return rides;
+    }
+
+    /** One vehicle ride in a path found by the search, optionally followed by a transfer to another stop. */
+    public static class Ride {
+
+        /** The RAPTOR pattern index. */
+        public final int pattern;
+
+        public final int boardPosition;
+
+        public final int alightPosition;
+
+        /** The RAPTOR stop index reached by a transfer after alighting, or -1 if there is no transfer. */
+        public final int transferTo;
+
+        Ride(int pattern, int boardPosition, int alightPosition, int transferTo) {
+            this.pattern = pattern;
+            this.boardPosition = boardPosition;
+            this.alightPosition = alightPosition;
+            this.transferTo = transferTo;
+        }
+
+    }
+
+    /** The labels of all stops for one round. */
+    private static class Round {
+
+        /** The best arrival at each stop using at most this many rides, including labels from earlier rounds. */
+        final int[] times;
+
+        /** The arrival at each stop by vehicle in this round, before any transfer. */
+        final int[] transitTimes;
+
+        /** How the label in times was set in this round, NONE if it was carried over from an earlier round. */
+        final byte[] source;
+
+        final int[] pattern;
+
+        final int[] boardPosition;
+
+        final int[] alightPosition;
+
+        final int[] transferFrom;
+
+        Round(int nStops) {
+            times = new int[nStops];
+            transitTimes = new int[nStops];
+            source = new byte[nStops];
+            pattern = new int[nStops];
+            boardPosition = new int[nStops];
+            alightPosition = new int[nStops];
+            transferFrom = new int[nStops];
+            Arrays.fill(times, UNREACHED);
+            Arrays.fill(transitTimes, UNREACHED);
+        }
+
+    }
+
+}
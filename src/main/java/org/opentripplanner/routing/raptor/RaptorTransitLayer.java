@@ -0,0 +1,140 @@
+package org.opentripplanner.routing.raptor;
+
+import gnu.trove.list.TIntList;
+import gnu.trove.list.array.TIntArrayList;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.routing.edgetype.SimpleTransfer;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The transit network of a graph laid out as flat integer arrays for the point-to-point RAPTOR search.
+ *
+ * Stops and patterns are given dense integer indexes, so that the search can keep its per-stop state in arrays and
+ * walk pattern stop sequences without going through the graph. Trip times are deliberately not copied here: they are
+ * read from the (possibly real-time updated) timetables at search time, so that the RAPTOR search sees the same
+ * trips as the edges it will later traverse to build a GraphPath.
+ *
+ * This is built once per router on first use and is immutable afterward, so it can be shared by concurrent searches.
+ * Patterns added to the graph later by real-time updates are not included.
+ */
+public class RaptorTransitLayer {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RaptorTransitLayer.class);
+
+    /** All transit stops, indexed by their RAPTOR stop index. */
+    public final TransitStop[] stops;
+
+    /** All non-flex trip patterns, indexed by their RAPTOR pattern index. */
+    public final TripPattern[] patterns;
+
+    /** For each pattern, the RAPTOR stop index at each position in the pattern. */
+    public final int[][] stopsForPattern;
+
+    /** For each stop, the indexes of the patterns that pass through it. */
+    public final int[][] patternsForStop;
+
+    /** For each stop, the precomputed transfers leaving it. */
+    public final SimpleTransfer[][] transfersForStop;
+
+    /** For each stop, the RAPTOR stop index of the target of each transfer in transfersForStop. */
+    public final int[][] transferTargetsForStop;
+
+    /** True if any pattern has frequency-based trips, which this layer does not handle. */
+    public final boolean hasFrequencyEntries;
+
+    /** Maps vertex indexes to RAPTOR stop indexes, -1 for vertices that are not transit stops. */
+    private final int[] stopIndexForVertex;
+
+    public RaptorTransitLayer(Graph graph) {
+        long startTime = System.currentTimeMillis();
+
+        stops = graph.index.stopVertexForStop.values().toArray(new TransitStop[0]);
+        int maxVertexIndex = -1;
+        for (TransitStop stop : stops) {
+            maxVertexIndex = Math.max(maxVertexIndex, stop.getIndex());
+        }
+        stopIndexForVertex = new int[maxVertexIndex + 1];
+        Arrays.fill(stopIndexForVertex, -1);
+        for (int s = 0; s < stops.length; s++) {
+            stopIndexForVertex[stops[s].getIndex()] = s;
+        }
+
+        List<TripPattern> usablePatterns = new ArrayList<>();
+        boolean frequencies = false;
+        for (TripPattern pattern : graph.index.patternForId.values()) {
+            // Flex hops board and alight between stops, which does not fit the RAPTOR model of discrete stops.
+            if (pattern.stopPattern.hasFlexFields()) continue;
+            if (!pattern.scheduledTimetable.frequencyEntries.isEmpty()) frequencies = true;
+            usablePatterns.add(pattern);
+        }
+        hasFrequencyEntries = frequencies;
+        patterns = usablePatterns.toArray(new TripPattern[0]);
+
+        TIntList[] patternLists = new TIntList[stops.length];
+        stopsForPattern = new int[patterns.length][];
+        for (int p = 0; p < patterns.length; p++) {
+            TripPattern pattern = patterns[p];
+            int[] patternStops = new int[pattern.getStops().size()];
+            for (int pos = 0; pos < patternStops.length; pos++) {
+                Stop stop = pattern.getStop(pos);
+                int s = getStopIndex(graph.index.stopVertexForStop.get(stop));
+                patternStops[pos] = s;
+                if (s < 0) continue;
+                if (patternLists[s] == null) patternLists[s] = new TIntArrayList();
+                // Patterns that visit a stop more than once are only listed once.
+                if (!patternLists[s].contains(p)) patternLists[s].add(p);
+            }
+            stopsForPattern[p] = patternStops;
+        }
+
+        patternsForStop = new int[stops.length][];
+        transfersForStop = new SimpleTransfer[stops.length][];
+        transferTargetsForStop = new int[stops.length][];
+        for (int s = 0; s < stops.length; s++) {
+            patternsForStop[s] = patternLists[s] == null ? new int[0] : patternLists[s].toArray();
+            List<SimpleTransfer> transfers = new ArrayList<>();
+            TIntList targets = new TIntArrayList();
+            for (Edge edge : stops[s].getOutgoing()) {
+                if (edge instanceof SimpleTransfer) {
+                    int target = getStopIndex(edge.getToVertex());
+                    if (target < 0) continue;
+                    transfers.add((SimpleTransfer) edge);
+                    targets.add(target);
+                }
+            }
+            transfersForStop[s] = transfers.toArray(new SimpleTransfer[0]);
+            transferTargetsForStop[s] = targets.toArray();
+        }
+
+        LOG.info("Built RAPTOR transit layer with {} stops and {} patterns in {} msec.", stops.length,
+                patterns.length, System.currentTimeMillis() - startTime);
+    }
+
+    /** @return the RAPTOR index of the given vertex, or -1 if it is not a transit stop known to this layer. */
+    public int getStopIndex(Vertex vertex) {
+        if (vertex == null) return -1;
+        int index = vertex.getIndex();
+        if (index < 0 || index >= stopIndexForVertex.length) return -1;
+        return stopIndexForVertex[index];
+    }
+
+    /** @return the transfer edge between the two given stops, or null if there is none. */
+    public SimpleTransfer getTransfer(int fromStop, int toStop) {
+        int[] targets = transferTargetsForStop[fromStop];
+        for (int i = 0; i < targets.length; i++) {
+            if (targets[i] == toStop) return transfersForStop[fromStop][i];
+        }
+        return null;
+    }
+
+}
@@ -0,0 +1,18 @@
+package org.opentripplanner.routing.raptor;
+
+/**
+ * The algorithm used to search the transit network in point-to-point (/plan) requests. This is chosen per router with
+ * the "transitSearchEngine" key in router-config.json.
+ */
+public enum TransitSearchEngine {
+
+    /** Search the street and transit networks together with AStar over the pattern hop and board/alight edges. */
+    ASTAR,
+
+    /**
+     * Search the transit network round by round with RAPTOR, using AStar only for the street searches at the origin
+     * and destination. Requests RAPTOR does not handle (arrive-by, flex, park and ride...) still use AStar.
+     */
+    RAPTOR
+
+}
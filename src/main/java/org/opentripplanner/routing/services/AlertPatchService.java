@@ -13,6 +13,10 @@ public interface AlertPatchService {
 
     Collection<AlertPatch> getRoutePatches(FeedScopedId route);
 
+    Collection<AlertPatch> getTripPatches(FeedScopedId trip);
+
+    Collection<AlertPatch> getAgencyPatches(String agency);
+
     void apply(AlertPatch alertPatch);
 
     void expire(Set<String> ids);
@@ -12,6 +12,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -53,6 +54,9 @@ public class GraphService {
 
     private ScheduledExecutorService scanExecutor;
 
+    /** Runs the background reloads one at a time. Its thread is only started by the first one. */
+    private final ExecutorService reloadExecutor = Executors.newSingleThreadExecutor();
+
     public GraphService() {
         this(false);
     }
@@ -82,6 +86,7 @@ public class GraphService {
     @PreDestroy
     private void teardown() {
         LOG.info("Cleaning-up graphs...");
+        reloadExecutor.shutdownNow();
         evictAll();
         cleanupWebapp();
     }
@@ -97,10 +102,7 @@ public class GraphService {
      * @return the graph object for the given router ID
      */
     public Router getRouter(String routerId) throws GraphNotFoundException {
-        if (routerId == null || routerId.isEmpty() || routerId.equalsIgnoreCase("default")) {
-            routerId = defaultRouterId;
-            LOG.debug("routerId not specified, set to default of '{}'", routerId);
-        }
+        routerId = resolveRouterId(routerId);
         /*
          * Here we should not synchronize on graphSource as it may block for a while (during
          * reload/autoreload). For normal operations a simple get do not need to be synchronized so
@@ -119,6 +121,42 @@ public class GraphService {
         return router;
     }
 
+    /**
+     * @return whether the given router can handle requests right now. This never waits for a graph
+     *         being loaded, so that it can be polled by load balancers.
+     */
+    public boolean isReady(String routerId) {
+        GraphSource graphSource = graphSources.get(resolveRouterId(routerId));
+        return graphSource != null && graphSource.isReady();
+    }
+
+    /**
+     * @return the stage of the reload in progress for the given router, or null if it is not being
+     *         reloaded.
+     */
+    public GraphSource.ReloadStage getReloadStage(String routerId) {
+        GraphSource graphSource = graphSources.get(resolveRouterId(routerId));
+        return graphSource == null ? null : graphSource.getReloadStage();
+    }
+
+    /**
+     * Reload all registered graphs in a background thread, see reloadGraphs(). Unless preEvict is
+     * true, the current routers keep handling requests until their replacements are loaded and
+     * warmed up. Background reloads are run one at a time.
+     */
+    public void reloadGraphsInBackground(final boolean preEvict, final boolean force) {
+        reloadExecutor.execute(() -> reloadGraphs(preEvict, force));
+    }
+
+    /**
+     * Reload a registered graph in a background thread, see reloadGraph() and
+     * reloadGraphsInBackground().
+     */
+    public void reloadGraphInBackground(final String routerId, final boolean preEvict,
+            final boolean force) {
+        reloadExecutor.execute(() -> reloadGraph(routerId, preEvict, force));
+    }
+
     /**
      * Reload all registered graphs from wherever they came from. See reloadGraph().
      * @return whether the operation completed successfully (all reloads are successful).
@@ -266,6 +304,14 @@ public class GraphService {
         return m.matches();
     }
 
+    private String resolveRouterId(String routerId) {
+        if (routerId == null || routerId.isEmpty() || routerId.equalsIgnoreCase("default")) {
+            routerId = defaultRouterId;
+            LOG.debug("routerId not specified, set to default of '{}'", routerId);
+        }
+        return routerId;
+    }
+
     private void autoReloadScan() {
         synchronized (graphSources) {
             Collection<String> routerIds = getRouterIds();
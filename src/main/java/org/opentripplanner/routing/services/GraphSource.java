@@ -61,4 +61,31 @@ public interface GraphSource {
      * Callback when the graph (source) gets evicted from the repository.
      */
     public void evict();
+
+    /**
+     * @return True if a router is available to handle requests. Unlike getRouter() this must not wait for a graph
+     *         being loaded, as it is polled by load balancers through the readiness endpoint.
+     */
+    public default boolean isReady() {
+        return getRouter() != null;
+    }
+
+    /**
+     * @return The stage of the reload in progress, or null if the source is not being reloaded.
+     */
+    public default ReloadStage getReloadStage() {
+        return null;
+    }
+
+    /**
+     * The stages of a reload. The new router only replaces the current one once all of them are done.
+     */
+    public enum ReloadStage {
+        /** Reading the graph and starting up the router. */
+        LOADING,
+        /** Replaying recent requests on the new router. */
+        WARMING_UP,
+        /** Building the indexes that are otherwise built on first use. */
+        INDEXING
+    }
 }
@@ -1,8 +1,11 @@
 package org.opentripplanner.routing.spt;
 
+import org.apache.commons.math3.util.FastMath;
 import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.LineString;
+import org.opentripplanner.common.geometry.CompactLineString;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.routing.core.RoutingContext;
 import org.opentripplanner.routing.core.State;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.edgetype.StreetEdge;
@@ -20,6 +23,9 @@ import java.util.Set;
  * than the provided base length d0, split it in several steps of equal length and shorter than d0.
  * For each walk step call the visitor callback.
  * 
+ * The compact geometry of street edges is read in place (see CompactLineString.visitCoordinates),
+ * without building a LineString for every edge of the tree.
+ * 
  * @author laurent
  */
 public class SPTWalker {
@@ -65,11 +71,14 @@ public class SPTWalker {
             allVertices.add(s.getVertex());
         }
         Set<Edge> processedEdges = new HashSet<Edge>(allVertices.size());
+        // The temporary edges of the request (e.g. the split street at the origin) are only found through its context.
+        RoutingContext rctx = spt.getOptions().rctx;
         for (Vertex v : allVertices) {
             State s0 = spt.getState(v);
             if (s0 == null || !s0.isFinal())
                 continue;
-            for (Edge e : s0.getVertex().getIncoming()) {
+            Collection<Edge> incoming = rctx == null ? v.getIncoming() : rctx.getIncoming(v);
+            for (Edge e : incoming) {
                 // Take only street
                 if (e != null && visitor.accept(e)) {
                     State s1 = spt.getState(e.getFromVertex());
@@ -85,10 +94,14 @@ public class SPTWalker {
                     }
                     Vertex vx0 = s0.getVertex();
                     Vertex vx1 = s1.getVertex();
-                    LineString lineString = e.getGeometry();
-                    if (lineString == null) {
-                        nSkippedNoGeometry++;
-                        continue;
+                    // Street edges are visited from their compact geometry, others need a LineString
+                    LineString lineString = null;
+                    if (!(e instanceof StreetEdge)) {
+                        lineString = e.getGeometry();
+                        if (lineString == null) {
+                            nSkippedNoGeometry++;
+                            continue;
+                        }
                     }
 
                     // Compute speed along edge
@@ -118,37 +131,22 @@ public class SPTWalker {
                     }
 
                     // Length of linestring
-                    double lineStringLen = SphericalDistanceLibrary.fastLength(lineString);
+                    FastLength fastLength = lineString == null
+                            ? new FastLength(e.getFromVertex().getLat(), e.getToVertex().getLat())
+                            : new FastLength(lineString.getCoordinateN(0).y,
+                                    lineString.getCoordinateN(lineString.getNumPoints() - 1).y);
+                    visitGeometry(e, lineString, fastLength);
+                    double lineStringLen = fastLength.getLength();
                     visitor.visit(e, vx0.getCoordinate(), s0, s1, 0.0, lineStringLen, speedAlongEdge);
                     visitor.visit(e, vx1.getCoordinate(), s0, s1, lineStringLen, 0.0, speedAlongEdge);
                     nTotal += 2;
-                    Coordinate[] pList = lineString.getCoordinates();
-                    boolean reverse = vx1.getCoordinate().equals(pList[0]);
                     // Split the linestring in nSteps
                     if (lineStringLen > d0) {
                         int nSteps = (int) Math.floor(lineStringLen / d0) + 1; // Number of steps
-                        double stepLen = lineStringLen / nSteps; // Length of step
-                        double startLen = 0; // Distance at start of current seg
-                        double curLen = stepLen; // Distance cursor
-                        int ns = 1;
-                        for (int i = 0; i < pList.length - 1; i++) {
-                            Coordinate p0 = pList[i];
-                            Coordinate p1 = pList[i + 1];
-                            double segLen = SphericalDistanceLibrary.fastDistance(p0, p1);
-                            while (curLen - startLen < segLen) {
-                                double k = (curLen - startLen) / segLen;
-                                Coordinate p = new Coordinate(p0.x * (1 - k) + p1.x * k, p0.y
-                                        * (1 - k) + p1.y * k);
-                                visitor.visit(e, p, reverse ? s1 : s0, reverse ? s0 : s1, curLen,
-                                        lineStringLen - curLen, speedAlongEdge);
-                                nTotal++;
-                                curLen += stepLen;
-                                ns++;
-                            }
-                            startLen += segLen;
-                            if (ns >= nSteps)
-                                break;
-                        }
+                        StepSampler sampler = new StepSampler(visitor, e, s0, s1, vx1, lineStringLen,
+                                nSteps, speedAlongEdge);
+                        visitGeometry(e, lineString, sampler);
+                        nTotal += sampler.nVisited;
                     }
                 }
             }
@@ -156,4 +154,138 @@ public class SPTWalker {
         LOG.info("SPTWalker: Generated {} points ({} dup edges, {} no geometry) from {} vertices / {} states.",
                 nTotal, nSkippedDupEdge, nSkippedNoGeometry, allVertices.size(), allStates.size());
     }
+
+    /**
+     * Give the coordinates of the geometry of an edge to a visitor.
+     * @param lineString the geometry of the edge, or null for a street edge.
+     */
+    private static void visitGeometry(Edge e, LineString lineString,
+            CompactLineString.CoordinateVisitor visitor) {
+        if (lineString == null) {
+            ((StreetEdge) e).visitGeometry(visitor);
+        } else {
+            for (Coordinate c : lineString.getCoordinates()) {
+                visitor.visit(c.x, c.y);
+            }
+        }
+    }
+
+    /**
+     * Computes the same length as SphericalDistanceLibrary.fastLength() while the coordinates are
+     * visited: the length of the polyline in an equirectangular projection centered on the
+     * middle latitude of its end points.
+     */
+    private static class FastLength implements CompactLineString.CoordinateVisitor {
+
+        private final double cosLat;
+
+        private double length = 0;
+
+        private double lastX = Double.NaN;
+
+        private double lastY;
+
+        FastLength(double firstLat, double lastLat) {
+            cosLat = FastMath.cos(Math.toRadians((firstLat + lastLat) / 2.0));
+        }
+
+        @Override
+        public void visit(double x, double y) {
+            double px = Math.toRadians(x) * cosLat;
+            double py = Math.toRadians(y);
+            if (!Double.isNaN(lastX)) {
+                double dx = px - lastX;
+                double dy = py - lastY;
+                length += Math.sqrt(dx * dx + dy * dy);
+            }
+            lastX = px;
+            lastY = py;
+        }
+
+        /** @return the length in meters. */
+        double getLength() {
+            return length * SphericalDistanceLibrary.RADIUS_OF_EARTH_IN_M;
+        }
+    }
+
+    /**
+     * Calls the visitor for points at regular intervals along the geometry of an edge, splitting
+     * it in nSteps of equal length.
+     */
+    private static class StepSampler implements CompactLineString.CoordinateVisitor {
+
+        private final SPTVisitor visitor;
+
+        private final Edge e;
+
+        private final State s0;
+
+        private final State s1;
+
+        private final Vertex vx1;
+
+        private final double lineStringLen;
+
+        private final int nSteps;
+
+        private final double stepLen; // Length of step
+
+        private final double speedAlongEdge;
+
+        private boolean first = true;
+
+        private boolean reverse;
+
+        private boolean done = false;
+
+        private double lastX;
+
+        private double lastY;
+
+        private double startLen = 0; // Distance at start of current seg
+
+        private double curLen; // Distance cursor
+
+        private int ns = 1;
+
+        int nVisited = 0;
+
+        StepSampler(SPTVisitor visitor, Edge e, State s0, State s1, Vertex vx1, double lineStringLen,
+                int nSteps, double speedAlongEdge) {
+            this.visitor = visitor;
+            this.e = e;
+            this.s0 = s0;
+            this.s1 = s1;
+            this.vx1 = vx1;
+            this.lineStringLen = lineStringLen;
+            this.nSteps = nSteps;
+            this.stepLen = lineStringLen / nSteps;
+            this.curLen = stepLen;
+            this.speedAlongEdge = speedAlongEdge;
+        }
+
+        @Override
+        public void visit(double x, double y) {
+            if (first) {
+                reverse = vx1.getX() == x && vx1.getY() == y;
+                first = false;
+            } else if (!done) {
+                double segLen = SphericalDistanceLibrary.fastDistance(lastY, lastX, y, x);
+                while (curLen - startLen < segLen) {
+                    double k = (curLen - startLen) / segLen;
+                    Coordinate p = new Coordinate(lastX * (1 - k) + x * k, lastY * (1 - k) + y * k);
+                    visitor.visit(e, p, reverse ? s1 : s0, reverse ? s0 : s1, curLen,
+                            lineStringLen - curLen, speedAlongEdge);
+                    nVisited++;
+                    curLen += stepLen;
+                    ns++;
+                }
+                startLen += segLen;
+                if (ns >= nSteps)
+                    done = true;
+            }
+            lastX = x;
+            lastY = y;
+        }
+    }
 }
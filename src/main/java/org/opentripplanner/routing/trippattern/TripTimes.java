@@ -42,6 +42,9 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
     /**
      * This allows re-using the same scheduled arrival and departure time arrays for many
      * different TripTimes. It is also used in materializing frequency-based TripTimes.
+     * The scheduled times are stored relative to the first arrival of the trip, which is the
+     * time shift, so all the trips with the same running and dwell times share one pair of
+     * deduplicated arrays and only differ by their time shift.
      */
     int timeShift;
 
@@ -62,20 +65,23 @@ public class TripTimes implements Serializable, Comparable<TripTimes>, Cloneable
     private final String[] headsigns;
 
     /**
-     * The time in seconds after midnight at which the vehicle should arrive at each stop according
-     * to the original schedule.
+     * The time in seconds after the time shift at which the vehicle should arrive at each stop
+     * according to the original schedule. This array may be shared with other TripTimes and must
+     * not be modified.
      */
     final int[] scheduledArrivalTimes;
 
     /**
-     * The time in seconds after midnight at which the vehicle should leave each stop according
-     * to the original schedule.
+     * The time in seconds after the time shift at which the vehicle should leave each stop
+     * according to the original schedule. This array may be shared with other TripTimes and must
+     * not be modified.
      */
     final int[] scheduledDepartureTimes;
 
     /**
      * The time in seconds after midnight at which the vehicle arrives at each stop, accounting for
-     * any real-time updates. Non-final to allow updates.
+     * any real-time updates. Non-final to allow updates. This is null until the trip is updated,
+     * only the updated trips have their own arrays of times.
      */
     int[] arrivalTimes;
 
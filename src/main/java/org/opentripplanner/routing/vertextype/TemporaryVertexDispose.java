@@ -1,5 +1,6 @@
 package org.opentripplanner.routing.vertextype;
 
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
 import org.opentripplanner.routing.graph.Edge;
 import org.opentripplanner.routing.graph.Vertex;
 
@@ -132,6 +133,10 @@ class TemporaryVertexDispose {
      * @param incoming true if the edge is an incoming edge, false if it is an outgoing edge
      */
     private void removeEdgeFromMainGraphVertex(Vertex v, Edge connectedEdge, boolean incoming) {
+        // Temporary edges are never attached to main graph vertexes, see the Edge constructor.
+        if(connectedEdge instanceof TemporaryEdge) {
+            return;
+        }
         if(incoming) {
             v.removeIncoming(connectedEdge);
         }
@@ -104,6 +104,14 @@ public class CommandLineParameters implements Cloneable {
             description = "Path to directory containing PointSets. Defaults to BASE_PATH/pointsets.")
     public File pointSetDirectory;
 
+    @Parameter(names = {"--surfaceCacheMb"},
+            description = "Memory size of the travel time surface cache of OTP Analyst, in megabytes.")
+    public int surfaceCacheMb = 256;
+
+    @Parameter(names = {"--packSurfaces"},
+            description = "Compress the travel times of cached OTP Analyst surfaces, to fit more of them in the cache.")
+    public boolean packSurfaces = false;
+
     @Parameter(names = {"--clientFiles"}, validateWith = ReadableDirectory.class,
             description = "Path to directory containing local client files to serve.")
     public File clientDirectory = null;
@@ -135,6 +143,30 @@ public class CommandLineParameters implements Cloneable {
     @Parameter(names = { "--script" }, description = "run the specified OTP script (groovy, python)")
     public File scriptFile = null;
 
+    @Parameter(names = {"--replay"}, validateWith = ReadableFile.class,
+            description = "Replay the requests of a request log on the default router and report latencies.")
+    public File replayFile = null;
+
+    @Parameter(names = {"--replayThreads"},
+            description = "The number of threads replaying requests.")
+    public int replayThreads = 1;
+
+    @Parameter(names = {"--replayRate"},
+            description = "The rate at which requests are replayed in requests per second, 0 for as fast as possible.")
+    public double replayRate = 0;
+
+    @Parameter(names = {"--replayDate"},
+            description = "Replay the requests on this day (yyyy-mm-dd) rather than on their logged dates.")
+    public String replayDate = null;
+
+    @Parameter(names = {"--replayOutput"},
+            description = "Write the replayed results to this file, in the request log format.")
+    public File replayOutput = null;
+
+    @Parameter(names = {"--replayBaseline"}, validateWith = ReadableFile.class,
+            description = "Compare the replayed results to this request log or replay output.")
+    public File replayBaseline = null;
+
     @Parameter(names = { "--enableScriptingWebService" }, description = "enable scripting through a web-service (Warning! Very unsafe for public facing servers)")
     boolean enableScriptingWebService = false;
 
@@ -181,6 +181,18 @@ public class GraphBuilderParameters {
      */
     public final double maxTransferDistance;
 
+    /**
+     * Precompute the distances from each transit stop to the nearby street vertices used by analyst requests, and
+     * store them in the graph instead of computing them each time the graph is loaded.
+     */
+    public final boolean precomputeStopTrees;
+
+    /**
+     * Write the graph in LZ4 blocks compressed on several threads, which makes Graph.obj smaller and faster to write,
+     * transfer and load. Compressed graphs are detected when they are loaded, so this needs no router configuration.
+     */
+    public final boolean compressGraph;
+
     /**
      * This will add extra edges when linking a stop to a platform, to prevent detours along the platform edge.
      */
@@ -216,6 +228,12 @@ public class GraphBuilderParameters {
      */
     public boolean multiThreadElevationCalculations;
 
+    /**
+     * When set to true (it is false by default), elevation rasters in geographic coordinates are copied to flat files
+     * in the cache directory and memory-mapped, instead of being decoded and interpolated by GeoTools on every build.
+     */
+    public boolean memoryMapElevation;
+
     /**
      * Set all parameters from the given Jackson JSON tree, applying defaults.
      * Supplying MissingNode.getInstance() will cause all the defaults to be applied.
@@ -251,11 +269,14 @@ public class GraphBuilderParameters {
         banDiscouragedWalking = config.path("banDiscouragedWalking").asBoolean(false);
         banDiscouragedBiking = config.path("banDiscouragedBiking").asBoolean(false);
         maxTransferDistance = config.path("maxTransferDistance").asDouble(2000);
+        precomputeStopTrees = config.path("precomputeStopTrees").asBoolean(false);
+        compressGraph = config.path("compressGraph").asBoolean(false);
         extraEdgesStopPlatformLink = config.path("extraEdgesStopPlatformLink").asBoolean(false);
         readCachedElevations = config.path("readCachedElevations").asBoolean(true);
         writeCachedElevations = config.path("writeCachedElevations").asBoolean(false);
         includeEllipsoidToGeoidDifference = config.path("includeEllipsoidToGeoidDifference").asBoolean(false);
         multiThreadElevationCalculations = config.path("multiThreadElevationCalculations").asBoolean(false);
+        memoryMapElevation = config.path("memoryMapElevation").asBoolean(false);
     }
 
 
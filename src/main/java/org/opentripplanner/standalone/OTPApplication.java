@@ -90,6 +90,7 @@ public class OTPApplication extends Application {
             ServerInfo.class,
             SurfaceResource.class,
             PointSetResource.class,
+            TravelTimeMatrixResource.class,
             GraphInspectorTileResource.class,
             ScriptResource.class,
             UpdaterStatusResource.class,
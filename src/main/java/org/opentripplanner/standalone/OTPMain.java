@@ -23,6 +23,10 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 
 /**
  * This is the main entry point to OpenTripPlanner. It allows both building graphs and starting up an OTP server
@@ -64,7 +68,8 @@ public class OTPMain {
             System.exit(1);
         }
 
-        if (params.build == null && !params.visualize && !params.server && params.scriptFile == null) {
+        if (params.build == null && !params.visualize && !params.server && params.scriptFile == null
+                && params.replayFile == null) {
             LOG.info("Nothing to do. Use --help to see available tasks.");
             System.exit(-1);
         }
@@ -127,6 +132,11 @@ public class OTPMain {
             graphScanner.startup();
         }
 
+        /* Replay a request log if requested */
+        if (params.replayFile != null) {
+            if (!replayRequests()) return false;
+        }
+
         /* Start visualizer if requested */
         if (params.visualize) {
             Router defaultRouter = graphService.getRouter();
@@ -167,6 +177,25 @@ public class OTPMain {
         return true;
     }
 
+    /** Replay the request log given on the command line on the default router, and report the results. */
+    private boolean replayRequests() {
+        Router router = graphService.getRouter();
+        RequestLogReplay replay = new RequestLogReplay(router);
+        replay.threads = params.replayThreads;
+        replay.requestsPerSecond = params.replayRate;
+        try {
+            if (params.replayDate != null) replay.date = LocalDate.parse(params.replayDate);
+            RequestLogReplay.Report report = replay.replay(Files.readAllLines(params.replayFile.toPath()));
+            report.log();
+            if (params.replayOutput != null) report.write(params.replayOutput);
+            if (params.replayBaseline != null) report.compare(Files.readAllLines(params.replayBaseline.toPath()));
+        } catch (IOException | DateTimeParseException e) {
+            LOG.error("Could not replay requests: {}", e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
     /**
      * Create a cached GraphService that will be used by all OTP components to resolve router IDs to Graphs.
      * If a graph is supplied (graph parameter is not null) then that graph is also registered.
@@ -45,7 +45,7 @@ public class OTPServer {
 
         // Optional Analyst Modules.
         if (params.analyst) {
-            surfaceCache = new SurfaceCache(30);
+            surfaceCache = new SurfaceCache(params.surfaceCacheMb * 1024L * 1024L, params.packSurfaces);
             pointSetCache = new DiskBackedPointSetCache(100, params.pointSetDirectory);
         }
 
@@ -0,0 +1,275 @@
+package org.opentripplanner.standalone;
+
+import org.opentripplanner.api.resource.DebugOutput;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.error.PathNotFoundException;
+import org.opentripplanner.routing.impl.GraphPathFinder;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Load test replaying the requests of a request log (see "requestLogFile" in router-config.json) on a loaded router.
+ * The requests are routed with GraphPathFinder directly, without the HTTP layer, on a number of threads and optionally
+ * at a fixed rate. The report gives latency percentiles, throughput, states expanded and the numbers of timeouts,
+ * requests without results and failures.
+ *
+ * The results can be written to a file in the request log format, which can be used as the baseline of a later run:
+ * the durations of the best itineraries are then compared, request by request, to qualify a new build or graph.
+ * The recorded request log itself can also be used as a baseline, as it contains the results of the logged requests.
+ *
+ * This is run from the command line with --replay, see CommandLineParameters.
+ */
+public class RequestLogReplay {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RequestLogReplay.class);
+
+    /** The number of fields of a request log line before the results, see PlannerResource. */
+    private static final int REQUEST_FIELDS = 9;
+
+    /** Best durations differing by less than this number of seconds from the baseline are considered equal. */
+    private static final int DURATION_TOLERANCE_SECONDS = 60;
+
+    /** The number of threads sending requests. */
+    public int threads = 1;
+
+    /** The rate at which requests are started, 0 to start each request as soon as a thread is free. */
+    public double requestsPerSecond = 0;
+
+    /** The day on which the requests are made, or null to use the logged dates. */
+    public LocalDate date = null;
+
+    private final Router router;
+
+    public RequestLogReplay(Router router) {
+        this.router = router;
+    }
+
+    /** The outcome of one replayed request. */
+    static class Result {
+        /** The request log line. */
+        String line;
+        /** Milliseconds from the scheduled start of the request to the end of the search. */
+        long latencyMillis;
+        long statesExpanded;
+        boolean timedOut;
+        boolean noResult;
+        boolean failed;
+        /** The durations and numbers of trips of the itineraries, as in the request log. */
+        String results = "";
+    }
+
+    /** The outcome of a replay. */
+    public static class Report {
+        final Result[] results;
+        final long elapsedMillis;
+
+        Report(Result[] results, long elapsedMillis) {
+            this.results = results;
+            this.elapsedMillis = elapsedMillis;
+        }
+
+        /** @return the latency in milliseconds under which the given fraction of the requests were answered. */
+        public long latencyPercentile(double fraction) {
+            long[] latencies = new long[results.length];
+            for (int i = 0; i < results.length; i++) latencies[i] = results[i].latencyMillis;
+            Arrays.sort(latencies);
+            if (latencies.length == 0) return 0;
+            int index = (int) Math.ceil(fraction * latencies.length) - 1;
+            return latencies[Math.max(0, Math.min(latencies.length - 1, index))];
+        }
+
+        public double throughput() {
+            return elapsedMillis == 0 ? 0 : results.length * 1000.0 / elapsedMillis;
+        }
+
+        public long statesExpanded() {
+            return Arrays.stream(results).mapToLong(r -> r.statesExpanded).sum();
+        }
+
+        long count(Predicate<Result> predicate) {
+            return Arrays.stream(results).filter(predicate).count();
+        }
+
+        public void log() {
+            LOG.info("Replayed {} requests in {} msec, {} requests/sec.", results.length, elapsedMillis,
+                    String.format("%.1f", throughput()));
+            LOG.info("Latency msec: p50 {}, p90 {}, p99 {}, max {}.", latencyPercentile(0.5), latencyPercentile(0.9),
+                    latencyPercentile(0.99), latencyPercentile(1));
+            LOG.info("States expanded: {} in total, {} per request.", statesExpanded(),
+                    results.length == 0 ? 0 : statesExpanded() / results.length);
+            LOG.info("Timed out: {}, no result: {}, failed: {}.", count(r -> r.timedOut), count(r -> r.noResult),
+                    count(r -> r.failed));
+        }
+
+        /** Write the results in the request log format, so that they can be used as a baseline. */
+        public void write(File file) throws IOException {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+                for (Result result : results) {
+                    String[] fields = result.line.trim().split(" ");
+                    writer.print(String.join(" ", Arrays.asList(fields).subList(0, REQUEST_FIELDS)));
+                    writer.print(' ');
+                    writer.println(result.results);
+                }
+            }
+        }
+
+        /**
+         * Compare the best itinerary durations with those of a baseline in the request log format. Requests are
+         * matched on their logged parameters, requests that are not in the baseline are skipped.
+         */
+        public void compare(List<String> baselineLines) {
+            Map<String, Integer> baseline = new HashMap<>();
+            for (String line : baselineLines) {
+                String[] fields = line.trim().split(" ");
+                if (fields.length < REQUEST_FIELDS) continue;
+                baseline.putIfAbsent(requestKey(fields), bestDuration(fields, REQUEST_FIELDS));
+            }
+            int compared = 0, same = 0, faster = 0, slower = 0, lost = 0, gained = 0;
+            long totalDifference = 0;
+            for (Result result : results) {
+                Integer baselineDuration = baseline.get(requestKey(result.line.trim().split(" ")));
+                if (baselineDuration == null) continue;
+                compared++;
+                int duration = bestDuration(result.results.split(" "), 0);
+                if (baselineDuration < 0 && duration < 0) {
+                    same++;
+                } else if (duration < 0) {
+                    lost++;
+                } else if (baselineDuration < 0) {
+                    gained++;
+                } else {
+                    int difference = duration - baselineDuration;
+                    totalDifference += Math.abs(difference);
+                    if (difference < -DURATION_TOLERANCE_SECONDS) faster++;
+                    else if (difference > DURATION_TOLERANCE_SECONDS) slower++;
+                    else same++;
+                }
+            }
+            LOG.info("Compared {} requests to the baseline: {} same duration (within {} sec), {} faster, {} slower, "
+                    + "{} without result in this run, {} without result in the baseline.", compared, same,
+                    DURATION_TOLERANCE_SECONDS, faster, slower, lost, gained);
+            if (compared > lost + gained) {
+                LOG.info("Mean absolute difference of best durations: {} sec.",
+                        totalDifference / (compared - lost - gained));
+            }
+        }
+    }
+
+    /** @return the logged request parameters of a request log line, without the log time and client address. */
+    static String requestKey(String[] fields) {
+        return String.join(" ", Arrays.asList(fields).subList(2, REQUEST_FIELDS));
+    }
+
+    /**
+     * @param firstResult the index of the first result field.
+     * @return the shortest itinerary duration in seconds of request log results, or -1 if there are no results.
+     */
+    static int bestDuration(String[] fields, int firstResult) {
+        int best = -1;
+        // The results are pairs of duration and number of trips.
+        for (int i = firstResult; i < fields.length; i += 2) {
+            try {
+                int duration = Integer.parseInt(fields[i]);
+                if (best < 0 || duration < best) best = duration;
+            } catch (NumberFormatException e) {
+                // Not a result.
+            }
+        }
+        return best;
+    }
+
+    /** Replay the given request log lines, skipping those that cannot be parsed. */
+    public Report replay(List<String> lines) {
+        Result[] results = lines.stream()
+                .filter(line -> line.trim().split(" ").length >= REQUEST_FIELDS)
+                .map(line -> {
+                    Result result = new Result();
+                    result.line = line;
+                    return result;
+                })
+                .toArray(Result[]::new);
+        LOG.info("Replaying {} requests on router '{}' with {} threads{}.", results.length, router.id, threads,
+                requestsPerSecond > 0 ? String.format(" at %.1f requests/sec", requestsPerSecond) : "");
+        AtomicInteger next = new AtomicInteger();
+        long startTime = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.execute(() -> {
+                int i;
+                while ((i = next.getAndIncrement()) < results.length) {
+                    long scheduledTime = System.currentTimeMillis();
+                    if (requestsPerSecond > 0) {
+                        scheduledTime = startTime + (long) (i * 1000 / requestsPerSecond);
+                        long wait = scheduledTime - System.currentTimeMillis();
+                        if (wait > 0) {
+                            try {
+                                Thread.sleep(wait);
+                            } catch (InterruptedException e) {
+                                return;
+                            }
+                        }
+                    }
+                    route(results[i]);
+                    // Measured from the scheduled start, so that a slow request delaying the next ones is accounted for.
+                    results[i].latencyMillis = System.currentTimeMillis() - scheduledTime;
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return new Report(results, System.currentTimeMillis() - startTime);
+    }
+
+    private void route(Result result) {
+        RoutingRequest request = RouterWarmUp.parseRequest(router, result.line, date);
+        if (request == null) {
+            result.failed = true;
+            return;
+        }
+        try {
+            List<GraphPath> paths = new GraphPathFinder(router).graphPathFinderEntryPoint(request);
+            StringBuilder sb = new StringBuilder();
+            for (GraphPath path : paths) {
+                sb.append(path.getDuration());
+                sb.append(' ');
+                sb.append(path.getTrips().size());
+                sb.append(' ');
+            }
+            result.results = sb.toString().trim();
+        } catch (PathNotFoundException e) {
+            result.noResult = true;
+        } catch (Exception e) {
+            LOG.debug("Request '{}' failed: {}", result.line, e.toString());
+            result.failed = true;
+        } finally {
+            if (request.rctx != null) {
+                DebugOutput debugOutput = request.rctx.debugOutput;
+                result.statesExpanded = debugOutput.statesExpanded;
+                result.timedOut = debugOutput.timedOut;
+                request.cleanup();
+            }
+        }
+    }
+
+}
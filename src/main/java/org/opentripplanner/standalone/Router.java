@@ -10,10 +10,14 @@ import com.fasterxml.jackson.databind.JsonNode;
 import org.opentripplanner.analyst.request.*;
 import org.opentripplanner.analyst.scenario.ScenarioStore;
 import org.opentripplanner.inspector.TileRendererManager;
+import org.opentripplanner.inspector.VectorTileCache;
+import org.opentripplanner.inspector.VectorTileRenderer;
 import org.opentripplanner.reflect.ReflectiveInitializer;
 import org.opentripplanner.routing.core.RoutingRequest;
 import org.opentripplanner.routing.core.TraverseMode;
 import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.raptor.RaptorTransitLayer;
+import org.opentripplanner.routing.raptor.TransitSearchEngine;
 import org.opentripplanner.updater.GraphUpdaterConfigurator;
 import org.opentripplanner.util.ElevationUtils;
 import org.opentripplanner.util.WorldEnvelope;
@@ -36,6 +40,12 @@ public class Router {
     public Graph graph;
     public double[] timeouts = {5, 4, 2};
 
+    /** The algorithm used to search the transit network in point-to-point requests. */
+    public TransitSearchEngine transitSearchEngine = TransitSearchEngine.ASTAR;
+
+    /** Transit data laid out for the RAPTOR engine, built on first use. */
+    private RaptorTransitLayer raptorTransitLayer;
+
     /**
      *  Separate logger for incoming requests. This should be handled with a Logback logger rather than something
      *  simple like a PrintStream because requests come in multi-threaded.
@@ -46,6 +56,8 @@ public class Router {
 
     // Inspector/debug services
     public TileRendererManager tileRendererManager;
+    public VectorTileRenderer vectorTileRenderer;
+    public VectorTileCache vectorTileCache;
 
     // Analyst services
     public TileCache tileCache;
@@ -81,6 +93,8 @@ public class Router {
     public void startup(JsonNode config) {
 
         this.tileRendererManager = new TileRendererManager(this.graph);
+        this.vectorTileRenderer = new VectorTileRenderer(this.graph);
+        this.vectorTileCache = VectorTileCache.fromConfig(this.id, config);
 
         // Analyst Modules FIXME make these optional based on JSON?
         {
@@ -160,6 +174,18 @@ public class Router {
             graph.setUseFlexService(useFlexService.asBoolean(false));
         }
 
+        /* Select the transit search engine for point-to-point requests */
+        JsonNode transitSearchEngine = config.get("transitSearchEngine");
+        if (transitSearchEngine != null) {
+            try {
+                this.transitSearchEngine = TransitSearchEngine.valueOf(transitSearchEngine.asText().toUpperCase());
+                LOG.info("Using {} transit search engine.", this.transitSearchEngine);
+            } catch (IllegalArgumentException e) {
+                LOG.error("Unknown transit search engine '{}', using {}.", transitSearchEngine.asText(),
+                        this.transitSearchEngine);
+            }
+        }
+
         /* Create Graph updater modules from JSON config. */
         GraphUpdaterConfigurator.setupGraph(this.graph, config);
 
@@ -175,9 +201,21 @@ public class Router {
         }
     }
 
+    /** @return the transit data used by the RAPTOR search engine, building it if this is the first call. */
+    public synchronized RaptorTransitLayer getRaptorTransitLayer() {
+        if (raptorTransitLayer == null) {
+            raptorTransitLayer = new RaptorTransitLayer(graph);
+        }
+        return raptorTransitLayer;
+    }
+
     /** Shut down this router when evicted or (auto-)reloaded. Stop any real-time updater threads. */
     public void shutdown() {
         GraphUpdaterConfigurator.shutdownGraph(this.graph);
+        if (vectorTileCache != null) {
+            LOG.info("Vector tile cache of router '{}': {}", this.id, vectorTileCache.getStatistics());
+            vectorTileCache.clear();
+        }
     }
 
     /**
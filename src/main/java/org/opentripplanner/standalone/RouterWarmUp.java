@@ -0,0 +1,188 @@
+package org.opentripplanner.standalone;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.opentripplanner.api.resource.GraphPathToTripPlanConverter;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.impl.GraphPathFinder;
+import org.opentripplanner.routing.raptor.TransitSearchEngine;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prepares a newly loaded router for traffic before it replaces the router currently in use. The first requests on a
+ * fresh router are otherwise much slower than usual: the JIT has not compiled the routing code for this graph yet,
+ * and several indexes are only built on first use.
+ *
+ * The warm-up replays a sample of the most recent requests found in the request log of the router (see
+ * "requestLogFile" in router-config.json), then builds the lazy indexes. It is configured with the "reload" object of
+ * router-config.json:
+ *
+ * <pre>
+ * "reload": {
+ *     "memoryBudgetMb": 4000,     // free heap needed to load a new graph next to the current one, 0 for no check
+ *     "warmUpRequests": 100,      // number of recent requests to replay, 0 to disable the warm-up
+ *     "warmUpSeconds": 30,        // stop replaying requests after this long
+ *     "buildGeocoderIndex": true  // build the geocoder index of older graphs before the router is used
+ * }
+ * </pre>
+ */
+public class RouterWarmUp {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RouterWarmUp.class);
+
+    /** How many bytes to read from the end of the request log for each request to replay. Log lines are shorter. */
+    private static final int BYTES_PER_LOG_LINE = 256;
+
+    /** The free heap in megabytes needed to load a new graph while the current one is still in use, 0 for no check. */
+    public int memoryBudgetMb = 0;
+
+    /** The number of recent requests to replay from the request log. */
+    public int warmUpRequests = 100;
+
+    /** The maximum time spent replaying requests, in seconds. */
+    public double warmUpSeconds = 30;
+
+    /** Whether to build the geocoder index, which is otherwise built by the first geocoding request. */
+    public boolean buildGeocoderIndex = false;
+
+    /** The request log of the router, or null if requests are not logged. */
+    private final String requestLogFile;
+
+    /** @param config the router configuration, typically from router-config.json. */
+    public RouterWarmUp(JsonNode config) {
+        JsonNode reload = config.path("reload");
+        memoryBudgetMb = reload.path("memoryBudgetMb").asInt(memoryBudgetMb);
+        warmUpRequests = reload.path("warmUpRequests").asInt(warmUpRequests);
+        warmUpSeconds = reload.path("warmUpSeconds").asDouble(warmUpSeconds);
+        buildGeocoderIndex = reload.path("buildGeocoderIndex").asBoolean(buildGeocoderIndex);
+        requestLogFile = config.path("requestLogFile").asText(null);
+    }
+
+    /**
+     * @return whether there is enough free heap, according to memoryBudgetMb, to load a new graph while the current
+     *         one is still in memory. Garbage is counted as used memory, so this errs on the safe side.
+     */
+    public boolean hasMemoryForReload() {
+        if (memoryBudgetMb <= 0) return true;
+        Runtime runtime = Runtime.getRuntime();
+        long freeMb = (runtime.maxMemory() - runtime.totalMemory() + runtime.freeMemory()) / (1024 * 1024);
+        if (freeMb < memoryBudgetMb) {
+            LOG.warn("Only {} MB of free heap, {} MB are needed to load a new graph next to the current one.", freeMb,
+                    memoryBudgetMb);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Route a sample of the most recent requests found in the request log on the given router, discarding the
+     * results. The requests are made on the current day at the logged time of day, so that they use the current
+     * service. Requests that fail are as useful as the others to warm up the code, so failures are only counted.
+     * @return the number of requests replayed.
+     */
+    public int replayRequests(Router router) {
+        if (requestLogFile == null || warmUpRequests <= 0) return 0;
+        List<String> lines;
+        try {
+            lines = readLastLines(new File(requestLogFile), warmUpRequests);
+        } catch (IOException e) {
+            LOG.warn("Could not read request log '{}' to warm up router '{}': {}", requestLogFile, router.id,
+                    e.getMessage());
+            return 0;
+        }
+        long startTime = System.currentTimeMillis();
+        long endTime = startTime + (long) (warmUpSeconds * 1000);
+        GraphPathFinder graphPathFinder = new GraphPathFinder(router);
+        int replayed = 0;
+        int failed = 0;
+        for (String line : lines) {
+            if (System.currentTimeMillis() > endTime) {
+                LOG.info("Warm-up of router '{}' stopped after {} seconds.", router.id, warmUpSeconds);
+                break;
+            }
+            RoutingRequest request = parseRequest(router, line, LocalDate.now());
+            if (request == null) continue;
+            try {
+                List<GraphPath> paths = graphPathFinder.graphPathFinderEntryPoint(request);
+                GraphPathToTripPlanConverter.generatePlan(paths, request);
+            } catch (Exception e) {
+                failed++;
+            } finally {
+                request.cleanup();
+            }
+            replayed++;
+        }
+        LOG.info("Warmed up router '{}' with {} requests ({} failed) in {} msec.", router.id, replayed, failed,
+                System.currentTimeMillis() - startTime);
+        return replayed;
+    }
+
+    /** Build the indexes that are otherwise built by the first request needing them. */
+    public void buildIndexes(Router router) {
+        long startTime = System.currentTimeMillis();
+        if (router.transitSearchEngine == TransitSearchEngine.RAPTOR) {
+            router.getRaptorTransitLayer();
+        }
+        if (buildGeocoderIndex) {
+            // Only graphs built before the geocoder index was saved with the graph need this.
+            router.graph.index.getGeocoderIndex();
+        }
+        LOG.info("Built indexes of router '{}' in {} msec.", router.id, System.currentTimeMillis() - startTime);
+    }
+
+    /**
+     * Parse a line of the request log, as written by PlannerResource: log time, client address, ARRIVE or DEPART,
+     * requested date and time, modes, origin latitude and longitude, destination latitude and longitude, followed by
+     * the results.
+     * @param date the day of the request, or null to use the logged date.
+     * @return the request, or null if the line cannot be parsed.
+     */
+    static RoutingRequest parseRequest(Router router, String line, LocalDate date) {
+        String[] fields = line.trim().split(" ");
+        if (fields.length < 9) return null;
+        try {
+            RoutingRequest request = router.defaultRoutingRequest.clone();
+            request.routerId = router.id;
+            request.setArriveBy("ARRIVE".equals(fields[2]));
+            LocalDateTime dateTime = LocalDateTime.parse(fields[3]);
+            if (date != null) dateTime = date.atTime(dateTime.toLocalTime());
+            request.dateTime = dateTime.atZone(ZoneId.systemDefault()).toEpochSecond();
+            request.setModes(new TraverseModeSet(fields[4]));
+            request.from = new GenericLocation(Double.parseDouble(fields[5]), Double.parseDouble(fields[6]));
+            request.to = new GenericLocation(Double.parseDouble(fields[7]), Double.parseDouble(fields[8]));
+            return request;
+        } catch (RuntimeException e) {
+            LOG.debug("Skipping unreadable request log line '{}'", line);
+            return null;
+        }
+    }
+
+    /** Read the last lines of a file without reading the whole file, which may be large. */
+    private static List<String> readLastLines(File file, int count) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long start = Math.max(0, raf.length() - (long) count * BYTES_PER_LOG_LINE);
+            byte[] bytes = new byte[(int) (raf.length() - start)];
+            raf.seek(start);
+            raf.readFully(bytes);
+            List<String> lines = new ArrayList<>(Arrays.asList(new String(bytes, StandardCharsets.UTF_8).split("\n")));
+            // The first line is probably cut.
+            if (start > 0 && !lines.isEmpty()) lines.remove(0);
+            return lines.subList(Math.max(0, lines.size() - count), lines.size());
+        }
+    }
+
+}
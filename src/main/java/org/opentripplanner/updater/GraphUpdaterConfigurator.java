@@ -33,6 +33,12 @@ public abstract class GraphUpdaterConfigurator {
 
     private static Logger LOG = LoggerFactory.getLogger(GraphUpdaterConfigurator.class);
 
+    /** Default graph writer priority of the trip updaters, so that trip updates are not delayed by other updaters. */
+    private static final int TRIP_UPDATER_WRITER_PRIORITY = 10;
+
+    /** Default maximum time graph writer runnables of an updater wait behind those of higher priority updaters. */
+    private static final int DEFAULT_MAX_WRITE_LATENCY_SEC = 30;
+
     public static void setupGraph(Graph graph, JsonNode mainConfig) {
 
         // Look for embedded config if it exists
@@ -104,8 +110,12 @@ public abstract class GraphUpdaterConfigurator {
                     updater.configure(graph, configItem);
                     // Perform any initial setup in a single-threaded manner to avoid concurrent reads/writes.
                     updater.setup(graph);
-                    // Add graph updater to manager.
-                    updaterManager.addUpdater(updater);
+                    // Add graph updater to manager, with the priority of its graph writer runnables.
+                    boolean tripUpdater = type.equals("stop-time-updater") || type.equals("websocket-gtfs-rt-updater");
+                    int writerPriority = configItem.path("writerPriority").asInt(
+                            tripUpdater ? TRIP_UPDATER_WRITER_PRIORITY : 0);
+                    int maxWriteLatencySec = configItem.path("maxWriteLatencySec").asInt(DEFAULT_MAX_WRITE_LATENCY_SEC);
+                    updaterManager.addUpdater(updater, writerPriority, maxWriteLatencySec);
                     LOG.info("Configured GraphUpdater: {}", updater);
                 } catch (Exception e) {
                     LOG.error("Failed to configure graph updater:" + configItem.asText(), e);
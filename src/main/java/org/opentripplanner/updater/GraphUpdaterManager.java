@@ -53,6 +53,11 @@ public class GraphUpdaterManager {
      */
     private ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
 
+    /**
+     * Orders the graph writer runnables waiting for the scheduler thread, by updater priority.
+     */
+    private GraphWriterScheduler writerScheduler = new GraphWriterScheduler();
+
     /**
      * A pool of threads on which the updaters will run.
      * This creates a pool that will auto-scale up to any size (maximum pool size is MAX_INT).
@@ -126,24 +131,52 @@ public class GraphUpdaterManager {
      * @param updater is the updater to add and run
      */
     public void addUpdater(final GraphUpdater updater) {
+        addUpdater(updater, 0, 0);
+    }
+
+    /**
+     * Adds an updater to the manager, with its own lane for graph writer runnables.
+     *
+     * @param updater is the updater to add and run
+     * @param writerPriority graph writer runnables of updaters with a higher priority are run first
+     * @param maxWriteLatencySec graph writer runnables of the updater that have been waiting for longer than this
+     *        are run before those of higher priority updaters, 0 for no maximum
+     */
+    public void addUpdater(final GraphUpdater updater, int writerPriority, int maxWriteLatencySec) {
+        writerScheduler.addLane(updater, updater.toString(), writerPriority, maxWriteLatencySec);
         updaterList.add(updater);
     }
 
     /**
      * This is the method to use to modify the graph from the updaters. The runnables will be
      * scheduled after each other, guaranteeing that only one of these runnables will be active at
-     * any time.
+     * any time. Runnables executed this way are run in FIFO order, updaters should rather use
+     * execute(GraphUpdater, GraphWriterRunnable).
      * 
      * @param runnable is a graph writer runnable
      */
     public void execute(GraphWriterRunnable runnable) {
-        scheduler.submit(() -> {
-            try {
-                runnable.run(graph);
-            } catch (Exception e) {
-                LOG.error("Error while running graph writer {}:", runnable.getClass().getName(), e);
-            }
-        });
+        execute(null, runnable);
+    }
+
+    /**
+     * Execute a graph writer runnable in the lane of an updater. Only one runnable is active at any
+     * time, and the runnables of an updater are run in order, but runnables of updaters with a
+     * higher priority can overtake them (see GraphWriterScheduler).
+     *
+     * @param updater is the updater executing the runnable
+     * @param runnable is a graph writer runnable
+     */
+    public void execute(GraphUpdater updater, GraphWriterRunnable runnable) {
+        writerScheduler.enqueue(updater, runnable);
+        scheduler.submit(() -> writerScheduler.runNext(graph));
+    }
+
+    /**
+     * Return the queue depth, staleness and counters of the graph writer lanes of the updaters.
+     */
+    public List<GraphWriterScheduler.LaneStatus> getWriterStatus() {
+        return writerScheduler.getStatus();
     }
 
     public int size() {
@@ -19,4 +19,12 @@ public interface GraphWriterRunnable {
      * This function is executed to modify the graph.
      */
     public void run(Graph graph);
+
+    /**
+     * Return true if this runnable replaces everything written by the previous runnables of the same updater, so that
+     * the GraphUpdaterManager can drop those that are still waiting to run when this one is executed.
+     */
+    default boolean isSnapshot() {
+        return false;
+    }
 }
@@ -0,0 +1,214 @@
+package org.opentripplanner.updater;
+
+import org.opentripplanner.routing.graph.Graph;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides in which order the queued graph writer runnables are run on the single graph writer thread of the
+ * GraphUpdaterManager. Each updater has its own lane, a FIFO queue of the runnables it executed. Among the lanes
+ * having queued runnables, the next runnable is taken from the lane with the highest priority, so that a slow
+ * bike rental or street note update does not hold back trip updates. A lane whose oldest runnable has been waiting
+ * longer than the maximum latency of the lane goes first though, so that low priority lanes are not starved.
+ *
+ * When a snapshot runnable is queued (see GraphWriterRunnable.isSnapshot()), the runnables of the same lane that are
+ * still waiting are dropped, as they would be superseded by the snapshot anyway.
+ *
+ * Reordering runnables across lanes is safe as each updater only writes its own data. The runnables of a lane are
+ * always run in the order they were queued.
+ */
+public class GraphWriterScheduler {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GraphWriterScheduler.class);
+
+    private static class Task {
+        final GraphWriterRunnable runnable;
+        final Lane lane;
+        final long queueTime;
+
+        Task(GraphWriterRunnable runnable, Lane lane, long queueTime) {
+            this.runnable = runnable;
+            this.lane = lane;
+            this.queueTime = queueTime;
+        }
+    }
+
+    private static class Lane {
+        final String name;
+        final int priority;
+        /** 0 for no maximum latency. */
+        final long maxLatencyMillis;
+        final Deque<Task> queue = new ArrayDeque<>();
+        long executed;
+        long coalesced;
+        long overBudget;
+        long failed;
+        long lastDurationMillis;
+        /** The time at which the last runnable of this lane finished, 0 if none has run yet. */
+        long lastWriteTime;
+
+        Lane(String name, int priority, long maxLatencyMillis) {
+            this.name = name;
+            this.priority = priority;
+            this.maxLatencyMillis = maxLatencyMillis;
+        }
+    }
+
+    /** The status of a lane, as returned by the updater status web service. */
+    public static class LaneStatus {
+        public String name;
+        public int priority;
+        public long maxLatencySec;
+        /** The number of runnables waiting to be run. */
+        public int queueDepth;
+        /** How long the oldest waiting runnable has been waiting. */
+        public long oldestQueuedMillis;
+        /** The time since the last runnable of the lane was applied to the graph, -1 if none has been applied yet. */
+        public long millisSinceLastWrite;
+        public long lastDurationMillis;
+        public long executed;
+        /** The number of runnables dropped because a snapshot of the same lane was queued after them. */
+        public long coalesced;
+        /** The number of runnables started after waiting longer than the maximum latency. */
+        public long overBudget;
+        public long failed;
+    }
+
+    /** Lanes by updater. Runnables executed without an updater go to the default lane. */
+    private final Map<Object, Lane> lanes = new IdentityHashMap<>();
+
+    private final List<Lane> laneList = new ArrayList<>();
+
+    private final Lane defaultLane;
+
+    public GraphWriterScheduler() {
+        defaultLane = new Lane("(default)", 0, 0);
+        laneList.add(defaultLane);
+    }
+
+    /**
+     * Give an updater its own lane.
+     * @param maxLatencySec the maximum time a runnable should wait before running, 0 for no maximum.
+     */
+    public synchronized void addLane(Object updater, String name, int priority, int maxLatencySec) {
+        Lane lane = new Lane(name, priority, maxLatencySec * 1000L);
+        lanes.put(updater, lane);
+        laneList.add(lane);
+    }
+
+    public void enqueue(Object updater, GraphWriterRunnable runnable) {
+        enqueue(updater, runnable, System.currentTimeMillis());
+    }
+
+    synchronized void enqueue(Object updater, GraphWriterRunnable runnable, long now) {
+        Lane lane = updater == null ? defaultLane : lanes.getOrDefault(updater, defaultLane);
+        if (runnable.isSnapshot() && !lane.queue.isEmpty()) {
+            LOG.debug("Dropping {} superseded graph writer runnables of {}.", lane.queue.size(), lane.name);
+            lane.coalesced += lane.queue.size();
+            lane.queue.clear();
+        }
+        lane.queue.add(new Task(runnable, lane, now));
+    }
+
+    /** @return the lane of the next runnable to run, or null if there are none. */
+    private Lane nextLane(long now) {
+        Lane best = null;
+        boolean bestOverdue = false;
+        for (Lane lane : laneList) {
+            Task head = lane.queue.peek();
+            if (head == null) continue;
+            boolean overdue = lane.maxLatencyMillis > 0 && now - head.queueTime > lane.maxLatencyMillis;
+            if (best == null) {
+                best = lane;
+                bestOverdue = overdue;
+                continue;
+            }
+            long bestQueueTime = best.queue.peek().queueTime;
+            if (overdue != bestOverdue) {
+                if (overdue) {
+                    best = lane;
+                    bestOverdue = true;
+                }
+            } else if (overdue) {
+                // Among overdue lanes, the one that has been waiting longest goes first.
+                if (head.queueTime < bestQueueTime) best = lane;
+            } else if (lane.priority > best.priority
+                    || (lane.priority == best.priority && head.queueTime < bestQueueTime)) {
+                best = lane;
+            }
+        }
+        return best;
+    }
+
+    /** @return the next task to run, removed from its lane, or null if there are none. */
+    private synchronized Task poll(long now) {
+        Lane lane = nextLane(now);
+        if (lane == null) return null;
+        Task task = lane.queue.poll();
+        if (lane.maxLatencyMillis > 0 && now - task.queueTime > lane.maxLatencyMillis) {
+            lane.overBudget++;
+        }
+        return task;
+    }
+
+    /** @return the next runnable to run, removed from its lane, or null if there are none. */
+    GraphWriterRunnable next(long now) {
+        Task task = poll(now);
+        return task == null ? null : task.runnable;
+    }
+
+    /**
+     * Run the next queued runnable, if any. This must only be called from the graph writer thread. The manager calls
+     * it once for each queued runnable, so some calls find nothing to run when coalescing has dropped runnables.
+     */
+    public void runNext(Graph graph) {
+        long startTime = System.currentTimeMillis();
+        Task task = poll(startTime);
+        if (task == null) return;
+        boolean ok = true;
+        try {
+            task.runnable.run(graph);
+        } catch (Exception e) {
+            ok = false;
+            LOG.error("Error while running graph writer {}:", task.runnable.getClass().getName(), e);
+        }
+        long endTime = System.currentTimeMillis();
+        Lane lane = task.lane;
+        synchronized (this) {
+            lane.executed++;
+            if (!ok) lane.failed++;
+            lane.lastDurationMillis = endTime - startTime;
+            lane.lastWriteTime = endTime;
+        }
+    }
+
+    /** @return the status of all lanes, the default lane first. */
+    public synchronized List<LaneStatus> getStatus() {
+        long now = System.currentTimeMillis();
+        List<LaneStatus> ret = new ArrayList<>();
+        for (Lane lane : laneList) {
+            LaneStatus status = new LaneStatus();
+            status.name = lane.name;
+            status.priority = lane.priority;
+            status.maxLatencySec = lane.maxLatencyMillis / 1000;
+            status.queueDepth = lane.queue.size();
+            Task head = lane.queue.peek();
+            status.oldestQueuedMillis = head == null ? 0 : now - head.queueTime;
+            status.millisSinceLastWrite = lane.lastWriteTime == 0 ? -1 : now - lane.lastWriteTime;
+            status.lastDurationMillis = lane.lastDurationMillis;
+            status.executed = lane.executed;
+            status.coalesced = lane.coalesced;
+            status.overBudget = lane.overBudget;
+            status.failed = lane.failed;
+            ret.add(status);
+        }
+        return ret;
+    }
+}
@@ -102,11 +102,17 @@ public class GtfsRealtimeAlertsUpdater extends PollingGraphUpdater {
             }
 
             // Handle update in graph writer runnable
-            updaterManager.execute(new GraphWriterRunnable() {
+            updaterManager.execute(this, new GraphWriterRunnable() {
                 @Override
                 public void run(Graph graph) {
                     updateHandler.update(feed);
                 }
+
+                @Override
+                public boolean isSnapshot() {
+                    // Each feed replaces all the alerts of the previous one.
+                    return true;
+                }
             });
 
             lastTimestamp = feedTimestamp;
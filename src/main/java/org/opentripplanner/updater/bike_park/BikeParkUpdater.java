@@ -101,7 +101,7 @@ public class BikeParkUpdater extends PollingGraphUpdater {
 
         // Create graph writer runnable to apply these stations to the graph
         BikeParkGraphWriterRunnable graphWriterRunnable = new BikeParkGraphWriterRunnable(bikeParks);
-        updaterManager.execute(graphWriterRunnable);
+        updaterManager.execute(this, graphWriterRunnable);
     }
 
     @Override
@@ -116,6 +116,12 @@ public class BikeParkUpdater extends PollingGraphUpdater {
             this.bikeParks = bikeParks;
         }
 
+        @Override
+        public boolean isSnapshot() {
+            // Bike parks that are not in the list are removed, so the list replaces all the previous ones.
+            return true;
+        }
+
         @Override
         public void run(Graph graph) {
             // Apply stations to graph
@@ -135,7 +135,7 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
 
         // Create graph writer runnable to apply these stations to the graph
         BikeRentalGraphWriterRunnable graphWriterRunnable = new BikeRentalGraphWriterRunnable(stations);
-        updaterManager.execute(graphWriterRunnable);
+        updaterManager.execute(this, graphWriterRunnable);
     }
 
     @Override
@@ -150,6 +150,12 @@ public class BikeRentalUpdater extends PollingGraphUpdater {
             this.stations = stations;
         }
 
+        @Override
+        public boolean isSnapshot() {
+            // Stations that are not in the list are removed, so the list replaces all the previous ones.
+            return true;
+        }
+
 		@Override
         public void run(Graph graph) {
             // Apply stations to graph
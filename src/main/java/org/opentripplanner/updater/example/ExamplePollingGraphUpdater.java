@@ -64,7 +64,7 @@ public class ExamplePollingGraphUpdater extends PollingGraphUpdater {
     protected void runPolling() {
         LOG.info("Run example polling updater with hashcode: {}", this.hashCode());
         // Execute example graph writer
-        updaterManager.execute(new ExampleGraphWriter());
+        updaterManager.execute(this, new ExampleGraphWriter());
     }
 
     // Here the updater can cleanup after itself.
@@ -38,6 +38,11 @@ public class TripUpdateGraphWriterRunnable implements GraphWriterRunnable {
         this.feedId = feedId;
     }
 
+    @Override
+    public boolean isSnapshot() {
+        return fullDataset;
+    }
+
     @Override
     public void run(Graph graph) {
         // Apply updates to graph using realtime snapshot source
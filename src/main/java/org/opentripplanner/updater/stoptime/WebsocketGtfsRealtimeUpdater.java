@@ -183,7 +183,7 @@ public class WebsocketGtfsRealtimeUpdater implements GraphUpdater {
                 // Handle trip updates via graph writer runnable
                 TripUpdateGraphWriterRunnable runnable = new TripUpdateGraphWriterRunnable(
                         fullDataset, updates, feedId);
-                updaterManager.execute(runnable);
+                updaterManager.execute(WebsocketGtfsRealtimeUpdater.this, runnable);
             }
         }
     }
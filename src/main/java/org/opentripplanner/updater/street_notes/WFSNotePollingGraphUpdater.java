@@ -148,7 +148,7 @@ public abstract class WFSNotePollingGraphUpdater extends PollingGraphUpdater {
                 }
             }
         }
-        updaterManager.execute(new WFSGraphWriter());
+        updaterManager.execute(this, new WFSGraphWriter());
     }
 
     /**
@@ -164,6 +164,11 @@ public abstract class WFSNotePollingGraphUpdater extends PollingGraphUpdater {
         public void run(Graph graph) {
             notesSource.setNotes(notesForEdge);
         }
+
+        @Override
+        public boolean isSnapshot() {
+            return true;
+        }
     }
 
     /**
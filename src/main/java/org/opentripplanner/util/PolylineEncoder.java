@@ -4,6 +4,7 @@ import java.util.AbstractList;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.opentripplanner.common.geometry.CompactLineString;
 import org.opentripplanner.util.model.EncodedPolylineBean;
 
 import org.locationtech.jts.geom.Coordinate;
@@ -52,18 +53,45 @@ public class PolylineEncoder {
      * @return
      */
     public static EncodedPolylineBean createEncodings(Iterable<Coordinate> points, int level) {
+        Encoder encoder = new Encoder(level);
+        for (Coordinate point : points) {
+            encoder.visit(point.x, point.y);
+        }
+        return encoder.getEncodings();
+    }
 
-        StringBuilder encodedPoints = new StringBuilder();
-        StringBuilder encodedLevels = new StringBuilder();
+    /**
+     * Encodes a polyline one point at a time, so that the points never need to be stored. It can
+     * be given directly to CompactLineString.visitCoordinates() or Edge.visitDisplayGeometry().
+     */
+    public static class Encoder implements CompactLineString.CoordinateVisitor {
 
-        int plat = 0;
-        int plng = 0;
-        int count = 0;
+        private final StringBuilder encodedPoints = new StringBuilder();
 
-        for (Coordinate point : points) {
+        private final StringBuilder encodedLevels = new StringBuilder();
 
-            int late5 = floor1e5(point.y);
-            int lnge5 = floor1e5(point.x);
+        private final int level;
+
+        private int plat = 0;
+
+        private int plng = 0;
+
+        private int count = 0;
+
+        public Encoder() {
+            this(-1);
+        }
+
+        /** @param level the level of all points. If < 0, there will be no levels. */
+        public Encoder(int level) {
+            this.level = level;
+        }
+
+        /** Add a point, with x the longitude and y the latitude. */
+        @Override
+        public void visit(double x, double y) {
+            int late5 = floor1e5(y);
+            int lnge5 = floor1e5(x);
 
             int dlat = late5 - plat;
             int dlng = lnge5 - plng;
@@ -71,15 +99,23 @@ public class PolylineEncoder {
             plat = late5;
             plng = lnge5;
 
-            encodedPoints.append(encodeSignedNumber(dlat)).append(encodeSignedNumber(dlng));
+            encodeSignedNumber(dlat, encodedPoints);
+            encodeSignedNumber(dlng, encodedPoints);
             if (level >= 0)
                 encodedLevels.append(encodeNumber(level));
             count++;
         }
 
-        String pointsString = encodedPoints.toString();
-        String levelsString = level >= 0 ? encodedLevels.toString() : null;
-        return new EncodedPolylineBean(pointsString, levelsString, count);
+        /** @return the number of points added so far. */
+        public int getCount() {
+            return count;
+        }
+
+        public EncodedPolylineBean getEncodings() {
+            String pointsString = encodedPoints.toString();
+            String levelsString = level >= 0 ? encodedLevels.toString() : null;
+            return new EncodedPolylineBean(pointsString, levelsString, count);
+        }
     }
 
     public static List<Coordinate> decode(EncodedPolylineBean polyline) {
@@ -117,11 +153,22 @@ public class PolylineEncoder {
     }
 
     public static String encodeSignedNumber(int num) {
+        StringBuilder sb = new StringBuilder();
+        encodeSignedNumber(num, sb);
+        return sb.toString();
+    }
+
+    /** Append the encoding of a signed number to a StringBuilder, without any intermediate String. */
+    private static void encodeSignedNumber(int num, StringBuilder sb) {
         int sgn_num = num << 1;
         if (num < 0) {
             sgn_num = ~(sgn_num);
         }
-        return (encodeNumber(sgn_num));
+        while (sgn_num >= 0x20) {
+            sb.append((char) ((0x20 | (sgn_num & 0x1f)) + 63));
+            sgn_num >>= 5;
+        }
+        sb.append((char) (sgn_num + 63));
     }
 
     public static int decodeSignedNumber(String value) {
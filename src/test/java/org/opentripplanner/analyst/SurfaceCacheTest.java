@@ -0,0 +1,60 @@
+package org.opentripplanner.analyst;
+
+import junit.framework.TestCase;
+import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+
+public class SurfaceCacheTest extends TestCase {
+
+    /** A surface over a row of intersections, as made by profile routing, which has no sample grid. */
+    private static TimeSurface makeSurface(Graph graph) {
+        ProfileRequest request = new ProfileRequest();
+        request.fromLat = 45;
+        request.fromLon = 0;
+        TimeSurface surface = new TimeSurface(new RepeatedRaptorProfileRouter(graph, request));
+        for (int i = 0; i < 20; i++) {
+            IntersectionVertex v = new IntersectionVertex(graph, "s" + surface.id + "v" + i, i * 0.005, 45);
+            surface.times.put(v.getIndex(), i * 60);
+        }
+        graph.rebuildVertexAndEdgeIndices();
+        return surface;
+    }
+
+    /** The sample grid is built when the surface is added, so that it counts towards the size of the cache. */
+    public void testSampleGridBuiltWhenAdded() {
+        Graph graph = new Graph();
+        TimeSurface surface = makeSurface(graph);
+        assertNull(surface.sampleGrid);
+        long timesSize = surface.getByteSize();
+
+        SurfaceCache cache = new SurfaceCache(1024 * 1024, true);
+        assertEquals(surface.id, cache.add(surface));
+        assertNotNull(surface.sampleGrid);
+        assertTrue(surface.sampleGrid.size() > 0);
+        assertTrue(surface.times.isPacked());
+        assertTrue(surface.getByteSize() > timesSize);
+        assertSame(surface, cache.get(surface.id));
+    }
+
+    /** Surfaces are evicted when their total size, including their grids, exceeds the size of the cache. */
+    public void testEviction() {
+        Graph graph = new Graph();
+        TimeSurface first = makeSurface(graph);
+        SurfaceCache probe = new SurfaceCache(Long.MAX_VALUE, false);
+        probe.add(first);
+        long surfaceSize = first.getByteSize();
+
+        // Room for about three surfaces.
+        SurfaceCache cache = new SurfaceCache(surfaceSize * 3 + surfaceSize / 2, false);
+        TimeSurface[] surfaces = new TimeSurface[10];
+        for (int i = 0; i < surfaces.length; i++) {
+            surfaces[i] = makeSurface(graph);
+            cache.add(surfaces[i]);
+        }
+        assertTrue(cache.cache.size() < surfaces.length);
+        assertNull(cache.get(surfaces[0].id));
+    }
+
+}
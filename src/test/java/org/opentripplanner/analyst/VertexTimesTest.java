@@ -0,0 +1,53 @@
+package org.opentripplanner.analyst;
+
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class VertexTimesTest extends TestCase {
+
+    public void testPackUnpack() {
+        Random random = new Random(42);
+        int[] expected = new int[10000];
+        VertexTimes times = new VertexTimes(5000);
+        for (int v = 0; v < expected.length; v++) {
+            // Leave some vertices unreached, and reach some beyond the initial capacity.
+            expected[v] = random.nextInt(4) == 0 ? TimeSurface.UNREACHABLE : random.nextInt(7200);
+            if (expected[v] != TimeSurface.UNREACHABLE) times.put(v, expected[v]);
+        }
+        int size = times.size();
+        long unpackedSize = times.getByteSize();
+
+        times.pack();
+        assertTrue(times.isPacked());
+        assertTrue(times.getByteSize() < unpackedSize);
+        assertEquals(size, times.size());
+        for (int v = 0; v < expected.length; v++) {
+            assertEquals(expected[v], times.get(v));
+        }
+        assertEquals(TimeSurface.UNREACHABLE, times.get(expected.length + 100));
+
+        // Putting a time unpacks the times.
+        times.put(3, 12);
+        assertFalse(times.isPacked());
+        assertEquals(12, times.get(3));
+        assertEquals(expected[4], times.get(4));
+    }
+
+    public void testForEach() {
+        VertexTimes times = new VertexTimes(10);
+        times.put(2, 100);
+        times.put(7, 50);
+        times.put(7, 40);
+        assertEquals(2, times.size());
+        int[] sum = new int[2];
+        times.forEach((v, t) -> {
+            sum[0] += v;
+            sum[1] += t;
+            return true;
+        });
+        assertEquals(9, sum[0]);
+        assertEquals(140, sum[1]);
+    }
+
+}
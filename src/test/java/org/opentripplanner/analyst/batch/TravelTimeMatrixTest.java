@@ -0,0 +1,215 @@
+package org.opentripplanner.analyst.batch;
+
+import org.joda.time.LocalDate;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.opentripplanner.analyst.PointFeature;
+import org.opentripplanner.analyst.PointSet;
+import org.opentripplanner.analyst.cluster.ResultEnvelope;
+import org.opentripplanner.api.parameter.QualifiedModeSet;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.profile.ProfileRequest;
+import org.opentripplanner.profile.RaptorWorker;
+import org.opentripplanner.profile.RepeatedRaptorProfileRouter;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test that the rows of a travel time matrix are those of one-to-many searches from each origin, in both output
+ * formats, and that an interrupted matrix file is resumed.
+ */
+public class TravelTimeMatrixTest {
+
+    private static Graph graph;
+
+    private static PointSet origins;
+
+    private static PointSet destinations;
+
+    /** The travel times from each origin to each destination, computed with a search per origin. */
+    private static int[][] expectedTimes;
+
+    @BeforeClass
+    public static void setUp () throws Exception {
+        graph = FakeGraph.buildGraphNoTransit();
+        graph.routerId = "default";
+        graph.index(new DefaultStreetVertexIndexFactory());
+        origins = makePointSet("o", new double[][] { { 39.9908, -83.0118 }, { 39.9700, -83.0100 },
+                { 40.0100, -83.0100 } });
+        destinations = makePointSet("d", new double[][] { { 39.9950, -83.0200 }, { 39.9900, -83.0100 },
+                { 39.9850, -83.0000 }, { 39.9750, -83.0150 } });
+        expectedTimes = new int[origins.featureCount()][];
+        for (int o = 0; o < origins.featureCount(); o++) {
+            ProfileRequest req = makeRequest();
+            req.fromLat = req.toLat = origins.getLat(o);
+            req.fromLon = req.toLon = origins.getLon(o);
+            RepeatedRaptorProfileRouter router = new RepeatedRaptorProfileRouter(graph, req,
+                    destinations.getOrCreateSampleSet(graph));
+            router.includeTimes = true;
+            router.includeHistograms = false;
+            expectedTimes[o] = router.route().get(ResultEnvelope.Which.AVERAGE).times;
+        }
+    }
+
+    private static PointSet makePointSet (String prefix, double[][] latLons) throws Exception {
+        PointSet points = new PointSet(latLons.length);
+        for (int i = 0; i < latLons.length; i++) {
+            PointFeature feature = new PointFeature(prefix + i);
+            feature.setGeom(GeometryUtils.getGeometryFactory().createPoint(
+                    new Coordinate(latLons[i][1], latLons[i][0])));
+            points.addFeature(feature, i);
+        }
+        return points;
+    }
+
+    /** Walking only, which keeps the searches deterministic. */
+    private static ProfileRequest makeRequest () {
+        ProfileRequest req = new ProfileRequest();
+        req.date = new LocalDate(2015, 9, 17);
+        req.fromTime = 7 * 3600;
+        req.toTime = 7 * 3600 + 600;
+        req.walkSpeed = 1.3f;
+        req.bikeSpeed = 4.1f;
+        req.maxWalkTime = 20;
+        req.accessModes = req.egressModes = req.directModes = new QualifiedModeSet("WALK");
+        req.analyst = true;
+        return req;
+    }
+
+    private static TravelTimeMatrix makeMatrix () {
+        TravelTimeMatrix matrix = new TravelTimeMatrix(graph, makeRequest(), origins, destinations);
+        matrix.nThreads = 2;
+        return matrix;
+    }
+
+    @Test
+    public void testCsv () throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TravelTimeMatrix matrix = makeMatrix();
+        matrix.compute(new TravelTimeMatrixWriter(out, TravelTimeMatrixWriter.Format.CSV, destinations));
+        assertTrue(matrix.getFailedOrigins().isEmpty());
+        assertCsvRows(new ByteArrayInputStream(out.toByteArray()));
+    }
+
+    @Test
+    public void testBinary () throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        makeMatrix().compute(new TravelTimeMatrixWriter(out, TravelTimeMatrixWriter.Format.BINARY, destinations));
+
+        DataInputStream data = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(out.toByteArray())));
+        assertEquals(TravelTimeMatrixWriter.BINARY_MAGIC, data.readInt());
+        assertEquals(TravelTimeMatrixWriter.BINARY_VERSION, data.readInt());
+        assertEquals(destinations.featureCount(), data.readInt());
+        int[][] rows = new int[origins.featureCount()][];
+        for (int r = 0; r < origins.featureCount(); r++) {
+            int origin = data.readInt();
+            assertNull("Duplicate row", rows[origin]);
+            rows[origin] = new int[destinations.featureCount()];
+            for (int d = 0; d < destinations.featureCount(); d++) {
+                rows[origin][d] = data.readInt();
+            }
+        }
+        assertEquals(-1, data.read());
+        for (int o = 0; o < origins.featureCount(); o++) {
+            for (int d = 0; d < destinations.featureCount(); d++) {
+                int expected = expectedTimes[o][d] == RaptorWorker.UNREACHED ? -1 : expectedTimes[o][d];
+                assertEquals(expected, rows[o][d]);
+            }
+        }
+    }
+
+    /** Interrupt a file after its first row, while the second row and its progress line were being written. */
+    @Test
+    public void testResume () throws Exception {
+        File file = File.createTempFile("matrix", ".csv.gz");
+        File progressFile = new File(file.getPath() + ".progress");
+        try {
+            TravelTimeMatrixWriter writer = TravelTimeMatrixWriter.open(file, TravelTimeMatrixWriter.Format.CSV,
+                    origins, destinations);
+            writer.writeRow(1, origins.getId(1), expectedTimes[1]);
+            writer.close();
+            try (FileOutputStream out = new FileOutputStream(file, true)) {
+                out.write(new byte[] { 0x1f, (byte) 0x8b, 8, 0 });
+            }
+            try (FileWriter progress = new FileWriter(progressFile, true)) {
+                progress.write("12");
+            }
+
+            writer = TravelTimeMatrixWriter.open(file, TravelTimeMatrixWriter.Format.CSV, origins, destinations);
+            assertTrue(writer.isDone(1));
+            assertFalse(writer.isDone(0));
+            assertFalse(writer.isDone(2));
+            makeMatrix().compute(writer);
+            writer.close();
+            try (InputStream in = new FileInputStream(file)) {
+                assertCsvRows(in);
+            }
+
+            // A matrix with other parameters is not resumed from this file.
+            try {
+                TravelTimeMatrixWriter.open(file, TravelTimeMatrixWriter.Format.BINARY, origins, destinations);
+                fail("Resumed a CSV matrix in the binary format");
+            } catch (IOException e) {
+                // expected
+            }
+            try {
+                TravelTimeMatrixWriter.open(file, TravelTimeMatrixWriter.Format.CSV, destinations, destinations);
+                fail("Resumed a matrix with other origins");
+            } catch (IOException e) {
+                // expected
+            }
+        } finally {
+            Files.deleteIfExists(file.toPath());
+            Files.deleteIfExists(progressFile.toPath());
+        }
+    }
+
+    /** Check that a CSV matrix has the destinations as its header and the expected row for each origin once. */
+    private static void assertCsvRows (InputStream in) throws IOException {
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new GZIPInputStream(in),
+                StandardCharsets.UTF_8));
+        assertEquals("origin,d0,d1,d2,d3", reader.readLine());
+        Map<String, String[]> rows = new HashMap<>();
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            String[] fields = line.split(",", -1);
+            assertNull("Duplicate row", rows.put(fields[0], fields));
+        }
+        assertEquals(origins.featureCount(), rows.size());
+        for (int o = 0; o < origins.featureCount(); o++) {
+            String[] fields = rows.get(origins.getId(o));
+            String[] expected = new String[destinations.featureCount() + 1];
+            expected[0] = origins.getId(o);
+            for (int d = 0; d < destinations.featureCount(); d++) {
+                int time = expectedTimes[o][d];
+                expected[d + 1] = time == RaptorWorker.UNREACHED ? "" : Integer.toString(time);
+            }
+            assertArrayEquals(expected, fields);
+        }
+    }
+}
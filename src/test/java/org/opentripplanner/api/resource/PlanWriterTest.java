@@ -0,0 +1,454 @@
+package org.opentripplanner.api.resource;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.WireFormat;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opentripplanner.api.common.Message;
+import org.opentripplanner.api.model.AbsoluteDirection;
+import org.opentripplanner.api.model.Itinerary;
+import org.opentripplanner.api.model.JSONObjectMapperProvider;
+import org.opentripplanner.api.model.Leg;
+import org.opentripplanner.api.model.Place;
+import org.opentripplanner.api.model.RelativeDirection;
+import org.opentripplanner.api.model.TripPlan;
+import org.opentripplanner.api.model.VertexType;
+import org.opentripplanner.api.model.WalkStep;
+import org.opentripplanner.api.model.error.PlannerError;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.routing.alertpatch.Alert;
+import org.opentripplanner.routing.core.Fare;
+import org.opentripplanner.routing.core.WrappedCurrency;
+import org.opentripplanner.util.model.EncodedPolylineBean;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Serialize a known trip plan with the streaming writers, and check that the JSON document is the one Jackson
+ * produces for the equivalent {@link Response}, and that the binary response follows the published schema and holds
+ * the same values.
+ */
+public class PlanWriterTest {
+
+    private static final ObjectMapper MAPPER = new JSONObjectMapperProvider().getContext(Response.class);
+
+    /** The fields of the messages of the published schema, by message name and field number. */
+    private static Map<String, Map<Integer, SchemaField>> schema;
+
+    private static class SchemaField {
+        final boolean repeated;
+        final String type;
+        final String name;
+
+        SchemaField(boolean repeated, String type, String name) {
+            this.repeated = repeated;
+            this.type = type;
+            this.name = name;
+        }
+    }
+
+    /** Read the message definitions of the schema. Nested definitions, enums and oneofs are not used in it. */
+    @BeforeClass
+    public static void readSchema() throws IOException {
+        schema = new HashMap<>();
+        Pattern messagePattern = Pattern.compile("^message\\s+(\\w+)\\s*\\{");
+        Pattern fieldPattern = Pattern.compile("^(optional|repeated|required)\\s+(\\w+)\\s+(\\w+)\\s*=\\s*(\\d+)\\s*;");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                PlanProtobufWriter.class.getResourceAsStream(PlanProtobufWriter.SCHEMA_RESOURCE),
+                StandardCharsets.UTF_8))) {
+            Map<Integer, SchemaField> fields = null;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                line = line.trim();
+                Matcher message = messagePattern.matcher(line);
+                Matcher field = fieldPattern.matcher(line);
+                if (message.find()) {
+                    fields = new HashMap<>();
+                    schema.put(message.group(1), fields);
+                } else if (field.find()) {
+                    assertNotNull("Field outside of a message: " + line, fields);
+                    SchemaField previous = fields.put(Integer.parseInt(field.group(4)),
+                            new SchemaField(field.group(1).equals("repeated"), field.group(2), field.group(3)));
+                    assertTrue("Duplicate field number: " + line, previous == null);
+                } else if (line.equals("}")) {
+                    fields = null;
+                }
+            }
+        }
+        assertTrue(schema.containsKey("PlanResponse"));
+    }
+
+    private static Calendar time(int hour, int minute) {
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("America/New_York"));
+        calendar.clear();
+        calendar.set(2015, Calendar.SEPTEMBER, 17, hour, minute);
+        return calendar;
+    }
+
+    private static Place stop(String id, String name, double lon, double lat, Calendar arrival, Calendar departure,
+                              int index) {
+        Place place = new Place(lon, lat, name, arrival, departure);
+        place.stopId = new FeedScopedId("cota", id);
+        place.stopCode = id.toUpperCase();
+        place.zoneId = "1";
+        place.stopIndex = index;
+        place.stopSequence = index + 1;
+        place.vertexType = VertexType.TRANSIT;
+        return place;
+    }
+
+    /** An itinerary walking to a bus, with alerts, intermediate stops and a fare. */
+    private static Itinerary makeTransitItinerary(Place from, Place to) {
+        Place boarding = stop("n1", "High & 5th", -83.0100, 39.9900, time(8, 5), time(8, 6), 0);
+        Place intermediate = stop("n2", "High & 9th", -83.0100, 39.9950, time(8, 9), time(8, 9), 1);
+        Place alighting = stop("n3", "High & 15th", -83.0100, 40.0000, time(8, 12), time(8, 12), 2);
+
+        Leg walk = new Leg();
+        walk.startTime = time(8, 0);
+        walk.endTime = time(8, 5);
+        walk.distance = 420.5;
+        walk.from = from;
+        walk.to = boarding;
+        walk.legGeometry = new EncodedPolylineBean("_p~iF~ps|U_ulLnnqC", null, 2);
+        walk.agencyTimeZoneOffset = -14400000;
+        WalkStep step = new WalkStep();
+        step.distance = 420.5;
+        step.relativeDirection = RelativeDirection.DEPART;
+        step.absoluteDirection = AbsoluteDirection.NORTH;
+        step.streetName = "North High Street";
+        step.lon = -83.0118;
+        step.lat = 39.9908;
+        walk.walkSteps = new ArrayList<>(Arrays.asList(step));
+        walk.addAlert(Alert.createSimpleAlerts("Sidewalk closed"), Locale.ENGLISH);
+
+        Leg bus = new Leg();
+        bus.startTime = time(8, 6);
+        bus.endTime = time(8, 12);
+        bus.departureDelay = 60;
+        bus.arrivalDelay = -30;
+        bus.realTime = true;
+        bus.distance = 1100.0;
+        bus.mode = "BUS";
+        bus.route = "2";
+        bus.agencyName = "Central Ohio Transit Authority";
+        bus.agencyId = "COTA";
+        bus.routeId = new FeedScopedId("cota", "2");
+        bus.tripId = new FeedScopedId("cota", "2-0805");
+        bus.headsign = "Downtown";
+        bus.routeShortName = "2";
+        bus.routeLongName = "North High";
+        bus.routeColor = "E2231A";
+        bus.routeTextColor = "FFFFFF";
+        bus.routeType = 3;
+        bus.serviceDate = "20150917";
+        bus.from = boarding;
+        bus.to = alighting;
+        bus.stop = new ArrayList<>(Arrays.asList(intermediate));
+        bus.legGeometry = new EncodedPolylineBean("o}~iF~ps|U_ulL??nnqC", null, 3);
+        bus.interlineWithPreviousLeg = false;
+        bus.tripShortName = "805";
+        bus.agencyTimeZoneOffset = -14400000;
+        bus.addAlert(Alert.createSimpleAlerts("Detour on High Street"), Locale.ENGLISH);
+
+        Itinerary itinerary = new Itinerary();
+        itinerary.duration = 720L;
+        itinerary.startTime = walk.startTime;
+        itinerary.endTime = bus.endTime;
+        itinerary.walkTime = 300;
+        itinerary.transitTime = 360;
+        itinerary.waitingTime = 60;
+        itinerary.walkDistance = 420.5;
+        itinerary.transfers = 0;
+        itinerary.addLeg(walk);
+        itinerary.addLeg(bus);
+        itinerary.fare.addFare(Fare.FareType.regular, new WrappedCurrency("USD"), 275);
+        itinerary.fare.addFare(Fare.FareType.senior, new WrappedCurrency("USD"), 135);
+        return itinerary;
+    }
+
+    /** An itinerary on a rented bike, too sloped and exceeding the walk limit. */
+    private static Itinerary makeBikeItinerary(Place from, Place to) {
+        Place station = new Place(-83.0110, 39.9910, "Bike station");
+        station.vertexType = VertexType.BIKESHARE;
+        station.bikeShareId = "12";
+        station.platformCode = "A";
+
+        Leg bike = new Leg();
+        bike.startTime = time(8, 0);
+        bike.endTime = time(8, 14);
+        bike.mode = "BICYCLE";
+        bike.rentedBike = true;
+        bike.distance = 1600.25;
+        bike.from = station;
+        bike.to = to;
+        WalkStep step = new WalkStep();
+        step.distance = 1600.25;
+        step.relativeDirection = RelativeDirection.CONTINUE;
+        step.absoluteDirection = AbsoluteDirection.NORTHEAST;
+        step.streetName = "bike path";
+        step.bogusName = true;
+        step.stayOn = true;
+        step.area = false;
+        step.exit = "2";
+        step.lon = -83.0110;
+        step.lat = 39.9910;
+        bike.walkSteps = new ArrayList<>(Arrays.asList(step));
+
+        Itinerary itinerary = new Itinerary();
+        itinerary.duration = 840L;
+        itinerary.startTime = bike.startTime;
+        itinerary.endTime = bike.endTime;
+        itinerary.walkTime = 840;
+        itinerary.walkDistance = 1600.25;
+        itinerary.walkLimitExceeded = true;
+        itinerary.elevationGained = 12.5;
+        itinerary.elevationLost = 3.25;
+        itinerary.tooSloped = true;
+        itinerary.addLeg(bike);
+        return itinerary;
+    }
+
+    private static Map<String, String> requestParameters;
+
+    private static TripPlan plan;
+
+    private static PlannerError error;
+
+    private static ElevationMetadata elevationMetadata;
+
+    @BeforeClass
+    public static void makePlan() {
+        requestParameters = new LinkedHashMap<>();
+        requestParameters.put("fromPlace", "39.9908,-83.0118");
+        requestParameters.put("toPlace", "40.0000,-83.0100");
+        requestParameters.put("mode", "TRANSIT,WALK");
+        Place from = new Place(-83.0118, 39.9908, "Origin");
+        from.vertexType = VertexType.NORMAL;
+        from.orig = "home";
+        Place to = new Place(-83.0100, 40.0000, "Destination");
+        to.vertexType = VertexType.NORMAL;
+        plan = new TripPlan(from, to, new Date(time(8, 0).getTimeInMillis()));
+        plan.addItinerary(makeTransitItinerary(from, to));
+        plan.addItinerary(makeBikeItinerary(from, to));
+        // An error can follow the itineraries, when generating the next one failed.
+        error = new PlannerError(Message.SYSTEM_ERROR);
+        error.setMissing(Arrays.asList("to"));
+        elevationMetadata = new ElevationMetadata();
+        elevationMetadata.ellipsoidToGeoidDifference = -33.5;
+        elevationMetadata.geoidElevation = false;
+    }
+
+    /** Write the known plan with a streaming writer, emitting its itineraries as if they were being generated. */
+    private static byte[] write(PlanStreamingOutput writer) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writer.writeResponse(out, new TripPlan(plan.from, plan.to, plan.date));
+        return out.toByteArray();
+    }
+
+    /** The known plan serialized by Jackson as a complete Response, as for XML responses and before streaming. */
+    private static JsonNode makeJacksonResponse() throws IOException {
+        Response response = new Response(null);
+        response.requestParameters.putAll(requestParameters);
+        response.setPlan(plan);
+        response.setError(error);
+        response.elevationMetadata = elevationMetadata;
+        return MAPPER.readTree(MAPPER.writeValueAsBytes(response));
+    }
+
+    @Test
+    public void testJsonMatchesJacksonResponse() throws IOException {
+        byte[] json = write(new PlanJsonWriter(requestParameters, null, null, error, elevationMetadata) {
+            @Override
+            protected void writeItineraries(TripPlan header, ItineraryWriter writer) throws IOException {
+                for (Itinerary itinerary : plan.itinerary) {
+                    writer.write(itinerary);
+                }
+            }
+        });
+
+        JsonNode expected = makeJacksonResponse();
+
+        JsonNode actual = MAPPER.readTree(json);
+        assertEquals(2, actual.path("plan").path("itineraries").size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testProtobufFollowsSchema() throws IOException {
+        byte[] bytes = write(new PlanProtobufWriter(requestParameters, null, null, error, elevationMetadata) {
+            @Override
+            protected void writeItineraries(TripPlan header, ItineraryWriter writer) throws IOException {
+                for (Itinerary itinerary : plan.itinerary) {
+                    writer.write(itinerary);
+                }
+            }
+        });
+        Map<String, Object> decoded = decode("PlanResponse", bytes);
+
+        JsonNode json = makeJacksonResponse();
+
+        // The request parameters are a dictionary in JSON and a list of pairs in the binary response.
+        Map<String, String> parameters = new HashMap<>();
+        for (Object parameter : (List<?>) decoded.remove("request_parameters")) {
+            Map<?, ?> pair = (Map<?, ?>) parameter;
+            parameters.put((String) pair.get("key"), (String) pair.get("value"));
+        }
+        assertEquals(requestParameters, parameters);
+
+        // The plan fields are at the top level of the binary response.
+        Map<String, Object> planFields = new HashMap<>();
+        for (String field : Arrays.asList("date", "from", "to", "itineraries")) {
+            planFields.put(field, decoded.remove(field));
+        }
+        assertSameValues("PlanResponse", planFields, json.get("plan"));
+        assertSameValues("PlanResponse", decoded, json);
+
+        // Fares are nested dictionaries in JSON.
+        List<?> itineraries = (List<?>) planFields.get("itineraries");
+        for (int i = 0; i < itineraries.size(); i++) {
+            JsonNode fares = json.get("plan").get("itineraries").get(i).get("fare").get("fare");
+            List<?> amounts = (List<?>) ((Map<?, ?>) itineraries.get(i)).get("fare");
+            assertEquals(fares.size(), amounts == null ? 0 : amounts.size());
+            if (amounts == null) continue;
+            for (Object amount : amounts) {
+                Map<?, ?> fare = (Map<?, ?>) amount;
+                JsonNode expected = fares.get((String) fare.get("type"));
+                assertNotNull(expected);
+                assertEquals(expected.get("cents").asInt(), fare.get("cents"));
+                assertEquals(expected.get("currency").get("currencyCode").asText(), fare.get("currency"));
+            }
+        }
+    }
+
+    /**
+     * Decode a message with the schema, into a map from field names to values. Repeated fields are lists, nested
+     * messages are maps. Fails on fields and wire types which are not in the schema, and on repeated optional fields.
+     */
+    private static Map<String, Object> decode(String messageName, byte[] bytes) throws IOException {
+        Map<Integer, SchemaField> fields = schema.get(messageName);
+        assertNotNull("Unknown message " + messageName, fields);
+        Map<String, Object> message = new LinkedHashMap<>();
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            int number = tag >>> 3;
+            SchemaField field = fields.get(number);
+            assertNotNull(messageName + " has no field " + number, field);
+            Object value;
+            int wireType;
+            switch (field.type) {
+                case "int32": value = in.readInt32(); wireType = WireFormat.WIRETYPE_VARINT; break;
+                case "int64": value = in.readInt64(); wireType = WireFormat.WIRETYPE_VARINT; break;
+                case "bool": value = in.readBool(); wireType = WireFormat.WIRETYPE_VARINT; break;
+                case "double": value = in.readDouble(); wireType = WireFormat.WIRETYPE_FIXED64; break;
+                case "string": value = in.readString(); wireType = WireFormat.WIRETYPE_LENGTH_DELIMITED; break;
+                default:
+                    value = decode(field.type, in.readBytes().toByteArray());
+                    wireType = WireFormat.WIRETYPE_LENGTH_DELIMITED;
+            }
+            assertEquals(messageName + "." + field.name, wireType, tag & 0x7);
+            if (field.repeated) {
+                @SuppressWarnings("unchecked")
+                List<Object> values = (List<Object>) message.computeIfAbsent(field.name, k -> new ArrayList<>());
+                values.add(value);
+            } else {
+                assertFalse(messageName + "." + field.name + " is not repeated", message.containsKey(field.name));
+                message.put(field.name, value);
+            }
+        }
+        return message;
+    }
+
+    /** The JSON names of schema fields whose name is not the camel case of the schema name, by message. */
+    private static final Map<String, String> JSON_NAMES = new HashMap<>();
+    static {
+        JSON_NAMES.put("Alert.header", "alertHeaderText");
+        JSON_NAMES.put("Alert.description", "alertDescriptionText");
+        JSON_NAMES.put("Alert.url", "alertUrl");
+        // Compared separately.
+        JSON_NAMES.put("PlanResponse.request_parameters", null);
+        JSON_NAMES.put("Itinerary.fare", null);
+    }
+
+    /**
+     * Check that the decoded message has the same values as the JSON object, and that no field of the schema present
+     * in the JSON object is missing from the message.
+     */
+    private static void assertSameValues(String messageName, Map<String, Object> message, JsonNode json) {
+        assertNotNull(messageName, json);
+        for (SchemaField field : schema.get(messageName).values()) {
+            String key = messageName + "." + field.name;
+            String jsonName = JSON_NAMES.containsKey(key) ? JSON_NAMES.get(key) : camelCase(field.name);
+            if (jsonName == null) continue;
+            Object value = message.get(field.name);
+            JsonNode jsonValue = json.get(jsonName);
+            if (jsonValue == null || jsonValue.isNull()) {
+                assertTrue(key + " is not in the JSON response", value == null);
+                continue;
+            }
+            assertNotNull(key + " is missing", value);
+            if (field.repeated) {
+                List<?> values = (List<?>) value;
+                assertEquals(key, jsonValue.size(), values.size());
+                Iterator<JsonNode> elements = jsonValue.elements();
+                for (Object element : values) {
+                    assertSameValue(key, field.type, element, elements.next());
+                }
+            } else {
+                assertSameValue(key, field.type, value, jsonValue);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void assertSameValue(String key, String type, Object value, JsonNode json) {
+        switch (type) {
+            case "int32":
+            case "int64": assertEquals(key, json.asLong(), ((Number) value).longValue()); break;
+            case "bool": assertEquals(key, json.asBoolean(), value); break;
+            case "double": assertEquals(key, json.asDouble(), (Double) value, 0); break;
+            case "string": assertEquals(key, json.asText(), value); break;
+            default:
+                if (!schema.containsKey(type)) fail("Unknown type " + type);
+                assertSameValues(type, (Map<String, Object>) value, json);
+        }
+    }
+
+    private static String camelCase(String name) {
+        StringBuilder camelCase = new StringBuilder();
+        boolean upper = false;
+        for (char c : name.toCharArray()) {
+            if (c == '_') {
+                upper = true;
+            } else {
+                camelCase.append(upper ? Character.toUpperCase(c) : c);
+                upper = false;
+            }
+        }
+        return camelCase.toString();
+    }
+}
@@ -0,0 +1,74 @@
+package org.opentripplanner.common;
+
+import org.junit.Test;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.profile.StopCluster;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class GeocoderIndexTest {
+
+    private static Stop stop(String id, String name, String code) {
+        Stop stop = new Stop();
+        stop.setId(new FeedScopedId("F", id));
+        stop.setName(name);
+        stop.setCode(code);
+        stop.setLat(45);
+        stop.setLon(-73);
+        return stop;
+    }
+
+    private GeocoderIndex index = new GeocoderIndex.Builder()
+            .addStop(stop("1", "Main Street Station", "1234"))
+            .addStop(stop("2", "Maine Avenue", "555"))
+            .addStop(stop("3", "Central Station", null))
+            .addCluster(new StopCluster("C001", "Central"))
+            .build();
+
+    private static void assertNames(List<GeocoderIndex.Result> results, String... names) {
+        assertEquals(names.length, results.size());
+        for (int i = 0; i < names.length; i++) {
+            assertTrue(results.get(i).description, results.get(i).description.contains(" " + names[i] + " "));
+        }
+    }
+
+    @Test
+    public void testAutocomplete() {
+        // All words must match, the last one may be incomplete.
+        assertNames(index.query("Main St", true, true, false, false), "Main Street Station");
+        // Shorter names first among equally good matches.
+        assertNames(index.query("ma", true, true, false, false), "Maine Avenue", "Main Street Station");
+        // Complete words are better matches.
+        assertNames(index.query("central", true, false, false, false), "Central", "Central Station");
+        assertNames(index.query("central", true, true, false, false), "Central Station");
+        assertNames(index.query("xyz", true, true, false, false));
+    }
+
+    @Test
+    public void testSearch() {
+        // Misspelled words are found, stops matching more words first.
+        assertNames(index.query("centrall station", false, true, true, false),
+                "Central Station", "Main Street Station", "Central");
+        assertNames(index.query("\"street station\"", false, true, false, false), "Main Street Station");
+        assertNames(index.query("\"station street\"", false, true, false, false));
+
+        List<GeocoderIndex.Result> results = index.query("555", false, true, false, false);
+        assertEquals(1, results.size());
+        assertEquals("stop Maine Avenue (555)", results.get(0).description);
+        assertEquals("F:2", results.get(0).id);
+        assertEquals(45, results.get(0).lat, 0);
+        assertEquals(-73, results.get(0).lng, 0);
+    }
+
+    @Test
+    public void testBoundedEditDistance() {
+        assertEquals(0, GeocoderIndex.boundedEditDistance("main", "main", 2));
+        assertEquals(1, GeocoderIndex.boundedEditDistance("main", "maine", 2));
+        assertEquals(2, GeocoderIndex.boundedEditDistance("mian", "main", 2));
+        assertEquals(3, GeocoderIndex.boundedEditDistance("avenue", "street", 2));
+    }
+}
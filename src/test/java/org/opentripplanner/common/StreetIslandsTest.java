@@ -0,0 +1,120 @@
+package org.opentripplanner.common;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.graph_builder.annotation.GraphConnectivity;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTransitLink;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class StreetIslandsTest {
+
+    private Graph graph;
+
+    private StreetVertex a, b, c, d, e, f, g, h, i;
+
+    private TransitStop stop;
+
+    private StreetVertex vertex(String label, double lon) {
+        return new IntersectionVertex(graph, label, lon, 45, label);
+    }
+
+    private void street(StreetVertex from, StreetVertex to, StreetTraversalPermission permission) {
+        new StreetEdge(from, to, GeometryUtils.makeLineString(from.getLon(), 45, to.getLon(), 45),
+                from.getLabel() + to.getLabel(), 87, permission, false);
+    }
+
+    /**
+     * A main network a-b-c-d where only a-b allows cars, a car-only street d-g, a small island e-f linked to a stop
+     * and a small island h-i without stops.
+     */
+    @Before
+    public void setUp() {
+        graph = new Graph();
+        a = vertex("a", 0.000);
+        b = vertex("b", 0.001);
+        c = vertex("c", 0.002);
+        d = vertex("d", 0.003);
+        e = vertex("e", 0.010);
+        f = vertex("f", 0.011);
+        g = vertex("g", 0.004);
+        h = vertex("h", 0.020);
+        i = vertex("i", 0.021);
+        street(a, b, StreetTraversalPermission.ALL);
+        street(c, b, StreetTraversalPermission.PEDESTRIAN);
+        street(c, d, StreetTraversalPermission.PEDESTRIAN_AND_BICYCLE);
+        street(d, g, StreetTraversalPermission.CAR);
+        street(e, f, StreetTraversalPermission.PEDESTRIAN);
+        street(h, i, StreetTraversalPermission.PEDESTRIAN);
+
+        Stop s = new Stop();
+        s.setId(new FeedScopedId("A", "stop"));
+        s.setName("stop");
+        s.setLat(45);
+        s.setLon(0.0105);
+        stop = new TransitStop(graph, s);
+        new StreetTransitLink(e, stop, true);
+        new StreetTransitLink(stop, e, true);
+    }
+
+    @Test
+    public void testWalkIslands() {
+        StreetIslands islands = StreetIslands.find(graph, TraverseMode.WALK);
+        assertEquals(3, islands.islandCount());
+        int main = islands.islandOf(a);
+        assertEquals(main, islands.largestIsland());
+        assertEquals(4, islands.streetSize(main));
+        assertEquals(0, islands.stopSize(main));
+        assertEquals(main, islands.islandOf(d));
+        // Streets which cannot be walked are not part of any walk island.
+        assertEquals(-1, islands.islandOf(g));
+
+        int withStop = islands.islandOf(e);
+        assertEquals(withStop, islands.islandOf(stop));
+        assertEquals(2, islands.streetSize(withStop));
+        assertEquals(1, islands.stopSize(withStop));
+        assertEquals(stop, islands.stops(withStop).get(0));
+        assertTrue(islands.streetVertices(withStop).contains(f));
+
+        assertEquals(islands.islandOf(h), islands.islandOf(i));
+        assertTrue(islands.islandOf(h) != main && islands.islandOf(h) != withStop);
+    }
+
+    @Test
+    public void testCarIslands() {
+        StreetIslands islands = StreetIslands.find(graph, TraverseMode.CAR);
+        assertEquals(2, islands.islandCount());
+        assertEquals(islands.islandOf(a), islands.islandOf(b));
+        assertEquals(islands.islandOf(d), islands.islandOf(g));
+        assertTrue(islands.islandOf(a) != islands.islandOf(d));
+        assertEquals(-1, islands.islandOf(c));
+        // Stations are not entered by car.
+        assertEquals(-1, islands.islandOf(stop));
+    }
+
+    @Test
+    public void testPruneFloatingIslands() {
+        StreetUtils.pruneFloatingIslands(graph, 3, 3, null);
+        assertNotNull(graph.getVertex("a"));
+        assertNotNull(graph.getVertex("d"));
+        assertNull(graph.getVertex("e"));
+        assertNull(graph.getVertex("h"));
+        assertEquals(2, graph.getBuilderAnnotations().size());
+        assertTrue(graph.getBuilderAnnotations().get(0) instanceof GraphConnectivity);
+        assertEquals(1, StreetIslands.find(graph, TraverseMode.WALK).islandCount());
+        assertEquals(2, StreetIslands.find(graph, TraverseMode.CAR).islandCount());
+    }
+}
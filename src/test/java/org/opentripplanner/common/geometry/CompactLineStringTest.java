@@ -73,6 +73,38 @@ public class CompactLineStringTest extends TestCase {
         assertTrue(lsi.equalsExact(ls2, 0.00000015));
     }
 
+    @Test
+    public final void testVisitCoordinates() {
+
+        GeometryFactory gf = new GeometryFactory();
+        double x0 = 1.111111111;
+        double y0 = 0.123456789;
+        double x1 = 2.0;
+        double y1 = 0.0;
+        LineString ls = gf.createLineString(new Coordinate[] { new Coordinate(x0, y0),
+                new Coordinate(1.5, 0.2), new Coordinate(1.7, -0.1), new Coordinate(x1, y1) });
+
+        // The visited coordinates are exactly those of the uncompacted line string, in both directions
+        for (boolean reverse : new boolean[] { false, true }) {
+            double xa = reverse ? x1 : x0;
+            double ya = reverse ? y1 : y0;
+            double xb = reverse ? x0 : x1;
+            double yb = reverse ? y0 : y1;
+            int[] coords = CompactLineString.compactLineString(xa, ya, xb, yb, ls, reverse);
+            LineString expected = CompactLineString.uncompactLineString(xa, ya, xb, yb, coords, reverse);
+            List<Coordinate> visited = new ArrayList<Coordinate>();
+            CompactLineString.visitCoordinates(xa, ya, xb, yb, coords, reverse,
+                    (x, y) -> visited.add(new Coordinate(x, y)));
+            assertEquals(Arrays.asList(expected.getCoordinates()), visited);
+        }
+
+        // A straight line only has its end points
+        List<Coordinate> visited = new ArrayList<Coordinate>();
+        CompactLineString.visitCoordinates(x0, y0, x1, y1, CompactLineString.STRAIGHT_LINE, false,
+                (x, y) -> visited.add(new Coordinate(x, y)));
+        assertEquals(Arrays.asList(new Coordinate(x0, y0), new Coordinate(x1, y1)), visited);
+    }
+
     @Test
     public final void testDlugoszVarLenIntPacker() {
 
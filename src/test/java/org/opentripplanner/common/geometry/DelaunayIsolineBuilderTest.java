@@ -0,0 +1,55 @@
+package org.opentripplanner.common.geometry;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.opentripplanner.analyst.request.SampleGridRenderer.WTWD;
+
+public class DelaunayIsolineBuilderTest extends TestCase {
+
+    /**
+     * Computing several isolines at once must give the same geometries as computing them one by one.
+     */
+    public void testComputeIsolines() {
+        SparseMatrixZSampleGrid<WTWD> grid = new SparseMatrixZSampleGrid<WTWD>(8, 1000, 0.001,
+                0.001, new Coordinate(0, 0));
+        for (int x = -15; x <= 15; x++) {
+            for (int y = -15; y <= 15; y++) {
+                // Two hills of time with a valley in between, so that there are islands and holes.
+                double t = 60 * Math.min(Math.hypot(x - 6, y), Math.hypot(x + 6, y + 2));
+                WTWD z = new WTWD();
+                z.w = 1.0;
+                z.wTime = t;
+                z.d = 0;
+                grid.getOrCreate(x, y).setZ(z);
+            }
+        }
+        List<WTWD> z0s = new ArrayList<WTWD>();
+        for (int seconds = 60; seconds <= 480; seconds += 60) {
+            WTWD z0 = new WTWD();
+            z0.w = 1.0;
+            z0.wTime = seconds;
+            z0.d = 100;
+            z0s.add(z0);
+        }
+
+        DelaunayIsolineBuilder<WTWD> builder = new DelaunayIsolineBuilder<WTWD>(
+                grid.delaunayTriangulate(), new WTWD.IsolineMetric());
+        List<Geometry> isolines = builder.computeIsolines(z0s);
+        assertEquals(z0s.size(), isolines.size());
+
+        DelaunayIsolineBuilder<WTWD> singleBuilder = new DelaunayIsolineBuilder<WTWD>(
+                grid.delaunayTriangulate(), new WTWD.IsolineMetric());
+        for (int i = 0; i < z0s.size(); i++) {
+            Geometry expected = singleBuilder.computeIsoline(z0s.get(i));
+            assertFalse(expected.isEmpty());
+            assertTrue("Isoline " + i, expected.equalsExact(isolines.get(i)));
+        }
+        assertTrue(builder.computeIsolines(new ArrayList<WTWD>()).isEmpty());
+    }
+
+}
@@ -0,0 +1,150 @@
+package org.opentripplanner.geocoder;
+
+import com.google.common.base.Ticker;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.locationtech.jts.geom.Envelope;
+import org.opentripplanner.geocoder.nominatim.NominatimGeocoder;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test the caching geocoder in front of a Nominatim geocoder calling a local stub server.
+ */
+public class CachingGeocoderTest {
+
+    private static class FakeTicker extends Ticker {
+        long nanos = 0;
+
+        @Override
+        public long read() {
+            return nanos;
+        }
+
+        void advance(int seconds) {
+            nanos += TimeUnit.SECONDS.toNanos(seconds);
+        }
+    }
+
+    private HttpServer server;
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final FakeTicker ticker = new FakeTicker();
+
+    private CachingGeocoder geocoder;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/search", exchange -> {
+            requests.incrementAndGet();
+            String query = URLDecoder.decode(exchange.getRequestURI().getRawQuery(), "UTF-8");
+            String body = query.contains("main street")
+                    ? "[{\"lat\":\"45.5\",\"lon\":\"-73.5\",\"display_name\":\"1 Main Street\"}]"
+                    : "[]";
+            try {
+                // Slow enough for concurrent lookups to overlap.
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        NominatimGeocoder nominatim = new NominatimGeocoder();
+        nominatim.setNominatimUrl("http://localhost:" + server.getAddress().getPort() + "/search");
+        geocoder = new CachingGeocoder(nominatim, 100, 3600, 60, ticker);
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testCache() {
+        GeocoderResults results = geocoder.geocode("1 main street", null);
+        assertEquals(1, results.getCount());
+        assertEquals("1 Main Street", results.getResults().iterator().next().getDescription());
+        assertNull(results.getError());
+        assertEquals(1, requests.get());
+
+        // Same address written differently.
+        assertEquals(1, geocoder.geocode("  1 Main   Street ", null).getCount());
+        assertEquals(1, requests.get());
+
+        // The bounding box is part of the key.
+        Envelope bbox = new Envelope(-74, -73, 45, 46);
+        assertEquals(1, geocoder.geocode("1 main street", bbox).getCount());
+        assertEquals(2, requests.get());
+        assertEquals(1, geocoder.geocode("1 main street", new Envelope(-74, -73, 45, 46)).getCount());
+        assertEquals(2, requests.get());
+
+        assertEquals(2, geocoder.getStats().hitCount());
+        assertEquals(2, geocoder.getStats().missCount());
+
+        // Results expire.
+        ticker.advance(3601);
+        geocoder.geocode("1 main street", null);
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testNegativeCache() {
+        assertEquals(0, geocoder.geocode("nowhere", null).getCount());
+        ticker.advance(30);
+        assertEquals(0, geocoder.geocode("nowhere", null).getCount());
+        assertEquals(1, requests.get());
+
+        // Results without any match expire sooner than the others.
+        geocoder.geocode("1 main street", null);
+        ticker.advance(31);
+        geocoder.geocode("nowhere", null);
+        geocoder.geocode("1 main street", null);
+        assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testCoalescing() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<GeocoderResults>> futures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            futures.add(executor.submit(() -> geocoder.geocode("1 main street", null)));
+        }
+        for (Future<GeocoderResults> future : futures) {
+            assertEquals(1, future.get().getCount());
+        }
+        executor.shutdown();
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testCachedResultsAreNotModified() {
+        Geocoder cropped = new GeocoderGeoZoneCropper(geocoder, 0, 0, 1, 1);
+        assertEquals(0, cropped.geocode("1 main street", null).getCount());
+        assertEquals(1, geocoder.geocode("1 main street", null).getCount());
+        assertEquals(1, requests.get());
+    }
+}
@@ -0,0 +1,143 @@
+package org.opentripplanner.graph_builder.module;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.graph_builder.module.NearbyStopFinder.StopAtDistance;
+import org.opentripplanner.routing.algorithm.CompactStreetLayer;
+import org.opentripplanner.routing.algorithm.CompactStreetSearch;
+import org.opentripplanner.routing.algorithm.CompactStreetSearchTest;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.edgetype.FreeEdge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that the stops found via the streets on the compact street layer are those found by an EarliestArrivalSearch,
+ * and that the EarliestArrivalSearch is used when the compact search cannot be made.
+ */
+public class NearbyStopFinderTest {
+
+    private static final double RADIUS_METERS = 2000;
+
+    private static final String[] ORIGINS = { "F:A", "F:C", "F:D", "v_0_0", "v_2_2" };
+
+    private Graph graph;
+
+    @Before
+    public void before() {
+        graph = CompactStreetSearchTest.makeGraph();
+    }
+
+    @Test
+    public void testSameStopsAsEarliestArrivalSearch() {
+        NearbyStopFinder finder = new NearbyStopFinder(graph, RADIUS_METERS, true);
+        for (String origin : ORIGINS) {
+            Vertex vertex = graph.getVertex(origin);
+            assertTrue(compactSearchSucceeds(vertex, walkRequest()));
+            List<StopAtDistance> expected = findWithEarliestArrivalSearch(finder, vertex, walkRequest());
+            assertSameStops(origin, expected, finder.findNearbyStopsViaStreets(vertex));
+            assertSameStops(origin, expected, finder.findNearbyStops(vertex));
+        }
+        // The distances only count the streets, not the links to the stops.
+        Map<String, StopAtDistance> fromA = byStop(finder.findNearbyStopsViaStreets(graph.getVertex("F:A")));
+        assertEquals(fromA.keySet(), byStop(finder.findNearbyStopsViaStreets(graph.getVertex("v_2_2"))).keySet());
+        assertEquals(4, fromA.size());
+        assertEquals(0, fromA.get("A").dist, 0);
+        assertEquals(300, fromA.get("B").dist, 0);
+        assertEquals(200, fromA.get("C").dist, 0);
+        assertEquals(200, fromA.get("D").dist, 0);
+    }
+
+    @Test
+    public void testFallbackForUnsupportedRequest() {
+        NearbyStopFinder finder = new NearbyStopFinder(graph, RADIUS_METERS, true);
+        for (String origin : ORIGINS) {
+            Vertex vertex = graph.getVertex(origin);
+            RoutingRequest request = walkRequest();
+            request.walkingBike = true;
+            assertFalse(CompactStreetSearch.supports(request));
+            RoutingRequest expectedRequest = walkRequest();
+            expectedRequest.walkingBike = true;
+            List<StopAtDistance> expected = findWithEarliestArrivalSearch(finder, vertex, expectedRequest);
+            assertTrue(expected.size() > 1);
+            assertSameStops(origin, expected, finder.findNearbyStopsViaStreets(vertex, request));
+        }
+    }
+
+    @Test
+    public void testFallbackForEdgesOutsideLayer() {
+        // A free edge is not in the layer, so compact searches reaching v_1_0 cannot be made.
+        new FreeEdge(graph.getVertex("v_1_0"), graph.getVertex("v_3_3"));
+        NearbyStopFinder finder = new NearbyStopFinder(graph, RADIUS_METERS, true);
+        for (String origin : ORIGINS) {
+            Vertex vertex = graph.getVertex(origin);
+            assertFalse(compactSearchSucceeds(vertex, walkRequest()));
+            List<StopAtDistance> expected = findWithEarliestArrivalSearch(finder, vertex, walkRequest());
+            assertSameStops(origin, expected, finder.findNearbyStopsViaStreets(vertex));
+        }
+    }
+
+    private static RoutingRequest walkRequest() {
+        RoutingRequest request = new RoutingRequest(TraverseMode.WALK);
+        request.clampInitialWait = (0L);
+        return request;
+    }
+
+    private boolean compactSearchSucceeds(Vertex origin, RoutingRequest request) {
+        request.setRoutingContext(graph, origin, null);
+        boolean ret = new CompactStreetSearch(new CompactStreetLayer(graph)).search(request, origin,
+                (int) (RADIUS_METERS / request.walkSpeed));
+        request.cleanup();
+        return ret;
+    }
+
+    /** @return the stops found as NearbyStopFinder did before it used the compact street layer. */
+    private List<StopAtDistance> findWithEarliestArrivalSearch(NearbyStopFinder finder, Vertex origin,
+            RoutingRequest request) {
+        request.setRoutingContext(graph, origin, null);
+        List<StopAtDistance> stopsFound = finder.findNearbyStopsViaEarliestArrivalSearch(request, origin);
+        if (origin instanceof TransitStop) {
+            stopsFound.add(new StopAtDistance((TransitStop) origin, 0));
+        }
+        request.cleanup();
+        return stopsFound;
+    }
+
+    private static Map<String, StopAtDistance> byStop(List<StopAtDistance> stops) {
+        Map<String, StopAtDistance> ret = new HashMap<>();
+        for (StopAtDistance stop : stops) {
+            assertNull("Stop found twice", ret.put(stop.tstop.getStopId().getId(), stop));
+        }
+        return ret;
+    }
+
+    private static void assertSameStops(String origin, List<StopAtDistance> expected, List<StopAtDistance> actual) {
+        Map<String, StopAtDistance> expectedByStop = byStop(expected);
+        Map<String, StopAtDistance> actualByStop = byStop(actual);
+        assertEquals(origin, expectedByStop.keySet(), actualByStop.keySet());
+        for (StopAtDistance e : expected) {
+            String message = origin + " to " + e.tstop;
+            StopAtDistance a = actualByStop.get(e.tstop.getStopId().getId());
+            assertEquals(message, e.dist, a.dist, 0);
+            assertEquals(message, e.edges, a.edges);
+            if (e.geom == null) {
+                assertNull(message, a.geom);
+            } else {
+                assertArrayEquals(message, e.geom.getCoordinates(), a.geom.getCoordinates());
+            }
+        }
+    }
+
+}
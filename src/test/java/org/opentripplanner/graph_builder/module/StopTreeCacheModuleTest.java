@@ -0,0 +1,151 @@
+package org.opentripplanner.graph_builder.module;
+
+import com.fasterxml.jackson.databind.node.MissingNode;
+import gnu.trove.map.TIntIntMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opentripplanner.graph_builder.GraphBuilder;
+import org.opentripplanner.graph_builder.services.GraphBuilderModule;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.profile.StopTreeCache;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.GraphIndex;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.TransitStop;
+import org.opentripplanner.standalone.GraphBuilderParameters;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Check that the stop tree cache built with a graph is still valid once the graph has been saved and loaded, and that
+ * it is not used for a graph whose stops have changed.
+ */
+public class StopTreeCacheModuleTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static Graph graph;
+
+    private static byte[] serializedGraph;
+
+    @BeforeClass
+    public static void buildGraph() throws Exception {
+        graph = FakeGraph.buildGraphNoTransit();
+        FakeGraph.addExtraStops(graph);
+        FakeGraph.link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+        new StopTreeCacheModule().buildGraph(graph, new HashMap<>());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        graph.save(out);
+        serializedGraph = out.toByteArray();
+    }
+
+    private static Graph loadGraph() {
+        return Graph.load(new ByteArrayInputStream(serializedGraph));
+    }
+
+    /** @return a row of a stop tree cache as a map from vertex index to distance. */
+    private static TIntIntMap toMap(int[] row) {
+        assertNotNull(row);
+        TIntIntMap map = new TIntIntHashMap();
+        for (int i = 0; i < row.length; i += 2) {
+            map.put(row[i], row[i + 1]);
+        }
+        return map;
+    }
+
+    /** The rows of the loaded cache are those of a cache computed again on the loaded graph. */
+    @Test
+    public void testRoundTrip() {
+        assertNotNull(graph.stopTreeCache);
+        Graph loaded = loadGraph();
+        assertNotNull(loaded.stopTreeCache);
+        assertTrue(loaded.stopTreeCache.isValidFor(loaded, GraphIndex.MAX_WALK_METERS));
+        assertSame(loaded.stopTreeCache, loaded.index.getStopTreeCache());
+
+        StopTreeCache fresh = new StopTreeCache(loaded, GraphIndex.MAX_WALK_METERS);
+        assertFalse(loaded.index.stopVertexForStop.isEmpty());
+        for (TransitStop stop : loaded.index.stopVertexForStop.values()) {
+            TIntIntMap expected = toMap(fresh.getDistancesForStop(stop));
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, toMap(loaded.stopTreeCache.getDistancesForStop(stop)));
+
+            // Vertex indexes are kept, so the rows are also those computed before saving the graph.
+            TransitStop original = (TransitStop) graph.getVertex(stop.getLabel());
+            assertEquals(original.getIndex(), stop.getIndex());
+            assertEquals(expected, toMap(graph.stopTreeCache.getDistancesForStop(original)));
+        }
+    }
+
+    /** When stops are added to a loaded graph, its cache is not used and one covering all the stops is computed. */
+    @Test
+    public void testStaleCacheRecomputed() {
+        Graph loaded = loadGraph();
+        int maxLoadedIndex = 0;
+        for (Vertex v : loaded.getVertices()) {
+            maxLoadedIndex = Math.max(maxLoadedIndex, v.getIndex());
+        }
+
+        Stop stop = new Stop();
+        stop.setId(new FeedScopedId("NEW", "new"));
+        stop.setName("new");
+        stop.setLat(39.9908);
+        stop.setLon(-83.0118);
+        TransitStop newStop = new TransitStop(loaded, stop);
+        assertTrue(newStop.getIndex() > maxLoadedIndex);
+        FakeGraph.link(loaded);
+        loaded.index(new DefaultStreetVertexIndexFactory());
+
+        assertFalse(loaded.stopTreeCache.isValidFor(loaded, GraphIndex.MAX_WALK_METERS));
+        StopTreeCache cache = loaded.index.getStopTreeCache();
+        assertNotSame(loaded.stopTreeCache, cache);
+        assertEquals(-1, loaded.stopTreeCache.getRow(newStop));
+        assertTrue(cache.getRow(newStop) >= 0);
+        assertTrue(cache.isValidFor(loaded, GraphIndex.MAX_WALK_METERS));
+    }
+
+    /** The cache of a base graph is dropped before the graph builder modules add to it. */
+    @Test
+    public void testBaseGraphCacheDropped() throws Exception {
+        File baseGraph = temporaryFolder.newFile("Graph.obj");
+        Files.write(baseGraph.toPath(), serializedGraph);
+        GraphBuilder builder = new GraphBuilder(temporaryFolder.getRoot(),
+                new GraphBuilderParameters(MissingNode.getInstance()));
+        builder.serializeGraph = false;
+        builder.setBaseGraph(baseGraph.getPath());
+        assertNotNull(builder.getGraph().stopTreeCache);
+
+        boolean[] cacheDropped = new boolean[1];
+        builder.addModule(new GraphBuilderModule() {
+            @Override
+            public void buildGraph(Graph graph, HashMap<Class<?>, Object> extra) {
+                cacheDropped[0] = graph.stopTreeCache == null;
+            }
+
+            @Override
+            public void checkInputs() { }
+        });
+        builder.run();
+        assertTrue(cacheDropped[0]);
+        assertNull(builder.getGraph().stopTreeCache);
+    }
+
+}
@@ -0,0 +1,75 @@
+package org.opentripplanner.graph_builder.module.ned;
+
+import org.geotools.coverage.grid.GridCoverage2D;
+import org.geotools.coverage.grid.GridCoverageFactory;
+import org.geotools.coverage.grid.Interpolator2D;
+import org.geotools.geometry.DirectPosition2D;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.geotools.referencing.crs.DefaultGeographicCRS;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.opengis.coverage.PointOutsideCoverageException;
+import org.opentripplanner.common.geometry.GeometryUtils;
+
+import javax.media.jai.InterpolationBilinear;
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
+
+public class MappedGridCoverageTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private GridCoverage2D makeCoverage() {
+        // 40 columns by 30 rows of 0.01 degrees, north up.
+        float[][] matrix = new float[30][40];
+        for (int row = 0; row < 30; row++) {
+            for (int col = 0; col < 40; col++) {
+                matrix[row][col] = (float) (100 + 3 * col - 2 * row + 10 * Math.sin(col * row / 50.0));
+            }
+        }
+        ReferencedEnvelope envelope = new ReferencedEnvelope(-73.2, -72.8, 45.0, 45.3, DefaultGeographicCRS.WGS84);
+        return new GridCoverageFactory().create("test", matrix, envelope);
+    }
+
+    /** The mapped coverage must interpolate like the GeoTools bilinear interpolator it replaces. */
+    @Test
+    public void testSameAsInterpolator2D() throws Exception {
+        GridCoverage2D coverage = makeCoverage();
+        File source = temporaryFolder.newFile("test.tif");
+        File directory = new File(temporaryFolder.getRoot(), "mapped");
+        MappedGridCoverage mapped = MappedGridCoverage.forRaster(source, directory, () -> coverage);
+        assertNotNull(mapped);
+        GridCoverage2D interpolator = Interpolator2D.create(coverage, new InterpolationBilinear());
+
+        double[] expected = new double[1];
+        double[] actual = new double[1];
+        for (double x = -73.19; x < -72.81; x += 0.0137) {
+            for (double y = 45.01; y < 45.29; y += 0.0113) {
+                DirectPosition2D point = new DirectPosition2D(GeometryUtils.WGS84_XY, x, y);
+                interpolator.evaluate(point, expected);
+                mapped.evaluate(point, actual);
+                assertEquals(expected[0], actual[0], 0.01);
+            }
+        }
+
+        // The flat file is reused without reading the raster again.
+        MappedGridCoverage reused = MappedGridCoverage.forRaster(source, directory, () -> {
+            throw new AssertionError("The raster should not be read again.");
+        });
+        assertNotNull(reused);
+        DirectPosition2D point = new DirectPosition2D(GeometryUtils.WGS84_XY, -73.0, 45.1);
+        assertEquals(mapped.evaluate(point, actual)[0], reused.evaluate(point, expected)[0], 0);
+
+        try {
+            mapped.evaluate(new DirectPosition2D(GeometryUtils.WGS84_XY, -72.7, 45.1), actual);
+            fail("Point outside of the raster");
+        } catch (PointOutsideCoverageException e) {
+            // expected
+        }
+    }
+}
@@ -2,6 +2,10 @@ package org.opentripplanner.graph_builder.module.osm;
 
 import org.junit.Test;
 import org.opentripplanner.openstreetmap.model.OSMWithTags;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+
+import java.util.Arrays;
+import java.util.List;
 
 import junit.framework.TestCase;
 
@@ -117,4 +121,71 @@ public class TestWayPropertySet extends TestCase {
        assertTrue(within(kmhAsMs(25), wps.getCarSpeedForWay(way, false), epsilon));
        assertTrue(within(kmhAsMs(25), wps.getCarSpeedForWay(way, true), epsilon));
     }
+
+    private static OSMWithTags way(String... tags) {
+        OSMWithTags way = new OSMWithTags();
+        for (int i = 0; i < tags.length; i += 2) {
+            way.addTag(tags[i], tags[i + 1]);
+        }
+        return way;
+    }
+
+    /**
+     * Test that memoized picker matches give the same results as evaluating the pickers for each way.
+     */
+    @Test
+    public void testMemoizedMatches() {
+        WayPropertySet wps = new WayPropertySet();
+        new DefaultWayPropertySetSource().populateProperties(wps);
+
+        OSMWithTags[] ways = {
+                way("highway", "residential", "name", "Main Street"),
+                way("highway", "residential", "name", "Other Street"),
+                way("highway", "residential", "cycleway:right", "lane"),
+                way("highway", "residential", "cycleway:left", "lane", "cycleway", "track"),
+                way("highway", "footway", "surface", "cobblestone:flattened"),
+                way("highway", "primary", "note", "some note"),
+                way("highway", "primary", "note", "another note"),
+                way("highway", "unclassified", "sidewalk", "both")
+        };
+        for (int i = 0; i < 2; i++) {
+            for (OSMWithTags way : ways) {
+                // A new set has nothing cached yet.
+                WayPropertySet fresh = new WayPropertySet();
+                new DefaultWayPropertySetSource().populateProperties(fresh);
+                assertEquals(fresh.getDataForWay(way), wps.getDataForWay(way));
+                assertEquals(fresh.getCarSpeedForWay(way, false), wps.getCarSpeedForWay(way, false));
+                assertEquals(fresh.getSlopeOverride(way), wps.getSlopeOverride(way));
+                assertEquals(fresh.getNoteForWay(way) == null, wps.getNoteForWay(way) == null);
+                assertEquals(String.valueOf(fresh.getCreativeNameForWay(way)),
+                        String.valueOf(wps.getCreativeNameForWay(way)));
+            }
+        }
+        // The properties returned may be modified by the caller.
+        WayProperties properties = wps.getDataForWay(ways[0]);
+        assertNotSame(properties, wps.getDataForWay(ways[1]));
+
+        // Adding pickers drops the memoized matches.
+        wps.setProperties("highway=residential;name=*", StreetTraversalPermission.NONE, 1, 1);
+        assertEquals(StreetTraversalPermission.NONE, wps.getDataForWay(ways[0]).getPermission());
+        assertEquals(StreetTraversalPermission.NONE, wps.getDataForWay(ways[1]).getPermission());
+    }
+
+    @Test
+    public void testTagSignature() {
+        List<OSMSpecifier> specifiers = Arrays.asList(new OSMSpecifier("highway=residential;name=*"),
+                new OSMSpecifier("surface=gravel"));
+        SpecifierMatchCache<Integer> cache = new SpecifierMatchCache<>("test", specifiers, true);
+        // Tags only matched against wildcards count by their presence, other tags are ignored.
+        assertEquals(cache.signature(way("highway", "residential", "name", "A", "ref", "1")),
+                cache.signature(way("highway", "residential", "name", "B")));
+        assertFalse(cache.signature(way("highway", "residential", "name", "A")).equals(
+                cache.signature(way("highway", "residential"))));
+        assertFalse(cache.signature(way("highway", "residential")).equals(
+                cache.signature(way("highway", "residential", "surface:left", "gravel"))));
+
+        assertEquals(1, (int) cache.get(way("highway", "residential", "name", "A"), way -> 1));
+        assertEquals(1, (int) cache.get(way("highway", "residential", "name", "B"), way -> 2));
+        assertEquals(1, cache.stats().hitCount());
+    }
 }
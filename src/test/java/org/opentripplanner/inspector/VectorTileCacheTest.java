@@ -0,0 +1,131 @@
+package org.opentripplanner.inspector;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class VectorTileCacheTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    /** Renders tiles of the given size filled with the given byte, and counts them. */
+    private static class Renderer {
+        final AtomicInteger count = new AtomicInteger();
+
+        Supplier<byte[]> tile(int size, int fill) {
+            return () -> {
+                count.incrementAndGet();
+                byte[] tile = new byte[size];
+                Arrays.fill(tile, (byte) fill);
+                return tile;
+            };
+        }
+    }
+
+    private ObjectNode makeConfig(File cacheDirectory, int cacheSizeMb) {
+        ObjectNode config = new ObjectMapper().createObjectNode();
+        ObjectNode vectorTiles = config.putObject("vectorTiles");
+        vectorTiles.put("cacheSizeMb", cacheSizeMb);
+        vectorTiles.put("cacheDirectory", cacheDirectory.getPath());
+        return config;
+    }
+
+    /** The least recently used tiles are evicted when the tiles in memory exceed the size of the cache. */
+    @Test
+    public void testMemoryEviction() {
+        VectorTileCache cache = new VectorTileCache(250, null);
+        Renderer renderer = new Renderer();
+        cache.get("a", renderer.tile(100, 1));
+        cache.get("b", renderer.tile(100, 2));
+        assertEquals(2, renderer.count.get());
+
+        // Use a, so b is the least recently used tile when c is added.
+        cache.get("a", renderer.tile(100, 1));
+        assertEquals(2, renderer.count.get());
+        cache.get("c", renderer.tile(100, 3));
+        assertEquals(3, renderer.count.get());
+        cache.get("a", renderer.tile(100, 1));
+        cache.get("c", renderer.tile(100, 3));
+        assertEquals(3, renderer.count.get());
+        cache.get("b", renderer.tile(100, 2));
+        assertEquals(4, renderer.count.get());
+
+        // A tile larger than the cache is not kept.
+        cache.get("big", renderer.tile(300, 4));
+        cache.get("big", renderer.tile(300, 4));
+        assertEquals(6, renderer.count.get());
+    }
+
+    /** Tiles evicted from memory are read back from the disk cache. */
+    @Test
+    public void testDiskCache() throws IOException {
+        File directory = temporaryFolder.newFolder("tiles");
+        VectorTileCache cache = new VectorTileCache(0, directory);
+        Renderer renderer = new Renderer();
+        byte[] tile = cache.get("a", renderer.tile(100, 1));
+        assertTrue(new File(directory, "a").isFile());
+        assertArrayEquals(tile, cache.get("a", renderer.tile(100, 1)));
+        assertEquals(1, renderer.count.get());
+        cache.clear();
+    }
+
+    /**
+     * When a graph is reloaded, the cache of the new router does not serve the tiles of the old one, and does not
+     * delete the directory of the old router which is still serving tiles until it is shut down.
+     */
+    @Test
+    public void testReload() throws IOException {
+        File cacheDirectory = temporaryFolder.newFolder("cache");
+        ObjectNode config = makeConfig(cacheDirectory, 0);
+        // Left by a previous run of OTP.
+        File stale = new File(new File(cacheDirectory, "default"), "1");
+        assertTrue(stale.mkdirs());
+        assertTrue(new File(stale, "a").createNewFile());
+
+        VectorTileCache oldCache = VectorTileCache.fromConfig("default", config);
+        assertFalse(stale.exists());
+        Renderer renderer = new Renderer();
+        byte[] oldTile = oldCache.get("a", renderer.tile(100, 1));
+
+        VectorTileCache newCache = VectorTileCache.fromConfig("default", config);
+        assertNotEquals(oldCache.getDirectory(), newCache.getDirectory());
+        assertTrue(new File(oldCache.getDirectory(), "a").isFile());
+
+        // The new cache renders the tile for the new graph, the old one still serves its own.
+        byte[] newTile = newCache.get("a", renderer.tile(100, 2));
+        assertEquals(2, renderer.count.get());
+        assertEquals(2, newTile[0]);
+        assertArrayEquals(oldTile, oldCache.get("a", renderer.tile(100, 3)));
+        assertEquals(2, renderer.count.get());
+
+        // The old router is shut down.
+        oldCache.clear();
+        assertFalse(oldCache.getDirectory().exists());
+        assertTrue(new File(newCache.getDirectory(), "a").isFile());
+
+        // A cache for another router does not touch the directory of this one.
+        VectorTileCache otherCache = VectorTileCache.fromConfig("other", config);
+        VectorTileCache thirdCache = VectorTileCache.fromConfig("default", config);
+        assertTrue(new File(newCache.getDirectory(), "a").isFile());
+        otherCache.clear();
+        thirdCache.clear();
+        newCache.clear();
+        assertFalse(newCache.getDirectory().exists());
+    }
+
+}
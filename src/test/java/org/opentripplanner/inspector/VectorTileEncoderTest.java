@@ -0,0 +1,201 @@
+package org.opentripplanner.inspector;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.protobuf.CodedInputStream;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Decode encoded tiles following the vector tile specification and check that they hold the layers, attributes and
+ * geometries which were added.
+ */
+public class VectorTileEncoderTest {
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        VectorTileEncoder.Layer stops = encoder.addLayer("stops");
+        Map<String, Object> attributes = new LinkedHashMap<>();
+        attributes.put("name", "A");
+        attributes.put("wheelchair", true);
+        attributes.put("count", 3);
+        attributes.put("distance", 1.5);
+        attributes.put("code", null);
+        stops.addPoint(100, 200, attributes);
+        stops.addPoint(-10, 4100, ImmutableMap.of("name", "B", "count", 3));
+        encoder.addLayer("patterns");
+        VectorTileEncoder.Layer edges = encoder.addLayer("edges");
+        edges.addLineString(new int[] { 0, 10, 5, 99 }, new int[] { 0, -20, -20, 99 }, 3,
+                ImmutableMap.of("permission", "ALL"));
+        edges.addLineString(new int[] { 1 }, new int[] { 1 }, 1, ImmutableMap.of("permission", "NONE"));
+
+        List<DecodedLayer> layers = decode(encoder.encode());
+
+        // The empty layer is left out.
+        assertEquals(2, layers.size());
+        DecodedLayer stopLayer = layers.get(0);
+        assertEquals("stops", stopLayer.name);
+        assertEquals(2, stopLayer.version);
+        assertEquals(VectorTileEncoder.EXTENT, stopLayer.extent);
+        assertEquals(2, stopLayer.features.size());
+
+        DecodedFeature a = stopLayer.features.get(0);
+        assertEquals(1, a.type);
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("name", "A");
+        expected.put("wheelchair", true);
+        expected.put("count", 3L);
+        expected.put("distance", 1.5);
+        assertEquals(expected, a.attributes(stopLayer));
+        assertArrayEquals(new int[] { 9, 200, 400 }, a.geometry);
+        assertEquals(1, a.coordinates().size());
+        assertArrayEquals(new int[] { 100, 200 }, a.coordinates().get(0));
+
+        // The keys and values of both stops are shared in the dictionaries of the layer.
+        DecodedFeature b = stopLayer.features.get(1);
+        assertEquals(ImmutableMap.of("name", "B", "count", 3L), b.attributes(stopLayer));
+        assertEquals(4, stopLayer.keys.size());
+        assertEquals(5, stopLayer.values.size());
+        assertArrayEquals(new int[] { -10, 4100 }, b.coordinates().get(0));
+
+        DecodedLayer edgeLayer = layers.get(1);
+        assertEquals("edges", edgeLayer.name);
+        // The line with a single coordinate is skipped.
+        assertEquals(1, edgeLayer.features.size());
+        DecodedFeature line = edgeLayer.features.get(0);
+        assertEquals(2, line.type);
+        assertEquals(ImmutableMap.of("permission", "ALL"), line.attributes(edgeLayer));
+        // MoveTo one point, then LineTo two points with zigzag-encoded deltas.
+        assertArrayEquals(new int[] { 9, 0, 0, 18, 20, 39, 9, 0 }, line.geometry);
+        List<int[]> coordinates = line.coordinates();
+        assertEquals(3, coordinates.size());
+        assertArrayEquals(new int[] { 0, 0 }, coordinates.get(0));
+        assertArrayEquals(new int[] { 10, -20 }, coordinates.get(1));
+        assertArrayEquals(new int[] { 5, -20 }, coordinates.get(2));
+    }
+
+    @Test
+    public void testEmptyTile() {
+        VectorTileEncoder encoder = new VectorTileEncoder();
+        encoder.addLayer("edges");
+        assertEquals(0, encoder.encode().length);
+    }
+
+    private static class DecodedLayer {
+        String name;
+        int version;
+        int extent;
+        List<String> keys = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        List<DecodedFeature> features = new ArrayList<>();
+    }
+
+    private static class DecodedFeature {
+        int type;
+        int[] tags = new int[0];
+        int[] geometry = new int[0];
+
+        Map<String, Object> attributes(DecodedLayer layer) {
+            Map<String, Object> attributes = new HashMap<>();
+            for (int i = 0; i < tags.length; i += 2) {
+                attributes.put(layer.keys.get(tags[i]), layer.values.get(tags[i + 1]));
+            }
+            return attributes;
+        }
+
+        /** The absolute coordinates of the points of the geometry, from its commands and relative moves. */
+        List<int[]> coordinates() {
+            List<int[]> coordinates = new ArrayList<>();
+            int x = 0, y = 0;
+            int i = 0;
+            while (i < geometry.length) {
+                int command = geometry[i++];
+                int count = command >>> 3;
+                for (int j = 0; j < count; j++) {
+                    x += unZigZag(geometry[i++]);
+                    y += unZigZag(geometry[i++]);
+                    coordinates.add(new int[] { x, y });
+                }
+            }
+            return coordinates;
+        }
+    }
+
+    private static List<DecodedLayer> decode(byte[] tile) throws IOException {
+        List<DecodedLayer> layers = new ArrayList<>();
+        CodedInputStream in = CodedInputStream.newInstance(tile);
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            assertEquals(3, tag >>> 3);
+            layers.add(decodeLayer(in.readBytes().toByteArray()));
+        }
+        return layers;
+    }
+
+    private static DecodedLayer decodeLayer(byte[] bytes) throws IOException {
+        DecodedLayer layer = new DecodedLayer();
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (tag >>> 3) {
+                case 1: layer.name = in.readString(); break;
+                case 2: layer.features.add(decodeFeature(in.readBytes().toByteArray())); break;
+                case 3: layer.keys.add(in.readString()); break;
+                case 4: layer.values.add(decodeValue(in.readBytes().toByteArray())); break;
+                case 5: layer.extent = in.readUInt32(); break;
+                case 15: layer.version = in.readUInt32(); break;
+                default: in.skipField(tag);
+            }
+        }
+        return layer;
+    }
+
+    private static DecodedFeature decodeFeature(byte[] bytes) throws IOException {
+        DecodedFeature feature = new DecodedFeature();
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        for (int tag = in.readTag(); tag != 0; tag = in.readTag()) {
+            switch (tag >>> 3) {
+                case 2: feature.tags = readPacked(in); break;
+                case 3: feature.type = in.readEnum(); break;
+                case 4: feature.geometry = readPacked(in); break;
+                default: in.skipField(tag);
+            }
+        }
+        return feature;
+    }
+
+    private static Object decodeValue(byte[] bytes) throws IOException {
+        CodedInputStream in = CodedInputStream.newInstance(bytes);
+        int tag = in.readTag();
+        switch (tag >>> 3) {
+            case 1: return in.readString();
+            case 2: return in.readFloat();
+            case 3: return in.readDouble();
+            case 6: return in.readSInt64();
+            case 7: return in.readBool();
+            default: throw new AssertionError("Unexpected value field " + (tag >>> 3));
+        }
+    }
+
+    private static int[] readPacked(CodedInputStream in) throws IOException {
+        int limit = in.pushLimit(in.readRawVarint32());
+        List<Integer> values = new ArrayList<>();
+        while (in.getBytesUntilLimit() > 0) {
+            values.add(in.readRawVarint32());
+        }
+        in.popLimit(limit);
+        return values.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int unZigZag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+
+}
@@ -0,0 +1,156 @@
+package org.opentripplanner.profile;
+
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.joda.time.LocalDate;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.opentripplanner.analyst.cluster.TaskStatistics;
+import org.opentripplanner.api.parameter.QualifiedModeSet;
+import org.opentripplanner.graph_builder.model.GtfsBundle;
+import org.opentripplanner.graph_builder.module.FakeGraph;
+import org.opentripplanner.graph_builder.module.GtfsModule;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test that a repeated RAPTOR search with a random seed gives the same result whether its departure minutes are
+ * searched on the calling thread or in parallel on a pool.
+ */
+public class RepeatedRaptorParallelTest {
+
+    private static Graph graph;
+
+    /** Columbus with a scheduled route and a frequency-based route near the origin. */
+    @BeforeClass
+    public static void buildGraph () {
+        graph = FakeGraph.buildGraphNoTransit();
+        File gtfsDirectory = new File(RepeatedRaptorParallelTest.class.getResource("frequencies.gtfs").getPath());
+        GtfsModule gtfs = new GtfsModule(Arrays.asList(new GtfsBundle(gtfsDirectory)));
+        gtfs.buildGraph(graph, new HashMap<>());
+        FakeGraph.link(graph);
+        graph.index(new DefaultStreetVertexIndexFactory());
+    }
+
+    private static ProfileRequest makeRequest () {
+        ProfileRequest req = new ProfileRequest();
+        req.fromLon = req.toLon = -83.0118;
+        req.fromLat = req.toLat = 39.9908;
+        req.date = new LocalDate(2015, 9, 17);
+        req.walkSpeed = 1.3f;
+        req.bikeSpeed = 4.1f;
+        // 40 minutes, which is more than two blocks of RaptorWorker.PARALLEL_BLOCK_MINUTES.
+        req.fromTime = 7 * 3600 + 30 * 60;
+        req.toTime = 8 * 3600 + 10 * 60;
+        req.maxWalkTime = 20;
+        req.transitModes = new TraverseModeSet("TRANSIT");
+        req.accessModes = req.egressModes = req.directModes = new QualifiedModeSet("WALK");
+        req.randomSeed = 42L;
+        return req;
+    }
+
+    private static PropagatedTimesStore route (ProfileRequest req, RaptorWorkerData data, ForkJoinPool pool) {
+        RepeatedRaptorProfileRouter router = new RepeatedRaptorProfileRouter(graph, req);
+        router.raptorWorkerData = data;
+        router.forkJoinPool = pool;
+        router.route();
+        return router.getPropagatedTimesStore();
+    }
+
+    @Test
+    public void testParallelSearchMatchesSerialSearch () {
+        ProfileRequest req = makeRequest();
+        RaptorWorkerData data = RepeatedRaptorProfileRouter.getRaptorWorkerData(req, graph, null, new TaskStatistics());
+        assertTrue(data.hasSchedules);
+        assertTrue(data.hasFrequencies);
+
+        PropagatedTimesStore serial = route(req, data, null);
+        assertTrue(serial.countTargetsReached() > 0);
+
+        ForkJoinPool pool = new ForkJoinPool(3);
+        PropagatedTimesStore parallel;
+        try {
+            parallel = route(req, data, pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertArrayEquals(serial.mins, parallel.mins);
+        assertArrayEquals(serial.avgs, parallel.avgs);
+        assertArrayEquals(serial.maxs, parallel.maxs);
+
+        // Repeating the search with the same seed gives the same result again.
+        PropagatedTimesStore repeated = route(req, data, null);
+        assertArrayEquals(serial.avgs, repeated.avgs);
+    }
+
+    /** The parallel search and the seed are taken from the request. */
+    @Test
+    public void testRequestOptions () {
+        ProfileRequest req = makeRequest();
+        RepeatedRaptorProfileRouter router = new RepeatedRaptorProfileRouter(graph, req);
+        assertNull(router.forkJoinPool);
+        assertEquals(Long.valueOf(42), router.randomSeed);
+
+        req.parallel = true;
+        router = new RepeatedRaptorProfileRouter(graph, req);
+        assertSame(ForkJoinPool.commonPool(), router.forkJoinPool);
+    }
+
+    /** After reseeding, the draws for a departure time do not depend on the draws made before. */
+    @Test
+    public void testReseed () {
+        ProfileRequest req = makeRequest();
+        RaptorWorkerData data = RepeatedRaptorProfileRouter.getRaptorWorkerData(req, graph, null, new TaskStatistics());
+        int departureTime = 8 * 3600;
+
+        FrequencyRandomOffsets offsets = new FrequencyRandomOffsets(data, req.randomSeed);
+        assertTrue(offsets.offsets.size() > 0);
+        offsets.reseed(departureTime);
+        offsets.randomize();
+        TIntObjectMap<int[]> expected = copy(offsets.offsets);
+
+        // Draws for other departure times, then back to the first one.
+        offsets.randomize();
+        offsets.reseed(departureTime - 60);
+        offsets.randomize();
+        offsets.reseed(departureTime);
+        offsets.randomize();
+        assertOffsetsEqual(expected, offsets.offsets);
+
+        // Another generator with the same seed, as used by another worker.
+        FrequencyRandomOffsets other = new FrequencyRandomOffsets(data, req.randomSeed);
+        other.reseed(departureTime);
+        other.randomize();
+        assertOffsetsEqual(expected, other.offsets);
+    }
+
+    private static TIntObjectMap<int[]> copy (TIntObjectMap<int[]> offsets) {
+        TIntObjectMap<int[]> copy = new TIntObjectHashMap<>();
+        for (TIntObjectIterator<int[]> it = offsets.iterator(); it.hasNext();) {
+            it.advance();
+            copy.put(it.key(), it.value().clone());
+        }
+        return copy;
+    }
+
+    private static void assertOffsetsEqual (TIntObjectMap<int[]> expected, TIntObjectMap<int[]> actual) {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (TIntObjectIterator<int[]> it = expected.iterator(); it.hasNext();) {
+            it.advance();
+            assertArrayEquals(it.value(), actual.get(it.key()));
+        }
+    }
+}
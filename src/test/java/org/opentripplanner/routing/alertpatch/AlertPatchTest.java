@@ -1,6 +1,7 @@
 package org.opentripplanner.routing.alertpatch;
 
 import java.io.File;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -185,4 +186,27 @@ public class AlertPatchTest extends TestCase {
         }
         assertEquals(expectedAlerts, actualAlerts);
     }
+
+    public void testDisplayDuring() {
+        AlertPatch patch = new AlertPatch();
+        patch.setTimePeriods(Arrays.asList(
+                new TimePeriod(500, 600),
+                new TimePeriod(100, 200),
+                new TimePeriod(150, 400)));
+
+        assertFalse(patch.displayDuring(0, 99));
+        assertTrue(patch.displayDuring(0, 100));
+        assertTrue(patch.displayDuring(399, 450));
+        assertFalse(patch.displayDuring(400, 499));
+        assertTrue(patch.displayDuring(400, 500));
+        assertFalse(patch.displayDuring(600, 1000));
+
+        // Replacing the periods must invalidate any previously built lookup structure.
+        patch.setTimePeriods(Collections.singletonList(new TimePeriod(700, 800)));
+        assertFalse(patch.displayDuring(0, 500));
+        assertTrue(patch.displayDuring(600, 1000));
+
+        patch.setTimePeriods(Collections.<TimePeriod>emptyList());
+        assertFalse(patch.displayDuring(0, Long.MAX_VALUE));
+    }
 }
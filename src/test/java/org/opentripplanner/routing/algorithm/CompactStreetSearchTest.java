@@ -0,0 +1,190 @@
+package org.opentripplanner.routing.algorithm;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opentripplanner.common.TurnRestriction;
+import org.opentripplanner.common.TurnRestrictionType;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.model.Stop;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTransitLink;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.graph.Vertex;
+import org.opentripplanner.routing.spt.GraphPath;
+import org.opentripplanner.routing.spt.ShortestPathTree;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+import org.opentripplanner.routing.vertextype.TransitStop;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.LineString;
+
+/**
+ * Check that a CompactStreetSearch reaches the same vertices at the same times and by the same paths as an
+ * EarliestArrivalSearch, on a grid with one-way streets, turn restrictions, streets closed to some modes and stops.
+ */
+public class CompactStreetSearchTest {
+
+    private static final int MAX_DURATION = 3600;
+
+    private Graph graph;
+
+    private CompactStreetLayer layer;
+
+    @Before
+    public void before() {
+        graph = makeGraph();
+        layer = new CompactStreetLayer(graph);
+    }
+
+    /**
+     * Make a 4x4 grid of streets "v_i_j", with stops "F:A" to "F:D" linked to some of its vertices. This is also used by
+     * NearbyStopFinderTest.
+     */
+    public static Graph makeGraph() {
+        Graph graph = new Graph();
+        StreetVertex[][] grid = new StreetVertex[4][4];
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 4; j++) {
+                grid[i][j] = new IntersectionVertex(graph, "v_" + i + "_" + j, 0.001 * j, 0.001 * i);
+            }
+        }
+        for (int i = 0; i < 4; i++) {
+            for (int j = 0; j < 3; j++) {
+                // Even rows are one-way, odd columns are closed to cars.
+                edge(grid[i][j], grid[i][j + 1], StreetTraversalPermission.ALL);
+                if (i % 2 == 1) edge(grid[i][j + 1], grid[i][j], StreetTraversalPermission.ALL);
+                StreetTraversalPermission permission = i % 2 == 1 ?
+                        StreetTraversalPermission.PEDESTRIAN_AND_BICYCLE : StreetTraversalPermission.ALL;
+                edge(grid[j][i], grid[j + 1][i], permission);
+                edge(grid[j + 1][i], grid[j][i], permission);
+            }
+        }
+        // No left turn for cars from the columns onto the rows.
+        for (int i = 0; i < 3; i++) {
+            for (int j = 0; j < 3; j++) {
+                disallowTurn(graph, find(grid[j][i], grid[j + 1][i]), find(grid[j + 1][i], grid[j + 1][i + 1]));
+            }
+        }
+        link(stop(graph, "A", grid[1][1]), grid[1][1], true, true);
+        // Only reached from the street, and not by wheelchair.
+        link(stop(graph, "B", grid[2][3]), grid[2][3], false, false);
+        // Linked to two vertices, searches can walk through it.
+        TransitStop c = stop(graph, "C", grid[3][0]);
+        link(c, grid[3][0], true, true);
+        link(c, grid[3][1], true, true);
+        link(stop(graph, "D", grid[0][2]), grid[0][2], true, true);
+        return graph;
+    }
+
+    @Test
+    public void testSameResultsAsEarliestArrivalSearch() {
+        for (String origin : new String[] { "v_0_0", "v_2_2", "F:A", "F:C" }) {
+            for (TraverseMode mode : new TraverseMode[] { TraverseMode.WALK, TraverseMode.BICYCLE, TraverseMode.CAR }) {
+                RoutingRequest options = new RoutingRequest(mode);
+                options.dateTime = 1000000000;
+                checkSameResults(options, graph.getVertex(origin));
+            }
+        }
+        // The link of stop B is not wheelchair accessible.
+        RoutingRequest options = new RoutingRequest(TraverseMode.WALK);
+        options.dateTime = 1000000000;
+        options.wheelchairAccessible = true;
+        checkSameResults(options, graph.getVertex("v_0_0"));
+    }
+
+    /**
+     * Check that both searches reach the same vertices at the same times, by the same edges. The compact search keeps
+     * the path of the first earliest label at each vertex, which is the first earliest state of the tree.
+     */
+    private void checkSameResults(RoutingRequest options, Vertex origin) {
+        options.setRoutingContext(graph, origin, null);
+        assertTrue(CompactStreetSearch.supports(options));
+
+        EarliestArrivalSearch earliestArrivalSearch = new EarliestArrivalSearch();
+        earliestArrivalSearch.maxDuration = MAX_DURATION;
+        ShortestPathTree spt = earliestArrivalSearch.getShortestPathTree(options);
+        CompactStreetSearch search = new CompactStreetSearch(layer);
+        assertTrue(search.search(options, origin, MAX_DURATION));
+
+        String message = options.modes + " from " + origin + " to ";
+        assertEquals(spt.getVertices(), new HashSet<>(search.getReachedVertices()));
+        for (Vertex v : spt.getVertices()) {
+            State best = null;
+            for (State s : spt.getStates(v)) {
+                if (best == null || s.getTimeSeconds() < best.getTimeSeconds()) best = s;
+            }
+            assertEquals(message + v, best.getTimeSeconds(), search.getArrivalTime(v));
+            List<Edge> path = search.getPath(v);
+            assertEquals(message + v, new GraphPath(best, false).edges, path);
+            if (v == origin) {
+                assertTrue(path.isEmpty());
+            } else {
+                assertEquals(origin, path.get(0).getFromVertex());
+                assertEquals(v, path.get(path.size() - 1).getToVertex());
+            }
+        }
+        options.cleanup();
+    }
+
+    @Test
+    public void testUnsupportedRequests() {
+        RoutingRequest options = new RoutingRequest(TraverseMode.WALK);
+        options.arriveBy = true;
+        assertFalse(CompactStreetSearch.supports(options));
+        options = new RoutingRequest("WALK,TRANSIT");
+        assertFalse(CompactStreetSearch.supports(options));
+        options = new RoutingRequest(TraverseMode.BICYCLE);
+        options.allowBikeRental = true;
+        assertFalse(CompactStreetSearch.supports(options));
+    }
+
+    private static StreetEdge edge(StreetVertex vA, StreetVertex vB, StreetTraversalPermission permission) {
+        Coordinate[] coords = new Coordinate[] { vA.getCoordinate(), vB.getCoordinate() };
+        LineString geom = GeometryUtils.getGeometryFactory().createLineString(coords);
+        String name = String.format("%s_%s", vA.getLabel(), vB.getLabel());
+        return new StreetEdge(vA, vB, geom, name, 100.0, permission, false);
+    }
+
+    private static StreetEdge find(Vertex from, Vertex to) {
+        for (Edge e : from.getOutgoing()) {
+            if (e.getToVertex() == to) return (StreetEdge) e;
+        }
+        return null;
+    }
+
+    private static void disallowTurn(Graph graph, StreetEdge from, StreetEdge to) {
+        TurnRestriction restrict = new TurnRestriction(from, to, TurnRestrictionType.NO_TURN,
+                new TraverseModeSet(TraverseMode.CAR));
+        graph.addTurnRestriction(from, restrict);
+    }
+
+    /** @return a stop next to the given street vertex, labeled with its id. */
+    private static TransitStop stop(Graph graph, String id, StreetVertex near) {
+        Stop stop = new Stop();
+        stop.setId(new FeedScopedId("F", id));
+        stop.setName(id);
+        stop.setLat(near.getLat() + 0.0001);
+        stop.setLon(near.getLon() + 0.0001);
+        return new TransitStop(graph, stop);
+    }
+
+    /** Link the stop to the street vertex, in one or both directions. */
+    private static void link(TransitStop stop, StreetVertex street, boolean both, boolean wheelchairAccessible) {
+        new StreetTransitLink(street, stop, wheelchairAccessible);
+        if (both) new StreetTransitLink(stop, street, wheelchairAccessible);
+    }
+
+}
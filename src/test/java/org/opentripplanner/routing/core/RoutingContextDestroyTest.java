@@ -70,12 +70,18 @@ public class RoutingContextDestroyTest {
         // Then:
         originAndDestinationInsertedCorrect();
 
+        // And - the temporary edges are only visible through the context, permanent vertexes are unchanged
+        permanentVertexesNotReferencingTemporaryElements();
+
         // And When:
         subject.destroy();
 
-        // Then - permanent vertexes
+        // Then - permanent vertexes still do not reference any temporary elements
+        permanentVertexesNotReferencingTemporaryElements();
+    }
+
+    private void permanentVertexesNotReferencingTemporaryElements() {
         for (Vertex v : permanentVertexes) {
-            // - does not reference the any temporary nodes any more
             for (Edge e : v.getIncoming()) {
                 assertVertexEdgeIsNotReferencingTemporaryElements(v, e, e.getFromVertex());
             }
@@ -122,17 +128,17 @@ public class RoutingContextDestroyTest {
         new StreetEdge(v0, v1, geom, name, dist, StreetTraversalPermission.ALL, false);
     }
 
-    private static <T extends Collection<String>> T findAllReachableVertexes(Vertex vertex,
+    private <T extends Collection<String>> T findAllReachableVertexes(Vertex vertex,
             boolean forward, T list) {
         if (list.contains(vertex.getName()))
             return list;
 
         list.add(vertex.getName());
         if (forward) {
-            vertex.getOutgoing()
+            subject.getOutgoing(vertex)
                     .forEach(it -> findAllReachableVertexes(it.getToVertex(), forward, list));
         } else {
-            vertex.getIncoming()
+            subject.getIncoming(vertex)
                     .forEach(it -> findAllReachableVertexes(it.getFromVertex(), forward, list));
         }
         return list;
@@ -0,0 +1,57 @@
+package org.opentripplanner.routing.flex;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.linearref.LengthIndexedLine;
+import org.opentripplanner.ConstantsForTests;
+import org.opentripplanner.routing.edgetype.PatternHop;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.TripPattern;
+import org.opentripplanner.routing.edgetype.flex.FlexPatternHop;
+import org.opentripplanner.routing.flex.FlexIndex.HopProjection;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+
+import static org.junit.Assert.*;
+
+public class FlexIndexTest {
+
+    private Graph graph = ConstantsForTests.getInstance().getVermontGraph();
+
+    /**
+     * The projections of the street vertices near flex hops, which are cached, must be the same as
+     * projecting the vertices onto the hop geometry.
+     */
+    @Test
+    public void testProjectionsMatchHopGeometry() {
+        int checked = 0;
+        for (Edge e : graph.getEdges()) {
+            if (!(e instanceof StreetEdge)) {
+                continue;
+            }
+            for (FlexPatternHop hop : graph.flexIndex.getHopsForEdge(e)) {
+                HopProjection projection = graph.flexIndex.getProjection(hop);
+                assertSame(projection, graph.flexIndex.getProjection(hop));
+                LengthIndexedLine line = new LengthIndexedLine(hop.getGeometry());
+                assertEquals(line.getStartIndex(), projection.getStartIndex(), 0);
+                assertEquals(line.getEndIndex(), projection.getEndIndex(), 0);
+                for (Coordinate c : new Coordinate[] { e.getFromVertex().getCoordinate(), e.getToVertex().getCoordinate() }) {
+                    assertEquals(line.project(c), projection.project(c), 0);
+                    checked++;
+                }
+            }
+        }
+        assertTrue(checked > 0);
+
+        // Locations which are not street vertices near the hop are projected on demand.
+        for (TripPattern pattern : graph.index.patternForId.values()) {
+            for (PatternHop ph : pattern.getPatternHops()) {
+                if (ph instanceof FlexPatternHop && ph.getGeometry() != null && ph.hasFlexService()) {
+                    Coordinate c = new Coordinate(-72.0, 44.4);
+                    LengthIndexedLine line = new LengthIndexedLine(ph.getGeometry());
+                    assertEquals(line.project(c), graph.flexIndex.getProjection((FlexPatternHop) ph).project(c), 0);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package org.opentripplanner.routing.graph;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+public class BlockCompressedStreamTest extends TestCase {
+
+    public void testRoundTrip() throws IOException {
+        // Compressible data: random runs of a few byte values, spanning many small blocks and a partial last block.
+        Random random = new Random(42);
+        byte[] expected = new byte[100000 + 123];
+        for (int i = 0; i < expected.length; ) {
+            byte value = (byte) random.nextInt(4);
+            int run = 1 + random.nextInt(20);
+            for (int j = 0; j < run && i < expected.length; j++) expected[i++] = value;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new BlockCompressedOutputStream(bytes, 1000, 3)) {
+            // Mix single bytes, small writes, and writes larger than a block, flushing as Kryo does.
+            int i = 0;
+            while (i < expected.length) {
+                int n = Math.min(random.nextInt(2500), expected.length - i);
+                if (n == 0) {
+                    out.write(expected[i++]);
+                } else {
+                    out.write(expected, i, n);
+                    i += n;
+                }
+                out.flush();
+            }
+        }
+        assertTrue(bytes.size() < expected.length);
+
+        InputStream raw = new BufferedInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertTrue(BlockCompressedInputStream.isBlockCompressed(raw));
+        byte[] actual = new byte[expected.length];
+        try (InputStream in = new BlockCompressedInputStream(raw, 3)) {
+            int i = 0;
+            while (i < actual.length) {
+                int n = in.read(actual, i, Math.min(777, actual.length - i));
+                assertTrue(n > 0);
+                i += n;
+            }
+            assertEquals(-1, in.read());
+        }
+        assertTrue(Arrays.equals(expected, actual));
+    }
+
+    /** The decompression threads must not outlive the stream, whether it is read to the end or closed early. */
+    public void testDecompressionThreadsStop() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (OutputStream out = new BlockCompressedOutputStream(bytes, 1000, 2)) {
+            out.write(new byte[20000]);
+        }
+
+        // Read to the end without closing, like a deserializer which stops at the last object.
+        InputStream in = new BlockCompressedInputStream(new ByteArrayInputStream(bytes.toByteArray()), 2);
+        while (in.read(new byte[4096]) != -1);
+        assertNoDecompressionThreads();
+
+        // Closed before the end.
+        in = new BlockCompressedInputStream(new ByteArrayInputStream(bytes.toByteArray()), 2);
+        assertEquals(0, in.read());
+        in.close();
+        assertNoDecompressionThreads();
+    }
+
+    private static void assertNoDecompressionThreads() throws InterruptedException {
+        // Threads of a pool which was shut down finish asynchronously.
+        long deadline = System.currentTimeMillis() + 10000;
+        while (true) {
+            boolean alive = Thread.getAllStackTraces().keySet().stream()
+                    .anyMatch(t -> t.getName().equals("graph-decompression") && t.isAlive());
+            if (!alive) return;
+            assertTrue("Decompression threads still running", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    public void testUncompressedStreamIsNotDetected() throws IOException {
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(new byte[] { 1, 2 }));
+        assertFalse(BlockCompressedInputStream.isBlockCompressed(in));
+        assertEquals(1, in.read());
+    }
+
+}
@@ -7,6 +7,7 @@ import org.opentripplanner.model.Route;
 import org.opentripplanner.model.Stop;
 import org.opentripplanner.model.Trip;
 import org.opentripplanner.GtfsTest;
+import org.opentripplanner.common.GeocoderIndex;
 import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
 import org.opentripplanner.routing.edgetype.TripPattern;
 import org.opentripplanner.routing.vertextype.TransitStop;
@@ -131,6 +132,32 @@ public class GraphIndexTest extends GtfsTest {
 
     }
 
+    public void testGraphQLStops() {
+        Stop stop = graph.index.stopForId.values().iterator().next();
+        String id = stop.getId().getAgencyId() + ":" + stop.getId().getId();
+        String query =
+                "query Stops{" +
+                "    byIds: stops(ids: [\"" + id + "\", \"" + stop.getId().getAgencyId() + ":azerty\"]){" +
+                "        gtfsId" +
+                "    }" +
+                "    byName: stops(name: \"entrance\"){" +
+                "        name" +
+                "    }" +
+                "}";
+
+        ExecutionResult result = graph.index.graphQL.execute(query);
+        assertTrue(result.getErrors().isEmpty());
+        Map<String, Object> data = (Map<String, Object>) result.getData();
+        // Unknown stops are left out.
+        List<Map> byIds = (List<Map>) data.get("byIds");
+        assertEquals(1, byIds.size());
+        assertEquals(id, byIds.get(0).get("gtfsId"));
+        List<Map> byName = (List<Map>) data.get("byName");
+        assertEquals(2, byName.size());
+        assertNotNull(byName.get(0));
+        assertNotNull(byName.get(1));
+    }
+
     public void testGraphQLIntrospectionQuery() {
         String query = "  query IntrospectionQuery {\n"
             + "    __schema {\n"
@@ -218,8 +245,11 @@ public class GraphIndexTest extends GtfsTest {
         // graph.index.stopsForParentStation;
     }
 
-    public void testLucene() {
-        // graph.index.luceneIndex
+    public void testGeocoder() {
+        List<GeocoderIndex.Result> results = graph.index.geocode("entrance", true, true, false, false);
+        assertEquals(2, results.size());
+        assertEquals("stop entrance to a ", results.get(0).description);
+        assertEquals("stop entrance to b ", results.get(1).description);
     }
 
 }
@@ -58,6 +58,23 @@ public class GraphSerializationTest {
         assertNoDifferences(copiedGraph1, copiedGraph2);
     }
 
+    /**
+     * Tests that a block compressed graph is detected when loading, and yields the same data as the original graph.
+     */
+    @Test
+    public void testCompressedRoundTrip () throws Exception {
+        Graph originalGraph = ConstantsForTests.getInstance().getPortlandGraph();
+        List<Vertex> transitVertices = originalGraph.getVertices().stream()
+                .filter(v -> v instanceof TransitStation).collect(Collectors.toList());
+        transitVertices.forEach(originalGraph::remove);
+        originalGraph.index(new DefaultStreetVertexIndexFactory());
+        originalGraph.clearTimeZone();
+        File tempFile = TempFile.createTempFile("graph", "pdx");
+        originalGraph.save(tempFile, true);
+        Graph copiedGraph = Graph.load(tempFile);
+        assertNoDifferences(originalGraph, copiedGraph);
+    }
+
     // Ideally we'd also test comparing two separate but identical complex graphs, built separately from the same inputs.
     // A test that builds the same graph twice will currently fail for the following reasons:
     // There is global state in Vertex.index and the feeds IDs that mean if you build the same graph twice the feed IDs
@@ -0,0 +1,285 @@
+package org.opentripplanner.routing.impl;
+
+import junit.framework.TestCase;
+import org.opentripplanner.model.FareAttribute;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.routing.core.Fare.FareType;
+import org.opentripplanner.routing.core.FareRuleSet;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Checks the indexed and memoized fare rule lookup against a scan of all the rules, on a synthetic zonal feed with
+ * a fare rule for every pair of zones, and a few rules restricted to trips or limiting transfers and durations.
+ */
+public class DefaultFareServiceImplTest extends TestCase {
+
+    private static final String FEED_ID = "F";
+
+    private static final int N_ZONES = 150;
+
+    private static final int N_ROUTES = 50;
+
+    private List<FareRuleSet> fareRules;
+
+    private DefaultFareServiceImpl fareService;
+
+    @Override
+    protected void setUp() {
+        fareRules = new ArrayList<>();
+        int fareId = 0;
+        for (int o = 0; o < N_ZONES; o++) {
+            for (int d = 0; d < N_ZONES; d++) {
+                FareRuleSet rule = new FareRuleSet(fareAttribute(fareId++, 1 + Math.abs(o - d) * 0.25f));
+                rule.addOriginDestination(zone(o), zone(d));
+                fareRules.add(rule);
+            }
+        }
+        // Cheaper fares on some routes, and a flat fare for an agency.
+        for (int r = 0; r < N_ROUTES; r += 5) {
+            FareRuleSet rule = new FareRuleSet(fareAttribute(fareId++, 2.5f));
+            rule.addRoute(route(r));
+            rule.addRoute(route(r + 1));
+            fareRules.add(rule);
+        }
+        FareRuleSet agencyRule = new FareRuleSet(fareAttribute(fareId++, 30f));
+        agencyRule.setAgency("A");
+        fareRules.add(agencyRule);
+        // Rules whose match depends on the trips, the number of transfers, and the trip and journey times.
+        FareRuleSet tripRule = new FareRuleSet(fareAttribute(fareId++, 0.75f));
+        for (int t = 0; t < 10; t++) {
+            tripRule.addTrip(trip(t));
+        }
+        fareRules.add(tripRule);
+        FareAttribute oneTransfer = fareAttribute(fareId++, 1f);
+        oneTransfer.setTransfers(1);
+        FareRuleSet transferRule = new FareRuleSet(oneTransfer);
+        transferRule.addRoute(route(40));
+        transferRule.addRoute(route(41));
+        fareRules.add(transferRule);
+        FareAttribute shortJourney = fareAttribute(fareId++, 0.5f);
+        shortJourney.setJourneyDuration(3000);
+        FareRuleSet journeyRule = new FareRuleSet(shortJourney);
+        journeyRule.addRoute(route(42));
+        fareRules.add(journeyRule);
+        FareAttribute shortTransfer = fareAttribute(fareId++, 0.5f);
+        shortTransfer.setTransferDuration(1500);
+        FareRuleSet transferDurationRule = new FareRuleSet(shortTransfer);
+        transferDurationRule.addRoute(route(43));
+        fareRules.add(transferDurationRule);
+        fareService = new DefaultFareServiceImpl();
+        fareService.addFareRules(FareType.regular, fareRules);
+    }
+
+    public void testSingleRidesMatchRuleScan() {
+        Random random = new Random(1);
+        Collection<FareRuleSet> rules = fareService.fareRulesPerType.get(FareType.regular);
+        for (int i = 0; i < 2000; i++) {
+            List<Ride> rides = Collections.singletonList(randomRide(random, 0));
+            float expected = scanFare(rides);
+            assertEquals(expected, fareService.calculateCost(FareType.regular, rides, rules));
+            // The second lookup is served by the memo.
+            assertEquals(expected, fareService.calculateCost(FareType.regular, rides, rules));
+        }
+    }
+
+    public void testRuleWithoutRestrictionsMatchesEverything() {
+        FareRuleSet anywhere = new FareRuleSet(fareAttribute(-1, 0.5f));
+        List<FareRuleSet> rules = new ArrayList<>(fareRules);
+        rules.add(anywhere);
+        DefaultFareServiceImpl service = new DefaultFareServiceImpl();
+        service.addFareRules(FareType.regular, rules);
+        Collection<FareRuleSet> indexed = service.fareRulesPerType.get(FareType.regular);
+        Ride ride = randomRide(new Random(2), 0);
+        assertEquals(0.5f, service.calculateCost(FareType.regular, Collections.singletonList(ride), indexed));
+    }
+
+    /**
+     * The fares of four-ride itineraries, whose ride sequences are memoized by the fare service shared by all the
+     * itineraries, are those found by a scan of all the rules without memo.
+     */
+    public void testItinerariesMatchRuleScan() {
+        Random random = new Random(3);
+        Collection<FareRuleSet> rules = fareService.fareRulesPerType.get(FareType.regular);
+        List<List<Ride>> itineraries = new ArrayList<>();
+        List<Float> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            List<Ride> rides = new ArrayList<>();
+            for (int r = 0; r < 4; r++) {
+                // Rides in a few zones, on a few routes and trips, so that itineraries share ride sequences.
+                rides.add(random.nextBoolean() ? randomRide(random, r * 1200) : localRide(random, r * 1200));
+            }
+            itineraries.add(rides);
+            expected.add(scanLowestCost(rides));
+        }
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < itineraries.size(); i++) {
+                List<Ride> rides = itineraries.get(i);
+                assertEquals(expected.get(i), fareService.getLowestCost(FareType.regular, rides, rules));
+                for (int j = 0; j < rides.size(); j++) {
+                    for (int k = j + 1; k <= rides.size(); k++) {
+                        List<Ride> sequence = rides.subList(j, k);
+                        assertEquals(scanFare(sequence), fareService.calculateCost(FareType.regular, sequence, rules));
+                    }
+                }
+            }
+            // The memo is filled in another order on the second pass.
+            Collections.reverse(itineraries);
+            Collections.reverse(expected);
+        }
+    }
+
+    /** Sequences which only differ in the properties checked after matching a rule have different fares. */
+    public void testSequencesDifferingInTripsTransfersAndTimes() {
+        // Only the first sequence is on trips of the trip rule.
+        checkDifferentFares(
+                sequence(ride(40, 0, 0, 1, 0, 900), ride(41, 1, 1, 2, 1200, 2100)),
+                sequence(ride(40, 0, 0, 1, 0, 900), ride(41, 11, 1, 2, 1200, 2100)));
+        // The second sequence has two transfers on the same routes, zones and trips, with the same times.
+        checkDifferentFares(
+                sequence(ride(40, 11, 0, 1, 0, 900), ride(40, 12, 1, 2, 1200, 2100)),
+                sequence(ride(40, 11, 0, 1, 0, 500), ride(40, 12, 1, 1, 600, 1100), ride(40, 12, 1, 2, 1200, 2100)));
+        // The second journey is too long.
+        checkDifferentFares(
+                sequence(ride(42, 11, 0, 1, 0, 900), ride(42, 12, 1, 2, 1200, 2100)),
+                sequence(ride(42, 11, 0, 1, 0, 900), ride(42, 12, 1, 2, 1200, 4000)));
+        // The second transfer is too late.
+        checkDifferentFares(
+                sequence(ride(43, 11, 0, 1, 0, 900), ride(43, 12, 1, 2, 1200, 2100)),
+                sequence(ride(43, 11, 0, 1, 0, 900), ride(43, 12, 1, 2, 1800, 2100)));
+    }
+
+    /** Check the fares of both sequences, searched one after the other with the same memo, against a scan. */
+    private void checkDifferentFares(List<Ride> first, List<Ride> second) {
+        Collection<FareRuleSet> rules = fareService.fareRulesPerType.get(FareType.regular);
+        float firstFare = scanFare(first);
+        float secondFare = scanFare(second);
+        assertTrue(firstFare != secondFare);
+        for (int i = 0; i < 2; i++) {
+            assertEquals(firstFare, fareService.calculateCost(FareType.regular, first, rules));
+            assertEquals(secondFare, fareService.calculateCost(FareType.regular, second, rules));
+            assertEquals(scanLowestCost(first), fareService.getLowestCost(FareType.regular, first, rules));
+            assertEquals(scanLowestCost(second), fareService.getLowestCost(FareType.regular, second, rules));
+        }
+    }
+
+    /** @return the best fare of a ride sequence, found as DefaultFareServiceImpl does but by a scan of all rules. */
+    private float scanFare(List<Ride> rides) {
+        Set<String> agencies = new HashSet<>();
+        Set<String> zones = new HashSet<>();
+        Set<FeedScopedId> routes = new HashSet<>();
+        Set<FeedScopedId> trips = new HashSet<>();
+        for (Ride ride : rides) {
+            agencies.add(ride.agency);
+            zones.addAll(ride.zones);
+            routes.add(ride.route);
+            trips.add(ride.trip);
+        }
+        Ride first = rides.get(0);
+        Ride last = rides.get(rides.size() - 1);
+        int transfers = rides.size() - 1;
+        long tripTime = last.startTime - first.startTime;
+        long journeyTime = last.endTime - first.startTime;
+        float best = Float.POSITIVE_INFINITY;
+        for (FareRuleSet rule : fareRules) {
+            FareAttribute attribute = rule.getFareAttribute();
+            if (!rule.matches(agencies, first.startZone, last.endZone, zones, routes, trips)) continue;
+            if (attribute.isTransfersSet() && attribute.getTransfers() < transfers) continue;
+            if (attribute.isTransferDurationSet() && tripTime > attribute.getTransferDuration()) continue;
+            if (attribute.isJourneyDurationSet() && journeyTime > attribute.getJourneyDuration()) continue;
+            best = Math.min(best, attribute.getPrice());
+        }
+        return best;
+    }
+
+    /** @return the lowest cost of the rides, split in sequences as in DefaultFareServiceImpl, with scanned fares. */
+    private float scanLowestCost(List<Ride> rides) {
+        int n = rides.size();
+        float[][] cost = new float[n][n];
+        for (int length = 1; length <= n; length++) {
+            for (int j = 0; j + length <= n; j++) {
+                int end = j + length - 1;
+                float best = scanFare(rides.subList(j, end + 1));
+                for (int k = j; k < end; k++) {
+                    best = Math.min(best, cost[j][k] + cost[k + 1][end]);
+                }
+                cost[j][end] = best;
+            }
+        }
+        return cost[0][n - 1];
+    }
+
+    private static List<Ride> sequence(Ride... rides) {
+        List<Ride> ret = new ArrayList<>();
+        Collections.addAll(ret, rides);
+        return ret;
+    }
+
+    private static Ride ride(int route, int trip, int startZone, int endZone, long startTime, long endTime) {
+        Ride ride = new Ride();
+        ride.feedId = FEED_ID;
+        ride.agency = "B";
+        ride.route = route(route);
+        ride.trip = trip(trip);
+        ride.startZone = zone(startZone);
+        ride.endZone = zone(endZone);
+        ride.zones = new HashSet<>();
+        ride.zones.add(ride.startZone);
+        ride.zones.add(ride.endZone);
+        ride.startTime = startTime;
+        ride.endTime = endTime;
+        return ride;
+    }
+
+    /** @return a ride between the first zones, on one of the routes and trips of the rules limiting transfers. */
+    private Ride localRide(Random random, long startTime) {
+        long start = startTime + random.nextInt(3) * 300;
+        Ride ride = ride(40 + random.nextInt(4), random.nextInt(20), random.nextInt(5), random.nextInt(5), start,
+                start + 600 + random.nextInt(3) * 600);
+        ride.agency = random.nextBoolean() ? "A" : "B";
+        return ride;
+    }
+
+    private Ride randomRide(Random random, long startTime) {
+        Ride ride = new Ride();
+        ride.feedId = FEED_ID;
+        ride.agency = random.nextBoolean() ? "A" : "B";
+        ride.route = route(random.nextInt(N_ROUTES));
+        ride.trip = trip(random.nextInt(1000));
+        ride.startZone = zone(random.nextInt(N_ZONES));
+        ride.endZone = zone(random.nextInt(N_ZONES));
+        ride.zones = new HashSet<>();
+        ride.zones.add(ride.startZone);
+        ride.zones.add(ride.endZone);
+        ride.startTime = startTime;
+        ride.endTime = startTime + 900;
+        return ride;
+    }
+
+    private static FareAttribute fareAttribute(int id, float price) {
+        FareAttribute attribute = new FareAttribute();
+        attribute.setId(new FeedScopedId(FEED_ID, "fare" + id));
+        attribute.setPrice(price);
+        attribute.setCurrencyType("USD");
+        return attribute;
+    }
+
+    private static String zone(int i) {
+        return "zone" + i;
+    }
+
+    private static FeedScopedId route(int i) {
+        return new FeedScopedId(FEED_ID, "route" + i);
+    }
+
+    private static FeedScopedId trip(int i) {
+        return new FeedScopedId(FEED_ID, "trip" + i);
+    }
+
+}
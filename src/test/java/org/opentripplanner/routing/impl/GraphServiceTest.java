@@ -186,6 +186,37 @@ public class GraphServiceTest extends TestCase {
         assertEquals(0, graphService.getRouterIds().size());
     }
 
+    @Test
+    public final void testGraphServiceReadiness() throws IOException {
+
+        GraphService graphService = new GraphService();
+        InputStreamGraphSource.FileFactory graphSourceFactory = new InputStreamGraphSource.FileFactory(basePath);
+        assertFalse(graphService.isReady("A"));
+
+        graphSourceFactory.save("A", new ByteArrayInputStream(emptyGraphData));
+        graphService.registerGraph("A", graphSourceFactory.createGraphSource("A"));
+        assertTrue(graphService.isReady("A"));
+        assertNull(graphService.getReloadStage("A"));
+
+        // With a memory budget that cannot be met, the new graph is not loaded next to the current one
+        File configFile = new File(new File(basePath, "A"), "router-config.json");
+        try (Writer writer = new FileWriter(configFile)) {
+            writer.write("{ reload: { memoryBudgetMb: 100000000 } }");
+        }
+        graphSourceFactory.save("A", new ByteArrayInputStream(smallGraphData));
+        graphService.reloadGraphs(false, true);
+        assertTrue(graphService.isReady("A"));
+        assertEquals(0, graphService.getRouter("A").graph.getVertices().size());
+
+        // Pre-evicting frees the memory of the current graph first
+        graphService.reloadGraphs(true, true);
+        assertTrue(graphService.isReady("A"));
+        assertEquals(smallGraph.getVertices().size(), graphService.getRouter("A").graph.getVertices().size());
+
+        graphService.evictRouter("A");
+        assertFalse(graphService.isReady("A"));
+    }
+
     @Test
     public final void testGraphServiceAutoscan() throws IOException {
 
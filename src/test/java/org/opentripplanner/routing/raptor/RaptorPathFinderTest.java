@@ -0,0 +1,79 @@
+package org.opentripplanner.routing.raptor;
+
+import org.opentripplanner.GtfsTest;
+import org.opentripplanner.api.model.Leg;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.model.FeedScopedId;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.TraverseMode;
+import org.opentripplanner.routing.core.TraverseModeSet;
+import org.opentripplanner.routing.impl.GraphPathFinder;
+import org.opentripplanner.routing.spt.GraphPath;
+
+import java.util.List;
+
+/** Check that the RAPTOR engine finds the same trips as the AStar-based MMRI optimization tests. */
+public class RaptorPathFinderTest extends GtfsTest {
+
+    @Override
+    public final String getFeedName() {
+        return "mmri/2a1";
+    }
+
+    @Override
+    protected void setUp() {
+        super.setUp();
+        router.transitSearchEngine = TransitSearchEngine.RAPTOR;
+    }
+
+    public void testEarliestTrip() {
+        Leg leg = plan(+1388530860L, "2a1", "2a2", null, false, false, null, "", "");
+
+        validateLeg(leg, 1388530860000L, 1388530920000L, "2a2", "2a1", null);
+    }
+
+    public void testFasterPattern() {
+        Leg leg = plan(+1388530980L, "2a1", "2a2", null, false, false, null, "", "");
+
+        validateLeg(leg, 1388531100000L, 1388531160000L, "2a2", "2a1", null);
+    }
+
+    public void testRaptorPaths() {
+        RoutingRequest request = new RoutingRequest();
+        request.dateTime = 1388530980L;
+        request.from = new GenericLocation(null, "FEED:2a1");
+        request.to = new GenericLocation(null, "FEED:2a2");
+        request.setModes(new TraverseModeSet(TraverseMode.WALK, TraverseMode.TRANSIT));
+        request.setRoutingContext(graph);
+        assertTrue(RaptorPathFinder.supports(request, graph));
+
+        List<GraphPath> paths = new RaptorPathFinder(router).getPaths(request, 5);
+        assertFalse(paths.isEmpty());
+        GraphPath path = paths.get(0);
+        assertEquals(1, path.getTrips().size());
+        assertEquals(1388531160L, path.getEndTime());
+
+        request.setArriveBy(true);
+        assertFalse(RaptorPathFinder.supports(request, graph));
+    }
+
+    /** The paths found by RAPTOR go through the same post-processing as those found by AStar. */
+    public void testGraphPathFinderBansRaptorTrips() {
+        RoutingRequest request = new RoutingRequest();
+        request.dateTime = 1388530980L;
+        request.from = new GenericLocation(null, "FEED:2a1");
+        request.to = new GenericLocation(null, "FEED:2a2");
+        request.setModes(new TraverseModeSet(TraverseMode.WALK, TraverseMode.TRANSIT));
+        request.setRoutingContext(graph);
+
+        List<GraphPath> paths = new GraphPathFinder(router).getPaths(request);
+        assertFalse(paths.isEmpty());
+        assertEquals(1388531160L, paths.get(0).getEndTime());
+        for (GraphPath path : paths) {
+            for (FeedScopedId tripId : path.getTrips()) {
+                assertTrue(request.bannedTrips.containsKey(tripId));
+            }
+        }
+    }
+
+}
@@ -0,0 +1,79 @@
+package org.opentripplanner.routing.spt;
+
+import org.junit.Test;
+import org.locationtech.jts.geom.Coordinate;
+import org.opentripplanner.common.geometry.GeometryUtils;
+import org.opentripplanner.common.geometry.SphericalDistanceLibrary;
+import org.opentripplanner.common.model.GenericLocation;
+import org.opentripplanner.routing.algorithm.AStar;
+import org.opentripplanner.routing.core.RoutingRequest;
+import org.opentripplanner.routing.core.State;
+import org.opentripplanner.routing.edgetype.StreetEdge;
+import org.opentripplanner.routing.edgetype.StreetTraversalPermission;
+import org.opentripplanner.routing.edgetype.TemporaryEdge;
+import org.opentripplanner.routing.graph.Edge;
+import org.opentripplanner.routing.graph.Graph;
+import org.opentripplanner.routing.impl.DefaultStreetVertexIndexFactory;
+import org.opentripplanner.routing.vertextype.IntersectionVertex;
+import org.opentripplanner.routing.vertextype.StreetVertex;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SPTWalkerTest {
+
+    private static void street(StreetVertex v0, StreetVertex v1) {
+        double dist = SphericalDistanceLibrary.distance(v0.getCoordinate(), v1.getCoordinate());
+        new StreetEdge(v0, v1, GeometryUtils.makeLineString(v0.getLon(), v0.getLat(), v1.getLon(), v1.getLat()),
+                v0.getLabel() + v1.getLabel(), dist, StreetTraversalPermission.ALL, false);
+    }
+
+    /**
+     * The origin splits the street A-B, the partial street edges from the origin to A and B are temporary edges of
+     * the request, which must be walked too.
+     */
+    @Test
+    public void testWalkFromSplitEdge() {
+        Graph graph = new Graph();
+        StreetVertex a = new IntersectionVertex(graph, "A", 0.000, 45.0);
+        StreetVertex b = new IntersectionVertex(graph, "B", 0.010, 45.0);
+        StreetVertex c = new IntersectionVertex(graph, "C", 0.010, 45.01);
+        street(a, b);
+        street(b, a);
+        street(b, c);
+        street(c, b);
+        graph.index(new DefaultStreetVertexIndexFactory());
+
+        RoutingRequest request = new RoutingRequest();
+        request.batch = true;
+        request.from = new GenericLocation(45.0, 0.004);
+        request.setRoutingContext(graph);
+        ShortestPathTree spt = new AStar().getShortestPathTree(request);
+
+        List<Edge> temporaryEdges = new ArrayList<>();
+        List<Edge> permanentEdges = new ArrayList<>();
+        new SPTWalker(spt).walk(new SPTWalker.SPTVisitor() {
+            @Override
+            public boolean accept(Edge e) {
+                return e instanceof StreetEdge;
+            }
+
+            @Override
+            public void visit(Edge e, Coordinate c, State s0, State s1, double d0, double d1, double speed) {
+                List<Edge> edges = e instanceof TemporaryEdge ? temporaryEdges : permanentEdges;
+                if (!edges.contains(e)) edges.add(e);
+            }
+        }, 50);
+        request.cleanup();
+
+        // Origin to A and origin to B.
+        assertEquals(2, temporaryEdges.size());
+        for (Edge e : temporaryEdges) {
+            assertTrue(e.getToVertex() == a || e.getToVertex() == b);
+        }
+        assertTrue(permanentEdges.size() >= 1);
+    }
+}
@@ -0,0 +1,41 @@
+package org.opentripplanner.standalone;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RequestLogReplayTest {
+
+    private static final String LINE =
+            "2019-03-01T08:12:33.120 10.0.0.1 DEPART 2019-03-01T08:15 TRANSIT,WALK 45.51 -122.68 45.53 -122.66 "
+            + "1740 2 1500 1 1920 2";
+
+    @Test
+    public void testBestDuration() {
+        String[] fields = LINE.split(" ");
+        assertEquals(1500, RequestLogReplay.bestDuration(fields, 9));
+        assertEquals(-1, RequestLogReplay.bestDuration(LINE.substring(0, LINE.indexOf(" 1740")).split(" "), 9));
+        assertEquals(-1, RequestLogReplay.bestDuration("".split(" "), 0));
+    }
+
+    @Test
+    public void testRequestKeyIgnoresLogTimeAndClient() {
+        String other = LINE.replace("2019-03-01T08:12:33.120 10.0.0.1", "2019-03-02T09:00:00.000 replay");
+        assertEquals(RequestLogReplay.requestKey(LINE.split(" ")), RequestLogReplay.requestKey(other.split(" ")));
+    }
+
+    @Test
+    public void testLatencyPercentiles() {
+        RequestLogReplay.Result[] results = new RequestLogReplay.Result[100];
+        for (int i = 0; i < results.length; i++) {
+            results[i] = new RequestLogReplay.Result();
+            results[i].latencyMillis = 100 - i;
+        }
+        RequestLogReplay.Report report = new RequestLogReplay.Report(results, 2000);
+        assertEquals(50, report.latencyPercentile(0.5));
+        assertEquals(99, report.latencyPercentile(0.99));
+        assertEquals(100, report.latencyPercentile(1));
+        assertEquals(50.0, report.throughput(), 1e-9);
+    }
+
+}
@@ -0,0 +1,106 @@
+package org.opentripplanner.updater;
+
+import org.junit.Test;
+import org.opentripplanner.routing.graph.Graph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class GraphWriterSchedulerTest {
+
+    private final Object tripUpdater = new Object();
+
+    private final Object bikeRentalUpdater = new Object();
+
+    private final List<String> written = new ArrayList<>();
+
+    private GraphWriterRunnable writer(String name, boolean snapshot) {
+        return new GraphWriterRunnable() {
+            @Override
+            public void run(Graph graph) {
+                written.add(name);
+            }
+
+            @Override
+            public boolean isSnapshot() {
+                return snapshot;
+            }
+
+            @Override
+            public String toString() {
+                return name;
+            }
+        };
+    }
+
+    @Test
+    public void testPriority() {
+        GraphWriterScheduler scheduler = new GraphWriterScheduler();
+        scheduler.addLane(tripUpdater, "trips", 10, 0);
+        scheduler.addLane(bikeRentalUpdater, "bikes", 0, 0);
+        scheduler.enqueue(bikeRentalUpdater, writer("bikes 1", false), 0);
+        scheduler.enqueue(null, writer("other", false), 1);
+        scheduler.enqueue(tripUpdater, writer("trips 1", false), 2);
+        scheduler.enqueue(bikeRentalUpdater, writer("bikes 2", false), 3);
+        scheduler.enqueue(tripUpdater, writer("trips 2", false), 4);
+
+        // Higher priority first, then in the order they were queued.
+        assertEquals("trips 1", scheduler.next(5).toString());
+        assertEquals("trips 2", scheduler.next(5).toString());
+        assertEquals("bikes 1", scheduler.next(5).toString());
+        assertEquals("other", scheduler.next(5).toString());
+        assertEquals("bikes 2", scheduler.next(5).toString());
+        assertNull(scheduler.next(5));
+    }
+
+    @Test
+    public void testMaxLatency() {
+        GraphWriterScheduler scheduler = new GraphWriterScheduler();
+        scheduler.addLane(tripUpdater, "trips", 10, 0);
+        scheduler.addLane(bikeRentalUpdater, "bikes", 0, 30);
+        scheduler.enqueue(bikeRentalUpdater, writer("bikes", false), 0);
+        scheduler.enqueue(tripUpdater, writer("trips 1", false), 20000);
+        scheduler.enqueue(tripUpdater, writer("trips 2", false), 25000);
+
+        assertEquals("trips 1", scheduler.next(29000).toString());
+        // The bike rental update has now been waiting longer than its maximum latency.
+        assertEquals("bikes", scheduler.next(31000).toString());
+        assertEquals("trips 2", scheduler.next(31000).toString());
+        assertEquals(1, scheduler.getStatus().get(2).overBudget);
+    }
+
+    @Test
+    public void testCoalescing() {
+        GraphWriterScheduler scheduler = new GraphWriterScheduler();
+        scheduler.addLane(tripUpdater, "trips", 10, 0);
+        scheduler.addLane(bikeRentalUpdater, "bikes", 0, 0);
+        scheduler.enqueue(tripUpdater, writer("trips 1", false), 0);
+        scheduler.enqueue(bikeRentalUpdater, writer("bikes 1", true), 0);
+        scheduler.enqueue(tripUpdater, writer("trips 2", false), 1);
+        scheduler.enqueue(bikeRentalUpdater, writer("bikes 2", true), 1);
+        scheduler.enqueue(bikeRentalUpdater, writer("bikes 3", true), 2);
+
+        List<GraphWriterScheduler.LaneStatus> status = scheduler.getStatus();
+        assertEquals(2, status.get(1).queueDepth);
+        assertEquals(1, status.get(2).queueDepth);
+        assertEquals(2, status.get(2).coalesced);
+
+        // Incremental updates are all applied, only the last snapshot is.
+        Graph graph = new Graph();
+        for (int i = 0; i < 5; i++) {
+            scheduler.runNext(graph);
+        }
+        assertEquals(3, written.size());
+        assertEquals("trips 1", written.get(0));
+        assertEquals("trips 2", written.get(1));
+        assertEquals("bikes 3", written.get(2));
+
+        status = scheduler.getStatus();
+        assertEquals(0, status.get(2).queueDepth);
+        assertEquals(2, status.get(1).executed);
+        assertEquals(1, status.get(2).executed);
+    }
+}